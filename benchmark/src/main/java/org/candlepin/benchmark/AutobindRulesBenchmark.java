@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.benchmark;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.Pool;
+import org.candlepin.model.PoolQuantity;
+import org.candlepin.model.Product;
+import org.candlepin.policy.js.autobind.AutobindRules;
+import org.candlepin.policy.js.autobind.AutobindSolver;
+import org.candlepin.policy.js.compliance.ComplianceStatus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AutobindRulesBenchmark
+ *
+ * Selects the best pools for a consumer with several installed products out of
+ * a growing number of candidate pools, with the rules or with the Java solver.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AutobindRulesBenchmark {
+
+    @Param({"10", "100", "500"})
+    private int pools;
+
+    @Param({"rules", "java"})
+    private String solver;
+
+    private AutobindRules autobindRules;
+    private Consumer consumer;
+    private String[] productIds;
+    private List<Pool> candidates;
+
+    @Setup
+    public void setUp() {
+        BenchmarkData data = new BenchmarkData();
+        autobindRules = new AutobindRules(BenchmarkData.createJsRunnerProvider().get(),
+            "java".equals(solver) ? new AutobindSolver(Integer.MAX_VALUE, 60000) : null);
+
+        List<Product> products = data.createProducts(50);
+        List<Product> installed = products.subList(0, 10);
+        consumer = data.createConsumer(installed);
+        productIds = new String[installed.size()];
+        for (int i = 0; i < productIds.length; i++) {
+            productIds[i] = installed.get(i).getId();
+        }
+        candidates = data.createPools(products, pools);
+    }
+
+    @Benchmark
+    public List<PoolQuantity> selectBestPools() {
+        return autobindRules.selectBestPools(consumer, productIds, candidates,
+            new ComplianceStatus(), null, new HashSet<String>(), false);
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.benchmark;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerInstalledProduct;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.model.ConsumerType.ConsumerTypeEnum;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.Owner;
+import org.candlepin.model.Pool;
+import org.candlepin.model.Product;
+import org.candlepin.model.Rules;
+import org.candlepin.model.RulesCurator;
+import org.candlepin.model.dto.Content;
+import org.candlepin.policy.js.JsRunnerProvider;
+import org.candlepin.policy.js.JsRunnerRequestCache;
+import org.candlepin.util.Util;
+
+import com.google.inject.Provider;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * BenchmarkData
+ *
+ * Generates the synthetic owners, consumers, pools and content sets the benchmarks
+ * run against. Everything is built in memory and seeded, so that every run of a
+ * benchmark measures the same data.
+ */
+public class BenchmarkData {
+
+    private static final String[] SEGMENTS = {
+        "content", "dist", "beta", "rhel", "server", "workstation", "client",
+        "computenode", "6", "7", "$releasever", "$basearch", "os", "debug",
+        "source", "SRPMS", "optional", "supplementary", "extras", "rh-common",
+        "jboss", "eap", "fuse", "openstack", "satellite", "tools", "ha", "rs",
+    };
+
+    private final Random random;
+    private final Owner owner;
+    private final Date start;
+    private final Date end;
+    private int ids = 0;
+
+    public BenchmarkData() {
+        this(42L);
+    }
+
+    public BenchmarkData(long seed) {
+        random = new Random(seed);
+        owner = new Owner("benchmark", "Benchmark Owner");
+        owner.setId("owner-benchmark");
+
+        Calendar cal = Calendar.getInstance();
+        cal.add(Calendar.YEAR, -1);
+        start = cal.getTime();
+        cal.add(Calendar.YEAR, 50);
+        end = cal.getTime();
+    }
+
+    public Owner getOwner() {
+        return owner;
+    }
+
+    /**
+     * Creates marketing products, each with a few socket and stacking attributes
+     * the rules look at.
+     *
+     * @param count number of products
+     * @return the products
+     */
+    public List<Product> createProducts(int count) {
+        List<Product> products = new ArrayList<Product>(count);
+        for (int i = 0; i < count; i++) {
+            Product product = new Product("prod-" + nextId(), "Product " + i);
+            product.setAttribute("sockets", String.valueOf(2 << random.nextInt(3)));
+            product.setAttribute("multi-entitlement", "yes");
+            product.setAttribute("stacking_id", "stack-" + (i % 8));
+            product.setAttribute("support_level", i % 2 == 0 ? "Premium" : "Standard");
+            products.add(product);
+        }
+        return products;
+    }
+
+    /**
+     * Creates a system consumer with the given products installed.
+     *
+     * @param installed products installed on the system
+     * @return the consumer
+     */
+    public Consumer createConsumer(List<Product> installed) {
+        Consumer consumer = new Consumer("consumer-" + nextId(), "benchmark", owner,
+            new ConsumerType(ConsumerTypeEnum.SYSTEM));
+        consumer.setUuid("uuid-" + nextId());
+        consumer.setFact("cpu.cpu_socket(s)", "8");
+        consumer.setFact("cpu.core(s)_per_socket", "4");
+        consumer.setFact("memory.memtotal", "16777216");
+        consumer.setFact("uname.machine", "x86_64");
+        for (Product product : installed) {
+            consumer.addInstalledProduct(new ConsumerInstalledProduct(product.getId(),
+                product.getName()));
+        }
+        return consumer;
+    }
+
+    /**
+     * Creates pools for randomly picked products, each providing a few of the others.
+     *
+     * @param products products to create pools for
+     * @param count number of pools
+     * @return the pools
+     */
+    public List<Pool> createPools(List<Product> products, int count) {
+        List<Pool> pools = new ArrayList<Pool>(count);
+        for (int i = 0; i < count; i++) {
+            Product product = products.get(random.nextInt(products.size()));
+            Set<Product> provided = new HashSet<Product>();
+            for (int p = 0; p < 3; p++) {
+                provided.add(products.get(random.nextInt(products.size())));
+            }
+
+            Pool pool = new Pool(owner, product, provided, Long.valueOf(1000), start, end,
+                "contract-" + i, "account", "order-" + i);
+            pool.setId("pool-" + nextId());
+            pool.setCreated(start);
+            pool.setUpdated(start);
+            pools.add(pool);
+        }
+        return pools;
+    }
+
+    /**
+     * Attaches one entitlement per pool to the consumer.
+     *
+     * @param consumer the consumer to entitle
+     * @param pools pools to consume from
+     * @return the entitlements
+     */
+    public List<Entitlement> entitle(Consumer consumer, List<Pool> pools) {
+        List<Entitlement> entitlements = new ArrayList<Entitlement>(pools.size());
+        for (Pool pool : pools) {
+            Entitlement ent = new Entitlement(pool, consumer, 1 + random.nextInt(4));
+            ent.setId("ent-" + nextId());
+            ent.setCreated(start);
+            ent.setUpdated(start);
+            consumer.addEntitlement(ent);
+            entitlements.add(ent);
+        }
+        return entitlements;
+    }
+
+    /**
+     * Creates the product models of a v3 certificate, sharing path prefixes the way
+     * real content sets do.
+     *
+     * @param products number of products
+     * @param contentPerProduct content sets in each product
+     * @return the product models
+     */
+    public List<org.candlepin.model.dto.Product> createProductModels(int products,
+        int contentPerProduct) {
+        List<org.candlepin.model.dto.Product> models =
+            new ArrayList<org.candlepin.model.dto.Product>(products);
+        for (int i = 0; i < products; i++) {
+            List<Content> contents = new ArrayList<Content>(contentPerProduct);
+            for (int c = 0; c < contentPerProduct; c++) {
+                String id = String.valueOf(nextId());
+                Content content = new Content();
+                content.setId(id);
+                content.setType("yum");
+                content.setName("Content " + id);
+                content.setLabel("content-" + id);
+                content.setVendor("Red Hat");
+                content.setPath(createPath());
+                content.setGpgUrl("/etc/pki/rpm-gpg/RPM-GPG-KEY-redhat-release");
+                content.setEnabled(random.nextBoolean());
+                contents.add(content);
+            }
+
+            org.candlepin.model.dto.Product model = new org.candlepin.model.dto.Product();
+            model.setId("prod-" + i);
+            model.setName("Product " + i);
+            model.setVersion("7." + (i % 10));
+            model.setArchitectures(Collections.singletonList("x86_64"));
+            model.setContent(contents);
+            models.add(model);
+        }
+        return models;
+    }
+
+    /**
+     * @return revocation serials which are spread over the range real ones use
+     */
+    public List<Long> createSerials(int count) {
+        List<Long> serials = new ArrayList<Long>(count);
+        for (int i = 0; i < count; i++) {
+            serials.add(Math.abs(random.nextLong()));
+        }
+        return serials;
+    }
+
+    /**
+     * Builds a rules runner on the default rules shipped with the server.
+     *
+     * @return provider of rules runners
+     */
+    public static JsRunnerProvider createJsRunnerProvider() {
+        InputStream is = BenchmarkData.class.getResourceAsStream(RulesCurator.DEFAULT_RULES_FILE);
+        Rules rules = new Rules(Util.readFile(is));
+        RulesCurator rulesCurator = mock(RulesCurator.class);
+        when(rulesCurator.getUpdated()).thenReturn(new Date());
+        when(rulesCurator.getRules()).thenReturn(rules);
+
+        final JsRunnerRequestCache cache = new JsRunnerRequestCache();
+        return new JsRunnerProvider(rulesCurator, new Provider<JsRunnerRequestCache>() {
+            @Override
+            public JsRunnerRequestCache get() {
+                return cache;
+            }
+        });
+    }
+
+    private String createPath() {
+        StringBuilder path = new StringBuilder();
+        int depth = 4 + random.nextInt(5);
+        for (int i = 0; i < depth; i++) {
+            path.append('/').append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+        }
+        return path.toString();
+    }
+
+    private int nextId() {
+        return ids++;
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.benchmark;
+
+import org.candlepin.util.X509CRLStreamWriter;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.X509Extension;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.x509.extension.AuthorityKeyIdentifierStructure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CRLStreamWriterBenchmark
+ *
+ * Rewrites a CRL holding a large number of revoked serials, adding a batch of
+ * new entries the way the CRL job does for newly revoked certificates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CRLStreamWriterBenchmark {
+
+    private static final BouncyCastleProvider BC = new BouncyCastleProvider();
+
+    @Param({"1000", "10000", "100000"})
+    private int revoked;
+
+    @Param({"100"})
+    private int added;
+
+    private KeyPair keyPair;
+    private byte[] crl;
+    private List<Long> newSerials;
+
+    @Setup
+    public void setUp() throws Exception {
+        Security.addProvider(BC);
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+        ContentSigner signer = new JcaContentSignerBuilder("SHA256WithRSAEncryption")
+            .setProvider(BC)
+            .build(keyPair.getPrivate());
+
+        BenchmarkData data = new BenchmarkData();
+        Date now = new Date();
+        X509v2CRLBuilder builder = new X509v2CRLBuilder(new X500Name("CN=Benchmark Issuer"), now);
+        builder.addExtension(X509Extension.authorityKeyIdentifier, false,
+            new AuthorityKeyIdentifierStructure(keyPair.getPublic()));
+        builder.addExtension(X509Extension.cRLNumber, false, new CRLNumber(BigInteger.ONE));
+        for (Long serial : data.createSerials(revoked)) {
+            builder.addCRLEntry(BigInteger.valueOf(serial), now, CRLReason.privilegeWithdrawn);
+        }
+        crl = builder.build(signer).getEncoded();
+        newSerials = data.createSerials(added);
+    }
+
+    @Benchmark
+    public byte[] addAndWrite() throws Exception {
+        X509CRLStreamWriter writer = new X509CRLStreamWriter(new ByteArrayInputStream(crl),
+            (RSAPrivateKey) keyPair.getPrivate(), (RSAPublicKey) keyPair.getPublic());
+        writer.preScan(new ByteArrayInputStream(crl));
+
+        Date now = new Date();
+        for (Long serial : newSerials) {
+            writer.add(BigInteger.valueOf(serial), now, CRLReason.privilegeWithdrawn);
+        }
+        writer.lock();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(crl.length + added * 64);
+        writer.write(out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.benchmark;
+
+import static org.mockito.Mockito.mock;
+
+import org.candlepin.audit.EventSink;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerCurator;
+import org.candlepin.model.EntitlementCurator;
+import org.candlepin.model.Product;
+import org.candlepin.policy.js.compliance.ComplianceRules;
+import org.candlepin.policy.js.compliance.ComplianceStatus;
+import org.candlepin.policy.js.compliance.StatusReasonMessageGenerator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xnap.commons.i18n.I18n;
+import org.xnap.commons.i18n.I18nFactory;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ComplianceRulesBenchmark
+ *
+ * Calculates the compliance status of a consumer with a large number of stacked
+ * entitlements, the way the compliance and entitlement resources do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ComplianceRulesBenchmark {
+
+    @Param({"10", "100", "500"})
+    private int entitlements;
+
+    private ComplianceRules compliance;
+    private Consumer consumer;
+
+    @Setup
+    public void setUp() {
+        BenchmarkData data = new BenchmarkData();
+        I18n i18n = I18nFactory.getI18n(getClass(), "org.candlepin.i18n.Messages",
+            Locale.US, I18nFactory.FALLBACK);
+        compliance = new ComplianceRules(BenchmarkData.createJsRunnerProvider().get(),
+            mock(EntitlementCurator.class), new StatusReasonMessageGenerator(i18n),
+            mock(EventSink.class), mock(ConsumerCurator.class));
+
+        List<Product> products = data.createProducts(50);
+        consumer = data.createConsumer(products.subList(0, 20));
+        data.entitle(consumer, data.createPools(products, entitlements));
+    }
+
+    @Benchmark
+    public ComplianceStatus getStatus() {
+        return compliance.getStatus(consumer, new Date(), false, false);
+    }
+
+    @Benchmark
+    public ComplianceStatus getStatusWithCompliantUntil() {
+        return compliance.getStatus(consumer, new Date(), true, false);
+    }
+}
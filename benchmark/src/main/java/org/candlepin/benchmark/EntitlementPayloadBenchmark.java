@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.benchmark;
+
+import static org.mockito.Mockito.mock;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.model.EntitlementCurator;
+import org.candlepin.model.EnvironmentContent;
+import org.candlepin.model.Product;
+import org.candlepin.model.dto.EntitlementBody;
+import org.candlepin.pki.X509ByteExtensionWrapper;
+import org.candlepin.util.ContentPayloadCache;
+import org.candlepin.util.X509V3ExtensionUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EntitlementPayloadBenchmark
+ *
+ * Builds the two payloads of a v3 entitlement certificate: the compressed JSON
+ * entitlement data, and the Huffman coded content tree stored in the certificate
+ * extension. The content payload cache is disabled so every invocation encodes
+ * the tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class EntitlementPayloadBenchmark {
+
+    private static final int PRODUCTS = 10;
+
+    @Param({"100", "1000", "5000"})
+    private int contentSets;
+
+    private X509V3ExtensionUtil util;
+    private Product sku;
+    private List<org.candlepin.model.dto.Product> productModels;
+    private EntitlementBody body;
+    private Map<String, EnvironmentContent> promotedContent;
+
+    @Setup
+    public void setUp() {
+        util = new X509V3ExtensionUtil(mock(Configuration.class), mock(EntitlementCurator.class),
+            new ContentPayloadCache(0));
+
+        BenchmarkData data = new BenchmarkData();
+        sku = data.createProducts(1).get(0);
+        productModels = data.createProductModels(PRODUCTS, contentSets / PRODUCTS);
+        body = new EntitlementBody();
+        body.setConsumer("benchmark-consumer");
+        body.setQuantity(1);
+        body.setProducts(productModels);
+        promotedContent = new HashMap<String, EnvironmentContent>();
+    }
+
+    @Benchmark
+    public byte[] createEntitlementDataPayload() throws IOException {
+        return util.createEntitlementDataPayload(body);
+    }
+
+    @Benchmark
+    public Set<X509ByteExtensionWrapper> getByteExtensions() throws IOException {
+        return util.getByteExtensions(sku, productModels, null, null, promotedContent);
+    }
+}
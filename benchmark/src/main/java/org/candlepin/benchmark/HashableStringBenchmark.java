@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.benchmark;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.Product;
+import org.candlepin.policy.js.compliance.hash.ComplianceInputHasher;
+import org.candlepin.policy.js.compliance.hash.HashableStringGenerators;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HashableStringBenchmark
+ *
+ * Generates the strings compliance statuses and their inputs are hashed from.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class HashableStringBenchmark {
+
+    @Param({"10", "100", "500"})
+    private int entitlements;
+
+    private Consumer consumer;
+    private List<Entitlement> ents;
+
+    @Setup
+    public void setUp() {
+        BenchmarkData data = new BenchmarkData();
+        List<Product> products = data.createProducts(50);
+        consumer = data.createConsumer(products.subList(0, 20));
+        ents = data.entitle(consumer, data.createPools(products, entitlements));
+    }
+
+    @Benchmark
+    public String entitlementCollection() {
+        return HashableStringGenerators.generateFromCollection(ents,
+            HashableStringGenerators.ENTITLEMENT);
+    }
+
+    @Benchmark
+    public String consumer() {
+        return HashableStringGenerators.generateFromObject(consumer,
+            HashableStringGenerators.CONSUMER);
+    }
+
+    @Benchmark
+    public String complianceInputHash() {
+        return new ComplianceInputHasher(consumer, true).hash();
+    }
+}
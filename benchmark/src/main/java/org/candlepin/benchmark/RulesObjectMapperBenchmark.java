@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.benchmark;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.Pool;
+import org.candlepin.model.Product;
+import org.candlepin.policy.js.RulesObjectMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RulesObjectMapperBenchmark
+ *
+ * Serializes the arguments of the compliance and autobind rules, which happens
+ * before every call into the JavaScript rules.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RulesObjectMapperBenchmark {
+
+    @Param({"10", "100", "500"})
+    private int entitlements;
+
+    private RulesObjectMapper mapper;
+    private Map<String, Object> complianceArgs;
+    private Map<String, Object> autobindArgs;
+
+    @Setup
+    public void setUp() {
+        mapper = RulesObjectMapper.instance();
+
+        BenchmarkData data = new BenchmarkData();
+        List<Product> products = data.createProducts(50);
+        Consumer consumer = data.createConsumer(products.subList(0, 20));
+        List<Pool> pools = data.createPools(products, entitlements);
+        data.entitle(consumer, pools);
+
+        complianceArgs = new HashMap<String, Object>();
+        complianceArgs.put("consumer", consumer);
+        complianceArgs.put("entitlements", consumer.getEntitlements());
+        complianceArgs.put("ondate", new Date());
+        complianceArgs.put("calculateCompliantUntil", true);
+
+        autobindArgs = new HashMap<String, Object>();
+        autobindArgs.put("consumer", consumer);
+        autobindArgs.put("owner", data.getOwner());
+        autobindArgs.put("pools", pools);
+        autobindArgs.put("products", products);
+    }
+
+    @Benchmark
+    public String complianceArguments() {
+        return mapper.toJsonString(complianceArgs);
+    }
+
+    @Benchmark
+    public String autobindArguments() {
+        return mapper.toJsonString(autobindArgs);
+    }
+}
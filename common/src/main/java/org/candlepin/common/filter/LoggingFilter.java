@@ -19,6 +19,7 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
 import java.io.IOException;
+import java.util.Random;
 import java.util.UUID;
 
 import javax.inject.Singleton;
@@ -34,6 +35,11 @@ import javax.servlet.http.HttpServletResponse;
 /**
  * LoggingFilter
  *
+ * Request and response bodies are only copied when debug logging is enabled, and
+ * then only for the sampled fraction of requests given by the "body.sample.rate"
+ * init parameter, up to "body.max.size" bytes per body. Other requests and
+ * responses are passed through without copying their bodies.
+ *
  * This class must be a Singleton as described in
  * <a href="http://code.google.com/p/google-guice/wiki/ServletModule#Filter_Mapping">
  * the Guice documentation</a>.
@@ -43,11 +49,32 @@ public class LoggingFilter implements Filter {
 
     private static Logger log = LoggerFactory.getLogger(LoggingFilter.class);
 
+    public static final String BODY_SAMPLE_RATE = "body.sample.rate";
+    public static final String BODY_MAX_SIZE = "body.max.size";
+
+    public static final double DEFAULT_BODY_SAMPLE_RATE = 1.0;
+    public static final int DEFAULT_BODY_MAX_SIZE = 1024 * 1024;
+
+    private final Random random = new Random();
+
     private String customHeaderName;
+    private double bodySampleRate = DEFAULT_BODY_SAMPLE_RATE;
+    private int bodyMaxSize = DEFAULT_BODY_MAX_SIZE;
 
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
         customHeaderName = filterConfig.getInitParameter("header.name");
+
+        try {
+            String rate = filterConfig.getInitParameter(BODY_SAMPLE_RATE);
+            bodySampleRate = rate == null ? DEFAULT_BODY_SAMPLE_RATE : Double.parseDouble(rate);
+
+            String size = filterConfig.getInitParameter(BODY_MAX_SIZE);
+            bodyMaxSize = size == null ? DEFAULT_BODY_MAX_SIZE : Integer.parseInt(size);
+        }
+        catch (NumberFormatException e) {
+            throw new ServletException("Invalid body logging parameter", e);
+        }
     }
 
     @Override
@@ -60,10 +87,14 @@ public class LoggingFilter implements Filter {
         FilterChain chain) throws IOException, ServletException {
 
         long startTime = System.currentTimeMillis();
+        boolean logBodies = log.isDebugEnabled() && sampleBodies();
+
+        // The request body is only read if something logs it, so later filters can
+        // still ask for it when debug logging gets enabled for the request's owner.
         TeeHttpServletRequest req = new TeeHttpServletRequest(
-            (HttpServletRequest) request);
+            (HttpServletRequest) request, bodyMaxSize);
         TeeHttpServletResponse resp = new TeeHttpServletResponse(
-            (HttpServletResponse) response);
+            (HttpServletResponse) response, logBodies ? bodyMaxSize : 0);
 
         try {
             // Generate a UUID for this request and store in the thread local MDC.
@@ -81,7 +112,7 @@ public class LoggingFilter implements Filter {
             resp.setHeader(customHeaderName, requestUUID);
 
             if (log.isDebugEnabled()) {
-                log.debug("{}", ServletLogger.logRequest(req));
+                log.debug("{}", ServletLogger.logRequest(req, logBodies));
             }
             else {
                 log.info("{}", ServletLogger.logBasicRequestInfo(req));
@@ -102,4 +133,8 @@ public class LoggingFilter implements Filter {
             MDC.clear();
         }
     }
+
+    private boolean sampleBodies() {
+        return bodySampleRate >= 1.0 || (bodySampleRate > 0.0 && random.nextDouble() < bodySampleRate);
+    }
 }
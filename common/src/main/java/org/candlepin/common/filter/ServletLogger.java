@@ -68,6 +68,10 @@ public class ServletLogger {
     }
 
     public static StringBuilder logRequest(TeeHttpServletRequest req) {
+        return logRequest(req, true);
+    }
+
+    public static StringBuilder logRequest(TeeHttpServletRequest req, boolean withBody) {
         StringBuilder builder = new StringBuilder();
         builder.append("Request: ")
             .append(req.getMethod()).append(" ").append(req.getRequestURI());
@@ -76,9 +80,11 @@ public class ServletLogger {
         }
         builder.append("\n");
 
-        return builder
-            .append(logHeaders(req))
-            .append(logBody("Request", req, true));
+        builder.append(logHeaders(req));
+        if (withBody) {
+            builder.append(logBody("Request", req, true));
+        }
+        return builder;
     }
 
     public static StringBuilder logResponse(TeeHttpServletResponse resp, long startTime) {
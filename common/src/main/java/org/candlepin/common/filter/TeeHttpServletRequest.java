@@ -16,14 +16,17 @@ package org.candlepin.common.filter;
 
 import org.candlepin.common.util.Util;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
 
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -32,43 +35,122 @@ import javax.servlet.http.HttpServletRequestWrapper;
 /**
  * This class gives us a new ServletInputStream every time we call getInputStream()
  * so we can read a request body more than once.
+ *
+ * When created with a maximum body size, nothing is read until the body is asked
+ * for with getBody(). At most that many bytes are then kept in memory, and the
+ * rest of the body is streamed from the request the next time it is read. Until
+ * then the request is passed through untouched.
  */
 public class TeeHttpServletRequest extends HttpServletRequestWrapper implements BodyLogger {
-    private final byte[] body;
+    private static Logger log = LoggerFactory.getLogger(TeeHttpServletRequest.class);
+
+    private final int maxBodySize;
+    private byte[] body;
+    private InputStream remainder;
+    private boolean truncated;
 
     public TeeHttpServletRequest(HttpServletRequest request) throws IOException {
+        this(request, Integer.MAX_VALUE);
+        capture();
+    }
+
+    public TeeHttpServletRequest(HttpServletRequest request, int maxBodySize) {
         super(request);
-        InputStream inputStream = request.getInputStream();
-        if (inputStream != null) {
-            body = IOUtils.toByteArray(inputStream);
+        this.maxBodySize = maxBodySize;
+    }
+
+    private synchronized void capture() throws IOException {
+        if (body != null) {
+            return;
         }
-        else {
+
+        InputStream inputStream = getRequest().getInputStream();
+        if (inputStream == null) {
             body = new byte[0];
+            return;
+        }
+
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read = 0;
+        while (captured.size() < maxBodySize && read >= 0) {
+            read = inputStream.read(buffer, 0, Math.min(buffer.length, maxBodySize - captured.size()));
+            if (read > 0) {
+                captured.write(buffer, 0, read);
+            }
+        }
+        body = captured.toByteArray();
+
+        if (read >= 0) {
+            int next = inputStream.read();
+            if (next >= 0) {
+                truncated = true;
+                remainder = new SequenceInputStream(
+                    new ByteArrayInputStream(new byte[] { (byte) next }), inputStream);
+            }
         }
     }
 
     @Override
-    public ServletInputStream getInputStream() throws IOException {
-        final ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(body);
+    public synchronized ServletInputStream getInputStream() throws IOException {
+        if (body == null) {
+            return super.getInputStream();
+        }
+
+        InputStream replay = new ByteArrayInputStream(body);
+        if (remainder != null) {
+            // The part of a truncated body which was not kept can only be read once
+            replay = new SequenceInputStream(replay, remainder);
+            remainder = null;
+        }
+
+        final InputStream inputStream = replay;
         ServletInputStream servletInputStream = new ServletInputStream() {
             @Override
             public int read() throws IOException {
-                return byteArrayInputStream.read();
+                return inputStream.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return inputStream.read(b, off, len);
             }
         };
         return servletInputStream;
     }
 
     @Override
-    public BufferedReader getReader() throws IOException {
+    public synchronized BufferedReader getReader() throws IOException {
+        if (body == null) {
+            return super.getReader();
+        }
         return new BufferedReader(new InputStreamReader(this.getInputStream()));
     }
 
+    /**
+     * @return true if the body was longer than the maximum body size
+     */
+    public synchronized boolean isTruncated() {
+        return truncated;
+    }
+
     @Override
     public String getBody() {
+        try {
+            capture();
+        }
+        catch (IOException e) {
+            log.debug("Unable to read the request body", e);
+            return "";
+        }
+
+        String content;
         if (ServletLogger.showAsText(getContentType())) {
-            return new String(body);
+            content = new String(body);
+        }
+        else {
+            content = StringUtils.abbreviate(Util.toBase64(body), 100);
         }
-        return StringUtils.abbreviate(Util.toBase64(body), 100);
+        return isTruncated() ? content + "... (truncated to " + maxBodySize + " bytes)" : content;
     }
 }
@@ -32,6 +32,10 @@ import javax.servlet.http.HttpServletResponseWrapper;
 
 /**
  * Heavily borrowed from the logback-access package.
+ *
+ * When created with a maximum body size, only that many bytes of the body are
+ * copied. A maximum of zero passes the body through without copying it, while the
+ * status and headers are still recorded.
  */
 public class TeeHttpServletResponse extends HttpServletResponseWrapper
     implements BodyLogger {
@@ -40,22 +44,40 @@ public class TeeHttpServletResponse extends HttpServletResponseWrapper
     protected PrintWriter teeWriter;
     protected Map<String, List<String>> headers = new HashMap<String, List<String>>();
     protected int status;
+    protected final int maxBodySize;
 
     public TeeHttpServletResponse(HttpServletResponse httpServletResponse) {
+        this(httpServletResponse, Integer.MAX_VALUE);
+    }
+
+    public TeeHttpServletResponse(HttpServletResponse httpServletResponse, int maxBodySize) {
         super(httpServletResponse);
+        this.maxBodySize = maxBodySize;
+    }
+
+    private boolean isTeeing() {
+        return maxBodySize > 0;
     }
 
     @Override
     public ServletOutputStream getOutputStream() throws IOException {
+        if (!isTeeing()) {
+            return super.getOutputStream();
+        }
+
         if (teeServletOutputStream == null) {
             teeServletOutputStream = new TeeServletOutputStream(
-                this.getResponse());
+                this.getResponse(), maxBodySize);
         }
         return teeServletOutputStream;
     }
 
     @Override
     public PrintWriter getWriter() throws IOException {
+        if (!isTeeing()) {
+            return super.getWriter();
+        }
+
         if (this.teeWriter == null) {
             this.teeWriter = new PrintWriter(new OutputStreamWriter(
                 getOutputStream()), true);
@@ -64,8 +86,11 @@ public class TeeHttpServletResponse extends HttpServletResponseWrapper
     }
 
     @Override
-    public void flushBuffer() {
-        if (this.teeWriter != null) {
+    public void flushBuffer() throws IOException {
+        if (!isTeeing()) {
+            super.flushBuffer();
+        }
+        else if (this.teeWriter != null) {
             this.teeWriter.flush();
         }
     }
@@ -95,10 +120,15 @@ public class TeeHttpServletResponse extends HttpServletResponseWrapper
         byte[] buff = getOutputBuffer();
 
         if (buff != null) {
+            String content;
             if (ServletLogger.showAsText(getContentType())) {
-                return new String(buff);
+                content = new String(buff);
+            }
+            else {
+                content = StringUtils.abbreviate(Util.toBase64(buff), 100);
             }
-            return StringUtils.abbreviate(Util.toBase64(buff), 100);
+            return teeServletOutputStream.isTruncated() ?
+                content + "... (truncated to " + maxBodySize + " bytes)" : content;
         }
 
         return "";
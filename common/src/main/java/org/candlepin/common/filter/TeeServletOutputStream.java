@@ -22,14 +22,23 @@ import javax.servlet.ServletResponse;
 
 /**
  * Heavily borrowed from the logback-access package.
+ *
+ * Only the first maxBodySize bytes written are copied.
  */
 public class TeeServletOutputStream extends ServletOutputStream {
 
     protected final ServletOutputStream underlyingStream;
     protected final ByteArrayOutputStream baosCopy;
+    protected final int maxBodySize;
+    protected boolean truncated;
 
     TeeServletOutputStream(ServletResponse httpServletResponse) throws IOException {
+        this(httpServletResponse, Integer.MAX_VALUE);
+    }
+
+    TeeServletOutputStream(ServletResponse httpServletResponse, int maxBodySize) throws IOException {
         this.underlyingStream = httpServletResponse.getOutputStream();
+        this.maxBodySize = maxBodySize;
         baosCopy = new ByteArrayOutputStream();
     }
 
@@ -37,11 +46,30 @@ public class TeeServletOutputStream extends ServletOutputStream {
         return baosCopy.toByteArray();
     }
 
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    private void copy(byte[] byteArray, int offset, int length) {
+        int copied = Math.min(length, maxBodySize - baosCopy.size());
+        if (copied > 0) {
+            baosCopy.write(byteArray, offset, copied);
+        }
+        if (copied < length) {
+            truncated = true;
+        }
+    }
+
     @Override
     public void write(int val) throws IOException {
         if (underlyingStream != null) {
             underlyingStream.write(val);
-            baosCopy.write(val);
+            if (baosCopy.size() < maxBodySize) {
+                baosCopy.write(val);
+            }
+            else {
+                truncated = true;
+            }
         }
     }
 
@@ -60,7 +88,7 @@ public class TeeServletOutputStream extends ServletOutputStream {
         }
 
         underlyingStream.write(byteArray, offset, length);
-        baosCopy.write(byteArray, offset, length);
+        copy(byteArray, offset, length);
     }
 
     @Override
@@ -14,24 +14,16 @@
  */
 package org.candlepin.common.jackson;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import java.lang.annotation.Annotation;
-import java.lang.reflect.Method;
-import java.lang.reflect.Field;
-
-
 
 /**
  * JsonBeanPropertyFilter
  */
 public abstract class JsonBeanPropertyFilter extends CheckableBeanPropertyFilter {
-    private static Logger log = LoggerFactory.getLogger(JsonBeanPropertyFilter.class);
 
     /**
      * Checks if the specified annotation has been applied to the given object's class, property
-     * or accessor (in that order).
+     * or accessor (in that order). The answer is looked up once per class and property.
      *
      * @param obj
      *  The object to check for the annotation
@@ -47,40 +39,6 @@ public abstract class JsonBeanPropertyFilter extends CheckableBeanPropertyFilter
      *  accessor; false otherwise.
      */
     protected boolean annotationPresent(Object obj, String property, Class<? extends Annotation> annotation) {
-        // Check for the annotation on the class...
-        if (obj.getClass().getAnnotation(annotation) != null) {
-            return true;
-        }
-
-        // Check the property field
-        try {
-            Field field = obj.getClass().getField(property);
-
-            if (field.getAnnotation(annotation) != null) {
-                return true;
-            }
-        }
-        catch (NoSuchFieldException e) {
-            // Nope. Move on to the accessor check.
-        }
-
-        // Check the accessor
-        String[] prefixes = { "get", "is" };
-        property = property.substring(0, 1).toUpperCase() + property.substring(1);
-
-        for (String prefix : prefixes) {
-            try {
-                Method method = obj.getClass().getMethod(prefix + property);
-
-                if (method.getAnnotation(annotation) != null) {
-                    return true;
-                }
-            }
-            catch (NoSuchMethodException e) {
-                // Doesn't exist.
-            }
-        }
-
-        return false;
+        return PropertyAnnotations.forClass(obj.getClass()).isPresent(property, annotation);
     }
 }
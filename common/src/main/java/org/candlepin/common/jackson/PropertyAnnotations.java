@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.common.jackson;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * PropertyAnnotations
+ *
+ * The annotations of a class, its public fields and its public accessors, as seen
+ * by {@link JsonBeanPropertyFilter}. The public members are scanned once per class;
+ * the annotations which apply to a property are then combined the first time the
+ * property is asked for, so every later lookup is a map access.
+ */
+class PropertyAnnotations {
+    private static final ConcurrentMap<Class<?>, PropertyAnnotations> CACHE =
+        new ConcurrentHashMap<Class<?>, PropertyAnnotations>();
+
+    private static final String[] PREFIXES = { "get", "is" };
+
+    private final Set<Class<? extends Annotation>> classAnnotations;
+    private final Map<String, Set<Class<? extends Annotation>>> memberAnnotations;
+    private final ConcurrentMap<String, Set<Class<? extends Annotation>>> properties =
+        new ConcurrentHashMap<String, Set<Class<? extends Annotation>>>();
+
+    private PropertyAnnotations(Class<?> clazz) {
+        classAnnotations = typesOf(clazz.getAnnotations());
+        memberAnnotations = new HashMap<String, Set<Class<? extends Annotation>>>();
+
+        for (Field field : clazz.getFields()) {
+            memberAnnotations.put(field.getName(), typesOf(field.getAnnotations()));
+        }
+
+        for (Method method : clazz.getMethods()) {
+            // Bridge methods stand in for an override which getMethod would pick instead
+            if (method.getParameterTypes().length == 0 && !method.isBridge() &&
+                isAccessorName(method.getName())) {
+                memberAnnotations.put(method.getName() + "()", typesOf(method.getAnnotations()));
+            }
+        }
+    }
+
+    /**
+     * Looks up the annotation metadata of a class, scanning it on first use.
+     *
+     * @param clazz
+     *  The class to look up
+     *
+     * @return
+     *  The annotation metadata of the class
+     */
+    static PropertyAnnotations forClass(Class<?> clazz) {
+        PropertyAnnotations annotations = CACHE.get(clazz);
+        if (annotations == null) {
+            annotations = new PropertyAnnotations(clazz);
+            PropertyAnnotations existing = CACHE.putIfAbsent(clazz, annotations);
+            if (existing != null) {
+                annotations = existing;
+            }
+        }
+        return annotations;
+    }
+
+    /**
+     * Checks if the annotation has been applied to the class, the public field with the
+     * name of the property, or the property's public get or is accessor.
+     *
+     * @param property
+     *  The name of the property to check
+     *
+     * @param annotation
+     *  The annotation for which to check
+     *
+     * @return
+     *  True if the annotation is present on the class, the field or the accessor; false
+     *  otherwise.
+     */
+    boolean isPresent(String property, Class<? extends Annotation> annotation) {
+        Set<Class<? extends Annotation>> present = properties.get(property);
+        if (present == null) {
+            present = resolve(property);
+            properties.putIfAbsent(property, present);
+        }
+        return present.contains(annotation);
+    }
+
+    private Set<Class<? extends Annotation>> resolve(String property) {
+        Set<Class<? extends Annotation>> present = new HashSet<Class<? extends Annotation>>(
+            classAnnotations);
+        addAll(present, memberAnnotations.get(property));
+
+        if (property.length() > 0) {
+            String suffix = property.substring(0, 1).toUpperCase() + property.substring(1);
+            for (String prefix : PREFIXES) {
+                addAll(present, memberAnnotations.get(prefix + suffix + "()"));
+            }
+        }
+
+        return present.isEmpty() ? Collections.<Class<? extends Annotation>>emptySet() : present;
+    }
+
+    private static void addAll(Set<Class<? extends Annotation>> present,
+        Set<Class<? extends Annotation>> annotations) {
+        if (annotations != null) {
+            present.addAll(annotations);
+        }
+    }
+
+    private static boolean isAccessorName(String name) {
+        for (String prefix : PREFIXES) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<Class<? extends Annotation>> typesOf(Annotation[] annotations) {
+        if (annotations.length == 0) {
+            return Collections.<Class<? extends Annotation>>emptySet();
+        }
+
+        Set<Class<? extends Annotation>> types = new HashSet<Class<? extends Annotation>>();
+        for (Annotation annotation : annotations) {
+            types.add(annotation.annotationType());
+        }
+        return types;
+    }
+}
@@ -38,6 +38,7 @@ import java.util.Enumeration;
 
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -123,6 +124,39 @@ public class LoggingFilterTest {
         verify(mockapp, atLeastOnce()).doAppend(message.capture());
     }
 
+    @Test
+    public void testBodiesNotCopiedWhenNotSampled() throws Exception {
+        filterlogger.setLevel(Level.DEBUG);
+        FilterConfig config = mock(FilterConfig.class);
+        when(config.getInitParameter(LoggingFilter.BODY_SAMPLE_RATE)).thenReturn("0");
+        filter.init(config);
+
+        filter.doFilter(request, response, chain);
+
+        ArgumentCaptor<HttpServletResponse> resp = ArgumentCaptor.forClass(HttpServletResponse.class);
+        verify(chain).doFilter(any(HttpServletRequest.class), resp.capture());
+        verify(request, never()).getInputStream();
+        assertNull(((TeeHttpServletResponse) resp.getValue()).getOutputBuffer());
+        resp.getValue().getOutputStream();
+        verify(response).getOutputStream();
+    }
+
+    @Test
+    public void testBodiesNotCopiedAtInfo() throws Exception {
+        filterlogger.setLevel(Level.INFO);
+
+        filter.doFilter(request, response, chain);
+
+        verify(request, never()).getInputStream();
+    }
+
+    @Test(expected = ServletException.class)
+    public void testInvalidBodyMaxSize() throws Exception {
+        FilterConfig config = mock(FilterConfig.class);
+        when(config.getInitParameter(LoggingFilter.BODY_MAX_SIZE)).thenReturn("lots");
+        filter.init(config);
+    }
+
     @Test
     public void testDoFilter() throws Exception {
         filterlogger.setLevel(Level.DEBUG);
@@ -93,6 +93,34 @@ public class TeeHttpServletRequestTest {
         }
     }
 
+    @Test
+    public void cappedRequestIsOnlyReadWhenLogged() throws IOException {
+        ServletInputStream raw = request.getInputStream();
+        TeeHttpServletRequest tee = new TeeHttpServletRequest(request, 100);
+        assertSame(raw, tee.getInputStream());
+    }
+
+    @Test
+    public void truncatedBodyIsReadInFull() throws IOException {
+        when(request.getContentType()).thenReturn(MediaType.TEXT_PLAIN);
+        TeeHttpServletRequest tee = new TeeHttpServletRequest(request, 4);
+
+        assertEquals("this... (truncated to 4 bytes)", tee.getBody());
+        assertTrue(tee.isTruncated());
+        assertEquals("this is my body", readData(tee.getInputStream()));
+    }
+
+    @Test
+    public void bodyWithinCapIsReadable() throws IOException {
+        when(request.getContentType()).thenReturn(MediaType.TEXT_PLAIN);
+        TeeHttpServletRequest tee = new TeeHttpServletRequest(request, 15);
+
+        assertEquals("this is my body", tee.getBody());
+        assertFalse(tee.isTruncated());
+        assertEquals("this is my body", readData(tee.getInputStream()));
+        assertEquals("this is my body", readData(tee.getReader()));
+    }
+
     private String readData(InputStream is) throws IOException {
         return readData(new InputStreamReader(is));
     }
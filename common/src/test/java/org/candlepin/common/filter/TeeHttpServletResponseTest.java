@@ -40,16 +40,53 @@ import javax.ws.rs.core.MediaType;
 public class TeeHttpServletResponseTest {
 
     @Mock private HttpServletResponse resp;
+    private ServletOutputStream out;
+    private StringWriter sw;
 
     @Before
     public void setUp() throws IOException {
         MockitoAnnotations.initMocks(this);
-        final StringWriter sw = new StringWriter();
-        when(resp.getOutputStream()).thenReturn(new ServletOutputStream() {
+        sw = new StringWriter();
+        out = new ServletOutputStream() {
             public void write(int b) throws IOException {
                 sw.write(b);
             }
-        });
+        };
+        when(resp.getOutputStream()).thenReturn(out);
+    }
+
+    @Test
+    public void copyIsCapped() throws IOException {
+        TeeHttpServletResponse tee = new TeeHttpServletResponse(resp, 4);
+        tee.getOutputStream().write("this is my body".getBytes());
+        tee.getOutputStream().write('!');
+        when(resp.getContentType()).thenReturn(MediaType.TEXT_PLAIN);
+
+        assertEquals("this is my body!", sw.toString());
+        assertEquals("this", new String(tee.getOutputBuffer()));
+        assertEquals("this... (truncated to 4 bytes)", tee.getBody());
+    }
+
+    @Test
+    public void bodyWithinCapIsNotTruncated() throws IOException {
+        TeeHttpServletResponse tee = new TeeHttpServletResponse(resp, 15);
+        tee.getOutputStream().write("this is my body".getBytes());
+        when(resp.getContentType()).thenReturn(MediaType.TEXT_PLAIN);
+
+        assertEquals("this is my body", tee.getBody());
+    }
+
+    @Test
+    public void zeroCapPassesThrough() throws IOException {
+        TeeHttpServletResponse tee = new TeeHttpServletResponse(resp, 0);
+        assertSame(out, tee.getOutputStream());
+        tee.getOutputStream().write("this is my body".getBytes());
+        tee.setStatus(200);
+
+        assertEquals("this is my body", sw.toString());
+        assertNull(tee.getOutputBuffer());
+        assertEquals("", tee.getBody());
+        assertEquals(200, tee.getStatus());
     }
 
     @Test
@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.common.jackson;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * PropertyAnnotationsTest
+ */
+public class PropertyAnnotationsTest {
+
+    @Test
+    public void findsAnnotatedGetter() {
+        PropertyAnnotations annotations = PropertyAnnotations.forClass(Bean.class);
+        assertTrue(annotations.isPresent("id", HateoasInclude.class));
+        assertFalse(annotations.isPresent("id", HateoasArrayExclude.class));
+        assertFalse(annotations.isPresent("name", HateoasInclude.class));
+    }
+
+    @Test
+    public void findsAnnotatedIsAccessor() {
+        PropertyAnnotations annotations = PropertyAnnotations.forClass(Bean.class);
+        assertTrue(annotations.isPresent("active", HateoasArrayExclude.class));
+    }
+
+    @Test
+    public void findsAnnotatedPublicField() {
+        PropertyAnnotations annotations = PropertyAnnotations.forClass(Bean.class);
+        assertTrue(annotations.isPresent("href", Linked.class));
+        assertFalse(annotations.isPresent("href", HateoasInclude.class));
+    }
+
+    @Test
+    public void classAnnotationAppliesToEveryProperty() {
+        PropertyAnnotations annotations = PropertyAnnotations.forClass(IncludedBean.class);
+        assertTrue(annotations.isPresent("name", HateoasInclude.class));
+        assertTrue(annotations.isPresent("unknown", HateoasInclude.class));
+        assertFalse(annotations.isPresent("name", HateoasArrayExclude.class));
+    }
+
+    @Test
+    public void inheritedGetterIsFound() {
+        PropertyAnnotations annotations = PropertyAnnotations.forClass(SubBean.class);
+        assertTrue(annotations.isPresent("id", HateoasInclude.class));
+    }
+
+    @Test
+    public void overridingGetterWithoutAnnotationHidesIt() {
+        PropertyAnnotations annotations = PropertyAnnotations.forClass(OverridingBean.class);
+        assertFalse(annotations.isPresent("id", HateoasInclude.class));
+    }
+
+    @Test
+    public void unknownPropertyHasNoAnnotations() {
+        PropertyAnnotations annotations = PropertyAnnotations.forClass(Bean.class);
+        assertFalse(annotations.isPresent("missing", HateoasInclude.class));
+        assertFalse(annotations.isPresent("", HateoasInclude.class));
+    }
+
+    @Test
+    public void metadataIsScannedOncePerClass() {
+        assertSame(PropertyAnnotations.forClass(Bean.class), PropertyAnnotations.forClass(Bean.class));
+    }
+
+    @Test
+    public void filterConsultsMetadata() {
+        JsonBeanPropertyFilter filter = new HateoasBeanPropertyFilter();
+        assertTrue(filter.annotationPresent(new Bean(), "id", HateoasInclude.class));
+        assertFalse(filter.annotationPresent(new Bean(), "name", HateoasInclude.class));
+    }
+
+    /**
+     * Annotation for public fields
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.FIELD)
+    public @interface Linked {
+    }
+
+    /**
+     * Bean with annotated members
+     */
+    public static class Bean {
+        @Linked
+        @SuppressWarnings("checkstyle:visibilitymodifier")
+        public String href;
+
+        @HateoasInclude
+        public String getId() {
+            return "id";
+        }
+
+        public String getName() {
+            return "name";
+        }
+
+        @HateoasArrayExclude
+        public boolean isActive() {
+            return true;
+        }
+    }
+
+    /**
+     * Bean inheriting the annotated getter
+     */
+    public static class SubBean extends Bean {
+    }
+
+    /**
+     * Bean overriding the annotated getter
+     */
+    public static class OverridingBean extends Bean {
+        @Override
+        public String getId() {
+            return "other";
+        }
+    }
+
+    /**
+     * Bean annotated as a whole
+     */
+    @HateoasInclude
+    public static class IncludedBean {
+        public String getName() {
+            return "name";
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import java.util.List;
+
+/**
+ * BatchEventListener
+ *
+ * A listener which can handle several events at once. When batching is enabled,
+ * {@link EventSource} hands it the events of several messages together and only
+ * acknowledges those messages once {@link #onEvents(List)} returns.
+ */
+public interface BatchEventListener extends EventListener {
+    /**
+     * Handles a batch of events. Throwing hands the events of the batch to
+     * {@link #onEvent(Event)} one at a time instead.
+     *
+     * @param events the events, in the order they were received
+     */
+    void onEvents(List<Event> events);
+}
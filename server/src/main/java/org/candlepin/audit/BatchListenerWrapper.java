@@ -0,0 +1,244 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.hornetq.api.core.HornetQException;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BatchListenerWrapper
+ *
+ * Drains a listener's queue in micro-batches on a thread of its own. A batch is
+ * closed once it holds batchSize events or maxDelay milliseconds after its first
+ * message arrived, whichever comes first. The listener gets all of its events at
+ * once, and the messages are acknowledged only after it returns.
+ *
+ * If the listener fails on a batch, its events are handed to it again one at a time,
+ * so a single bad event only costs itself: events the listener still fails on are
+ * logged and dropped, and the rest of the batch is acknowledged. Only when it fails on
+ * every event, as when its database is down, is the batch delivered again in full.
+ *
+ * The session must be transacted: acknowledgements are committed together, once
+ * per batch.
+ */
+public class BatchListenerWrapper implements Runnable {
+    private static Logger log = LoggerFactory.getLogger(BatchListenerWrapper.class);
+
+    // How long to wait for the first message of a batch before checking for shutdown
+    static final long IDLE_TIMEOUT = 1000;
+
+    // How long to back off after the listener failed on a batch
+    static final long RETRY_DELAY = 5000;
+
+    private final ClientSession session;
+    private final ClientConsumer consumer;
+    private final BatchEventListener listener;
+    private final ObjectMapper mapper;
+    private final int batchSize;
+    private final long maxDelay;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    public BatchListenerWrapper(ClientSession session, ClientConsumer consumer,
+        BatchEventListener listener, ObjectMapper mapper, int batchSize, long maxDelay) {
+        this.session = session;
+        this.consumer = consumer;
+        this.listener = listener;
+        this.mapper = mapper;
+        this.batchSize = batchSize;
+        this.maxDelay = maxDelay;
+    }
+
+    public synchronized void start() {
+        running = true;
+        thread = new Thread(this, "event-batch-" + listener.getClass().getSimpleName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops draining the queue, waiting for the batch in progress, and closes the
+     * session. Messages received but not yet acknowledged stay in the queue.
+     */
+    public synchronized void close() {
+        running = false;
+        if (thread != null) {
+            try {
+                thread.join(IDLE_TIMEOUT + maxDelay + RETRY_DELAY);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+
+        try {
+            session.close();
+        }
+        catch (HornetQException e) {
+            log.warn("Unable to close the session of " + listener, e);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                if (!processBatch()) {
+                    sleep(RETRY_DELAY);
+                }
+            }
+            catch (HornetQException e) {
+                if (running) {
+                    log.error("Unable to receive events for listener: " + listener, e);
+                    sleep(RETRY_DELAY);
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives one batch, hands it to the listener and acknowledges it.
+     *
+     * @return false if the listener failed on the batch
+     * @throws HornetQException if the messages could not be received or acknowledged
+     */
+    boolean processBatch() throws HornetQException {
+        List<ClientMessage> messages = receiveBatch();
+        if (messages.isEmpty()) {
+            return true;
+        }
+
+        List<Event> events = new ArrayList<Event>();
+        for (ClientMessage msg : messages) {
+            readEvents(msg, events);
+        }
+
+        try {
+            if (!events.isEmpty()) {
+                listener.onEvents(events);
+            }
+        }
+        catch (RuntimeException e) {
+            log.warn("Listener " + listener + " failed on a batch of " + events.size() +
+                " events, handing them over one at a time", e);
+            if (!processEach(events)) {
+                log.error("Listener {} failed on every event of the batch, they will be " +
+                    "delivered again", listener);
+                session.rollback();
+                return false;
+            }
+        }
+
+        for (ClientMessage msg : messages) {
+            msg.acknowledge();
+        }
+        session.commit();
+        log.debug("Acknowledged {} hornetq messages for listener: {}", messages.size(), listener);
+        return true;
+    }
+
+    /*
+     * Hands the events of a failed batch to the listener one at a time, dropping the
+     * ones it fails on. Returns false if it failed on all of them.
+     */
+    private boolean processEach(List<Event> events) {
+        int rejected = 0;
+        for (Event event : events) {
+            try {
+                listener.onEvent(event);
+            }
+            catch (RuntimeException e) {
+                rejected++;
+                log.error("Listener " + listener + " rejected event: " + event, e);
+            }
+        }
+        return rejected < events.size();
+    }
+
+    private List<ClientMessage> receiveBatch() throws HornetQException {
+        List<ClientMessage> messages = new ArrayList<ClientMessage>();
+        ClientMessage msg = consumer.receive(IDLE_TIMEOUT);
+        if (msg == null) {
+            return messages;
+        }
+
+        messages.add(msg);
+        int count = eventCount(msg);
+        long deadline = System.currentTimeMillis() + maxDelay;
+        while (count < batchSize) {
+            long wait = deadline - System.currentTimeMillis();
+            // receive(0) would wait forever
+            msg = wait > 0 ? consumer.receive(wait) : null;
+            if (msg == null) {
+                break;
+            }
+            messages.add(msg);
+            count += eventCount(msg);
+        }
+        return messages;
+    }
+
+    private int eventCount(ClientMessage msg) {
+        return msg.containsProperty(EventSinkImpl.EVENT_COUNT_PROPERTY) ?
+            msg.getIntProperty(EventSinkImpl.EVENT_COUNT_PROPERTY) : 1;
+    }
+
+    /*
+     * Messages which cannot be read never will be, so they are logged and acknowledged
+     * with the rest of the batch rather than holding it back.
+     */
+    private void readEvents(ClientMessage msg, List<Event> events) {
+        String body = msg.getBodyBuffer().readString();
+        if (log.isDebugEnabled()) {
+            log.debug("Got event: {}", body);
+        }
+
+        try {
+            if (msg.containsProperty(EventSinkImpl.EVENT_COUNT_PROPERTY)) {
+                for (Event event : mapper.readValue(body, Event[].class)) {
+                    events.add(event);
+                }
+            }
+            else {
+                events.add(mapper.readValue(body, Event.class));
+            }
+        }
+        catch (IOException e) {
+            log.error("Unable to deserialize event object from msg: " + body, e);
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
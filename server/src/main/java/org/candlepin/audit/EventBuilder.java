@@ -36,6 +36,9 @@ public class EventBuilder {
 
     private Event event;
 
+    // A copy of the old entity, serialized only if the event is built
+    private Pool oldPool;
+
     public EventBuilder(EventFactory factory, Target target, Type type) {
         this.factory = factory;
 
@@ -80,7 +83,17 @@ public class EventBuilder {
                 throw new IllegalArgumentException("You cannot set the old entity for a creation event");
             }
             setEventData(old);
-            event.setOldEntity(factory.entityToJson(old));
+
+            // Pools are snapshotted for pool refreshes, which set the old entity of
+            // every pool which may change and build events for only a few of them.
+            if (old instanceof Pool) {
+                oldPool = ((Pool) old).clone();
+                event.setOldEntity(null);
+            }
+            else {
+                oldPool = null;
+                event.setOldEntity(factory.entityToJson(old));
+            }
         }
         return this;
     }
@@ -97,6 +110,10 @@ public class EventBuilder {
     }
 
     public Event buildEvent() {
+        if (oldPool != null) {
+            event.setOldEntity(factory.entityToJson(oldPool));
+            oldPool = null;
+        }
         return event;
     }
 }
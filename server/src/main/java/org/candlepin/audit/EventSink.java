@@ -33,6 +33,8 @@ public interface EventSink {
 
     void initialize() throws Exception;
 
+    void shutDown();
+
     void queueEvent(Event event);
 
     void sendEvents();
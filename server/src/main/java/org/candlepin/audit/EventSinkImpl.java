@@ -41,26 +41,48 @@ import org.hornetq.core.remoting.impl.invm.InVMConnectorFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 
 /**
  * EventSink - Queues events to be sent after request/job completes, and handles actual
  * sending of events on successful job or API request, as well as rollback if either fails.
+ *
+ * When the batch size is more than one, the events of a request or job are held in memory
+ * until it completes, and are then handed to a single publisher thread. That thread
+ * serializes them and sends them in as few messages as the batch size allows, so bulk
+ * operations don't send a message per event. ListenerWrapper splits the batches up again.
+ * Until the publisher has sent them, events are only held in memory, so they are lost if
+ * the server stops before then. Batching is therefore off unless configured.
  */
 @Singleton
 public class EventSinkImpl implements EventSink {
 
     private static Logger log = LoggerFactory.getLogger(EventSinkImpl.class);
+
+    /** Set on messages holding a batch of events, to the number of events in the batch */
+    static final String EVENT_COUNT_PROPERTY = "candlepin.event_count";
+
     private EventFactory eventFactory;
     private ClientSessionFactory factory;
     private Configuration config;
     private ObjectMapper mapper;
     private EventFilter eventFilter;
     private int largeMsgSize;
+    private int batchSize;
+    private ExecutorService publisher;
+
+    // Events handed to the publisher which it has not finished sending
+    private final AtomicInteger unsent = new AtomicInteger();
 
     /*
      * Important use of ThreadLocal here, each Tomcat/Quartz thread gets it's own session
@@ -71,6 +93,13 @@ public class EventSinkImpl implements EventSink {
     private ThreadLocal<ClientSession> sessions = new ThreadLocal<ClientSession>();
     private ThreadLocal<ClientProducer> producers = new ThreadLocal<ClientProducer>();
 
+    // Events queued by each thread's current request or job, when batching
+    private ThreadLocal<List<Event>> pending = new ThreadLocal<List<Event>>() {
+        @Override
+        protected List<Event> initialValue() {
+            return new ArrayList<Event>();
+        }
+    };
 
 
     @Inject
@@ -81,6 +110,7 @@ public class EventSinkImpl implements EventSink {
         this.config = config;
         this.eventFilter = eventFilter;
         largeMsgSize = config.getInt(ConfigProperties.HORNETQ_LARGE_MSG_SIZE);
+        batchSize = config.getInt(ConfigProperties.HORNETQ_EVENT_BATCH_SIZE);
     }
 
     /**
@@ -90,6 +120,43 @@ public class EventSinkImpl implements EventSink {
     @Override
     public void initialize() throws Exception {
         factory =  createClientSessionFactory();
+        if (batchSize > 1) {
+            publisher = createPublisher();
+        }
+    }
+
+    protected ExecutorService createPublisher() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "event-publisher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Sends the batches already handed to the publisher, waiting a little while for them.
+     * Events which are still unsent after that are dropped, and counted in the log.
+     */
+    @Override
+    public void shutDown() {
+        if (publisher != null) {
+            publisher.shutdown();
+            try {
+                if (publisher.awaitTermination(30, TimeUnit.SECONDS)) {
+                    return;
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            publisher.shutdownNow();
+            log.warn("Timed out sending the last batches of events, dropping {} unsent events.",
+                unsent.get());
+        }
     }
 
     protected ClientSessionFactory createClientSessionFactory() throws Exception {
@@ -163,7 +230,8 @@ public class EventSinkImpl implements EventSink {
      * Events are filtered, meaning that some of them might not even get into HornetQ.
      * Details about the filtering are documented in EventFilter class
      *
-     * HornetQ transaction actually manages the queue of events to be sent.
+     * HornetQ transaction actually manages the queue of events to be sent, unless events
+     * are batched, in which case they are held until sendEvents() or rollback().
      */
     @Override
     public void queueEvent(Event event) {
@@ -174,6 +242,11 @@ public class EventSinkImpl implements EventSink {
 
         log.debug("Queuing event: {}", event);
 
+        if (publisher != null) {
+            pending.get().add(event);
+            return;
+        }
+
         try {
             ClientSession session = getClientSession();
             ClientMessage message = session.createMessage(true);
@@ -195,6 +268,26 @@ public class EventSinkImpl implements EventSink {
      */
     @Override
     public void sendEvents() {
+        if (publisher != null) {
+            final List<Event> events = pending.get();
+            if (!events.isEmpty()) {
+                pending.remove();
+                unsent.addAndGet(events.size());
+                publisher.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            publish(events);
+                        }
+                        finally {
+                            unsent.addAndGet(-events.size());
+                        }
+                    }
+                });
+            }
+            return;
+        }
+
         try {
             log.debug("Committing hornetq transaction.");
             getClientSession().commit();
@@ -206,8 +299,68 @@ public class EventSinkImpl implements EventSink {
         }
     }
 
+    /**
+     * Serializes and sends the events of one request or job, in a transaction of its own.
+     * Batches of a single event are sent as plain events.
+     *
+     * @param events the events to send
+     */
+    protected void publish(List<Event> events) {
+        try {
+            ClientSession session = getClientSession();
+            for (int from = 0; from < events.size(); from += batchSize) {
+                List<Event> batch = events.subList(from, Math.min(from + batchSize, events.size()));
+
+                // Serialize the events one at a time, so a bad event doesn't sink its batch
+                StringBuilder body = new StringBuilder("[");
+                int count = 0;
+                for (Event event : batch) {
+                    try {
+                        String eventString = mapper.writeValueAsString(event);
+                        body.append(count++ > 0 ? "," : "").append(eventString);
+                    }
+                    catch (Exception e) {
+                        log.error("Error while trying to send event: " + event, e);
+                    }
+                }
+
+                if (count == 0) {
+                    continue;
+                }
+
+                ClientMessage message = session.createMessage(true);
+                if (count == 1) {
+                    message.getBodyBuffer().writeString(body.substring(1));
+                }
+                else {
+                    message.putIntProperty(EVENT_COUNT_PROPERTY, count);
+                    message.getBodyBuffer().writeString(body.append("]").toString());
+                }
+                getClientProducer().send(message);
+            }
+
+            log.debug("Committing hornetq transaction for {} events.", events.size());
+            session.commit();
+        }
+        catch (Exception e) {
+            log.error("Error sending a batch of " + events.size() + " events", e);
+            try {
+                getClientSession().rollback();
+            }
+            catch (Exception re) {
+                log.error("Error rolling back hornetq transaction", re);
+            }
+        }
+    }
+
     @Override
     public void rollback() {
+        if (publisher != null) {
+            log.warn("Dropping {} queued events.", pending.get().size());
+            pending.remove();
+            return;
+        }
+
         log.warn("Rolling back hornetq transaction.");
         try {
             ClientSession session = getClientSession();
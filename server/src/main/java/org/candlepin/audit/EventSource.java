@@ -28,6 +28,9 @@ import org.hornetq.core.remoting.impl.invm.InVMConnectorFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * EventSource
  */
@@ -37,7 +40,7 @@ public class EventSource {
     private ClientSession session;
     private ClientSessionFactory factory;
     private ObjectMapper mapper;
-
+    private List<BatchListenerWrapper> batchListeners = new ArrayList<BatchListenerWrapper>();
 
     @Inject
     public EventSource(ObjectMapper mapper) {
@@ -68,6 +71,11 @@ public class EventSource {
     }
 
     protected void shutDown() {
+        for (BatchListenerWrapper batchListener : batchListeners) {
+            batchListener.close();
+        }
+        batchListeners.clear();
+
         try {
             session.stop();
             session.close();
@@ -82,19 +90,7 @@ public class EventSource {
         String queueName = QUEUE_ADDRESS + "." + listener.getClass().getCanonicalName();
         log.debug("registering listener for " + queueName);
         try {
-            try {
-                // Create a durable queue that will be persisted to disk:
-                session.createQueue(QUEUE_ADDRESS, queueName, true);
-                log.debug("created new event queue " + queueName);
-            }
-            catch (HornetQException e) {
-                // if the queue exists already we already created it in a previous run,
-                // so that's fine.
-                if (e.getType() != HornetQExceptionType.QUEUE_EXISTS) {
-                    throw e;
-                }
-            }
-
+            createQueue(queueName);
             ClientConsumer consumer = session.createConsumer(queueName);
             consumer.setMessageHandler(new ListenerWrapper(listener, mapper));
         }
@@ -102,4 +98,46 @@ public class EventSource {
             log.error("Unable to register listener :" + listener, e);
         }
     }
+
+    /**
+     * Registers a listener which is handed the events of its queue in batches, from
+     * a thread and transacted session of its own. See {@link BatchListenerWrapper}.
+     *
+     * @param listener the listener
+     * @param batchSize the most events handed to the listener at once
+     * @param maxDelay the most milliseconds an event waits for its batch to fill
+     */
+    void registerBatchListener(BatchEventListener listener, int batchSize, long maxDelay) {
+        String queueName = QUEUE_ADDRESS + "." + listener.getClass().getCanonicalName();
+        log.debug("registering batch listener for " + queueName);
+        try {
+            createQueue(queueName);
+            ClientSession batchSession = factory.createTransactedSession();
+            ClientConsumer consumer = batchSession.createConsumer(queueName);
+            batchSession.start();
+
+            BatchListenerWrapper wrapper = new BatchListenerWrapper(batchSession, consumer,
+                listener, mapper, batchSize, maxDelay);
+            wrapper.start();
+            batchListeners.add(wrapper);
+        }
+        catch (HornetQException e) {
+            log.error("Unable to register listener :" + listener, e);
+        }
+    }
+
+    private void createQueue(String queueName) throws HornetQException {
+        try {
+            // Create a durable queue that will be persisted to disk:
+            session.createQueue(QUEUE_ADDRESS, queueName, true);
+            log.debug("created new event queue " + queueName);
+        }
+        catch (HornetQException e) {
+            // if the queue exists already we already created it in a previous run,
+            // so that's fine.
+            if (e.getType() != HornetQExceptionType.QUEUE_EXISTS) {
+                throw e;
+            }
+        }
+    }
 }
@@ -54,9 +54,13 @@ public class HornetqContextListener {
 
     private EmbeddedHornetQ hornetqServer;
     private EventSource eventSource;
+    private EventSink eventSink;
 
     public void contextDestroyed() {
         if (hornetqServer != null) {
+            if (eventSink != null) {
+                eventSink.shutDown();
+            }
             eventSource.shutDown();
             try {
                 hornetqServer.stop();
@@ -167,25 +171,14 @@ public class HornetqContextListener {
 
         cleanupOldQueues();
 
-        List<String> listeners = getHornetqListeners(candlepinConfig);
-
         eventSource = injector.getInstance(EventSource.class);
-        for (int i = 0; i < listeners.size(); i++) {
-            try {
-                Class<?> clazz = this.getClass().getClassLoader().loadClass(
-                    listeners.get(i));
-                eventSource.registerListener((EventListener) injector.getInstance(clazz));
-            }
-            catch (Exception e) {
-                log.warn("Unable to register listener " + listeners.get(i), e);
-            }
-        }
+        registerListeners(injector, candlepinConfig);
 
         // Initialize the Event sink AFTER the internal server has been
         // created and started.
-        EventSink sink = injector.getInstance(EventSink.class);
+        eventSink = injector.getInstance(EventSink.class);
         try {
-            sink.initialize();
+            eventSink.initialize();
         }
         catch (Exception e) {
             log.error("Failed to initialize EventSink:", e);
@@ -207,9 +200,39 @@ public class HornetqContextListener {
             .getBoolean(ConfigProperties.AMQP_INTEGRATION_ENABLED)) {
             listeners.add(AMQPBusPublisher.class.getName());
         }
+
+        if (candlepinConfig.getInt(ConfigProperties.POOL_SEARCH_INDEX_MAX_OWNERS) > 0) {
+            listeners.add(PoolSearchIndexListener.class.getName());
+        }
         return listeners;
     }
 
+    private void registerListeners(Injector injector,
+        org.candlepin.common.config.Configuration candlepinConfig) {
+        List<String> listeners = getHornetqListeners(candlepinConfig);
+
+        int batchSize = candlepinConfig.getInt(ConfigProperties.AUDIT_LISTENER_BATCH_SIZE);
+        long batchDelay = candlepinConfig.getLong(ConfigProperties.AUDIT_LISTENER_BATCH_DELAY);
+
+        for (int i = 0; i < listeners.size(); i++) {
+            try {
+                Class<?> clazz = this.getClass().getClassLoader().loadClass(
+                    listeners.get(i));
+                EventListener listener = (EventListener) injector.getInstance(clazz);
+                if (batchSize > 1 && listener instanceof BatchEventListener) {
+                    eventSource.registerBatchListener((BatchEventListener) listener,
+                        batchSize, batchDelay);
+                }
+                else {
+                    eventSource.registerListener(listener);
+                }
+            }
+            catch (Exception e) {
+                log.warn("Unable to register listener " + listeners.get(i), e);
+            }
+        }
+    }
+
     /**
      * Remove any old message queues that have a 0 message count in them.
      * This lets us not worry about changing around the registered listeners.
@@ -46,10 +46,19 @@ public class ListenerWrapper implements MessageHandler {
             log.debug("Got event: {}", body);
         }
 
-        // Exceptions thrown here will cause the event to remain in hornetq:
+        // Exceptions thrown here will cause the event to remain in hornetq. For a batch
+        // that means every event of it is delivered again, including the ones the
+        // listener already handled.
         try {
-            Event event = mapper.readValue(body, Event.class);
-            listener.onEvent(event);
+            if (msg.containsProperty(EventSinkImpl.EVENT_COUNT_PROPERTY)) {
+                for (Event event : mapper.readValue(body, Event[].class)) {
+                    listener.onEvent(event);
+                }
+            }
+            else {
+                Event event = mapper.readValue(body, Event.class);
+                listener.onEvent(event);
+            }
         }
         catch (JsonMappingException e) {
             log.error("Unable to deserialize event object from msg: " + body, e);
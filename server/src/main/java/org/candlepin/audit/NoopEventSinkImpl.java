@@ -64,6 +64,10 @@ public class NoopEventSinkImpl implements EventSink {
     public void rollback() {
     }
 
+    @Override
+    public void shutDown() {
+    }
+
     @Override
     public void emitOwnerCreated(Owner newOwner) {
         log.debug("emitOwnerCreated:" + newOwner);
@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import org.candlepin.model.PoolSearchIndex;
+
+import com.google.inject.Inject;
+
+/**
+ * PoolSearchIndexListener
+ *
+ * Keeps the {@link PoolSearchIndex} up to date. Changed pools are reloaded from the
+ * database on the next search. Imports and subscription changes can touch many pools
+ * and products at once, so they drop the owner's whole index.
+ */
+public class PoolSearchIndexListener implements EventListener {
+    private PoolSearchIndex index;
+
+    @Inject
+    public PoolSearchIndexListener(PoolSearchIndex index) {
+        this.index = index;
+    }
+
+    @Override
+    public void onEvent(Event e) {
+        switch (e.getTarget()) {
+            case POOL:
+                if (e.getOwnerId() != null) {
+                    index.invalidatePool(e.getOwnerId(), e.getEntityId());
+                }
+                break;
+            case OWNER:
+                index.invalidateOwner(e.getEntityId());
+                break;
+            case IMPORT:
+            case SUBSCRIPTION:
+                if (e.getOwnerId() != null) {
+                    index.invalidateOwner(e.getOwnerId());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -17,6 +17,7 @@ package org.candlepin.config;
 
 import static org.candlepin.common.config.ConfigurationPrefixes.JPA_CONFIG_PREFIX;
 
+import org.candlepin.common.filter.LoggingFilter;
 import org.candlepin.pinsetter.tasks.ActiveEntitlementJob;
 import org.candlepin.pinsetter.tasks.CancelJobJob;
 import org.candlepin.pinsetter.tasks.CertificateRevocationListTask;
@@ -100,8 +101,26 @@ public class ConfigProperties {
      * This is applicable only for PAGE setting of HORNETQ_ADDRESS_FULL_POLICY.
      */
     public static final String HORNETQ_MAX_PAGE_SIZE = "candlepin.audit.hornetq.max_page_size";
+    /**
+     * The most events sent in a single HornetQ message. Above 1, the events of a
+     * request or job are serialized and sent in batches by a background thread once it
+     * completes. 1 sends every event in a message of its own, from the request thread.
+     * Batched events are held in memory until they are sent, so they are lost if the
+     * server stops first, and a failed batch is redelivered to listeners as a whole.
+     */
+    public static final String HORNETQ_EVENT_BATCH_SIZE = "candlepin.audit.hornetq.event_batch_size";
 
     public static final String AUDIT_LISTENERS = "candlepin.audit.listeners";
+    /**
+     * The most events handed at once to listeners which can take them in batches, such
+     * as the DatabaseListener. 1 hands them every event as it arrives.
+     */
+    public static final String AUDIT_LISTENER_BATCH_SIZE = "candlepin.audit.listener.batch_size";
+    /**
+     * The most milliseconds an event waits for its batch to fill before the batch is
+     * handed to the listener anyway.
+     */
+    public static final String AUDIT_LISTENER_BATCH_DELAY = "candlepin.audit.listener.batch_delay";
     public static final String AUDIT_LOG_FILE = "candlepin.audit.log_file";
     /**
      * Enables audit event filtering. See documentation of EventFilter
@@ -198,6 +217,62 @@ public class ConfigProperties {
     public static final String PASSPHRASE_SECRET_FILE = "candlepin.passphrase.path";
 
     public static final String PRODUCT_CACHE_MAX = "candlepin.cache.product_cache_max";
+    public static final String COMPLIANCE_CACHE_MAX = "candlepin.cache.compliance_cache_max";
+    public static final String CONTENT_PAYLOAD_CACHE_MAX = "candlepin.cache.content_payload_cache_max";
+
+    /**
+     * Number of threads used to evaluate the compliance rules when the status of many
+     * consumers is requested at once.
+     */
+    public static final String COMPLIANCE_BATCH_THREADS = "candlepin.compliance.batch_threads";
+
+    /**
+     * Number of consumer key pairs generated ahead of time, so registrations do not
+     * have to wait for RSA key generation.
+     */
+    public static final String KEYPAIR_POOL_SIZE = "candlepin.pki.keypair_pool_size";
+
+    /**
+     * Number of threads building and signing entitlement certificates when the
+     * certificates of several entitlements are generated at once.
+     */
+    public static final String CERT_GENERATION_THREADS = "candlepin.entitlement.cert_generation_threads";
+
+    /**
+     * Number of consumers healed in each unit of work by the heal entire org job, zero
+     * heals them one after another in a single unit of work.
+     */
+    public static final String HEAL_ORG_BATCH_SIZE = "candlepin.heal_org.batch_size";
+
+    /**
+     * Number of threads healing batches of consumers for the heal entire org job.
+     */
+    public static final String HEAL_ORG_THREADS = "candlepin.heal_org.threads";
+
+    /**
+     * Whether paged listings of the pools available to a consumer or activation key run
+     * the rules on every pool to count them exactly. When false, the rules only run on
+     * as many pools as it takes to fill the page, and the total is an estimate.
+     */
+    public static final String POOL_LIST_EXACT_COUNT = "candlepin.pool_list.exact_count";
+
+    /**
+     * Maximum number of owners whose pool search terms are indexed in memory to resolve
+     * the "matches" pool filter. Zero disables the index and searches the database.
+     */
+    public static final String POOL_SEARCH_INDEX_MAX_OWNERS = "candlepin.pool_search_index.max_owners";
+
+    /**
+     * Number of seconds after which an owner's pool search index is rebuilt, which picks
+     * up changes made through other nodes or not announced by an event.
+     */
+    public static final String POOL_SEARCH_INDEX_MAX_AGE = "candlepin.pool_search_index.max_age";
+
+    /**
+     * Number of threads used to parse the products and entitlements of manifests
+     * being imported. The threads are shared by all imports.
+     */
+    public static final String IMPORT_PARSE_THREADS = "candlepin.import.parse_threads";
 
     public static final String INTEGER_FACTS = "candlepin.integer_facts";
     private static final String INTEGER_FACT_LIST = "";
@@ -249,6 +324,34 @@ public class ConfigProperties {
 
     public static final String SWAGGER_ENABLED = "candlepin.swagger.enabled";
 
+    /**
+     * Fraction of requests whose bodies are logged when the LoggingFilter logs at
+     * debug level, and the maximum number of bytes logged of each body.
+     */
+    public static final String LOG_BODY_SAMPLE_RATE = "candlepin.logging.body_sample_rate";
+    public static final String LOG_BODY_MAX_SIZE = "candlepin.logging.body_max_size";
+
+    /**
+     * When enabled, each worker thread keeps a reusable Rhino context and rules scope,
+     * and the rules namespaces are resolved only once per rules version.
+     */
+    public static final String RULES_POOLED_SCOPES = "candlepin.rules.pooled_scopes";
+
+    /**
+     * When enabled, rules arguments are passed to rules.js as prebuilt javascript
+     * objects rather than as a JSON string the rules have to parse.
+     */
+    public static final String RULES_NATIVE_CONTEXT = "candlepin.rules.native_context";
+
+    /**
+     * Selects pools for autobind with the rules ("rules"), or with the Java port of the
+     * rules ("java") which falls back to the rules when its search budget runs out.
+     */
+    public static final String AUTOBIND_SOLVER = "candlepin.autobind.solver";
+    public static final String AUTOBIND_SOLVER_MAX_EVALUATIONS =
+        "candlepin.autobind.solver.max_evaluations";
+    public static final String AUTOBIND_SOLVER_TIMEOUT = "candlepin.autobind.solver.timeout_ms";
+
     public static final Map<String, String> DEFAULT_PROPERTIES = new HashMap<String, String>() {
         private static final long serialVersionUID = 1L;
 
@@ -270,6 +373,9 @@ public class ConfigProperties {
             this.put(HORNETQ_ADDRESS_FULL_POLICY, "PAGE");
             this.put(HORNETQ_MAX_QUEUE_SIZE, "10");
             this.put(HORNETQ_MAX_PAGE_SIZE, "1");
+            this.put(HORNETQ_EVENT_BATCH_SIZE, "1");
+            this.put(AUDIT_LISTENER_BATCH_SIZE, "1");
+            this.put(AUDIT_LISTENER_BATCH_DELAY, "500");
             this.put(AUDIT_LISTENERS,
                 "org.candlepin.audit.DatabaseListener," +
                 "org.candlepin.audit.LoggingListener," +
@@ -362,6 +468,35 @@ public class ConfigProperties {
              */
             this.put(PRODUCT_CACHE_MAX, "100");
 
+            /**
+             * Defines the maximum number of consumers whose last compliance status is
+             * kept in memory. Zero disables the compliance status cache.
+             */
+            this.put(COMPLIANCE_CACHE_MAX, "0");
+
+            /**
+             * Defines the maximum number of compressed v3 certificate content trees
+             * kept in memory. Zero disables the content payload cache.
+             */
+            this.put(CONTENT_PAYLOAD_CACHE_MAX, "100");
+
+            // Zero evaluates batches on the requesting thread
+            this.put(COMPLIANCE_BATCH_THREADS, "4");
+
+            // Zero generates every consumer key pair when it is first needed
+            this.put(KEYPAIR_POOL_SIZE, "0");
+
+            // Zero builds every certificate on the requesting thread
+            this.put(CERT_GENERATION_THREADS, "0");
+            this.put(HEAL_ORG_BATCH_SIZE, "0");
+            this.put(HEAL_ORG_THREADS, "4");
+            this.put(POOL_LIST_EXACT_COUNT, "false");
+            this.put(POOL_SEARCH_INDEX_MAX_OWNERS, "0");
+            this.put(POOL_SEARCH_INDEX_MAX_AGE, "300");
+
+            // Zero parses manifests on the importing thread
+            this.put(IMPORT_PARSE_THREADS, "4");
+
             /**
              * As we do math on some facts and attributes, we need to constrain
              * some values
@@ -378,6 +513,13 @@ public class ConfigProperties {
             this.put(PINSETTER_ASYNC_JOB_TIMEOUT, Integer.toString(1200));
             this.put(PINSETTER_MAX_RETRIES, Integer.toString(PINSETTER_MAX_RETRIES_DEFAULT));
             this.put(SWAGGER_ENABLED, Boolean.toString(true));
+            this.put(LOG_BODY_SAMPLE_RATE, Double.toString(LoggingFilter.DEFAULT_BODY_SAMPLE_RATE));
+            this.put(LOG_BODY_MAX_SIZE, Integer.toString(LoggingFilter.DEFAULT_BODY_MAX_SIZE));
+            this.put(RULES_POOLED_SCOPES, Boolean.toString(false));
+            this.put(RULES_NATIVE_CONTEXT, Boolean.toString(false));
+            this.put(AUTOBIND_SOLVER, "rules");
+            this.put(AUTOBIND_SOLVER_MAX_EVALUATIONS, "100000");
+            this.put(AUTOBIND_SOLVER_TIMEOUT, "1000");
         }
     };
 
@@ -24,6 +24,7 @@ import org.candlepin.common.config.Configuration;
 import org.candlepin.common.paging.Page;
 import org.candlepin.common.paging.PageRequest;
 import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.AbstractHibernateCurator.ChunkFilter;
 import org.candlepin.model.Branding;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
@@ -631,7 +632,8 @@ public class CandlepinPoolManager implements PoolManager {
         /*
          * Rules need to determine which pools have changed, but the Java must
          * send out the events. Create an event for each pool that could change,
-         * even if we won't use them all.
+         * even if we won't use them all. The builders only copy the pools; the
+         * JSON is produced for the events we queue.
          */
         if (CollectionUtils.isEmpty(existingPools)) {
             return new HashSet<String>(0);
@@ -662,15 +664,14 @@ public class CandlepinPoolManager implements PoolManager {
             List<Pool> subPools = getOwnerSubPoolsForStackId(pool.getOwner(), pool.getStackId());
 
             for (Pool subPool : subPools) {
+                EventBuilder eventBuilder = eventFactory
+                    .getEventBuilder(Target.POOL, Type.MODIFIED)
+                    .setOldEntity(subPool);
+
                 PoolUpdate update = updatePoolFromStack(subPool, changedProducts);
 
                 if (update.changed()) {
                     updatedPools.add(update);
-
-                    EventBuilder eventBuilder = eventFactory
-                        .getEventBuilder(Target.POOL, Type.MODIFIED)
-                        .setOldEntity(subPool);
-
                     poolEvents.put(subPool.getId(), eventBuilder);
                 }
             }
@@ -2096,6 +2097,13 @@ public class CandlepinPoolManager implements PoolManager {
             filters.addAttributeFilter(Pool.Attributes.DEVELOPMENT_POOL, "!true");
         }
 
+        if (postFilter && pageRequest != null && pageRequest.isPaging()) {
+            return this.poolCurator.listAvailableEntitlementPools(consumer, owner, productId,
+                subscriptionId, activeOn, activeOnly, filters, pageRequest,
+                createPoolFilter(consumer, key, includeWarnings),
+                config.getBoolean(ConfigProperties.POOL_LIST_EXACT_COUNT));
+        }
+
         Page<List<Pool>> page = this.poolCurator.listAvailableEntitlementPools(consumer,
             owner, productId, subscriptionId, activeOn, activeOnly, filters, pageRequest, postFilter);
 
@@ -2131,6 +2139,26 @@ public class CandlepinPoolManager implements PoolManager {
         return page;
     }
 
+    /*
+     * Filters pools the way listAvailableEntitlementPools does when it lists them all,
+     * for the curator to apply to a chunk of pools at a time.
+     */
+    private ChunkFilter<Pool> createPoolFilter(final Consumer consumer, final ActivationKey key,
+        final boolean includeWarnings) {
+        return new ChunkFilter<Pool>() {
+            @Override
+            public List<Pool> filter(List<Pool> pools) {
+                if (consumer != null) {
+                    pools = enforcer.filterPools(consumer, pools, includeWarnings);
+                }
+                if (key != null) {
+                    pools = filterPoolsForActKey(key, pools, includeWarnings);
+                }
+                return pools;
+            }
+        };
+    }
+
     /**
      * Creates a Subscription object using information derived from the specified pool. Used to
      * support deprecated API calls that still require a subscription.
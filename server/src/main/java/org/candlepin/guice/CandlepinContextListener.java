@@ -28,8 +28,13 @@ import org.candlepin.common.logging.LoggingConfigurator;
 import org.candlepin.config.ConfigProperties;
 import org.candlepin.logging.LoggerContextListener;
 import org.candlepin.pinsetter.core.PinsetterContextListener;
+import org.candlepin.pinsetter.tasks.HealOrgExecutor;
+import org.candlepin.pki.KeyPairPool;
+import org.candlepin.policy.js.compliance.ComplianceBatchExecutor;
 import org.candlepin.resteasy.ResourceLocatorMap;
+import org.candlepin.service.impl.EntitlementCertExecutor;
 import org.candlepin.swagger.CandlepinSwaggerModelConverter;
+import org.candlepin.sync.ImportExecutor;
 import org.candlepin.util.Util;
 
 import com.google.inject.AbstractModule;
@@ -142,6 +147,9 @@ public class CandlepinContextListener extends GuiceResteasyBootstrapServletConte
 
         loggerListener = injector.getInstance(LoggerContextListener.class);
 
+        // start generating consumer key pairs before the first registration
+        injector.getInstance(KeyPairPool.class).fill();
+
         /**
          * Custom ModelConverter to handle our specific serialization requirements
          */
@@ -159,6 +167,13 @@ public class CandlepinContextListener extends GuiceResteasyBootstrapServletConte
         }
         pinsetterListener.contextDestroyed();
         loggerListener.contextDestroyed();
+        Util.closeSafely(injector.getInstance(ComplianceBatchExecutor.class),
+            "ComplianceBatchExecutor");
+        Util.closeSafely(injector.getInstance(KeyPairPool.class), "KeyPairPool");
+        Util.closeSafely(injector.getInstance(EntitlementCertExecutor.class),
+            "EntitlementCertExecutor");
+        Util.closeSafely(injector.getInstance(HealOrgExecutor.class), "HealOrgExecutor");
+        Util.closeSafely(injector.getInstance(ImportExecutor.class), "ImportExecutor");
 
         // if amqp is enabled, close all connections.
         if (config.getBoolean(ConfigProperties.AMQP_INTEGRATION_ENABLED)) {
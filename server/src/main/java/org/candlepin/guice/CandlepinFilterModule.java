@@ -43,6 +43,10 @@ public class CandlepinFilterModule extends ServletModule {
     protected void configureServlets() {
         Map<String, String> loggingFilterConfig = new HashMap<String, String>();
         loggingFilterConfig.put("header.name", "x-candlepin-request-uuid");
+        loggingFilterConfig.put(LoggingFilter.BODY_SAMPLE_RATE,
+            config.getString(ConfigProperties.LOG_BODY_SAMPLE_RATE));
+        loggingFilterConfig.put(LoggingFilter.BODY_MAX_SIZE,
+            config.getString(ConfigProperties.LOG_BODY_MAX_SIZE));
 
 
         String regex = ".*";
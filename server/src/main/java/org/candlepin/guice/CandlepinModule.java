@@ -246,7 +246,7 @@ public class CandlepinModule extends AbstractModule {
 
         configureInterceptors();
         configureAuth();
-        bind(JsonProvider.class);
+        bind(JsonProvider.class).in(Singleton.class);
         configureEventSink();
 
         configurePinsetter();
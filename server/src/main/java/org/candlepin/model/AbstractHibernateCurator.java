@@ -27,8 +27,11 @@ import com.google.inject.Provider;
 import com.google.inject.persist.Transactional;
 
 import org.apache.commons.collections.CollectionUtils;
+import org.hibernate.CacheMode;
 import org.hibernate.Criteria;
 import org.hibernate.SQLQuery;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Criterion;
@@ -43,12 +46,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xnap.commons.i18n.I18n;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 import javax.persistence.EntityManager;
 import javax.persistence.LockModeType;
@@ -423,6 +429,230 @@ public abstract class AbstractHibernateCurator<E extends Persisted> {
         return page;
     }
 
+    /**
+     * Filters the entities read by
+     * {@link AbstractHibernateCurator#listByCriteria(Criteria, PageRequest, ChunkFilter, int, boolean)}
+     * a chunk at a time.
+     * @param <T> Entity type.
+     */
+    public interface ChunkFilter<T> {
+        List<T> filter(List<T> chunk);
+    }
+
+    /**
+     * Pages through results which are filtered in Java. The results are scrolled in page
+     * order and handed to the filter in chunks, and scrolling stops as soon as the
+     * requested page is filled, so the cost follows the page rather than the number of
+     * results.
+     *
+     * Unless an exact count is asked for, the total is then estimated from the share of
+     * the results checked so far which passed the filter. The estimate is exact once
+     * every result has been checked, and otherwise always leaves room for a next page.
+     *
+     * @param c the criteria to run
+     * @param pageRequest the page to list, which must be paging
+     * @param filter the filter to apply
+     * @param chunkSize the number of results filtered at once
+     * @param exactCount true to check every result, so the total is exact
+     * @return the requested page of filtered results
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    public Page<List<E>> listByCriteria(Criteria c, PageRequest pageRequest, ChunkFilter<E> filter,
+        int chunkSize, boolean exactCount) {
+
+        int candidates = -1;
+        if (!exactCount) {
+            CriteriaImpl cImpl = (CriteriaImpl) c;
+            Projection origProjection = cImpl.getProjection();
+            ResultTransformer origRt = cImpl.getResultTransformer();
+
+            c.setProjection(Projections.countDistinct("id"));
+            candidates = ((Long) c.uniqueResult()).intValue();
+
+            c.setProjection(origProjection);
+            c.setResultTransformer(origRt);
+        }
+
+        // Break ties on the id so the order is the same from one page to the next
+        c.addOrder(createPagingOrder(pageRequest));
+        if (!"id".equals(pageRequest.getSortBy())) {
+            c.addOrder(Order.asc("id"));
+        }
+
+        PageCollector<E> collector = new PageCollector<E>(pageRequest);
+        Set<Serializable> seen = new HashSet<Serializable>();
+        List<E> chunk = new ArrayList<E>(chunkSize);
+        ScrollableResults results = c.setFetchSize(chunkSize).scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while (results.next()) {
+                E entity = (E) results.get(0);
+
+                // Joins on collections repeat rows
+                if (!seen.add(entity.getId())) {
+                    continue;
+                }
+
+                chunk.add(entity);
+                if (chunk.size() == chunkSize) {
+                    collector.add(filter.filter(chunk), chunk.size());
+                    chunk = new ArrayList<E>(chunkSize);
+                    if (!exactCount && collector.isFull()) {
+                        break;
+                    }
+                }
+            }
+        }
+        finally {
+            results.close();
+        }
+
+        if (!chunk.isEmpty() && (exactCount || !collector.isFull())) {
+            collector.add(filter.filter(chunk), chunk.size());
+        }
+
+        Page<List<E>> page = new Page<List<E>>();
+        page.setPageData(collector.pageData);
+        page.setMaxRecords(collector.total(candidates));
+        page.setPageRequest(pageRequest);
+        return page;
+    }
+
+    /**
+     * Collects one page from chunks of filtered results.
+     */
+    private static class PageCollector<T> {
+        private final int first;
+        private final int perPage;
+        private final List<T> pageData;
+        private int passed;
+        private int checked;
+
+        public PageCollector(PageRequest pageRequest) {
+            this.perPage = pageRequest.getPerPage();
+            this.first = (pageRequest.getPage() - 1) * perPage;
+            this.pageData = new ArrayList<T>(perPage);
+        }
+
+        public void add(List<T> filtered, int chunkSize) {
+            for (T entity : filtered) {
+                if (passed >= first && pageData.size() < perPage) {
+                    pageData.add(entity);
+                }
+                passed++;
+            }
+            checked += chunkSize;
+        }
+
+        public boolean isFull() {
+            return pageData.size() == perPage;
+        }
+
+        public int total(int candidates) {
+            if (candidates < 0 || checked >= candidates) {
+                return passed;
+            }
+
+            long estimate = (long) passed * candidates / checked;
+            return (int) Math.max(estimate, passed + 1);
+        }
+    }
+
+    /**
+     * Receives the entities read by
+     * {@link AbstractHibernateCurator#scrollByCriteria(Criteria, ResultHandler)}.
+     * @param <T> Entity type.
+     */
+    public interface ResultHandler<T> {
+        void handle(T entity) throws IOException;
+    }
+
+    /**
+     * Hands the results of the given criteria to the handler one at a time, as they
+     * are read from the database. Each entity is evicted from the session once it has
+     * been handled, so memory use does not grow with the number of results.
+     *
+     * @param c the criteria to run
+     * @param handler receives each entity
+     * @return the number of entities handled
+     * @throws IOException if the handler failed
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    public int scrollByCriteria(Criteria c, ResultHandler<E> handler) throws IOException {
+        ScrollableResults results = c.setFetchSize(batchSize)
+            .setCacheMode(CacheMode.IGNORE)
+            .scroll(ScrollMode.FORWARD_ONLY);
+
+        int count = 0;
+        try {
+            while (results.next()) {
+                E entity = (E) results.get(0);
+                handler.handle(entity);
+                currentSession().evict(entity);
+                count++;
+            }
+        }
+        finally {
+            results.close();
+        }
+
+        return count;
+    }
+
+    /**
+     * Hands the results of the given criteria to the handler in chunks of up to
+     * chunkSize entities, as they are read from the database. Once a chunk has been
+     * handled, the changes made to it are flushed and its entities are evicted from
+     * the session, so memory use grows with the chunk size rather than the number of
+     * results.
+     *
+     * @param c the criteria to run
+     * @param chunkSize the most entities handed to the handler at once
+     * @param handler receives each chunk of entities
+     * @return the number of entities handled
+     * @throws IOException if the handler failed
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    public int scrollByCriteria(Criteria c, int chunkSize, ResultHandler<List<E>> handler)
+        throws IOException {
+        ScrollableResults results = c.setFetchSize(batchSize)
+            .setCacheMode(CacheMode.IGNORE)
+            .scroll(ScrollMode.FORWARD_ONLY);
+
+        int count = 0;
+        try {
+            List<E> chunk = new ArrayList<E>(chunkSize);
+            while (results.next()) {
+                chunk.add((E) results.get(0));
+                if (chunk.size() >= chunkSize) {
+                    count += handleChunk(chunk, handler);
+                    chunk = new ArrayList<E>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                count += handleChunk(chunk, handler);
+            }
+        }
+        finally {
+            results.close();
+        }
+
+        return count;
+    }
+
+    private int handleChunk(List<E> chunk, ResultHandler<List<E>> handler) throws IOException {
+        handler.handle(chunk);
+
+        Session session = currentSession();
+        session.flush();
+        for (E entity : chunk) {
+            session.evict(entity);
+        }
+        return chunk.size();
+    }
+
     /**
      * @param entity to be deleted.
      */
@@ -664,6 +894,31 @@ public abstract class AbstractHibernateCurator<E extends Persisted> {
         return criterion;
     }
 
+    /**
+     * Runs the given query once for every block of ids, binding each block to the
+     * "ids" parameter, and collects the results. Used to load the associations of
+     * many entities without running into the database limit on in clauses.
+     *
+     * @param hql a query with an "ids" collection parameter
+     * @param ids the values to bind to the parameter
+     * @return the results of all blocks
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> List<T> listByIdBlocks(String hql, Collection<?> ids) {
+        List<T> result = new ArrayList<T>();
+        if (ids == null || ids.isEmpty()) {
+            return result;
+        }
+
+        Query query = this.getEntityManager().createQuery(hql);
+        for (List<?> block : Iterables.partition(ids, IN_OPERATOR_BLOCK_SIZE)) {
+            query.setParameter("ids", block);
+            result.addAll((List<T>) query.getResultList());
+        }
+
+        return result;
+    }
+
     public List<E> lockAndLoadBatch(Iterable<String> ids, String entityName, String keyName) {
         List<E> result = new LinkedList<E>();
 
@@ -31,6 +31,8 @@ import org.hibernate.annotations.Index;
 import org.hibernate.annotations.Type;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -81,6 +83,13 @@ public class Consumer extends AbstractHibernateObject implements Linkable, Owned
 
     public static final String UEBER_CERT_CONSUMER = "ueber_cert_consumer";
 
+    /**
+     * Facts which are looked up by value. Only these are copied, lowercased, into
+     * cp_consumer_facts_lower.
+     */
+    public static final Set<String> INDEXED_FACTS =
+        Collections.unmodifiableSet(new HashSet<String>(Arrays.asList("virt.uuid")));
+
     @Id
     @GeneratedValue(generator = "system-uuid")
     @GenericGenerator(name = "system-uuid", strategy = "uuid")
@@ -170,6 +179,7 @@ public class Consumer extends AbstractHibernateObject implements Linkable, Owned
     @Cascade({org.hibernate.annotations.CascadeType.ALL})
     private Map<String, String> facts;
 
+    // Lowercased values of the INDEXED_FACTS only
     @ElementCollection
     @CollectionTable(name = "cp_consumer_facts_lower", joinColumns = @JoinColumn(name = "cp_consumer_id"))
     @MapKeyColumn(name = "mapkey")
@@ -390,16 +400,67 @@ public class Consumer extends AbstractHibernateObject implements Linkable, Owned
         }
         else {
             factsLower = new HashMap<String, String>();
-            for (Entry<String, String> f : factsIn.entrySet()) {
-                String val = f.getValue();
-                if (val != null) {
-                    val = val.toLowerCase();
-                }
+            updateIndexedFacts();
+        }
+    }
 
-                factsLower.put(f.getKey(), val);
+    /**
+     * Updates the facts of this consumer to match the given facts. Unlike setFacts, the
+     * existing map is modified in place, so that only the facts which were added,
+     * changed or removed are written to the database.
+     *
+     * @param factsIn the new facts about this consumer.
+     */
+    public void updateFacts(Map<String, String> factsIn) {
+        if (factsIn == null || facts == null) {
+            setFacts(factsIn == null ? null : new HashMap<String, String>(factsIn));
+            return;
+        }
+
+        List<String> removed = new ArrayList<String>();
+        for (String key : facts.keySet()) {
+            if (!factsIn.containsKey(key)) {
+                removed.add(key);
             }
         }
+        for (String key : removed) {
+            facts.remove(key);
+        }
 
+        for (Entry<String, String> f : factsIn.entrySet()) {
+            putFact(f.getKey(), f.getValue());
+        }
+
+        updateIndexedFacts();
+    }
+
+    private void putFact(String name, String value) {
+        if (!facts.containsKey(name) || !StringUtils.equals(facts.get(name), value)) {
+            facts.put(name, value);
+        }
+    }
+
+    private void updateIndexedFacts() {
+        if (factsLower == null) {
+            factsLower = new HashMap<String, String>();
+        }
+
+        List<String> removed = new ArrayList<String>();
+        for (String key : factsLower.keySet()) {
+            if (!INDEXED_FACTS.contains(key) || facts.get(key) == null) {
+                removed.add(key);
+            }
+        }
+        for (String key : removed) {
+            factsLower.remove(key);
+        }
+
+        for (String key : INDEXED_FACTS) {
+            String value = facts.get(key);
+            if (value != null && !value.toLowerCase().equals(factsLower.get(key))) {
+                factsLower.put(key, value.toLowerCase());
+            }
+        }
     }
 
     /**
@@ -450,15 +511,12 @@ public class Consumer extends AbstractHibernateObject implements Linkable, Owned
     public void setFact(String name, String value) {
         if (facts == null) {
             facts = new HashMap<String, String>();
-            factsLower = new HashMap<String, String>();
         }
-        this.facts.put(name, value);
+        putFact(name, value);
 
-        String lowVal = value;
-        if (lowVal != null) {
-            lowVal = lowVal.toLowerCase();
+        if (INDEXED_FACTS.contains(name)) {
+            updateIndexedFacts();
         }
-        this.factsLower.put(name, lowVal);
     }
 
     public long getEntitlementCount() {
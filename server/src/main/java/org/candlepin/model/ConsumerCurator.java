@@ -20,6 +20,7 @@ import org.candlepin.common.exceptions.NotFoundException;
 import org.candlepin.common.paging.Page;
 import org.candlepin.common.paging.PageRequest;
 import org.candlepin.config.ConfigProperties;
+import org.candlepin.policy.js.compliance.ComplianceStatusCache;
 import org.candlepin.resteasy.parameter.KeyValueParameter;
 import org.candlepin.util.Util;
 
@@ -29,7 +30,6 @@ import com.google.inject.persist.Transactional;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.hibernate.Criteria;
-import org.hibernate.Hibernate;
 import org.hibernate.Query;
 import org.hibernate.ReplicationMode;
 import org.hibernate.criterion.Criterion;
@@ -42,6 +42,7 @@ import org.hibernate.criterion.Subqueries;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -65,6 +66,7 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
     @Inject private ConsumerTypeCurator consumerTypeCurator;
     @Inject private DeletedConsumerCurator deletedConsumerCurator;
     @Inject private Configuration config;
+    @Inject private ComplianceStatusCache complianceStatusCache;
 
     private static final int MAX_FACT_STR_LENGTH = 255;
     private static final int NAME_LENGTH = 250;
@@ -93,6 +95,7 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
             entity.getOwner().getKey(), entity.getOwner().getDisplayName());
 
         super.delete(entity);
+        complianceStatusCache.invalidate(entity.getUuid());
 
         DeletedConsumer existing = deletedConsumerCurator.findByConsumerUuid(dc.getConsumerUuid());
         if (existing != null) {
@@ -309,6 +312,22 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
             createSecureCriteria().add(Restrictions.in("uuid", uuids)));
     }
 
+    /**
+     * Hands the consumers with the given uuids to the handler in chunks, as they are
+     * read, rather than loading them all into a list.
+     *
+     * @param uuids the uuids of the consumers
+     * @param chunkSize the most consumers handed to the handler at once
+     * @param handler receives each chunk of consumers
+     * @return the number of consumers found
+     * @throws IOException if the handler failed
+     */
+    public int scrollByUuids(Collection<String> uuids, int chunkSize,
+        ResultHandler<List<Consumer>> handler) throws IOException {
+        return scrollByCriteria(createSecureCriteria().add(Restrictions.in("uuid", uuids)),
+            chunkSize, handler);
+    }
+
     @Transactional
     public List<Consumer> findByUuidsAndOwner(Collection<String> uuids, Owner owner) {
         Criteria criteria = currentSession().createCriteria(Consumer.class);
@@ -388,7 +407,8 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
             .bulkUpdate(updatedConsumer.getEntitlements()));
         Map<String, String> newFacts = filterAndVerifyFacts(updatedConsumer);
         if (factsChanged(newFacts, existingConsumer.getFacts())) {
-            existingConsumer.setFacts(newFacts);
+            existingConsumer.updateFacts(newFacts);
+            complianceStatusCache.invalidate(existingConsumer.getUuid());
         }
         existingConsumer.setName(updatedConsumer.getName());
         existingConsumer.setOwner(updatedConsumer.getOwner());
@@ -655,32 +675,130 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
     }
 
     public Consumer verifyAndLookupConsumerWithEntitlements(String consumerUuid) {
-        Consumer consumer = this.findByUuid(consumerUuid);
-        if (consumer == null) {
-            throw new NotFoundException(i18n.tr("Unit with ID ''{0}'' could not be found.", consumerUuid));
-        }
+        Consumer consumer = this.verifyAndLookupConsumer(consumerUuid);
+        prefetchEntitlements(Arrays.asList(consumer));
+        return consumer;
+    }
 
-        for (Entitlement e : consumer.getEntitlements()) {
-            Hibernate.initialize(e.getCertificates());
+    /**
+     * Loads the facts, installed products, guests, entitlements, pools, products and
+     * entitlement certificates of the given consumers, everything compliance and
+     * certificate listing walk over, using a fixed number of bulk queries instead of
+     * lazily loading them one association at a time. Only the number of in clause
+     * blocks grows with the number of consumers and entitlements.
+     *
+     * @param consumers consumers already attached to the current session
+     */
+    @Transactional
+    public void prefetchEntitlements(Collection<Consumer> consumers) {
+        if (consumers == null || consumers.isEmpty()) {
+            return;
+        }
+
+        Set<String> consumerIds = new HashSet<String>();
+        for (Consumer consumer : consumers) {
+            consumerIds.add(consumer.getId());
+        }
+
+        listByIdBlocks("SELECT DISTINCT c FROM Consumer c LEFT JOIN FETCH c.facts " +
+            "WHERE c.id IN (:ids)", consumerIds);
+        listByIdBlocks("SELECT DISTINCT c FROM Consumer c LEFT JOIN FETCH c.installedProducts " +
+            "WHERE c.id IN (:ids)", consumerIds);
+        listByIdBlocks("SELECT DISTINCT c FROM Consumer c LEFT JOIN FETCH c.guestIds " +
+            "WHERE c.id IN (:ids)", consumerIds);
+        listByIdBlocks("SELECT DISTINCT g FROM GuestId g LEFT JOIN FETCH g.attributes " +
+            "WHERE g.consumer.id IN (:ids)", consumerIds);
+        listByIdBlocks("SELECT DISTINCT c FROM Consumer c " +
+            "LEFT JOIN FETCH c.entitlements e " +
+            "LEFT JOIN FETCH e.pool p " +
+            "LEFT JOIN FETCH p.product prod " +
+            "LEFT JOIN FETCH prod.dependentProductIds " +
+            "LEFT JOIN FETCH p.derivedProduct derived " +
+            "LEFT JOIN FETCH derived.dependentProductIds " +
+            "LEFT JOIN FETCH p.sourceSubscription " +
+            "LEFT JOIN FETCH p.sourceStack " +
+            "WHERE c.id IN (:ids)", consumerIds);
+
+        Set<String> entitlementIds = new HashSet<String>();
+        Set<String> poolIds = new HashSet<String>();
+        for (Consumer consumer : consumers) {
+            for (Entitlement entitlement : consumer.getEntitlements()) {
+                entitlementIds.add(entitlement.getId());
+                if (entitlement.getPool() != null) {
+                    poolIds.add(entitlement.getPool().getId());
+                }
+            }
+        }
 
-            if (e.getPool() != null) {
-                Hibernate.initialize(e.getPool().getBranding());
-                Hibernate.initialize(e.getPool().getDerivedProvidedProducts());
-                Hibernate.initialize(e.getPool().getProvidedProducts());
-                Hibernate.initialize(e.getPool().getProductAttributes());
-                Hibernate.initialize(e.getPool().getAttributes());
-                Hibernate.initialize(e.getPool().getDerivedProductAttributes());
+        listByIdBlocks("SELECT DISTINCT e FROM Entitlement e " +
+            "LEFT JOIN FETCH e.certificates cert LEFT JOIN FETCH cert.serial " +
+            "WHERE e.id IN (:ids)", entitlementIds);
+        listByIdBlocks("SELECT DISTINCT p FROM Pool p LEFT JOIN FETCH p.attributes " +
+            "WHERE p.id IN (:ids)", poolIds);
+        listByIdBlocks("SELECT DISTINCT p FROM Pool p LEFT JOIN FETCH p.branding " +
+            "WHERE p.id IN (:ids)", poolIds);
+        List<Pool> pools = listByIdBlocks("SELECT DISTINCT p FROM Pool p " +
+            "LEFT JOIN FETCH p.providedProducts prod " +
+            "LEFT JOIN FETCH prod.dependentProductIds " +
+            "WHERE p.id IN (:ids)", poolIds);
+        listByIdBlocks("SELECT DISTINCT p FROM Pool p " +
+            "LEFT JOIN FETCH p.derivedProvidedProducts prod " +
+            "LEFT JOIN FETCH prod.dependentProductIds " +
+            "WHERE p.id IN (:ids)", poolIds);
+
+        Set<String> productUuids = new HashSet<String>();
+        for (Pool pool : pools) {
+            addProductUuid(productUuids, pool.getProduct());
+            addProductUuid(productUuids, pool.getDerivedProduct());
+            for (Product product : pool.getProvidedProducts()) {
+                addProductUuid(productUuids, product);
+            }
+            for (Product product : pool.getDerivedProvidedProducts()) {
+                addProductUuid(productUuids, product);
             }
         }
 
-        return consumer;
+        listByIdBlocks("SELECT DISTINCT p FROM Product p LEFT JOIN FETCH p.attributes " +
+            "WHERE p.uuid IN (:ids)", productUuids);
+    }
+
+    private void addProductUuid(Set<String> productUuids, Product product) {
+        if (product != null) {
+            productUuids.add(product.getUuid());
+        }
     }
 
-    @SuppressWarnings("checkstyle:indentation")
     public Page<List<Consumer>> searchOwnerConsumers(Owner owner, String userName,
         Collection<ConsumerType> types, List<String> uuids, List<String> hypervisorIds,
         List<KeyValueParameter> factFilters, List<String> skus,
         List<String> subscriptionIds, List<String> contracts, PageRequest pageRequest) {
+        Criteria crit = createOwnerConsumerCriteria(owner, userName, types, uuids,
+            hypervisorIds, factFilters, skus, subscriptionIds, contracts);
+        return listByCriteria(crit, pageRequest);
+    }
+
+    /**
+     * Runs the same search as searchOwnerConsumers, but hands the consumers to the
+     * handler as they are read rather than loading them all into a list.
+     *
+     * @return the number of consumers found
+     * @throws IOException if the handler failed
+     */
+    public int scrollOwnerConsumers(Owner owner, String userName,
+        Collection<ConsumerType> types, List<String> uuids, List<String> hypervisorIds,
+        List<KeyValueParameter> factFilters, List<String> skus,
+        List<String> subscriptionIds, List<String> contracts,
+        ResultHandler<Consumer> handler) throws IOException {
+        Criteria crit = createOwnerConsumerCriteria(owner, userName, types, uuids,
+            hypervisorIds, factFilters, skus, subscriptionIds, contracts);
+        return scrollByCriteria(crit, handler);
+    }
+
+    @SuppressWarnings("checkstyle:indentation")
+    private Criteria createOwnerConsumerCriteria(Owner owner, String userName,
+        Collection<ConsumerType> types, List<String> uuids, List<String> hypervisorIds,
+        List<KeyValueParameter> factFilters, List<String> skus,
+        List<String> subscriptionIds, List<String> contracts) {
         Criteria crit = super.createSecureCriteria();
         if (owner != null) {
             crit.add(Restrictions.eq("owner", owner));
@@ -778,7 +896,7 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
             }
         }
 
-        return listByCriteria(crit, pageRequest);
+        return crit;
     }
 
     /**
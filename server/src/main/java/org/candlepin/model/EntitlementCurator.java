@@ -17,6 +17,7 @@ package org.candlepin.model;
 import org.candlepin.common.exceptions.BadRequestException;
 import org.candlepin.common.paging.Page;
 import org.candlepin.common.paging.PageRequest;
+import org.candlepin.policy.js.compliance.ComplianceStatusCache;
 
 import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
@@ -55,14 +56,25 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
     private static Logger log = LoggerFactory.getLogger(EntitlementCurator.class);
 
     private OwnerProductCurator ownerProductCurator;
+    private ComplianceStatusCache complianceStatusCache;
 
     /**
      * default ctor
      */
     @Inject
-    public EntitlementCurator(OwnerProductCurator ownerProductCurator) {
+    public EntitlementCurator(OwnerProductCurator ownerProductCurator,
+        ComplianceStatusCache complianceStatusCache) {
         super(Entitlement.class);
         this.ownerProductCurator = ownerProductCurator;
+        this.complianceStatusCache = complianceStatusCache;
+    }
+
+    @Override
+    @Transactional
+    public Entitlement create(Entitlement entity) {
+        Entitlement created = super.create(entity);
+        invalidateComplianceStatus(entity);
+        return created;
     }
 
     // TODO: handles addition of new entitlements only atm!
@@ -395,6 +407,7 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
 
         if (toDelete != null) {
             this.deleteImpl(toDelete);
+            invalidateComplianceStatus(entity);
 
             // Maintain runtime consistency.
             entity.getCertificates().clear();
@@ -415,6 +428,7 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
     public void batchDelete(Collection<Entitlement> entitlements) {
         for (Entitlement entitlement : entitlements) {
             this.deleteImpl(entitlement);
+            invalidateComplianceStatus(entitlement);
 
             // Maintain runtime consistency.
             entitlement.getCertificates().clear();
@@ -429,6 +443,12 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
         }
     }
 
+    private void invalidateComplianceStatus(Entitlement entity) {
+        if (entity.getConsumer() != null) {
+            complianceStatusCache.invalidate(entity.getConsumer().getUuid());
+        }
+    }
+
     private void deleteImpl(Entitlement entity) {
         log.debug("Deleting entitlement: {}", entity);
         EntityManager entityManager = this.getEntityManager();
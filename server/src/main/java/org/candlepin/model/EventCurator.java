@@ -17,21 +17,102 @@ package org.candlepin.model;
 
 import org.candlepin.audit.Event;
 
+import com.google.inject.persist.Transactional;
+
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.jdbc.Work;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 /**
  * AttributeCurator
  */
 public class EventCurator extends AbstractHibernateCurator<Event> {
 
+    private static final String INSERT_EVENT =
+        "INSERT INTO cp_event (id, type, target, targetname, principal, timestamp, " +
+        "entityid, ownerid, consumerid, referenceid, referencetype) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
     public EventCurator() {
         super(Event.class);
     }
 
+    /**
+     * Inserts events with a single JDBC batch, in one transaction. Events are
+     * append-only, so this skips the session and its per-entity flush, which
+     * would otherwise issue an insert per event. Events without an id are
+     * given one.
+     *
+     * Bean validation is skipped along with the session, so a single invalid
+     * event fails the whole batch. Callers should fall back to {@link #create}
+     * for each event to reject only the invalid one. Ids are only given to the
+     * events once the batch has been inserted, so a failed batch leaves them
+     * ready to be created.
+     *
+     * @param events the events to insert
+     */
+    @Transactional
+    public void insertAll(final List<Event> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        currentSession().doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                List<String> ids = new ArrayList<String>(events.size());
+                PreparedStatement statement = connection.prepareStatement(INSERT_EVENT);
+                try {
+                    for (Event event : events) {
+                        String id = event.getId();
+                        if (id == null) {
+                            id = UUID.randomUUID().toString().replace("-", "");
+                        }
+                        ids.add(id);
+
+                        statement.setString(1, id);
+                        statement.setString(2, event.getType().name());
+                        statement.setString(3, event.getTarget().name());
+                        statement.setString(4, event.getTargetName());
+                        statement.setString(5, event.getPrincipalStore());
+                        statement.setTimestamp(6, new Timestamp(event.getTimestamp().getTime()));
+                        statement.setString(7, event.getEntityId());
+                        statement.setString(8, event.getOwnerId());
+                        statement.setString(9, event.getConsumerId());
+                        statement.setString(10, event.getReferenceId());
+                        if (event.getReferenceType() != null) {
+                            statement.setString(11, event.getReferenceType().name());
+                        }
+                        else {
+                            statement.setNull(11, Types.VARCHAR);
+                        }
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+                finally {
+                    statement.close();
+                }
+
+                // An event given an id could no longer be persisted, so only events
+                // which were inserted get theirs
+                for (int i = 0; i < events.size(); i++) {
+                    events.get(i).setId(ids.get(i));
+                }
+            }
+        });
+    }
+
     /**
      * Query events, most recent first.
      *
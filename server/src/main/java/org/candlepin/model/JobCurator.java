@@ -24,6 +24,7 @@ import org.candlepin.pinsetter.core.model.JobStatus.TargetType;
 import org.candlepin.pinsetter.tasks.KingpinJob;
 
 import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
 
 import org.hibernate.Criteria;
 import org.hibernate.Query;
@@ -72,6 +73,23 @@ public class JobCurator extends AbstractHibernateCurator<JobStatus> {
         }
     }
 
+    /**
+     * Records the result of a job while it is still running, so that its progress
+     * can be looked up and picked up again if the job is restarted.
+     *
+     * @param jobId the id of the job
+     * @param result the result so far
+     */
+    @Transactional
+    public void updateResult(String jobId, Object result) {
+        JobStatus status = this.find(jobId);
+        if (status != null) {
+            status.setResult(result.toString());
+            status.setResultData(result);
+            this.merge(status);
+        }
+    }
+
     public int deleteJobNoStatusReturn(String jobId) {
         return this.currentSession().createQuery(
             "delete from JobStatus where id = :jobid")
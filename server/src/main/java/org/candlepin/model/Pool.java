@@ -70,7 +70,7 @@ import javax.xml.bind.annotation.XmlTransient;
 @Table(name = "cp_pool")
 @JsonFilter("PoolFilter")
 public class Pool extends AbstractHibernateObject implements Persisted, Owned, Named, Comparable<Pool>,
-    Eventful {
+    Eventful, Cloneable {
 
     /**
      * Common pool attributes
@@ -1308,4 +1308,66 @@ public class Pool extends AbstractHibernateObject implements Persisted, Owned, N
         this.cert = cert;
     }
 
+    /**
+     * Creates a detached copy of this pool, for recording its state before it is changed.
+     * Everything pool updates change in place is copied: the attributes, brandings,
+     * product sets and source subscription. Products, the owner and other entities are
+     * shared with this pool, as are the entitlements.
+     *
+     * The copy must never be persisted or merged.
+     *
+     * @return a copy of this pool
+     */
+    @Override
+    public Pool clone() {
+        Pool copy;
+
+        try {
+            copy = (Pool) super.clone();
+        }
+        catch (CloneNotSupportedException e) {
+            // This should never happen.
+            throw new RuntimeException("Clone not supported", e);
+        }
+
+        copy.startDate = this.startDate != null ? (Date) this.startDate.clone() : null;
+        copy.endDate = this.endDate != null ? (Date) this.endDate.clone() : null;
+
+        copy.providedProducts = new HashSet<Product>(this.providedProducts);
+        copy.derivedProvidedProducts = new HashSet<Product>(this.derivedProvidedProducts);
+        if (this.providedProductDtos != null) {
+            copy.providedProductDtos = new HashSet<ProvidedProduct>(this.providedProductDtos);
+        }
+        if (this.derivedProvidedProductDtos != null) {
+            copy.derivedProvidedProductDtos =
+                new HashSet<ProvidedProduct>(this.derivedProvidedProductDtos);
+        }
+        if (this.productAttributes != null) {
+            copy.productAttributes = new HashSet<ProductAttribute>(this.productAttributes);
+        }
+        if (this.calculatedAttributes != null) {
+            copy.calculatedAttributes = new HashMap<String, String>(this.calculatedAttributes);
+        }
+
+        // Attribute values are updated in place
+        copy.attributes = new HashSet<PoolAttribute>();
+        for (PoolAttribute src : this.attributes) {
+            PoolAttribute dest = new PoolAttribute(src.getName(), src.getValue());
+            dest.setPool(copy);
+            copy.attributes.add(dest);
+        }
+
+        if (this.branding != null) {
+            copy.branding = new HashSet<Branding>(this.branding);
+        }
+
+        if (this.sourceSubscription != null) {
+            copy.sourceSubscription = new SourceSubscription(
+                this.sourceSubscription.getSubscriptionId(),
+                this.sourceSubscription.getSubscriptionSubKey());
+            copy.sourceSubscription.setPool(copy);
+        }
+
+        return copy;
+    }
 }
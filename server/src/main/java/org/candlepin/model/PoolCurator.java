@@ -21,6 +21,7 @@ import org.candlepin.model.activationkeys.ActivationKey;
 import org.candlepin.model.activationkeys.ActivationKeyPool;
 import org.candlepin.policy.criteria.CriteriaRules;
 
+import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import com.google.inject.persist.Transactional;
@@ -50,6 +51,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -66,16 +68,33 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
     /** The recommended number of expired pools to fetch in a single call to listExpiredPools */
     public static final int EXPIRED_POOL_BLOCK_SIZE = 2048;
 
+    /** The fewest pools handed to the rules at once when filtering a page of pools */
+    public static final int POST_FILTER_CHUNK_SIZE = 100;
 
     private static Logger log = LoggerFactory.getLogger(PoolCurator.class);
+
+    // The fields searched by PoolFilterBuilder's "matches" filter, first column the pool id
+    private static final String[] POOL_SEARCH_TERM_QUERIES = {
+        "select p.id, prod.id, prod.name, p.contractNumber, p.orderNumber " +
+            "from Pool p join p.product prod where p.owner.id = :owner",
+        "select p.id, pp.id, pp.name from Pool p join p.providedProducts pp " +
+            "where p.owner.id = :owner",
+        "select p.id, c.name, c.label from Pool p join p.providedProducts pp " +
+            "join pp.productContent pc join pc.content c where p.owner.id = :owner",
+        "select p.id, a.value from Pool p join p.product prod join prod.attributes a " +
+            "where p.owner.id = :owner and a.name = 'support_level' and not exists " +
+            "(select pa.id from PoolAttribute pa where pa.pool = p and pa.name = a.name)",
+    };
     private CriteriaRules poolCriteria;
     @Inject
     protected Injector injector;
+    protected PoolSearchIndex poolSearchIndex;
 
     @Inject
-    public PoolCurator(CriteriaRules poolCriteria) {
+    public PoolCurator(CriteriaRules poolCriteria, PoolSearchIndex poolSearchIndex) {
         super(Pool.class);
         this.poolCriteria = poolCriteria;
+        this.poolSearchIndex = poolSearchIndex;
     }
 
     @Override
@@ -307,6 +326,45 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
         String subscriptionId, Date activeOn, boolean activeOnly, PoolFilterBuilder filters,
         PageRequest pageRequest, boolean postFilter) {
 
+        Criteria crit = createAvailableEntitlementPoolsCriteria(c, o, productIds, subscriptionId,
+            activeOn, activeOnly, filters);
+        return listByCriteria(crit, pageRequest, postFilter);
+    }
+
+    /**
+     * Lists one page of the entitlement pools which pass a filter applied in Java, checking
+     * only as many pools as it takes to fill the page. See
+     * {@link AbstractHibernateCurator#listByCriteria(Criteria, PageRequest, ChunkFilter, int, boolean)}.
+     *
+     * @param c Consumer being entitled.
+     * @param o Owner whose subscriptions should be inspected.
+     * @param productId only entitlements which provide this product are included.
+     * @param subscriptionId only pools of this subscription are included.
+     * @param activeOn Indicates to return only pools valid on this date.
+     *        Set to null for no date filtering.
+     * @param activeOnly if true, only active entitlements are included.
+     * @param filters filter builder with set filters to apply to the criteria.
+     * @param pageRequest the page to list, which must be paging.
+     * @param postFilter the filter to apply in Java.
+     * @param exactCount true to filter every pool, so the total is exact.
+     * @return the requested page of entitlement pools.
+     */
+    @Transactional
+    public Page<List<Pool>> listAvailableEntitlementPools(Consumer c, Owner o, String productId,
+        String subscriptionId, Date activeOn, boolean activeOnly, PoolFilterBuilder filters,
+        PageRequest pageRequest, ChunkFilter<Pool> postFilter, boolean exactCount) {
+
+        Criteria crit = createAvailableEntitlementPoolsCriteria(c, o,
+            (productId != null ? Arrays.asList(productId) : (Collection<String>) null), subscriptionId,
+            activeOn, activeOnly, filters);
+        int chunkSize = Math.max(pageRequest.getPerPage(), POST_FILTER_CHUNK_SIZE);
+        return listByCriteria(crit, pageRequest, postFilter, chunkSize, exactCount);
+    }
+
+    private Criteria createAvailableEntitlementPoolsCriteria(Consumer c, Owner o,
+        Collection<String> productIds, String subscriptionId, Date activeOn, boolean activeOnly,
+        PoolFilterBuilder filters) {
+
         if (o == null && c != null) {
             o = c.getOwner();
         }
@@ -360,12 +418,67 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
             filters.setSubscriptionIdFilter(subscriptionId);
         }
 
+        if (o != null && filters.hasMatchFilters() && poolSearchIndex != null &&
+            poolSearchIndex.isEnabled()) {
+            for (String matches : filters.getMatchFilters()) {
+                filters.setMatchedPoolIds(matches, poolSearchIndex.findPoolIds(o.getId(), matches));
+            }
+        }
+
         // Append any specified filters
         if (filters != null) {
             filters.applyTo(crit);
         }
 
-        return listByCriteria(crit, pageRequest, postFilter);
+        return crit;
+    }
+
+    /**
+     * Loads the text the "matches" pool filter searches, for {@link PoolSearchIndex}:
+     * the product id and name, contract and order numbers, provided product ids and
+     * names, the names and labels of their content, and the support level, unless a
+     * pool attribute overrides it.
+     *
+     * @param ownerId the id of the owner whose pools to load
+     * @param poolIds the ids of the pools to load, or null to load all of the owner's
+     *  pools. Pools which do not belong to the owner are skipped.
+     * @return the search terms of each pool
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Set<String>> getPoolSearchTerms(String ownerId, Collection<String> poolIds) {
+        Map<String, Set<String>> terms = new HashMap<String, Set<String>>();
+
+        for (String hql : POOL_SEARCH_TERM_QUERIES) {
+            List<Object[]> rows = new ArrayList<Object[]>();
+            if (poolIds == null) {
+                rows.addAll(getEntityManager().createQuery(hql)
+                    .setParameter("owner", ownerId)
+                    .getResultList());
+            }
+            else {
+                for (List<String> block : Iterables.partition(poolIds, IN_OPERATOR_BLOCK_SIZE)) {
+                    rows.addAll(getEntityManager().createQuery(hql + " and p.id in (:ids)")
+                        .setParameter("owner", ownerId)
+                        .setParameter("ids", block)
+                        .getResultList());
+                }
+            }
+
+            for (Object[] row : rows) {
+                Set<String> poolTerms = terms.get((String) row[0]);
+                if (poolTerms == null) {
+                    poolTerms = new HashSet<String>();
+                    terms.put((String) row[0], poolTerms);
+                }
+                for (int i = 1; i < row.length; i++) {
+                    if (row[i] != null) {
+                        poolTerms.add((String) row[i]);
+                    }
+                }
+            }
+        }
+
+        return terms;
     }
 
     /**
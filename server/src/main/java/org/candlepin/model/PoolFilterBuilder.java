@@ -15,6 +15,7 @@
 package org.candlepin.model;
 
 import com.google.common.base.Function;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
 import org.hibernate.Criteria;
@@ -31,8 +32,10 @@ import org.hibernate.sql.JoinType;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 
@@ -46,6 +49,7 @@ public class PoolFilterBuilder extends FilterBuilder {
 
     private String alias = "";
     private List<String> matchFilters = new ArrayList<String>();
+    private Map<String, Collection<String>> matchedPoolIds = new HashMap<String, Collection<String>>();
     private Set<String> productIds;
     private String subscriptionIdFilter;
 
@@ -114,6 +118,22 @@ public class PoolFilterBuilder extends FilterBuilder {
         return !matchFilters.isEmpty();
     }
 
+    public List<String> getMatchFilters() {
+        return matchFilters;
+    }
+
+    /**
+     * Resolves a matches filter to the pools it matches, which were found without the
+     * database, e.g. by {@link PoolSearchIndex}. The filter then restricts the pools to
+     * these ids rather than searching their fields.
+     *
+     * @param matches a text added with {@link #addMatchesFilter(String)}
+     * @param poolIds the ids of the pools matching the text
+     */
+    public void setMatchedPoolIds(String matches, Collection<String> poolIds) {
+        this.matchedPoolIds.put(matches, poolIds);
+    }
+
     @SuppressWarnings("checkstyle:indentation")
     private void applyProductIdFilter(Criteria parent) {
         String originalPoolAlias = this.alias.isEmpty() ? "this." : alias;
@@ -145,6 +165,12 @@ public class PoolFilterBuilder extends FilterBuilder {
     private void applyMatchFilter(String matches) {
         String originalPoolAlias = this.alias.isEmpty() ? "this." : alias;
 
+        Collection<String> poolIds = matchedPoolIds.get(matches);
+        if (poolIds != null) {
+            this.otherCriteria.add(poolIdCriterion(originalPoolAlias + "id", poolIds));
+            return;
+        }
+
         Disjunction textOr = Restrictions.disjunction();
         textOr.add(new FilterLikeExpression("product.name", matches, true));
         textOr.add(new FilterLikeExpression("product.id", matches, true));
@@ -170,6 +196,19 @@ public class PoolFilterBuilder extends FilterBuilder {
         this.otherCriteria.add(textOr);
     }
 
+    private Criterion poolIdCriterion(String property, Collection<String> poolIds) {
+        if (poolIds.isEmpty()) {
+            return Restrictions.sqlRestriction("1 = 0");
+        }
+
+        Disjunction inBlocks = Restrictions.disjunction();
+        for (List<String> block : Iterables.partition(poolIds,
+            AbstractHibernateCurator.IN_OPERATOR_BLOCK_SIZE)) {
+            inBlocks.add(Restrictions.in(property, block));
+        }
+        return inBlocks;
+    }
+
     @Override
     protected Criterion buildCriteriaForKey(String key, List<String> values) {
         List<String> negatives = new ArrayList<String>();
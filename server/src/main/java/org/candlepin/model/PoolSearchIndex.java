@@ -0,0 +1,344 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.FilterBuilder.FilterLikeExpression;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * PoolSearchIndex
+ *
+ * Keeps the search terms of each owner's pools in memory to resolve the "matches" pool
+ * filter without running its LIKE clauses over every pool. The terms of a pool are the
+ * fields {@link PoolFilterBuilder#addMatchesFilter(String)} searches, see
+ * {@link PoolCurator#getPoolSearchTerms(String, Collection)}. Terms are indexed by
+ * their trigrams, so a search only compares the terms which contain every run of
+ * three literal characters in it.
+ *
+ * An owner's index is loaded the first time it is searched. Pools announced as changed
+ * are reloaded on the next search, and the whole index is rebuilt once it reaches its
+ * maximum age. The index evicts the least recently searched owners once it is full.
+ * A maximum of zero owners disables it.
+ */
+@Singleton
+public class PoolSearchIndex {
+    private static Logger log = LoggerFactory.getLogger(PoolSearchIndex.class);
+
+    private final Provider<PoolCurator> poolCuratorProvider;
+    private final int maxOwners;
+    private final long maxAge;
+    private final Map<String, OwnerIndex> owners;
+
+    @Inject
+    public PoolSearchIndex(Configuration config, Provider<PoolCurator> poolCuratorProvider) {
+        this(poolCuratorProvider, config.getInt(ConfigProperties.POOL_SEARCH_INDEX_MAX_OWNERS),
+            config.getLong(ConfigProperties.POOL_SEARCH_INDEX_MAX_AGE) * 1000);
+    }
+
+    /**
+     * @param poolCuratorProvider provides the curator to load search terms with
+     * @param maxOwners the number of owners to index
+     * @param maxAge the milliseconds after which an owner's index is rebuilt
+     */
+    public PoolSearchIndex(Provider<PoolCurator> poolCuratorProvider, final int maxOwners,
+        long maxAge) {
+        this.poolCuratorProvider = poolCuratorProvider;
+        this.maxOwners = maxOwners;
+        this.maxAge = maxAge;
+        this.owners = new LinkedHashMap<String, OwnerIndex>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, OwnerIndex> eldest) {
+                return size() > maxOwners;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxOwners > 0;
+    }
+
+    /**
+     * Finds the pools with a search term matching the given text, the same way the
+     * "matches" filter does: case insensitive, against the whole term, with * and ?
+     * matching any number of characters and a single character.
+     *
+     * @param ownerId the id of the owner whose pools to search
+     * @param matches the text to search for
+     * @return the ids of the matching pools
+     */
+    public Set<String> findPoolIds(String ownerId, String matches) {
+        OwnerIndex index;
+        synchronized (owners) {
+            index = owners.get(ownerId);
+            if (index == null || index.isExpired()) {
+                index = new OwnerIndex(ownerId);
+                owners.put(ownerId, index);
+            }
+        }
+
+        return index.find(new SearchPattern(matches));
+    }
+
+    /**
+     * Marks a pool as changed, so its terms are reloaded before the next search of its
+     * owner's pools. Deleted pools are dropped when they are reloaded.
+     *
+     * @param ownerId the id of the pool's owner
+     * @param poolId the id of the changed pool
+     */
+    public void invalidatePool(String ownerId, String poolId) {
+        OwnerIndex index;
+        synchronized (owners) {
+            index = owners.get(ownerId);
+        }
+
+        if (index != null) {
+            index.invalidate(poolId);
+        }
+    }
+
+    /**
+     * Drops an owner's index, so it is rebuilt on the next search of its pools.
+     *
+     * @param ownerId the id of the owner
+     */
+    public void invalidateOwner(String ownerId) {
+        synchronized (owners) {
+            owners.remove(ownerId);
+        }
+    }
+
+    public int size() {
+        synchronized (owners) {
+            return owners.size();
+        }
+    }
+
+    /**
+     * A search of the "matches" filter, as a regular expression over lower cased terms
+     * and the literal runs of characters between its wildcards.
+     */
+    static class SearchPattern {
+        private final Pattern regex;
+        private final List<String> literals = new ArrayList<String>();
+
+        SearchPattern(String matches) {
+            // Parse the same LIKE pattern the database would be given
+            String like = FilterLikeExpression.escape(matches).toLowerCase(Locale.ENGLISH);
+            StringBuilder expression = new StringBuilder();
+            StringBuilder literal = new StringBuilder();
+
+            for (int i = 0; i < like.length(); i++) {
+                char ch = like.charAt(i);
+                if (ch == '!' && i + 1 < like.length()) {
+                    literal.append(like.charAt(++i));
+                }
+                else if (ch == '%' || ch == '_') {
+                    addLiteral(expression, literal);
+                    expression.append(ch == '%' ? ".*" : ".");
+                }
+                else {
+                    literal.append(ch);
+                }
+            }
+            addLiteral(expression, literal);
+
+            this.regex = Pattern.compile(expression.toString(), Pattern.DOTALL);
+        }
+
+        private void addLiteral(StringBuilder expression, StringBuilder literal) {
+            if (literal.length() > 0) {
+                expression.append(Pattern.quote(literal.toString()));
+                literals.add(literal.toString());
+                literal.setLength(0);
+            }
+        }
+
+        boolean matches(String term) {
+            return regex.matcher(term).matches();
+        }
+
+        Set<String> getTrigrams() {
+            Set<String> trigrams = new HashSet<String>();
+            for (String literal : literals) {
+                trigrams.addAll(trigrams(literal));
+            }
+            return trigrams;
+        }
+    }
+
+    private static Set<String> trigrams(String term) {
+        Set<String> trigrams = new HashSet<String>();
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            trigrams.add(term.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    /**
+     * The search terms of one owner's pools.
+     */
+    private class OwnerIndex {
+        private final String ownerId;
+        private final long created = System.currentTimeMillis();
+        private boolean loaded;
+
+        private final Set<String> changedPools = new HashSet<String>();
+        private final Map<String, Set<String>> poolTerms = new HashMap<String, Set<String>>();
+        private final Map<String, Set<String>> termPools = new HashMap<String, Set<String>>();
+        private final Map<String, Set<String>> trigramTerms = new HashMap<String, Set<String>>();
+
+        OwnerIndex(String ownerId) {
+            this.ownerId = ownerId;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() - created > maxAge;
+        }
+
+        synchronized void invalidate(String poolId) {
+            // Pools changed before the index is loaded are loaded as they are
+            if (loaded) {
+                changedPools.add(poolId);
+            }
+        }
+
+        synchronized Set<String> find(SearchPattern pattern) {
+            refresh();
+
+            Set<String> result = new HashSet<String>();
+            for (String term : candidateTerms(pattern)) {
+                if (pattern.matches(term)) {
+                    result.addAll(termPools.get(term));
+                }
+            }
+            return result;
+        }
+
+        private Collection<String> candidateTerms(SearchPattern pattern) {
+            Set<String> trigrams = pattern.getTrigrams();
+            if (trigrams.isEmpty()) {
+                return termPools.keySet();
+            }
+
+            // Intersect the terms of every trigram, starting with the rarest
+            Set<String> smallest = null;
+            for (String trigram : trigrams) {
+                Set<String> terms = trigramTerms.get(trigram);
+                if (terms == null) {
+                    return new HashSet<String>();
+                }
+                if (smallest == null || terms.size() < smallest.size()) {
+                    smallest = terms;
+                }
+            }
+
+            Set<String> candidates = new HashSet<String>(smallest);
+            for (String trigram : trigrams) {
+                candidates.retainAll(trigramTerms.get(trigram));
+            }
+            return candidates;
+        }
+
+        private void refresh() {
+            PoolCurator poolCurator = poolCuratorProvider.get();
+            if (!loaded) {
+                long start = System.currentTimeMillis();
+                add(poolCurator.getPoolSearchTerms(ownerId, null));
+                loaded = true;
+                log.debug("Indexed {} search terms of {} pools of owner {} in {}ms",
+                    termPools.size(), poolTerms.size(), ownerId, System.currentTimeMillis() - start);
+            }
+            else if (!changedPools.isEmpty()) {
+                for (String poolId : changedPools) {
+                    remove(poolId);
+                }
+                Set<String> poolIds = new HashSet<String>(changedPools);
+                changedPools.clear();
+                add(poolCurator.getPoolSearchTerms(ownerId, poolIds));
+            }
+        }
+
+        private void add(Map<String, Set<String>> terms) {
+            for (Map.Entry<String, Set<String>> entry : terms.entrySet()) {
+                Set<String> lowered = new HashSet<String>();
+                for (String term : entry.getValue()) {
+                    lowered.add(term.toLowerCase(Locale.ENGLISH));
+                }
+                poolTerms.put(entry.getKey(), lowered);
+
+                for (String term : lowered) {
+                    Set<String> pools = termPools.get(term);
+                    if (pools == null) {
+                        pools = new HashSet<String>();
+                        termPools.put(term, pools);
+                        for (String trigram : trigrams(term)) {
+                            Set<String> trigramTermSet = trigramTerms.get(trigram);
+                            if (trigramTermSet == null) {
+                                trigramTermSet = new HashSet<String>();
+                                trigramTerms.put(trigram, trigramTermSet);
+                            }
+                            trigramTermSet.add(term);
+                        }
+                    }
+                    pools.add(entry.getKey());
+                }
+            }
+        }
+
+        private void remove(String poolId) {
+            Set<String> terms = poolTerms.remove(poolId);
+            if (terms == null) {
+                return;
+            }
+
+            for (String term : terms) {
+                Set<String> pools = termPools.get(term);
+                pools.remove(poolId);
+                if (pools.isEmpty()) {
+                    termPools.remove(term);
+                    for (String trigram : trigrams(term)) {
+                        Set<String> trigramTermSet = trigramTerms.get(trigram);
+                        trigramTermSet.remove(term);
+                        if (trigramTermSet.isEmpty()) {
+                            trigramTerms.remove(trigram);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -16,18 +16,28 @@ package org.candlepin.pinsetter.tasks;
 
 import static org.quartz.JobBuilder.*;
 
+import org.candlepin.auth.Principal;
+import org.candlepin.auth.SystemPrincipal;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.controller.Entitler;
+import org.candlepin.guice.CandlepinRequestScope;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.Entitlement;
+import org.candlepin.model.JobCurator;
 import org.candlepin.model.OwnerCurator;
+import org.candlepin.model.Pool;
+import org.candlepin.model.PoolCurator;
 import org.candlepin.pinsetter.core.model.JobStatus;
 import org.candlepin.resource.dto.AutobindData;
 import org.candlepin.util.Util;
 
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 import com.google.inject.persist.Transactional;
 
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
 import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
 import org.quartz.JobExecutionContext;
@@ -35,24 +45,51 @@ import org.quartz.JobExecutionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * HealEntireOrgJob
+ *
+ * Heals every consumer of an owner. With a batch size configured, the consumers are
+ * split into batches which are healed on the threads of the {@link HealOrgExecutor},
+ * each batch in its own unit of work with its own entitler and rules. Progress is
+ * recorded in the job status after every batch, so a job which is run again after
+ * being interrupted skips the consumers it has already healed.
  */
 public class HealEntireOrgJob extends UniqueByEntityJob {
     private static Logger log = LoggerFactory.getLogger(HealEntireOrgJob.class);
     protected OwnerCurator ownerCurator;
     protected Entitler entitler;
     protected ConsumerCurator consumerCurator;
+    protected JobCurator jobCurator;
+    protected HealOrgExecutor executor;
+    protected Provider<Entitler> entitlerProvider;
+    protected PoolCurator poolCurator;
+    protected CandlepinRequestScope requestScope;
     protected static String prefix = "heal_entire_org_";
 
     @Inject
-    public HealEntireOrgJob(Entitler e, ConsumerCurator c, OwnerCurator o) {
+    public HealEntireOrgJob(Entitler e, ConsumerCurator c, OwnerCurator o, JobCurator j,
+        HealOrgExecutor executor, Provider<Entitler> entitlerProvider, PoolCurator poolCurator,
+        CandlepinRequestScope requestScope) {
         this.entitler = e;
         this.consumerCurator = c;
         this.ownerCurator = o;
+        this.jobCurator = j;
+        this.executor = executor;
+        this.entitlerProvider = entitlerProvider;
+        this.poolCurator = poolCurator;
+        this.requestScope = requestScope;
     }
 
     @Override
@@ -62,20 +99,34 @@ public class HealEntireOrgJob extends UniqueByEntityJob {
             String ownerId = (String) map.get("ownerId");
             Date entitleDate = (Date) map.get("entitle_date");
             List<String> uuids = ownerCurator.getConsumerUuids(ownerId);
+
+            int batchSize = config.getInt(ConfigProperties.HEAL_ORG_BATCH_SIZE);
+            if (batchSize > 0) {
+                String jobId = ctx.getJobDetail().getKey().getName();
+                ctx.setResult(healInBatches(jobId, uuids, entitleDate, batchSize));
+                return;
+            }
+
+            HealProgress progress = new HealProgress(uuids.size());
+            long start = System.currentTimeMillis();
             for (String uuid : uuids) {
                 // Do not send in product IDs.  CandlepinPoolManager will take care
                 // of looking up the non or partially compliant products to bind.
                 try {
                     Consumer consumer = consumerCurator.getConsumer(uuid);
-                    healSingleConsumer(consumer, entitleDate);
+                    healSingleConsumer(entitler, consumer, entitleDate);
+                    progress.healed++;
                 }
                 // We want to catch everything and continue.
                 // Perhaps add something to surface errors later
                 catch (Exception e) {
+                    progress.failed++;
                     log.debug("Healing failed for UUID " + uuid +
                         " with message: " + e.getMessage());
                 }
             }
+            progress.elapsedMillis = System.currentTimeMillis() - start;
+            ctx.setResult(progress);
         }
         catch (Exception e) {
             log.error("EntitlerJob encountered a problem.", e);
@@ -84,13 +135,227 @@ public class HealEntireOrgJob extends UniqueByEntityJob {
         }
     }
 
+    private HealProgress healInBatches(String jobId, List<String> uuids, final Date entitleDate,
+        int batchSize) throws Exception {
+        HealProgress progress = resumeProgress(jobId, uuids.size());
+
+        // Healing in uuid order lets a single uuid mark how far the job got
+        List<String> remaining = new ArrayList<String>(uuids.size());
+        for (String uuid : uuids) {
+            if (progress.healedThrough == null || uuid.compareTo(progress.healedThrough) > 0) {
+                remaining.add(uuid);
+            }
+        }
+        Collections.sort(remaining);
+        if (remaining.size() < uuids.size()) {
+            log.info("Resuming heal of {} consumers after {}", remaining.size(),
+                progress.healedThrough);
+        }
+
+        // The heal threads run as whoever started the job
+        Principal principal = ResteasyProviderFactory.getContextData(Principal.class);
+        final Principal jobPrincipal = principal != null ? principal : new SystemPrincipal();
+        final AtomicBoolean stopped = new AtomicBoolean();
+
+        final List<List<String>> batches = Lists.partition(remaining, batchSize);
+        CompletionService<int[]> service = executor.newBatch();
+        List<Future<int[]>> futures = new ArrayList<Future<int[]>>(batches.size());
+        for (int i = 0; i < batches.size(); i++) {
+            final int index = i;
+            futures.add(service.submit(new Callable<int[]>() {
+                @Override
+                public int[] call() {
+                    return healBatch(index, batches.get(index), entitleDate, jobPrincipal, stopped);
+                }
+            }));
+        }
+
+        long start = System.currentTimeMillis();
+        long elapsedBefore = progress.elapsedMillis;
+        boolean[] done = new boolean[batches.size()];
+        int healedBatches = 0;
+        try {
+            for (int i = 0; i < batches.size(); i++) {
+                int[] result = service.take().get();
+                done[result[0]] = true;
+                progress.healed += result[1];
+                progress.failed += result[2];
+
+                // Batches finish out of order, only a run of finished batches moves the mark
+                while (healedBatches < done.length && done[healedBatches]) {
+                    List<String> batch = batches.get(healedBatches++);
+                    progress.healedThrough = batch.get(batch.size() - 1);
+                }
+                progress.elapsedMillis = elapsedBefore + System.currentTimeMillis() - start;
+                jobCurator.updateResult(jobId, progress);
+            }
+        }
+        finally {
+            // A failed batch fails the job, the batches still running stop at their next consumer
+            stopped.set(true);
+            awaitBatches(futures);
+        }
+
+        log.info("Heal of owner finished: {}", progress);
+        return progress;
+    }
+
+    private HealProgress resumeProgress(String jobId, int total) {
+        JobStatus status = jobCurator.find(jobId);
+        if (status != null && status.getResultData() instanceof HealProgress) {
+            HealProgress progress = (HealProgress) status.getResultData();
+            progress.total = total;
+            return progress;
+        }
+        return new HealProgress(total);
+    }
+
+    /*
+     * Waits for the batches which are running, so none of them still binds after the
+     * job has ended. Batches which have not started yet return without healing.
+     */
+    private void awaitBatches(List<Future<int[]>> futures) {
+        for (Future<int[]> future : futures) {
+            try {
+                future.get();
+            }
+            catch (ExecutionException e) {
+                log.debug("Heal batch failed", e.getCause());
+            }
+            catch (InterruptedException e) {
+                for (Future<int[]> other : futures) {
+                    other.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /*
+     * Runs on a heal thread. Returns the batch index with its healed and failed counts.
+     */
+    private int[] healBatch(int index, List<String> uuids, Date entitleDate, Principal principal,
+        AtomicBoolean stopped) {
+        int healed = 0;
+        int failed = 0;
+        boolean startedUow = startUnitOfWork();
+        if (requestScope != null) {
+            requestScope.enter();
+        }
+        ResteasyProviderFactory.pushContext(Principal.class, principal);
+        try {
+            // The rules behind an entitler each keep a single javascript scope, so the
+            // heal threads must not share one
+            Entitler batchEntitler = entitlerProvider.get();
+            for (String uuid : uuids) {
+                if (stopped.get() || Thread.currentThread().isInterrupted()) {
+                    log.info("Heal batch {} stopped with {} consumers healed", index, healed);
+                    break;
+                }
+                try {
+                    Consumer consumer = consumerCurator.getConsumer(uuid);
+                    healLockedConsumer(batchEntitler, consumer, entitleDate);
+                    healed++;
+                }
+                catch (Exception e) {
+                    failed++;
+                    log.debug("Healing failed for UUID " + uuid +
+                        " with message: " + e.getMessage());
+                }
+            }
+
+            // The event sink queues the events of each thread separately
+            if (eventSink != null) {
+                eventSink.sendEvents();
+            }
+        }
+        finally {
+            ResteasyProviderFactory.popContextData(Principal.class);
+            if (requestScope != null) {
+                requestScope.exit();
+            }
+            if (startedUow) {
+                endUnitOfWork();
+            }
+        }
+        return new int[] { index, healed, failed };
+    }
+
+    /*
+     * Heals a consumer alongside the other batches. The pools the consumer could bind
+     * are locked in id order before they are read, so batches binding the same pools
+     * queue up on the rows rather than all taking the same free quantity.
+     */
+    @Transactional
+    protected void healLockedConsumer(Entitler batchEntitler, Consumer consumer, Date date) {
+        List<String> poolIds = new ArrayList<String>();
+        for (Pool pool : poolCurator.listAvailableEntitlementPools(consumer, consumer.getOwner(),
+            (String) null, date, true)) {
+            poolIds.add(pool.getId());
+        }
+        Collections.sort(poolIds);
+        poolCurator.lockAndLoadBatch(poolIds);
+        healSingleConsumer(batchEntitler, consumer, date);
+    }
+
     /*
-     * Each consumer heal should be a separate transaction
+     * Each consumer heal should be a separate transaction, so the pool rows locked
+     * while binding are held for one consumer only.
      */
     @Transactional
-    private void healSingleConsumer(Consumer consumer, Date date) {
-        List<Entitlement> ents = entitler.bindByProducts(AutobindData.create(consumer).on(date), true);
-        entitler.sendEvents(ents);
+    protected void healSingleConsumer(Entitler consumerEntitler, Consumer consumer, Date date) {
+        List<Entitlement> ents = consumerEntitler.bindByProducts(
+            AutobindData.create(consumer).on(date), true);
+        consumerEntitler.sendEvents(ents);
+    }
+
+    /**
+     * The progress of an org heal, kept as the job result.
+     */
+    public static class HealProgress implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private int total;
+        private int healed;
+        private int failed;
+        private String healedThrough;
+        private long elapsedMillis;
+
+        public HealProgress(int total) {
+            this.total = total;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getHealed() {
+            return healed;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public String getHealedThrough() {
+            return healedThrough;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public double getConsumersPerSecond() {
+            return elapsedMillis > 0 ? (healed + failed) * 1000.0 / elapsedMillis : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH,
+                "Healed %d of %d consumers, %d failed, in %d ms (%.1f consumers/s)",
+                healed, total, failed, elapsedMillis, getConsumersPerSecond());
+        }
     }
 
     public static JobDetail healEntireOrg(String ownerId, Date entitleDate) {
@@ -104,6 +369,7 @@ public class HealEntireOrgJob extends UniqueByEntityJob {
             .withIdentity("heal_entire_org_" + Util.generateUUID())
             .usingJobData(map)
             .storeDurably(true) //required if we have to postpone the job
+            .requestRecovery(true) //run again if interrupted, resuming from its progress
             .build();
 
         return detail;
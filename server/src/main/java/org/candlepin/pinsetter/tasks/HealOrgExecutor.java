@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.tasks;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.util.BatchExecutor;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * HealOrgExecutor
+ *
+ * A bounded pool of threads healing batches of consumers for {@link HealEntireOrgJob}.
+ * The threads live as long as the server, since the event sink keeps a messaging
+ * session open for every thread which queues events.
+ */
+@Singleton
+public class HealOrgExecutor extends BatchExecutor {
+
+    @Inject
+    public HealOrgExecutor(Configuration config) {
+        this(config.getInt(ConfigProperties.HEAL_ORG_THREADS));
+    }
+
+    public HealOrgExecutor(int threads) {
+        super("healorg", threads);
+    }
+}
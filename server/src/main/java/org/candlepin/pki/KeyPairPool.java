@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pki;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * KeyPairPool
+ *
+ * Keeps a buffer of freshly generated consumer key pairs, so that registering
+ * consumers do not have to wait for RSA key generation. A single background thread
+ * tops the buffer up whenever key pairs are taken from it. Taking a key pair never
+ * blocks; when the buffer has run dry the key pair is generated inline instead.
+ * A size of zero disables the pool.
+ */
+@Singleton
+public class KeyPairPool {
+    private static Logger log = LoggerFactory.getLogger(KeyPairPool.class);
+
+    private final int size;
+    private final PKIUtility pki;
+    private final Queue<KeyPair> pairs = new ConcurrentLinkedQueue<KeyPair>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    private final AtomicLong pooled = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    private ExecutorService executor;
+    private boolean closed = false;
+
+    @Inject
+    public KeyPairPool(Configuration config, PKIUtility pki) {
+        this(config.getInt(ConfigProperties.KEYPAIR_POOL_SIZE), pki);
+    }
+
+    public KeyPairPool(int size, PKIUtility pki) {
+        this.size = size;
+        this.pki = pki;
+    }
+
+    public boolean isEnabled() {
+        return size > 0;
+    }
+
+    /**
+     * Hands out an unused key pair, generating it on the calling thread if the
+     * buffer is empty.
+     *
+     * @return a new key pair
+     * @throws NoSuchAlgorithmException if no RSA key generator is available
+     */
+    public KeyPair take() throws NoSuchAlgorithmException {
+        KeyPair pair = pairs.poll();
+        if (pair != null) {
+            depth.decrementAndGet();
+            pooled.incrementAndGet();
+            fill();
+            return pair;
+        }
+
+        if (isEnabled()) {
+            fallbacks.incrementAndGet();
+            log.debug("Key pair pool is empty, generating key pair inline");
+            fill();
+        }
+        return pki.generateNewKeyPair();
+    }
+
+    /**
+     * Starts topping up the buffer in the background, unless that is already
+     * in progress or the buffer is full.
+     */
+    public void fill() {
+        if (!isEnabled() || depth.get() >= size || !refilling.compareAndSet(false, true)) {
+            return;
+        }
+
+        ExecutorService refiller = getExecutor();
+        if (refiller == null) {
+            refilling.set(false);
+            return;
+        }
+
+        try {
+            refiller.execute(new Runnable() {
+                @Override
+                public void run() {
+                    refill();
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            // closed in the meantime
+            refilling.set(false);
+        }
+    }
+
+    private void refill() {
+        boolean failed = false;
+        try {
+            while (depth.get() < size && !Thread.currentThread().isInterrupted()) {
+                pairs.add(pki.generateNewKeyPair());
+                depth.incrementAndGet();
+            }
+        }
+        catch (Exception e) {
+            log.error("Unable to generate key pairs for the pool", e);
+            failed = true;
+        }
+        finally {
+            refilling.set(false);
+        }
+
+        // a key pair may have been taken after the loop ended
+        if (!failed && !Thread.currentThread().isInterrupted()) {
+            fill();
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null && !closed) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "keypair-pool");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    public synchronized void close() {
+        closed = true;
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * @return the number of key pairs currently buffered
+     */
+    public int getDepth() {
+        return depth.get();
+    }
+
+    /**
+     * @return the number of key pairs handed out from the buffer
+     */
+    public long getPooled() {
+        return pooled.get();
+    }
+
+    /**
+     * @return the number of key pairs generated inline because the buffer was empty
+     */
+    public long getFallbacks() {
+        return fallbacks.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("KeyPairPool [depth: %d/%d, pooled: %d, fallbacks: %d]",
+            getDepth(), size, getPooled(), getFallbacks());
+    }
+}
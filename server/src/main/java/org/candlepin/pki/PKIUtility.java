@@ -44,6 +44,7 @@ import java.security.cert.X509Certificate;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
@@ -173,8 +174,7 @@ public abstract class PKIUtility {
 
     public byte[] getSHA256WithRSAHash(InputStream input) {
         try {
-            Signature signature = Signature.getInstance("SHA256withRSA");
-            signature.initSign(reader.getCaKey());
+            Signature signature = getSHA256WithRSASigner();
 
             updateSignature(input, signature);
             return signature.sign();
@@ -184,6 +184,24 @@ public abstract class PKIUtility {
         }
     }
 
+    /**
+     * Creates a signature which signs with the CA key, producing the same hash as
+     * {@link #getSHA256WithRSAHash(InputStream)}. It lets data be signed as it is
+     * written rather than read back afterwards.
+     *
+     * @return a SHA256withRSA signature initialized for signing
+     */
+    public Signature getSHA256WithRSASigner() {
+        try {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(reader.getCaKey());
+            return signature;
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public boolean verifySHA256WithRSAHashAgainstCACerts(
         File input, byte[] signedHash) throws CertificateException, IOException {
         log.debug("Verify against: " + reader.getCACert().getSerialNumber());
@@ -201,6 +219,53 @@ public abstract class PKIUtility {
         return false;
     }
 
+    /**
+     * Creates a signature for the CA certificate and each upstream CA certificate,
+     * so data can be checked against all of them as it is read, in a single pass.
+     *
+     * @return SHA256withRSA signatures initialized for verification
+     * @throws CertificateException if a CA certificate could not be read
+     * @throws IOException if a CA certificate could not be read
+     */
+    public List<Signature> getSHA256WithRSAVerifiers() throws CertificateException, IOException {
+        List<Certificate> certs = new ArrayList<Certificate>();
+        certs.add(reader.getCACert());
+        certs.addAll(reader.getUpstreamCACerts());
+
+        List<Signature> verifiers = new ArrayList<Signature>();
+        try {
+            for (Certificate cert : certs) {
+                Signature signature = Signature.getInstance("SHA256withRSA");
+                signature.initVerify(cert);
+                verifiers.add(signature);
+            }
+        }
+        catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+        return verifiers;
+    }
+
+    /**
+     * @param verifiers signatures from {@link #getSHA256WithRSAVerifiers()}, updated
+     *  with the signed data
+     * @param signedHash the signature to check
+     * @return true if the signature matches the data for any of the certificates
+     */
+    public boolean verifySHA256WithRSAHash(List<Signature> verifiers, byte[] signedHash) {
+        for (Signature verifier : verifiers) {
+            try {
+                if (verifier.verify(signedHash)) {
+                    return true;
+                }
+            }
+            catch (SignatureException se) {
+                log.debug("Signature could not be checked", se);
+            }
+        }
+        return false;
+    }
+
     public boolean verifySHA256WithRSAHash(InputStream input,
         byte[] signedHash, Certificate certificate) {
         try {
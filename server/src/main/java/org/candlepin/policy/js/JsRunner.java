@@ -15,6 +15,7 @@
 package org.candlepin.policy.js;
 
 import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
 import org.mozilla.javascript.Function;
 import org.mozilla.javascript.RhinoException;
 import org.mozilla.javascript.Scriptable;
@@ -24,6 +25,8 @@ import org.mozilla.javascript.Wrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * JsRunner - Responsible for running the javascript rules methods in all
  * namespaces.
@@ -39,10 +42,56 @@ public class JsRunner {
 
     private boolean initialized = false;
 
+    /*
+     * Only set when running in pooled scope mode. The namespace cache is shared by
+     * all runners of the same rules version, the contexts are one per thread.
+     */
+    private PooledScopes pooledScopes;
+    private ConcurrentMap<String, Object> namespaceCache;
+    private ThreadLocal<Context> threadContexts;
+
+    // The arguments last applied, put back whenever another runner used the pooled scope
+    private JsContext pooledContext;
+
+    // When set, JSON contexts are handed to the rules as native objects
+    private boolean nativeContext = false;
+
     public JsRunner(Scriptable scope) {
         this.scope = scope;
     }
 
+    JsRunner(PooledScopes pooledScopes) {
+        this.pooledScopes = pooledScopes;
+        this.namespaceCache = pooledScopes.getNamespaceCache();
+        this.threadContexts = pooledScopes.getContexts();
+    }
+
+    public void setNativeContext(boolean nativeContext) {
+        this.nativeContext = nativeContext;
+    }
+
+    /**
+     * Enters a Rhino context on the current thread, reusing the context previously
+     * created for this thread if there is one.
+     *
+     * @param threadContexts per-thread contexts, or null to always create a new one
+     * @return the entered context; callers must call Context.exit() when done
+     */
+    static Context enterContext(ThreadLocal<Context> threadContexts) {
+        if (threadContexts == null) {
+            return Context.enter();
+        }
+
+        Context context = threadContexts.get();
+        if (context == null) {
+            context = Context.enter();
+            threadContexts.set(context);
+            return context;
+        }
+
+        return ContextFactory.getGlobal().enterContext(context);
+    }
+
     /**
      * initialize the javascript rules for the provided namespace. you must run
      * this
@@ -55,13 +104,22 @@ public class JsRunner {
         this.namespace = namespace;
 
         if (!initialized) {
+            if (namespaceCache != null && namespaceCache.containsKey(namespace)) {
+                this.rulesNameSpace = namespaceCache.get(namespace);
+                this.initialized = true;
+                return;
+            }
 
-            Context context = Context.enter();
+            Scriptable rulesScope = getScope();
+            Context context = enterContext(threadContexts);
             try {
-                Object func = ScriptableObject.getProperty(scope, namespace);
+                Object func = ScriptableObject.getProperty(rulesScope, namespace);
                 this.rulesNameSpace = unwrapReturnValue(((Function) func)
-                    .call(context, scope, scope, Context.emptyArgs));
+                    .call(context, rulesScope, rulesScope, Context.emptyArgs));
 
+                if (namespaceCache != null && this.rulesNameSpace != null) {
+                    namespaceCache.putIfAbsent(namespace, this.rulesNameSpace);
+                }
                 this.initialized = true;
             }
             catch (RhinoException ex) {
@@ -90,15 +148,16 @@ public class JsRunner {
     @SuppressWarnings("unchecked")
     public <T> T invokeMethod(String method)
         throws NoSuchMethodException, RhinoException {
-        Scriptable localScope = Context.toObject(this.rulesNameSpace, scope);
+        Scriptable rulesScope = getScope();
+        Scriptable localScope = Context.toObject(this.rulesNameSpace, rulesScope);
         Object func = ScriptableObject.getProperty(localScope, method);
         if (!(func instanceof Function)) {
             throw new NoSuchMethodException(
                 "no such javascript method: " + method);
         }
-        Context context = Context.enter();
+        Context context = enterContext(threadContexts);
         try {
-            return (T) unwrapReturnValue(((Function) func).call(context, scope,
+            return (T) unwrapReturnValue(((Function) func).call(context, rulesScope,
                 localScope, Context.emptyArgs));
         }
         finally {
@@ -109,7 +168,7 @@ public class JsRunner {
     @SuppressWarnings("unchecked")
     public <T> T invokeMethod(String method, JsContext context)
         throws NoSuchMethodException, RhinoException {
-        context.applyTo(scope);
+        applyContext(context);
         return (T) invokeMethod(method);
     }
 
@@ -130,10 +189,59 @@ public class JsRunner {
     }
 
     public <T> T invokeRule(String ruleName, JsContext context) {
-        context.applyTo(scope);
+        applyContext(context);
         return invokeRule(ruleName);
     }
 
+    /*
+     * The scope to execute in. A pooled scope belongs to the current thread and may
+     * have been cleared by another runner since this one last used it, in which case
+     * this runner's arguments are applied to it again.
+     */
+    private Scriptable getScope() {
+        if (pooledScopes == null) {
+            return scope;
+        }
+
+        if (pooledScopes.claim(this, pooledContext) && pooledContext != null) {
+            applyContext(pooledContext, pooledScopes.current());
+        }
+        return pooledScopes.current();
+    }
+
+    private void applyContext(JsContext context) {
+        if (pooledScopes == null) {
+            applyContext(context, scope);
+            return;
+        }
+
+        // Every set of arguments starts from an empty scope
+        pooledScopes.reset(this, context);
+        pooledContext = context;
+        applyContext(context, pooledScopes.current());
+    }
+
+    private void applyContext(JsContext context, Scriptable target) {
+        // Prepared contexts are already serialized, there is nothing left to convert
+        if (!nativeContext || !(context instanceof JsonJsContext) ||
+            ((JsonJsContext) context).isPrepared()) {
+            context.applyTo(target);
+            return;
+        }
+
+        JsContext nativeArgs = context instanceof NativeJsContext ?
+            context : new NativeJsContext((JsonJsContext) context);
+
+        // Building the objects needs a context, enter ours so a pooled one is reused
+        enterContext(threadContexts);
+        try {
+            nativeArgs.applyTo(target);
+        }
+        finally {
+            Context.exit();
+        }
+    }
+
     public <T extends Object> T runJsFunction(Class<T> clazz, String function,
         JsContext context) {
         T returner = null;
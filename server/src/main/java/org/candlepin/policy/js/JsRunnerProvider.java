@@ -14,6 +14,8 @@
  */
 package org.candlepin.policy.js;
 
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.model.Rules;
 import org.candlepin.model.Rules.RulesSourceEnum;
 import org.candlepin.model.RulesCurator;
@@ -61,6 +63,21 @@ public class JsRunnerProvider implements Provider<JsRunner> {
     // Use this lock to access script, scope and updated
     private ReadWriteLock scriptLock = new ReentrantReadWriteLock();
 
+    /**
+     * Pooled scope mode: every thread reuses a single Rhino context and a single
+     * child scope, which is cleared whenever a different runner uses it, and the
+     * namespace objects returned by the rules are shared by all runners until the
+     * rules are recompiled.
+     */
+    private final boolean pooledScopes;
+    private final ThreadLocal<Context> threadContexts = new ThreadLocal<Context>();
+
+    // Hand the rules native javascript objects rather than JSON strings
+    private final boolean nativeContext;
+
+    // Replaced on every compile, so a rules version bump drops all pooled scopes
+    private PooledScopes scopePool;
+
     /**
      * DynamicScopeContextFactory - replace the standard rhino context factory with one that
      * enables dynamic scopes. Dynamic scopes allow us to define a global var (ie pools) in
@@ -82,9 +99,27 @@ public class JsRunnerProvider implements Provider<JsRunner> {
     }
 
     @Inject
+    public JsRunnerProvider(RulesCurator rulesCurator, Provider<JsRunnerRequestCache> cacheProvider,
+        Configuration config) {
+        this(rulesCurator, cacheProvider, config.getBoolean(ConfigProperties.RULES_POOLED_SCOPES),
+            config.getBoolean(ConfigProperties.RULES_NATIVE_CONTEXT));
+    }
+
     public JsRunnerProvider(RulesCurator rulesCurator, Provider<JsRunnerRequestCache> cacheProvider) {
+        this(rulesCurator, cacheProvider, false);
+    }
+
+    public JsRunnerProvider(RulesCurator rulesCurator, Provider<JsRunnerRequestCache> cacheProvider,
+        boolean pooledScopes) {
+        this(rulesCurator, cacheProvider, pooledScopes, false);
+    }
+
+    public JsRunnerProvider(RulesCurator rulesCurator, Provider<JsRunnerRequestCache> cacheProvider,
+        boolean pooledScopes, boolean nativeContext) {
         this.rulesCurator = rulesCurator;
         this.cacheProvider = cacheProvider;
+        this.pooledScopes = pooledScopes;
+        this.nativeContext = nativeContext;
 
         log.debug("Compiling rules for initial load");
         this.rulesCurator.updateDbRules();
@@ -125,6 +160,7 @@ public class JsRunnerProvider implements Provider<JsRunner> {
                     rules.getRules(), "rules", 1, null);
                 script.exec(context, scope);
                 ((ScriptableObject) scope).sealObject();
+                this.scopePool = new PooledScopes(scope, threadContexts);
                 this.currentRulesUpdated = newUpdated;
             }
             finally {
@@ -156,6 +192,22 @@ public class JsRunnerProvider implements Provider<JsRunner> {
         if (!updated.equals(this.currentRulesUpdated)) {
             compileRules();
         }
+        return getCompiled();
+    }
+
+    /**
+     * Creates a runner for the rules which are currently compiled, without checking
+     * the database for newer rules. This is meant for worker threads which have
+     * neither a request nor a database session; the thread handing them work should
+     * have called {@link #get()} first.
+     *
+     * @return a runner with its own rules scope
+     */
+    public JsRunner getCompiled() {
+        if (this.pooledScopes) {
+            return getPooled();
+        }
+
         Scriptable rulesScope;
         scriptLock.readLock().lock();
         try {
@@ -169,7 +221,24 @@ public class JsRunnerProvider implements Provider<JsRunner> {
             scriptLock.readLock().unlock();
         }
 
-        return new JsRunner(rulesScope);
+        JsRunner runner = new JsRunner(rulesScope);
+        runner.setNativeContext(nativeContext);
+        return runner;
+    }
+
+    /*
+     * Hands out a runner which executes in the scope of whichever thread invokes it.
+     */
+    private JsRunner getPooled() {
+        scriptLock.readLock().lock();
+        try {
+            JsRunner runner = new JsRunner(scopePool);
+            runner.setNativeContext(nativeContext);
+            return runner;
+        }
+        finally {
+            scriptLock.readLock().unlock();
+        }
     }
 
     public String getRulesVersion() {
@@ -26,8 +26,9 @@ import org.mozilla.javascript.Scriptable;
  */
 public class JsonJsContext extends JsContext {
 
-    private final RulesObjectMapper rulesObjectMapper;
-    private ArgumentJsContext nonSerializableContext;
+    protected final RulesObjectMapper rulesObjectMapper;
+    protected ArgumentJsContext nonSerializableContext;
+    private String preparedJson;
 
     public JsonJsContext(RulesObjectMapper rulesObjectMapper) {
         this.rulesObjectMapper = rulesObjectMapper;
@@ -36,10 +37,25 @@ public class JsonJsContext extends JsContext {
 
     @Override
     public void applyTo(Scriptable scope) {
-        scope.put("json_context", scope, this.rulesObjectMapper.toJsonString(contextArgs));
+        String json = preparedJson != null ? preparedJson :
+            this.rulesObjectMapper.toJsonString(contextArgs);
+        scope.put("json_context", scope, json);
         nonSerializableContext.applyTo(scope);
     }
 
+    /**
+     * Serializes the context arguments now rather than when the context is applied.
+     * This allows the context to be applied on another thread, which must not touch
+     * the (possibly lazily loaded) objects the arguments refer to.
+     */
+    public void prepare() {
+        preparedJson = this.rulesObjectMapper.toJsonString(contextArgs);
+    }
+
+    public boolean isPrepared() {
+        return preparedJson != null;
+    }
+
     public void put(String contextKey, Object contextVal, boolean serializable) {
         if (!serializable) {
             nonSerializableContext.put(contextKey, contextVal);
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js;
+
+import org.candlepin.common.exceptions.IseException;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import org.mozilla.javascript.BaseFunction;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * NativeJsContext
+ *
+ * A drop-in replacement for {@link JsonJsContext} which hands the rules an already
+ * built javascript object graph instead of a JSON string. The objects are serialized
+ * with the same {@link RulesObjectMapper} filters, but into a token buffer that is
+ * read straight into Rhino objects, so no JSON text is ever written or parsed.
+ *
+ * The rules still call JSON.parse(json_context); the scope is given a JSON object
+ * whose parse function returns objects untouched and parses strings as before.
+ */
+public class NativeJsContext extends JsonJsContext {
+
+    public NativeJsContext(RulesObjectMapper rulesObjectMapper) {
+        super(rulesObjectMapper);
+    }
+
+    /**
+     * Creates a native context carrying the same arguments as the given JSON context.
+     *
+     * @param source the context to copy the arguments from
+     */
+    public NativeJsContext(JsonJsContext source) {
+        super(source.rulesObjectMapper);
+        this.contextArgs.putAll(source.contextArgs);
+        this.nonSerializableContext = source.nonSerializableContext;
+    }
+
+    @Override
+    public void applyTo(Scriptable scope) {
+        TokenBuffer buffer = this.rulesObjectMapper.toTokenBuffer(contextArgs);
+
+        Context context = Context.enter();
+        try {
+            JsonParser parser = buffer.asParser();
+            parser.nextToken();
+            scope.put("json_context", scope, readValue(context, scope, parser));
+            parser.close();
+
+            if (!scope.has("JSON", scope)) {
+                scope.put("JSON", scope, createJsonObject(context, scope));
+            }
+        }
+        catch (IOException e) {
+            throw new IseException("Unable to build javascript objects for the rules.", e);
+        }
+        finally {
+            Context.exit();
+        }
+
+        nonSerializableContext.applyTo(scope);
+    }
+
+    /*
+     * Builds the value at the current token the same way JSON.parse would have: all
+     * numbers become doubles and index-like keys become array style properties.
+     */
+    private Object readValue(Context context, Scriptable scope, JsonParser parser)
+        throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        switch (token) {
+            case START_OBJECT:
+                Scriptable object = context.newObject(scope);
+                while (parser.nextToken() != JsonToken.END_OBJECT) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    Object value = readValue(context, scope, parser);
+
+                    long index = ScriptRuntime.indexFromString(name);
+                    if (index < 0) {
+                        object.put(name, object, value);
+                    }
+                    else {
+                        object.put((int) index, object, value);
+                    }
+                }
+                return object;
+            case START_ARRAY:
+                List<Object> items = new ArrayList<Object>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    items.add(readValue(context, scope, parser));
+                }
+                return context.newArray(scope, items.toArray());
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            case VALUE_EMBEDDED_OBJECT:
+                Object embedded = parser.getEmbeddedObject();
+                if (embedded instanceof byte[]) {
+                    return Base64Variants.getDefaultVariant().encode((byte[]) embedded);
+                }
+                return embedded == null ? null : embedded.toString();
+            default:
+                throw new IOException("Unexpected token in rules context: " + token);
+        }
+    }
+
+    private Scriptable createJsonObject(Context context, Scriptable scope) {
+        Scriptable json = (Scriptable) ScriptableObject.getProperty(scope, "JSON");
+        Function parse = (Function) ScriptableObject.getProperty(json, "parse");
+
+        Scriptable passThrough = context.newObject(scope);
+        passThrough.setPrototype(json);
+
+        PassThroughParse passThroughParse = new PassThroughParse(parse);
+        ScriptRuntime.setFunctionProtoAndParent(passThroughParse, scope);
+        passThrough.put("parse", passThrough, passThroughParse);
+        return passThrough;
+    }
+
+    /**
+     * JSON.parse replacement that returns values which were never serialized as they
+     * are, and delegates everything else to the standard implementation.
+     */
+    private static class PassThroughParse extends BaseFunction {
+        private static final long serialVersionUID = 1L;
+
+        private final Function delegate;
+
+        PassThroughParse(Function delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Object call(Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+            if (args.length > 0 && args[0] instanceof Scriptable) {
+                return args[0];
+            }
+            return delegate.call(cx, scope, thisObj, args);
+        }
+    }
+}
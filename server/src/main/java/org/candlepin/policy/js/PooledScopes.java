@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * PooledScopes - the scopes runners of one compiled rules version execute in when
+ * scopes are pooled.
+ *
+ * Every thread has a single child scope of the rules scope. A runner claims the scope
+ * of the thread it is invoked on, and the scope is cleared whenever it is claimed by a
+ * different runner or with different arguments. Runners sharing a thread never see each
+ * other's arguments, and a runner used from several threads never shares a scope with
+ * another thread.
+ */
+class PooledScopes {
+    private final Scriptable parent;
+    private final ThreadLocal<Context> contexts;
+    private final ThreadLocal<ThreadScope> scopes = new ThreadLocal<ThreadScope>();
+
+    // The namespace objects returned by the rules, shared by all runners of the version
+    private final ConcurrentMap<String, Object> namespaceCache =
+        new ConcurrentHashMap<String, Object>();
+
+    /**
+     * ThreadScope - a thread's scope, and the runner and arguments it was last
+     * claimed with.
+     */
+    private static class ThreadScope {
+        private final Scriptable scope;
+        private Object owner;
+        private Object args;
+
+        ThreadScope(Scriptable scope) {
+            this.scope = scope;
+        }
+    }
+
+    /**
+     * @param parent the sealed scope of the compiled rules
+     * @param contexts the Rhino context of each thread
+     */
+    PooledScopes(Scriptable parent, ThreadLocal<Context> contexts) {
+        this.parent = parent;
+        this.contexts = contexts;
+    }
+
+    ThreadLocal<Context> getContexts() {
+        return contexts;
+    }
+
+    ConcurrentMap<String, Object> getNamespaceCache() {
+        return namespaceCache;
+    }
+
+    /**
+     * Hands the current thread's scope to a runner, clearing it unless it still holds
+     * the runner's arguments.
+     *
+     * @param runner the runner about to use the scope
+     * @param args the arguments the runner last applied, or null
+     * @return true if the scope was cleared, and the arguments must be applied again
+     */
+    boolean claim(Object runner, Object args) {
+        ThreadScope current = scopes.get();
+        if (current == null) {
+            current = new ThreadScope(createScope());
+            scopes.set(current);
+        }
+        else if (current.owner == runner && current.args == args) {
+            return false;
+        }
+        else {
+            clear(current.scope);
+        }
+
+        current.owner = runner;
+        current.args = args;
+        return true;
+    }
+
+    /**
+     * Hands the current thread's scope to a runner and clears it, ready for a new
+     * set of arguments.
+     *
+     * @param runner the runner about to use the scope
+     * @param args the arguments about to be applied
+     */
+    void reset(Object runner, Object args) {
+        if (!claim(runner, args)) {
+            clear(scopes.get().scope);
+        }
+    }
+
+    /**
+     * @return the current thread's scope, as last claimed
+     */
+    Scriptable current() {
+        return scopes.get().scope;
+    }
+
+    private Scriptable createScope() {
+        Context context = JsRunner.enterContext(contexts);
+        try {
+            Scriptable scope = context.newObject(parent);
+            scope.setPrototype(parent);
+            scope.setParentScope(null);
+            return scope;
+        }
+        finally {
+            Context.exit();
+        }
+    }
+
+    private void clear(Scriptable scope) {
+        for (Object id : scope.getIds()) {
+            if (id instanceof String) {
+                scope.delete((String) id);
+            }
+            else if (id instanceof Number) {
+                scope.delete(((Number) id).intValue());
+            }
+        }
+    }
+}
@@ -26,6 +26,7 @@ import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
 import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.fasterxml.jackson.datatype.hibernate4.Hibernate4Module;
 import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
 
@@ -102,10 +103,7 @@ public class RulesObjectMapper {
     }
 
     public String toJsonString(Map<String, Object> toSerialize) {
-        ObjectNode mainNode = this.mapper.createObjectNode();
-        for (Entry<String, Object> entry : toSerialize.entrySet()) {
-            mainNode.putPOJO(entry.getKey(), entry.getValue());
-        }
+        ObjectNode mainNode = createMainNode(toSerialize);
 
         try {
             return this.mapper.writeValueAsString(mainNode);
@@ -116,6 +114,36 @@ public class RulesObjectMapper {
         }
     }
 
+    /**
+     * Serializes the given objects into a buffer of JSON tokens instead of a string.
+     * The same filters apply as for {@link #toJsonString(Map)}, but the tokens can be
+     * read back without any text being generated or parsed.
+     *
+     * @param toSerialize the objects to serialize, keyed by their name in the result
+     * @return a buffer holding a single JSON object
+     */
+    public TokenBuffer toTokenBuffer(Map<String, Object> toSerialize) {
+        ObjectNode mainNode = createMainNode(toSerialize);
+        TokenBuffer buffer = new TokenBuffer(this.mapper, false);
+
+        try {
+            this.mapper.writeValue(buffer, mainNode);
+            return buffer;
+        }
+        catch (Exception e) {
+            log.error("Unable to serialize objects to JSON.", e);
+            throw new IseException("Unable to serialize objects to JSON.", e);
+        }
+    }
+
+    private ObjectNode createMainNode(Map<String, Object> toSerialize) {
+        ObjectNode mainNode = this.mapper.createObjectNode();
+        for (Entry<String, Object> entry : toSerialize.entrySet()) {
+            mainNode.putPOJO(entry.getKey(), entry.getValue());
+        }
+        return mainNode;
+    }
+
     public <T extends Object> T toObject(String json, Class<T> clazz) {
         try {
             return mapper.readValue(json, clazz);
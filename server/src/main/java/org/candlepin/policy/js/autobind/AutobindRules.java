@@ -14,12 +14,15 @@
  */
 package org.candlepin.policy.js.autobind;
 
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerInstalledProduct;
 import org.candlepin.model.Pool;
 import org.candlepin.model.PoolQuantity;
 import org.candlepin.model.Product;
 import org.candlepin.policy.js.JsRunner;
+import org.candlepin.policy.js.JsRunnerProvider;
 import org.candlepin.policy.js.JsonJsContext;
 import org.candlepin.policy.js.RuleExecutionException;
 import org.candlepin.policy.js.RulesObjectMapper;
@@ -53,16 +56,48 @@ public class AutobindRules {
     private JsRunner jsRules;
     private static Logger log = LoggerFactory.getLogger(AutobindRules.class);
     private RulesObjectMapper mapper;
+    private AutobindSolver solver;
 
+    public AutobindRules(JsRunner jsRules) {
+        this(jsRules, (AutobindSolver) null);
+    }
 
     @Inject
-    public AutobindRules(JsRunner jsRules) {
+    public AutobindRules(JsRunner jsRules, JsRunnerProvider jsProvider, Configuration config) {
+        this(jsRules, createSolver(jsProvider, config));
+    }
+
+    /**
+     * @param jsRules rules to select pools with
+     * @param solver solver to try before the rules, or null to always run the rules
+     */
+    public AutobindRules(JsRunner jsRules, AutobindSolver solver) {
         this.jsRules = jsRules;
+        this.solver = solver;
 
         mapper = RulesObjectMapper.instance();
         jsRules.init("autobind_name_space");
     }
 
+    /*
+     * The solver is only used with the rules it was written against, rules imported
+     * later may select pools differently.
+     */
+    private static AutobindSolver createSolver(JsRunnerProvider jsProvider,
+        Configuration config) {
+        if (!"java".equals(config.getString(ConfigProperties.AUTOBIND_SOLVER))) {
+            return null;
+        }
+        if (!AutobindSolver.RULES_VERSION.equals(jsProvider.getRulesVersion())) {
+            log.info("Not using the autobind solver with rules version {}",
+                jsProvider.getRulesVersion());
+            return null;
+        }
+        return new AutobindSolver(
+            config.getInt(ConfigProperties.AUTOBIND_SOLVER_MAX_EVALUATIONS),
+            config.getLong(ConfigProperties.AUTOBIND_SOLVER_TIMEOUT));
+    }
+
     public List<PoolQuantity> selectBestPools(Consumer consumer, String[] productIds,
         List<Pool> pools, ComplianceStatus compliance, String serviceLevelOverride,
         Set<String> exemptLevels, boolean considerDerived) {
@@ -96,34 +131,41 @@ public class AutobindRules {
             }
         }
 
-        // Provide objects for the script:
-        JsonJsContext args = new JsonJsContext(mapper);
-        args.put("consumer", consumer);
-        args.put("owner", consumer.getOwner());
-        args.put("serviceLevelOverride", serviceLevelOverride);
-        args.put("pools", pools.toArray());
-        args.put("products", productIds);
-        args.put("log", log, false);
-        args.put("compliance", compliance);
-        args.put("exemptList", exemptLevels);
-        args.put("considerDerived", considerDerived);
-
-        // Convert the JSON returned into a Map object:
         Map<String, Integer> result = null;
-        try {
-            String json = jsRules.invokeMethod(SELECT_POOL_FUNCTION, args);
-            result = mapper.toObject(json, Map.class);
-            if (log.isDebugEnabled()) {
-                log.debug("Excuted javascript rule: " + SELECT_POOL_FUNCTION);
-            }
-        }
-        catch (NoSuchMethodException e) {
-            log.warn("No method found: " + SELECT_POOL_FUNCTION);
-            log.warn("Resorting to default pool selection behavior.");
-            return selectBestPoolDefault(pools);
+        if (solver != null) {
+            result = solver.selectPools(consumer, productIds, pools, compliance,
+                serviceLevelOverride, exemptLevels, considerDerived);
         }
-        catch (RhinoException e) {
-            throw new RuleExecutionException(e);
+
+        if (result == null) {
+            // Provide objects for the script:
+            JsonJsContext args = new JsonJsContext(mapper);
+            args.put("consumer", consumer);
+            args.put("owner", consumer.getOwner());
+            args.put("serviceLevelOverride", serviceLevelOverride);
+            args.put("pools", pools.toArray());
+            args.put("products", productIds);
+            args.put("log", log, false);
+            args.put("compliance", compliance);
+            args.put("exemptList", exemptLevels);
+            args.put("considerDerived", considerDerived);
+
+            // Convert the JSON returned into a Map object:
+            try {
+                String json = jsRules.invokeMethod(SELECT_POOL_FUNCTION, args);
+                result = mapper.toObject(json, Map.class);
+                if (log.isDebugEnabled()) {
+                    log.debug("Excuted javascript rule: " + SELECT_POOL_FUNCTION);
+                }
+            }
+            catch (NoSuchMethodException e) {
+                log.warn("No method found: " + SELECT_POOL_FUNCTION);
+                log.warn("Resorting to default pool selection behavior.");
+                return selectBestPoolDefault(pools);
+            }
+            catch (RhinoException e) {
+                throw new RuleExecutionException(e);
+            }
         }
 
         if (pools.size() > 0 && (result == null || result.isEmpty())) {
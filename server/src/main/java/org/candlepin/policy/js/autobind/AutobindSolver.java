@@ -0,0 +1,1293 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.autobind;
+
+import org.candlepin.model.Attribute;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.GuestId;
+import org.candlepin.model.Pool;
+import org.candlepin.model.ProvidedProduct;
+import org.candlepin.policy.js.compliance.ComplianceStatus;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * AutobindSolver
+ *
+ * A Java port of select_pools from the rules, choosing the same pools in the same
+ * quantities. Like the rules, it is greedy: each stack is pruned of the pools it does
+ * not need, lowest priority first, and then the group of pools covering the most
+ * installed products is taken repeatedly until no group covers any more. No other
+ * selection is ever considered.
+ *
+ * The port only makes those steps cheaper. It keeps the consumer facts and pool
+ * attributes it has looked up, memoizes the coverage of every set of pools it has
+ * evaluated while pruning a stack, and finds the quantity needed from each pool by
+ * bisection rather than by trying every quantity in turn.
+ *
+ * The work is bounded by a budget of coverage evaluations and of time. When the
+ * budget is spent, or the input holds values whose handling by the rules the port
+ * does not reproduce (non numeric or negative attributes, for example), the solver
+ * gives up and returns null so that the rules can decide instead.
+ */
+public class AutobindSolver {
+    private static Logger log = LoggerFactory.getLogger(AutobindSolver.class);
+
+    /**
+     * Version of the rules this class follows. Rules imported with another version
+     * may select pools differently.
+     */
+    public static final String RULES_VERSION = "5.20";
+
+    private static final String SOCKETS = "sockets";
+    private static final String CORES = "cores";
+    private static final String ARCH = "arch";
+    private static final String RAM = "ram";
+    private static final String VCPU = "vcpu";
+    private static final String GUEST_LIMIT = "guest_limit";
+    private static final String STORAGE_BAND = "storage_band";
+    private static final String INSTANCE_MULTIPLIER = "instance_multiplier";
+    private static final String REQUIRES_HOST = "requires_host";
+    private static final String VIRT_ONLY = "virt_only";
+    private static final String MULTI_ENTITLEMENT = "multi-entitlement";
+    private static final String STACKING_ID = "stacking_id";
+    private static final String SUPPORT_LEVEL = "support_level";
+
+    private static final String ARCH_FACT = "uname.machine";
+    private static final String IS_GUEST_FACT = "virt.is_guest";
+
+    private static final Map<String, String> ATTRIBUTES_TO_FACTS = new HashMap<String, String>();
+    static {
+        ATTRIBUTES_TO_FACTS.put(SOCKETS, "cpu.cpu_socket(s)");
+        ATTRIBUTES_TO_FACTS.put(CORES, "cpu.core(s)_per_socket");
+        ATTRIBUTES_TO_FACTS.put(ARCH, ARCH_FACT);
+        ATTRIBUTES_TO_FACTS.put(RAM, "memory.memtotal");
+        ATTRIBUTES_TO_FACTS.put(VCPU, "cpu.core(s)_per_socket");
+        ATTRIBUTES_TO_FACTS.put(STORAGE_BAND, "band.storage.usage");
+    }
+
+    private static final List<String> PHYSICAL_ATTRIBUTES = Arrays.asList(
+        SOCKETS, CORES, RAM, ARCH, GUEST_LIMIT, STORAGE_BAND);
+    private static final List<String> VIRT_ATTRIBUTES = Arrays.asList(
+        VCPU, RAM, ARCH, GUEST_LIMIT, STORAGE_BAND);
+    private static final List<String> PRIORITY_ATTRIBUTES = Arrays.asList(
+        SOCKETS, CORES, RAM, VCPU);
+
+    private static final Pattern DECIMAL = Pattern.compile(
+        "[+-]?(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?");
+    private static final Pattern ARRAY_INDEX = Pattern.compile("0|[1-9]\\d{0,8}");
+
+    // Largest magnitude the rules keep exactly when they truncate stack values to 32 bits
+    private static final double INT32_LIMIT = 2147483648.0;
+
+    private final int maxEvaluations;
+    private final long timeoutNanos;
+
+    /**
+     * @param maxEvaluations number of coverage evaluations after which the solver gives up
+     * @param timeoutMillis milliseconds after which the solver gives up
+     */
+    public AutobindSolver(int maxEvaluations, long timeoutMillis) {
+        this.maxEvaluations = maxEvaluations;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * Selects the pools to bind, taking the same arguments as the select_pools rule.
+     *
+     * @return a map of pool id to the quantity to bind, or null if the solver gave up
+     *  and the rules have to be run instead
+     */
+    public Map<String, Integer> selectPools(Consumer consumer, String[] productIds,
+        List<Pool> pools, ComplianceStatus compliance, String serviceLevelOverride,
+        Set<String> exemptLevels, boolean considerDerived) {
+        try {
+            Search search = new Search(consumer, compliance, exemptLevels, considerDerived);
+            Map<String, Integer> selected = search.selectPools(productIds, pools,
+                serviceLevelOverride);
+            log.debug("Selected pools after {} coverage evaluations", search.evaluations);
+            return selected;
+        }
+        catch (GiveUp e) {
+            log.debug("Deferring pool selection to the rules: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Thrown when the search cannot finish, the solver then returns null.
+     */
+    private static class GiveUp extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        GiveUp(String reason) {
+            super(reason);
+        }
+    }
+
+    /**
+     * The state of a single selection: the consumer, its facts and the budget left.
+     */
+    private final class Search {
+        private final Consumer consumer;
+        private final Map<String, String> facts;
+        private final boolean guest;
+        private final List<String> complianceAttributes;
+        private final ComplianceStatus compliance;
+        private final Set<String> exemptLevels;
+        private final boolean considerDerived;
+        private final Map<String, Double> factValues = new HashMap<String, Double>();
+        private final long started;
+        private int evaluations = 0;
+        private List<Ent> attached;
+
+        Search(Consumer consumer, ComplianceStatus compliance, Set<String> exemptLevels,
+            boolean considerDerived) {
+            if (consumer.getFacts() == null || consumer.getType() == null ||
+                compliance == null || exemptLevels == null) {
+                throw new GiveUp("incomplete input");
+            }
+            this.consumer = consumer;
+            this.facts = consumer.getFacts();
+            this.compliance = compliance;
+            this.exemptLevels = exemptLevels;
+            this.considerDerived = considerDerived;
+            this.guest = equalsIgnoreCase("true", truthy(facts.get(IS_GUEST_FACT)) ?
+                facts.get(IS_GUEST_FACT) : null);
+            this.complianceAttributes = guest ? VIRT_ATTRIBUTES : PHYSICAL_ATTRIBUTES;
+            this.started = System.nanoTime();
+        }
+
+        Map<String, Integer> selectPools(String[] productIds, List<Pool> pools,
+            String serviceLevelOverride) {
+            attached = attachedEnts();
+
+            List<PoolView> candidates = new ArrayList<PoolView>(pools.size());
+            for (Pool pool : pools) {
+                PoolView view = new PoolView(pool, candidates.size());
+                view.currentlyAvailable = currentlyAvailable(view);
+                candidates.add(view);
+            }
+            List<PoolView> valid = validPools(candidates, serviceLevelOverride);
+
+            List<String> installed = new ArrayList<String>(Arrays.asList(productIds));
+            for (String compliant : compliance.getCompliantProducts().keySet()) {
+                installed.remove(compliant);
+            }
+
+            List<Group> groups = buildGroups(valid, installed);
+            List<Group> validGroups = new ArrayList<Group>();
+            for (int i = groups.size() - 1; i >= 0; i--) {
+                Group group = groups.get(i);
+                if (validate(group) &&
+                    (commonProducts(installed, group).size() > 0 || !attached.isEmpty())) {
+                    validGroups.add(group);
+                    removeExtraAttributes(group);
+                    prunePools(group);
+                }
+            }
+
+            Map<String, Integer> selected = new LinkedHashMap<String, Integer>();
+            for (Group group : bestGroups(validGroups, installed)) {
+                selected.putAll(poolQuantity(group));
+            }
+            return selected;
+        }
+
+        private List<Ent> attachedEnts() {
+            List<Ent> ents = new ArrayList<Ent>();
+            List<Map<String, Set<Entitlement>>> maps = new ArrayList<Map<String, Set<Entitlement>>>();
+            maps.add(compliance.getPartialStacks());
+            maps.add(compliance.getPartiallyCompliantProducts());
+            maps.add(compliance.getCompliantProducts());
+
+            for (Map<String, Set<Entitlement>> map : maps) {
+                for (Set<Entitlement> entitlements : map.values()) {
+                    for (Entitlement entitlement : entitlements) {
+                        boolean contains = false;
+                        for (Ent ent : ents) {
+                            if (equal(entitlement.getId(), ent.id)) {
+                                contains = true;
+                            }
+                        }
+                        if (!contains) {
+                            Integer quantity = entitlement.getQuantity();
+                            ents.add(new Ent(new PoolView(entitlement.getPool(), -1),
+                                quantity != null ? quantity : 0, entitlement.getId()));
+                        }
+                    }
+                }
+            }
+            return ents;
+        }
+
+        private double currentlyAvailable(PoolView pool) {
+            double available = pool.quantity == -1 ? suggestedQuantity(pool) :
+                pool.available();
+            if (available > 0 && !pool.isMultiEntitlement()) {
+                available = 1;
+            }
+            return available;
+        }
+
+        private double suggestedQuantity(PoolView pool) {
+            if (pool.isMultiEntitlement() && pool.hasProductAttribute(STACKING_ID)) {
+                Tracker tracker = new Tracker();
+                tracker.addPool(pool, 0);
+                return quantityToCoverStack(tracker, pool, Collections.<Ent>emptyList());
+            }
+            return 1;
+        }
+
+        private double quantityToCoverStack(Tracker tracker, PoolView pool, List<Ent> ents) {
+            List<String> attributes = new ArrayList<String>();
+            for (String attribute : complianceAttributes) {
+                if (!ARCH.equals(attribute) && !GUEST_LIMIT.equals(attribute) &&
+                    pool.hasProductAttribute(attribute)) {
+                    attributes.add(attribute);
+                }
+            }
+
+            double increment = 1;
+            if (pool.hasProductAttribute(INSTANCE_MULTIPLIER) && !guest) {
+                increment = positive(parseInt(pool.getProductAttribute(INSTANCE_MULTIPLIER)));
+            }
+
+            boolean covered;
+            double quantity = 0;
+            boolean startedEmpty = tracker.empty;
+            do {
+                if (startedEmpty || quantity != 0) {
+                    tracker.addPool(pool, increment);
+                    quantity += increment;
+                }
+                startedEmpty = true;
+                covered = true;
+                for (String attribute : coverage(tracker, ents)) {
+                    if (attributes.contains(attribute)) {
+                        covered = false;
+                    }
+                }
+            }
+            while (!covered && (quantity + increment <= pool.available() || pool.unlimited()));
+            return quantity;
+        }
+
+        private List<PoolView> validPools(List<PoolView> pools, String serviceLevelOverride) {
+            String consumerSla = serviceLevelOverride;
+            if (!truthy(consumerSla)) {
+                consumerSla = consumer.getServiceLevel();
+                if (!truthy(consumerSla)) {
+                    if (consumer.getOwner() == null) {
+                        throw new GiveUp("no owner");
+                    }
+                    consumerSla = consumer.getOwner().getDefaultServiceLevel();
+                }
+            }
+            String consumerArch = facts.containsKey(ARCH_FACT) ? facts.get(ARCH_FACT) : null;
+
+            List<PoolView> valid = new ArrayList<PoolView>();
+            for (PoolView pool : pools) {
+                // The rules hand the consumer type itself in here, which is never "system"
+                if (architectureMatches(pool.getProductAttribute(ARCH), consumerArch, null) &&
+                    isVirtValid(pool) && isSlaValid(pool, consumerSla) &&
+                    pool.currentlyAvailable > 0) {
+                    valid.add(pool);
+                }
+            }
+            return valid;
+        }
+
+        private boolean isVirtValid(PoolView pool) {
+            if (!guest && pool.hasProductAttribute(VIRT_ONLY)) {
+                return !equalsIgnoreCase("true", pool.getProductAttribute(VIRT_ONLY));
+            }
+            return true;
+        }
+
+        private boolean isSlaValid(PoolView pool, String consumerSla) {
+            String poolSla = pool.getProductAttribute(SUPPORT_LEVEL);
+            boolean exempt = false;
+            for (String level : exemptLevels) {
+                if (equalsIgnoreCase(level, poolSla)) {
+                    exempt = true;
+                    break;
+                }
+            }
+            return !(truthy(poolSla) && !exempt && truthy(consumerSla) &&
+                !equalsIgnoreCase(consumerSla, poolSla));
+        }
+
+        private List<Group> buildGroups(List<PoolView> pools, List<String> installed) {
+            List<Group> groups = new ArrayList<Group>();
+            for (PoolView pool : pools) {
+                Group group = null;
+                if (pool.stacked) {
+                    String stackId = pool.getProductAttribute(STACKING_ID);
+                    for (Group existing : groups) {
+                        if (equal(existing.stackId, stackId)) {
+                            group = existing;
+                            break;
+                        }
+                    }
+                    if (group == null) {
+                        group = new Group(true, stackId, installed);
+                        groups.add(group);
+                    }
+                }
+                else {
+                    group = new Group(false, "", installed);
+                    groups.add(group);
+                }
+                group.pools.add(pool);
+            }
+            return groups;
+        }
+
+        /*
+         * Checks that the group can cover the consumer, dropping the pools of a stack
+         * which enforce attributes the stack as a whole does not cover.
+         */
+        private boolean validate(Group group) {
+            List<Ent> all = withAttached(mockEnts(group.pools));
+            if (all.isEmpty()) {
+                return false;
+            }
+            if (!group.stackable) {
+                return entitlementCoverage(all.get(0), all).isEmpty();
+            }
+
+            List<String> uncovered = stackCoverage(group.stackId, all);
+            if (uncovered.isEmpty()) {
+                return true;
+            }
+
+            List<PoolView> kept = new ArrayList<PoolView>();
+            for (int i = group.pools.size() - 1; i >= 0; i--) {
+                PoolView pool = group.pools.get(i);
+                boolean valid = true;
+                for (String attribute : uncovered) {
+                    if (truthy(pool.getProductAttribute(attribute))) {
+                        valid = false;
+                        break;
+                    }
+                }
+                if (valid) {
+                    kept.add(pool);
+                }
+            }
+            group.pools = kept;
+            return stackCoverage(group.stackId, withAttached(mockEnts(kept))).isEmpty();
+        }
+
+        /*
+         * Drops parallel stacks: tries the stack without the pools enforcing each of its
+         * attributes and keeps the set of pools with the best priority per pool.
+         */
+        private void removeExtraAttributes(Group group) {
+            List<List<PoolView>> candidates = new ArrayList<List<PoolView>>();
+            candidates.add(group.pools);
+            int provided = providedProducts(group, group.pools).size();
+
+            for (List<String> attributes : attributeSets(group.pools)) {
+                for (String attribute : attributes) {
+                    List<PoolView> without = new ArrayList<PoolView>();
+                    for (PoolView pool : group.pools) {
+                        if (!truthy(pool.getProductAttribute(attribute))) {
+                            without.add(pool);
+                        }
+                    }
+                    if (isCovered(group, without) &&
+                        providedProducts(group, without).size() == provided) {
+                        candidates.add(without);
+                    }
+                }
+            }
+
+            int best = 0;
+            double bestPriority = 0.0;
+            int numPools = group.pools.size();
+            for (int i = 0; i < candidates.size(); i++) {
+                List<PoolView> pools = candidates.get(i);
+                double priority = 0;
+                for (PoolView pool : pools) {
+                    if (equalsIgnoreCase(pool.getProductAttribute(VIRT_ONLY), "true")) {
+                        priority += 100;
+                    }
+                    if (pool.getAttribute(REQUIRES_HOST) != null) {
+                        priority += 150;
+                    }
+                }
+                priority /= pools.size();
+                if (priority > bestPriority) {
+                    bestPriority = priority;
+                    best = i;
+                    numPools = pools.size();
+                }
+                else if (priority == bestPriority && numPools > pools.size()) {
+                    best = i;
+                    numPools = pools.size();
+                }
+            }
+            group.pools = candidates.get(best);
+        }
+
+        private List<List<String>> attributeSets(List<PoolView> pools) {
+            List<String> attributes = new ArrayList<String>();
+            for (String attribute : complianceAttributes) {
+                if (!ARCH.equals(attribute)) {
+                    for (PoolView pool : pools) {
+                        if (pool.hasProductAttribute(attribute)) {
+                            attributes.add(attribute);
+                            break;
+                        }
+                    }
+                }
+            }
+
+            List<List<String>> sets = new ArrayList<List<String>>();
+            for (List<String> set : sets(attributes, attributes.size() - 1)) {
+                if (!set.isEmpty()) {
+                    sets.add(set);
+                }
+            }
+            return sets;
+        }
+
+        /*
+         * Removes the pools a stack does not need, starting from the lowest priority.
+         */
+        private void prunePools(Group group) {
+            if (!group.stackable) {
+                return;
+            }
+
+            PoolView[] sorted = group.pools.toArray(new PoolView[group.pools.size()]);
+            Arrays.sort(sorted, new Comparator<PoolView>() {
+                @Override
+                public int compare(PoolView pool0, PoolView pool1) {
+                    double priority0 = priority(pool0);
+                    double priority1 = priority(pool1);
+                    if (pool0.endDate > pool1.endDate) {
+                        priority1 += 1;
+                    }
+                    else if (pool0.endDate < pool1.endDate) {
+                        priority0 += 1;
+                    }
+                    // Descending, comparing as the rules engine does
+                    double diff = priority1 - priority0;
+                    return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+                }
+            });
+
+            List<PoolView> pools = new ArrayList<PoolView>(Arrays.asList(sorted));
+            int providedSize = providedProducts(group, pools).size();
+            for (int i = pools.size() - 1; i >= 0; i--) {
+                PoolView removed = pools.remove(i);
+                if (pools.isEmpty() || !isCovered(group, pools) ||
+                    providedProducts(group, pools).size() != providedSize) {
+                    pools.add(removed);
+                }
+            }
+            group.pools = pools;
+        }
+
+        /*
+         * Stack coverage of a set of pools, each at its full available quantity. The
+         * order of the pools does not change the coverage, so it is kept per set.
+         */
+        private boolean isCovered(Group group, List<PoolView> pools) {
+            BitSet key = new BitSet();
+            for (PoolView pool : pools) {
+                key.set(pool.index);
+            }
+            Boolean covered = group.coverage.get(key);
+            if (covered == null) {
+                covered = stackCoverage(group.stackId, withAttached(mockEnts(pools))).isEmpty();
+                group.coverage.put(key, covered);
+            }
+            return covered;
+        }
+
+        /*
+         * The quantity needed from each pool of a group, in priority order. Coverage only
+         * grows with the quantity of a pool, so the smallest covering quantity is found
+         * by bisection.
+         */
+        private Map<String, Integer> poolQuantity(Group group) {
+            if (group.poolQuantity != null) {
+                return group.poolQuantity;
+            }
+
+            Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+            List<Ent> ents = mockEnts(group.pools);
+            List<Ent> all = withAttached(ents);
+            for (int i = 0; i < group.pools.size(); i++) {
+                PoolView pool = group.pools.get(i);
+                double increment = 1;
+                if (pool.hasProductAttribute(INSTANCE_MULTIPLIER) && !guest) {
+                    increment = positive(parseInt(
+                        pool.getProductAttribute(INSTANCE_MULTIPLIER)));
+                }
+
+                Ent current = ents.get(i);
+                long steps = (long) Math.floor(pool.currentlyAvailable / increment);
+                if (steps < 1) {
+                    continue;
+                }
+
+                // Without a covering quantity the rules leave the largest one tried
+                current.quantity = steps * increment;
+                if (!covers(group, current, all)) {
+                    continue;
+                }
+
+                long low = 1;
+                long high = steps;
+                while (low < high) {
+                    long mid = (low + high) >>> 1;
+                    current.quantity = mid * increment;
+                    if (covers(group, current, all)) {
+                        high = mid;
+                    }
+                    else {
+                        low = mid + 1;
+                    }
+                }
+                current.quantity = high * increment;
+                result.put(pool.id, (int) current.quantity);
+            }
+            group.poolQuantity = result;
+            return result;
+        }
+
+        private boolean covers(Group group, Ent current, List<Ent> all) {
+            if (group.stackable) {
+                return stackCoverage(group.stackId, all).isEmpty();
+            }
+            return entitlementCoverage(current, all).isEmpty();
+        }
+
+        private double totalQuantity(Group group) {
+            double total = 0;
+            for (Integer quantity : poolQuantity(group).values()) {
+                total += quantity;
+            }
+            return total;
+        }
+
+        private double averagePriority(Group group) {
+            if (group.averagePriority == null) {
+                double total = 0;
+                for (PoolView pool : group.pools) {
+                    total += priority(pool);
+                }
+                group.averagePriority = total / group.pools.size();
+            }
+            return group.averagePriority;
+        }
+
+        private List<Group> bestGroups(List<Group> groups, List<String> installed) {
+            List<Group> best = new ArrayList<Group>();
+
+            for (String stackId : compliance.getPartialStacks().keySet()) {
+                for (Group group : groups) {
+                    if (equal(group.stackId, stackId)) {
+                        List<String> common = commonProducts(installed, group);
+                        group.installed = common;
+                        best.add(group);
+                        removeAll(installed, common);
+                    }
+                }
+            }
+
+            Group group = findBestGroup(groups, installed);
+            while (group != null) {
+                best.add(group);
+                List<String> common = commonProducts(installed, group);
+                removeAll(installed, common);
+                group.installed = common;
+                group = findBestGroup(groups, installed);
+            }
+            return best;
+        }
+
+        private Group findBestGroup(List<Group> groups, List<String> installed) {
+            double maxProvide = 0;
+            boolean stacked = false;
+            Group best = null;
+            double totalQuantity = Double.MAX_VALUE;
+            double bestPriority = 0;
+
+            for (Group group : groups) {
+                double priority = averagePriority(group);
+                int intersection = commonProducts(installed, group).size();
+                double quantity = totalQuantity(group);
+                if (intersection > maxProvide) {
+                    stacked = group.stackable;
+                    maxProvide = intersection;
+                    totalQuantity = quantity;
+                    bestPriority = priority;
+                    best = group;
+                }
+                if (intersection > 0 && intersection == maxProvide) {
+                    if (bestPriority < priority) {
+                        best = group;
+                        stacked = group.stackable;
+                        totalQuantity = quantity;
+                        bestPriority = priority;
+                    }
+                    if (bestPriority == priority) {
+                        if (totalQuantity < quantity) {
+                            best = group;
+                            stacked = group.stackable;
+                            totalQuantity = quantity;
+                        }
+                        if (totalQuantity == quantity && stacked && !group.stackable) {
+                            best = group;
+                            stacked = group.stackable;
+                        }
+                    }
+                }
+            }
+            return best;
+        }
+
+        private List<String> commonProducts(List<String> installed, Group group) {
+            List<String> common = new ArrayList<String>();
+            for (String productId : providedProducts(group, group.pools)) {
+                if (installed.contains(productId)) {
+                    common.add(productId);
+                }
+            }
+            return common;
+        }
+
+        private List<String> providedProducts(Group group, List<PoolView> pools) {
+            List<String> provided = new ArrayList<String>();
+            for (PoolView pool : pools) {
+                List<String> products = considerDerived && pool.hasDerived() ?
+                    pool.derivedProducts() : pool.products();
+                for (String productId : products) {
+                    if (!provided.contains(productId) && group.installed.contains(productId)) {
+                        provided.add(productId);
+                    }
+                }
+            }
+            return provided;
+        }
+
+        private double priority(PoolView pool) {
+            if (pool.priority == null) {
+                double priority = 0;
+                if (equalsIgnoreCase(pool.getProductAttribute(VIRT_ONLY), "true")) {
+                    priority += 100;
+                }
+                if (pool.getAttribute(REQUIRES_HOST) != null) {
+                    priority += 150;
+                }
+
+                // Prefer the pools matching the consumer's socket, core and RAM count
+                for (String attribute : PRIORITY_ATTRIBUTES) {
+                    if (!complianceAttributes.contains(attribute)) {
+                        continue;
+                    }
+                    double consumerValue = fact(attribute);
+                    double poolValue = parseInt(pool.getProductAttribute(attribute));
+                    if (consumerValue > 0 && poolValue > 0) {
+                        double required = Math.ceil(consumerValue / poolValue);
+                        double multiplier = SOCKETS.equals(attribute) ?
+                            pool.instanceMultiplier() : 1;
+                        if (pool.available() / multiplier >= required) {
+                            poolValue *= required;
+                            priority += Math.max(0,
+                                10 - (poolValue - consumerValue) - ((required - 1) / 2)) * 2;
+                        }
+                    }
+                    else {
+                        priority += 20;
+                    }
+                }
+                pool.priority = priority;
+            }
+            return pool.priority;
+        }
+
+        private List<Ent> mockEnts(List<PoolView> pools) {
+            List<Ent> ents = new ArrayList<Ent>(pools.size());
+            for (PoolView pool : pools) {
+                ents.add(new Ent(pool, pool.currentlyAvailable, null));
+            }
+            return ents;
+        }
+
+        private List<Ent> withAttached(List<Ent> ents) {
+            List<Ent> all = new ArrayList<Ent>(ents.size() + attached.size());
+            all.addAll(ents);
+            all.addAll(attached);
+            return all;
+        }
+
+        private List<String> stackCoverage(String stackId, List<Ent> ents) {
+            Tracker tracker = new Tracker();
+            for (Ent ent : ents) {
+                if (ent.pool.stacked && equal(ent.pool.getProductAttribute(STACKING_ID), stackId)) {
+                    tracker.addEnt(ent);
+                }
+            }
+            return coverage(tracker, ents);
+        }
+
+        private List<String> entitlementCoverage(Ent ent, List<Ent> ents) {
+            Tracker tracker = new Tracker();
+            tracker.addEnt(ent);
+            return coverage(tracker, ents);
+        }
+
+        /*
+         * Returns the compliance attributes the tracker does not cover.
+         */
+        private List<String> coverage(Tracker tracker, List<Ent> ents) {
+            if (++evaluations > maxEvaluations) {
+                throw new GiveUp("more than " + maxEvaluations + " coverage evaluations");
+            }
+            if ((evaluations & 0xff) == 0 && System.nanoTime() - started > timeoutNanos) {
+                throw new GiveUp("out of time after " + evaluations + " coverage evaluations");
+            }
+
+            if (tracker.enforces(GUEST_LIMIT) && complianceAttributes.contains(GUEST_LIMIT)) {
+                tracker.values.put(GUEST_LIMIT, globalGuestLimit(ents));
+            }
+
+            List<String> uncovered = Collections.emptyList();
+            for (String attribute : complianceAttributes) {
+                if (tracker.enforces(attribute) && !isCovered(tracker, attribute)) {
+                    if (uncovered.isEmpty()) {
+                        uncovered = new ArrayList<String>();
+                    }
+                    uncovered.add(attribute);
+                }
+            }
+            return uncovered;
+        }
+
+        private Double globalGuestLimit(List<Ent> ents) {
+            Double total = null;
+            for (Ent ent : ents) {
+                String value = ent.pool.getProductAttribute(GUEST_LIMIT);
+                if (value != null) {
+                    if (total == null) {
+                        total = 0.0;
+                    }
+                    double limit = parseInt(value);
+                    if (limit == -1) {
+                        return limit;
+                    }
+                    if (limit > total) {
+                        total = limit;
+                    }
+                }
+            }
+            return total;
+        }
+
+        private boolean isCovered(Tracker tracker, String attribute) {
+            Object value = tracker.values.get(attribute);
+            if (ARCH.equals(attribute)) {
+                String consumerArch = facts.containsKey(ARCH_FACT) ? facts.get(ARCH_FACT) : null;
+                for (Object arch : (List<?>) value) {
+                    if (!architectureMatches((String) arch, consumerArch,
+                        consumer.getType().getLabel())) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            double covered = value == null ? Double.NaN : parseInt((Double) value);
+            if (GUEST_LIMIT.equals(attribute) && value != null && (Double) value == -1) {
+                return true;
+            }
+            return covered >= fact(attribute);
+        }
+
+        /*
+         * The consumer's value of an attribute, as computed by the rules' fact calculators.
+         */
+        private double fact(String attribute) {
+            Double value = factValues.get(attribute);
+            if (value == null) {
+                if (RAM.equals(attribute)) {
+                    String ram = facts.get(ATTRIBUTES_TO_FACTS.get(RAM));
+                    double kb = truthy(ram) ? parseInt(ram) : 1;
+                    value = Math.floor(kb / 1024 / 1024 + 0.5);
+                }
+                else if (CORES.equals(attribute)) {
+                    value = fact(SOCKETS) * rawFact(CORES);
+                }
+                else if (VCPU.equals(attribute)) {
+                    value = fact(CORES);
+                }
+                else if (GUEST_LIMIT.equals(attribute)) {
+                    value = (double) activeGuests();
+                }
+                else {
+                    value = rawFact(attribute);
+                }
+                factValues.put(attribute, value);
+            }
+            return value;
+        }
+
+        private double rawFact(String attribute) {
+            String fact = ATTRIBUTES_TO_FACTS.get(attribute);
+            String value = fact != null ? facts.get(fact) : null;
+            return truthy(value) ? toNumber(value) : 1;
+        }
+
+        private int activeGuests() {
+            int active = 0;
+            if (consumer.getGuestIds() != null) {
+                for (GuestId guest : consumer.getGuestIds()) {
+                    Map<String, String> attributes = guest.getAttributes();
+                    if (attributes == null) {
+                        throw new GiveUp("guest without attributes");
+                    }
+                    if ("libvirt".equals(attributes.get("virtWhoType")) &&
+                        "1".equals(attributes.get("active"))) {
+                        active++;
+                    }
+                }
+            }
+            return active;
+        }
+
+        /**
+         * The accumulated attribute values of a stack, or of a single entitlement.
+         */
+        private final class Tracker {
+            private final Map<String, Object> values = new HashMap<String, Object>();
+            private final List<String> entitlementIds = new ArrayList<String>();
+            private String hostRestricted;
+            private boolean empty = true;
+
+            boolean enforces(String attribute) {
+                // Guests of host restricted pools are not held to their RAM and vCPUs
+                if (hostRestricted != null && guest &&
+                    (RAM.equals(attribute) || VCPU.equals(attribute))) {
+                    return false;
+                }
+                return values.containsKey(attribute);
+            }
+
+            void addEnt(Ent ent) {
+                if (isListed(ent.id)) {
+                    return;
+                }
+                empty = false;
+                entitlementIds.add(ent.id);
+
+                double quantity = ent.quantity;
+                if (!ent.pool.stacked && quantity > 1) {
+                    quantity = 1;
+                }
+                addPool(ent.pool, quantity);
+            }
+
+            /*
+             * The rules look entitlement ids up with "in", which matches array indexes
+             * and properties rather than the ids listed.
+             */
+            private boolean isListed(String id) {
+                if (id == null) {
+                    return false;
+                }
+                if ("length".equals(id)) {
+                    return true;
+                }
+                return ARRAY_INDEX.matcher(id).matches() &&
+                    Integer.parseInt(id) < entitlementIds.size();
+            }
+
+            void addPool(PoolView pool, double quantity) {
+                if (quantity > 0) {
+                    empty = false;
+                }
+
+                String host = pool.getAttribute(REQUIRES_HOST);
+                if (truthy(host)) {
+                    hostRestricted = host;
+                }
+
+                for (String attribute : complianceAttributes) {
+                    String poolValue = pool.getProductAttribute(attribute);
+                    if (poolValue != null) {
+                        Object stackValue = enforces(attribute) ? values.get(attribute) : null;
+                        values.put(attribute, accumulate(attribute, stackValue, poolValue, pool,
+                            quantity));
+                    }
+                }
+            }
+
+            @SuppressWarnings("unchecked")
+            private Object accumulate(String attribute, Object stackValue, String poolValue,
+                PoolView pool, double quantity) {
+                if (ARCH.equals(attribute)) {
+                    List<String> arches = stackValue != null ? (List<String>) stackValue :
+                        new ArrayList<String>();
+                    arches.add(poolValue);
+                    return arches;
+                }
+                if (GUEST_LIMIT.equals(attribute)) {
+                    // Only marks the attribute as enforced
+                    return -1.0;
+                }
+
+                double current = toInt32((Double) stackValue);
+                double value = parseInt(poolValue);
+                if (Double.isNaN(value) || value < 0) {
+                    throw new GiveUp(attribute + " of pool " + pool.id + " is " + poolValue);
+                }
+                if (SOCKETS.equals(attribute)) {
+                    double increment = parseInt(pool.getProductAttribute(INSTANCE_MULTIPLIER));
+                    if (Double.isNaN(increment) || increment == 0) {
+                        increment = 1;
+                    }
+                    positive(increment);
+                    // Lowest quantity evenly divisible by the instance multiplier
+                    double adjusted = quantity - (quantity % increment);
+                    return current + (value * adjusted) / increment;
+                }
+                return current + value * quantity;
+            }
+        }
+    }
+
+    /**
+     * A pool as the rules see it, with its attribute lookups remembered.
+     */
+    private static final class PoolView {
+        private final Pool pool;
+        private final int index;
+        private final String id;
+        private final double quantity;
+        private final double consumed;
+        private final long endDate;
+        private final boolean stacked;
+        private final Map<String, String> attributes = new HashMap<String, String>();
+        private final Map<String, String> productAttributes = new HashMap<String, String>();
+        private List<String> products;
+        private List<String> derivedProducts;
+        private double currentlyAvailable;
+        private Double priority;
+
+        PoolView(Pool pool, int index) {
+            if (pool.getQuantity() == null || pool.getAttributes() == null ||
+                pool.getProductAttributes() == null) {
+                throw new GiveUp("incomplete pool " + pool.getId());
+            }
+            this.pool = pool;
+            this.index = index;
+            this.id = pool.getId();
+            this.quantity = pool.getQuantity();
+            this.consumed = pool.getConsumed() != null ? pool.getConsumed() : 0;
+            this.endDate = pool.getEndDate() != null ? pool.getEndDate().getTime() : 0;
+
+            boolean isStacked = false;
+            for (Attribute attribute : pool.getProductAttributes()) {
+                if (STACKING_ID.equals(attribute.getName())) {
+                    isStacked = true;
+                }
+            }
+            this.stacked = isStacked;
+        }
+
+        String getAttribute(String name) {
+            if (!attributes.containsKey(name)) {
+                String value = find(name, pool.getAttributes());
+                attributes.put(name, value != null ? value :
+                    find(name, pool.getProductAttributes()));
+            }
+            return attributes.get(name);
+        }
+
+        String getProductAttribute(String name) {
+            if (!productAttributes.containsKey(name)) {
+                String value = find(name, pool.getProductAttributes());
+                productAttributes.put(name, value != null ? value :
+                    find(name, pool.getAttributes()));
+            }
+            return productAttributes.get(name);
+        }
+
+        boolean hasProductAttribute(String name) {
+            return getProductAttribute(name) != null;
+        }
+
+        boolean isMultiEntitlement() {
+            return equalsIgnoreCase(getProductAttribute(MULTI_ENTITLEMENT), "yes");
+        }
+
+        double instanceMultiplier() {
+            double multiplier = parseInt(getAttribute(INSTANCE_MULTIPLIER));
+            return Double.isNaN(multiplier) || multiplier == 0 ? 1 : multiplier;
+        }
+
+        double available() {
+            return quantity - consumed;
+        }
+
+        boolean unlimited() {
+            return quantity < 0;
+        }
+
+        boolean hasDerived() {
+            return pool.getDerivedProductId() != null;
+        }
+
+        List<String> products() {
+            if (products == null) {
+                products = new ArrayList<String>();
+                products.add(pool.getProductId());
+                for (ProvidedProduct provided : pool.getProvidedProductDtos()) {
+                    products.add(provided.getProductId());
+                }
+            }
+            return products;
+        }
+
+        List<String> derivedProducts() {
+            if (derivedProducts == null) {
+                derivedProducts = new ArrayList<String>();
+                derivedProducts.add(pool.getDerivedProductId());
+                for (ProvidedProduct provided : pool.getDerivedProvidedProductDtos()) {
+                    derivedProducts.add(provided.getProductId());
+                }
+            }
+            return derivedProducts;
+        }
+
+        private static String find(String name, Collection<? extends Attribute> attributes) {
+            for (Attribute attribute : attributes) {
+                if (name.equals(attribute.getName())) {
+                    // An attribute with a value of 0 is considered not set
+                    String value = attribute.getValue();
+                    return "0".equals(value) ? null : value;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * An entitlement, either attached to the consumer or one a pool would create.
+     */
+    private static final class Ent {
+        private final PoolView pool;
+        private final String id;
+        private double quantity;
+
+        Ent(PoolView pool, double quantity, String id) {
+            this.pool = pool;
+            this.quantity = quantity;
+            this.id = id;
+        }
+    }
+
+    /**
+     * The pools of a stack, or a single pool which does not stack.
+     */
+    private static final class Group {
+        private final boolean stackable;
+        private final String stackId;
+        private final Map<BitSet, Boolean> coverage = new HashMap<BitSet, Boolean>();
+        private List<String> installed;
+        private List<PoolView> pools = new ArrayList<PoolView>();
+        private Map<String, Integer> poolQuantity;
+        private Double averagePriority;
+
+        Group(boolean stackable, String stackId, List<String> installed) {
+            this.stackable = stackable;
+            this.stackId = stackId;
+            this.installed = installed;
+        }
+    }
+
+    /*
+     * Combinations of at most maxLength of the given attributes, in the order the
+     * rules generate them.
+     */
+    private static List<List<String>> sets(List<String> list, int maxLength) {
+        List<List<String>> results = new ArrayList<List<String>>();
+        if (list.isEmpty()) {
+            results.add(Collections.<String>emptyList());
+            return results;
+        }
+        for (List<String> set : sets(list.subList(1, list.size()), maxLength)) {
+            if (set.size() < maxLength) {
+                List<String> with = new ArrayList<String>(set.size() + 1);
+                with.add(list.get(0));
+                with.addAll(set);
+                results.add(with);
+            }
+            results.add(set);
+        }
+        return results;
+    }
+
+    private static boolean architectureMatches(String productArch, String consumerArch,
+        String consumerType) {
+        // Consumers other than systems without an architecture match any product
+        if (!truthy(consumerArch) && !"system".equals(consumerType)) {
+            return true;
+        }
+
+        if (productArch != null) {
+            List<String> supported = new ArrayList<String>(Arrays.asList(
+                productArch.toUpperCase(Locale.ENGLISH).split(",", -1)));
+            if (supported.contains("X86")) {
+                supported.add("I386");
+                supported.add("I586");
+                supported.add("I686");
+            }
+            if (!supported.contains("ALL") && (!truthy(consumerArch) ||
+                !supported.contains(consumerArch.toUpperCase(Locale.ENGLISH)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void removeAll(List<String> installed, List<String> remove) {
+        for (int i = installed.size() - 1; i >= 0; i--) {
+            if (remove.contains(installed.get(i))) {
+                installed.remove(i);
+            }
+        }
+    }
+
+    private static boolean truthy(String value) {
+        return value != null && value.length() > 0;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static boolean equalsIgnoreCase(String a, String b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.toLowerCase(Locale.ENGLISH).equals(b.toLowerCase(Locale.ENGLISH));
+    }
+
+    private static double positive(double value) {
+        if (!(value > 0)) {
+            throw new GiveUp("instance multiplier of " + value);
+        }
+        return value;
+    }
+
+    /*
+     * Javascript's parseInt of a string: leading digits, in hex with an 0x prefix.
+     */
+    private static double parseInt(String value) {
+        if (value == null) {
+            return Double.NaN;
+        }
+        String s = value.trim();
+        double sign = 1;
+        if (s.startsWith("-") || s.startsWith("+")) {
+            sign = s.charAt(0) == '-' ? -1 : 1;
+            s = s.substring(1);
+        }
+        int radix = 10;
+        if (s.startsWith("0x") || s.startsWith("0X")) {
+            radix = 16;
+            s = s.substring(2);
+        }
+
+        double result = 0;
+        int digits = 0;
+        while (digits < s.length() && Character.digit(s.charAt(digits), radix) >= 0) {
+            result = result * radix + Character.digit(s.charAt(digits), radix);
+            digits++;
+        }
+        return digits == 0 ? Double.NaN : sign * result;
+    }
+
+    /*
+     * Javascript's parseInt of a number, which truncates it.
+     */
+    private static double parseInt(Double value) {
+        if (value == null || value.isNaN() || value.isInfinite()) {
+            return Double.NaN;
+        }
+        if (Math.abs(value) >= 1e21 || (value != 0 && Math.abs(value) < 1e-6)) {
+            // Printed in exponent notation, which parseInt stops reading at
+            throw new GiveUp("stack value of " + value);
+        }
+        return value < 0 ? Math.ceil(value) : Math.floor(value);
+    }
+
+    /*
+     * Javascript's conversion of a string to a number.
+     */
+    private static double toNumber(String value) {
+        String s = value.trim();
+        if (s.isEmpty()) {
+            return 0;
+        }
+        if (s.startsWith("0x") || s.startsWith("0X")) {
+            double result = parseInt(s);
+            return s.length() > 2 && result == parseInt(s + "g") &&
+                s.substring(2).matches("[0-9a-fA-F]+") ? result : Double.NaN;
+        }
+        if (s.matches("[+-]?Infinity")) {
+            return s.startsWith("-") ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+        return DECIMAL.matcher(s).matches() ? Double.parseDouble(s) : Double.NaN;
+    }
+
+    /*
+     * Javascript's "value | 0", restricted to the values it leaves unchanged.
+     */
+    private static double toInt32(Double value) {
+        if (value == null || value.isNaN() || value.isInfinite()) {
+            return 0;
+        }
+        if (Math.abs(value) >= INT32_LIMIT) {
+            throw new GiveUp("stack value of " + value);
+        }
+        return value < 0 ? Math.ceil(value) : Math.floor(value);
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.policy.js.JsRunner;
+import org.candlepin.policy.js.JsRunnerProvider;
+import org.candlepin.policy.js.JsonJsContext;
+import org.candlepin.util.BatchExecutor;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.google.inject.util.Providers;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.Future;
+
+/**
+ * ComplianceBatchExecutor
+ *
+ * A bounded pool of threads evaluating the compliance rules for batch requests. Each
+ * evaluation gets its own rules scope. The tasks only run javascript against
+ * contexts which were serialized beforehand, so they never touch the database
+ * session of the request which submitted them.
+ */
+@Singleton
+public class ComplianceBatchExecutor extends BatchExecutor {
+    private final Provider<JsRunnerProvider> jsProvider;
+
+    @Inject
+    public ComplianceBatchExecutor(Configuration config, Provider<JsRunnerProvider> jsProvider) {
+        this(config.getInt(ConfigProperties.COMPLIANCE_BATCH_THREADS), jsProvider);
+    }
+
+    public ComplianceBatchExecutor(int threads, JsRunnerProvider jsProvider) {
+        this(threads, Providers.of(jsProvider));
+    }
+
+    private ComplianceBatchExecutor(int threads, Provider<JsRunnerProvider> jsProvider) {
+        super("compliance", threads);
+        this.jsProvider = jsProvider;
+    }
+
+    /**
+     * Evaluates get_status for the given context on one of the pool threads.
+     *
+     * @param batch the batch the evaluation belongs to
+     * @param args a context which has already been prepared
+     * @return the future status JSON returned by the rules
+     */
+    public Future<String> submit(CompletionService<String> batch, final JsonJsContext args) {
+        if (!args.isPrepared()) {
+            throw new IllegalArgumentException("Compliance context must be prepared");
+        }
+
+        return batch.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                JsRunner runner = jsProvider.get().getCompiled();
+                runner.init("compliance_name_space");
+                return runner.runJsFunction(String.class, "get_status", args);
+            }
+        });
+    }
+}
@@ -23,6 +23,7 @@ import org.candlepin.policy.js.JsRunner;
 import org.candlepin.policy.js.JsonJsContext;
 import org.candlepin.policy.js.RuleExecutionException;
 import org.candlepin.policy.js.RulesObjectMapper;
+import org.candlepin.policy.js.compliance.hash.ComplianceInputHasher;
 import org.candlepin.policy.js.compliance.hash.ComplianceStatusHasher;
 
 import com.google.inject.Inject;
@@ -30,8 +31,14 @@ import com.google.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * ComplianceRules
@@ -48,11 +55,28 @@ public class ComplianceRules {
     private EventSink eventSink;
     // Use the curator to update consumer entitlement status every time we run compliance (with null date)
     private ConsumerCurator consumerCurator;
+    private ComplianceStatusCache statusCache;
+    private ComplianceBatchExecutor batchExecutor;
 
-    @Inject
     public ComplianceRules(JsRunner jsRules, EntitlementCurator entCurator,
         StatusReasonMessageGenerator generator, EventSink eventSink,
         ConsumerCurator consumerCurator) {
+        this(jsRules, entCurator, generator, eventSink, consumerCurator, null);
+    }
+
+    public ComplianceRules(JsRunner jsRules, EntitlementCurator entCurator,
+        StatusReasonMessageGenerator generator, EventSink eventSink,
+        ConsumerCurator consumerCurator, ComplianceStatusCache statusCache) {
+        this(jsRules, entCurator, generator, eventSink, consumerCurator, statusCache, null);
+    }
+
+    @Inject
+    public ComplianceRules(JsRunner jsRules, EntitlementCurator entCurator,
+        StatusReasonMessageGenerator generator, EventSink eventSink,
+        ConsumerCurator consumerCurator, ComplianceStatusCache statusCache,
+        ComplianceBatchExecutor batchExecutor) {
+        this.statusCache = statusCache;
+        this.batchExecutor = batchExecutor;
         this.entCurator = entCurator;
         this.jsRules = jsRules;
         this.generator = generator;
@@ -117,12 +141,7 @@ public class ComplianceRules {
 
         }
         if (currentCompliance) {
-            for (Entitlement ent : c.getEntitlements()) {
-                if (!ent.isUpdatedOnStart() && ent.isValid()) {
-                    ent.setUpdatedOnStart(true);
-                    entCurator.merge(ent);
-                }
-            }
+            markUpdatedOnStart(c);
         }
 
         /*
@@ -133,17 +152,172 @@ public class ComplianceRules {
             return new ComplianceStatus(new Date());
         }
 
+        // Skip the rules entirely if nothing they look at has changed:
+        String inputHash = getInputHash(c, calculateCompliantUntil);
+        String json = inputHash != null ? statusCache.get(c.getUuid(), inputHash, date) : null;
+        boolean cached = json != null;
+
+        if (!cached) {
+            JsonJsContext args = createStatusContext(c, date, calculateCompliantUntil);
+            json = jsRules.runJsFunction(String.class, "get_status", args);
+            if (inputHash != null) {
+                statusCache.put(c.getUuid(), inputHash, date, c.getEntitlements(), json);
+            }
+        }
+
+        return toStatus(c, date, json, cached, currentCompliance, updateConsumer);
+    }
+
+    /**
+     * Receives the statuses calculated by {@link ComplianceRules#getStatuses}.
+     */
+    public interface StatusCallback {
+        void onStatus(Consumer consumer, ComplianceStatus status);
+    }
+
+    /**
+     * Check the current compliance status of several consumers, including how long
+     * they will remain compliant.
+     *
+     * The entitlements of all consumers are loaded up front. When the batch executor
+     * is enabled, the rules are evaluated for several consumers at once while this
+     * thread serializes the next ones, and statuses are handed to the callback in the
+     * order they complete. Otherwise they are evaluated one at a time, in order.
+     *
+     * @param consumers Consumers to check.
+     * @param callback Receives each consumer's compliance status.
+     */
+    public void getStatuses(Collection<Consumer> consumers, StatusCallback callback) {
+        consumerCurator.prefetchEntitlements(consumers);
+
+        if (batchExecutor == null || !batchExecutor.isEnabled()) {
+            for (Consumer c : consumers) {
+                callback.onStatus(c, getStatus(c, null));
+            }
+            return;
+        }
+
+        Date date = new Date();
+        CompletionService<String> batch = batchExecutor.newBatch();
+        Map<Future<String>, PendingStatus> pending = new HashMap<Future<String>, PendingStatus>();
+        int maxPending = batchExecutor.getThreads() * 2;
+
+        try {
+            for (Consumer c : consumers) {
+                markUpdatedOnStart(c);
+
+                if (c.getType().isManifest()) {
+                    callback.onStatus(c, new ComplianceStatus(new Date()));
+                    continue;
+                }
+
+                String inputHash = getInputHash(c, true);
+                String json = inputHash != null ? statusCache.get(c.getUuid(), inputHash, date) : null;
+                if (json != null) {
+                    callback.onStatus(c, toStatus(c, date, json, true, true, true));
+                    continue;
+                }
+
+                // Serialize here, the workers must not touch the session:
+                JsonJsContext args = createStatusContext(c, date, true);
+                args.prepare();
+                pending.put(batchExecutor.submit(batch, args), new PendingStatus(c, inputHash));
+
+                if (pending.size() >= maxPending) {
+                    completeNext(batch, pending, date, callback);
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                completeNext(batch, pending, date, callback);
+            }
+        }
+        finally {
+            for (Future<String> future : pending.keySet()) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * A consumer whose status is being evaluated by the batch executor.
+     */
+    private static class PendingStatus {
+        private final Consumer consumer;
+        private final String inputHash;
+
+        PendingStatus(Consumer consumer, String inputHash) {
+            this.consumer = consumer;
+            this.inputHash = inputHash;
+        }
+    }
+
+    private void completeNext(CompletionService<String> batch,
+        Map<Future<String>, PendingStatus> pending, Date date, StatusCallback callback) {
+        String json;
+        PendingStatus status;
+        try {
+            Future<String> future = batch.take();
+            status = pending.remove(future);
+            json = future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuleExecutionException(e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuleExecutionException) {
+                throw (RuleExecutionException) e.getCause();
+            }
+            throw new RuleExecutionException(e.getCause());
+        }
+
+        Consumer c = status.consumer;
+        if (status.inputHash != null) {
+            statusCache.put(c.getUuid(), status.inputHash, date, c.getEntitlements(), json);
+        }
+        callback.onStatus(c, toStatus(c, date, json, false, true, true));
+    }
+
+    private void markUpdatedOnStart(Consumer c) {
+        for (Entitlement ent : c.getEntitlements()) {
+            if (!ent.isUpdatedOnStart() && ent.isValid()) {
+                ent.setUpdatedOnStart(true);
+                entCurator.merge(ent);
+            }
+        }
+    }
+
+    /*
+     * Returns the hash of the rules inputs used as the status cache key, or null when
+     * the cache is not in use for this consumer.
+     */
+    private String getInputHash(Consumer c, boolean calculateCompliantUntil) {
+        if (statusCache != null && statusCache.isEnabled() && c.getUuid() != null) {
+            return new ComplianceInputHasher(c, calculateCompliantUntil).hash();
+        }
+        return null;
+    }
+
+    private JsonJsContext createStatusContext(Consumer c, Date date,
+        boolean calculateCompliantUntil) {
         JsonJsContext args = new JsonJsContext(mapper);
         args.put("consumer", c);
         args.put("entitlements", c.getEntitlements());
         args.put("ondate", date);
         args.put("calculateCompliantUntil", calculateCompliantUntil);
         args.put("log", log, false);
+        return args;
+    }
 
+    private ComplianceStatus toStatus(Consumer c, Date date, String json, boolean cached,
+        boolean currentCompliance, boolean updateConsumer) {
         // Convert the JSON returned into a ComplianceStatus object:
-        String json = jsRules.runJsFunction(String.class, "get_status", args);
         try {
             ComplianceStatus result = mapper.toObject(json, ComplianceStatus.class);
+            if (cached) {
+                result.setDate(date);
+            }
             for (ComplianceReason reason : result.getReasons()) {
                 generator.setMessage(c, reason, result.getDate());
             }
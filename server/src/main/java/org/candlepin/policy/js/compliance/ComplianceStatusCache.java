@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Entitlement;
+import org.candlepin.policy.js.JsRunnerProvider;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.google.inject.util.Providers;
+
+import org.apache.commons.lang.time.DateUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ComplianceStatusCache
+ *
+ * Remembers the last compliance status calculated by the rules for each consumer,
+ * so that an unchanged consumer does not have to go through the rules again.
+ *
+ * An entry is only reused when the hash of the rules inputs, the rules version
+ * and the calculateCompliantUntil flag all match, and the requested date is on the
+ * same day and does not cross any start or end date of the consumer's entitlements.
+ * The cache holds at most one entry per consumer and evicts the least recently
+ * used consumers once it is full. A maximum size of zero disables it.
+ */
+@Singleton
+public class ComplianceStatusCache {
+    private static Logger log = LoggerFactory.getLogger(ComplianceStatusCache.class);
+
+    private final int maxSize;
+    private final Provider<JsRunnerProvider> jsProvider;
+    private final Map<String, CachedStatus> statuses;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * A single cached result, along with the window of dates it is valid for.
+     */
+    private static class CachedStatus {
+        private final String inputHash;
+        private final String rulesVersion;
+        private final long validFrom;
+        private final long validUntil;
+        private final String statusJson;
+
+        CachedStatus(String inputHash, String rulesVersion, long validFrom, long validUntil,
+            String statusJson) {
+            this.inputHash = inputHash;
+            this.rulesVersion = rulesVersion;
+            this.validFrom = validFrom;
+            this.validUntil = validUntil;
+            this.statusJson = statusJson;
+        }
+
+        boolean matches(String hash, String version, Date date) {
+            long time = date.getTime();
+            return inputHash.equals(hash) && rulesVersion.equals(version) &&
+                time >= validFrom && time < validUntil;
+        }
+    }
+
+    @Inject
+    public ComplianceStatusCache(Configuration config, Provider<JsRunnerProvider> jsProvider) {
+        this(config.getInt(ConfigProperties.COMPLIANCE_CACHE_MAX), jsProvider);
+    }
+
+    public ComplianceStatusCache(int maxSize, JsRunnerProvider jsProvider) {
+        this(maxSize, Providers.of(jsProvider));
+    }
+
+    /*
+     * The runner provider is looked up lazily, it needs the rules from the database and
+     * the curators this cache is injected into are created before that is available.
+     */
+    private ComplianceStatusCache(final int maxSize, Provider<JsRunnerProvider> jsProvider) {
+        this.maxSize = maxSize;
+        this.jsProvider = jsProvider;
+        this.statuses = new LinkedHashMap<String, CachedStatus>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatus> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Looks up the status previously stored for the given consumer.
+     *
+     * @param consumerUuid the consumer the status was calculated for
+     * @param inputHash hash of the rules inputs, see ComplianceInputHasher
+     * @param date the date the status is requested for
+     * @return the status JSON as returned by the rules, or null on a miss
+     */
+    public String get(String consumerUuid, String inputHash, Date date) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        CachedStatus cached;
+        synchronized (statuses) {
+            cached = statuses.get(consumerUuid);
+        }
+
+        if (cached != null && cached.matches(inputHash, jsProvider.get().getRulesVersion(), date)) {
+            hits.incrementAndGet();
+            log.debug("Compliance cache hit for consumer: {}", consumerUuid);
+            return cached.statusJson;
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stores the status calculated by the rules, replacing any earlier status of the
+     * same consumer.
+     *
+     * @param consumerUuid the consumer the status was calculated for
+     * @param inputHash hash of the rules inputs, see ComplianceInputHasher
+     * @param date the date the status was calculated for
+     * @param entitlements the entitlements the status was calculated from
+     * @param statusJson the status JSON as returned by the rules
+     */
+    public void put(String consumerUuid, String inputHash, Date date,
+        Collection<Entitlement> entitlements, String statusJson) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        long time = date.getTime();
+        long validFrom = DateUtils.truncate(date, Calendar.DATE).getTime();
+        long validUntil = DateUtils.addDays(new Date(validFrom), 1).getTime();
+
+        // The rules compare dates against entitlement start and end dates, so the
+        // result only holds until the next time one of them is crossed.
+        for (Entitlement ent : entitlements) {
+            for (Date boundary : new Date[] { ent.getStartDate(), ent.getEndDate() }) {
+                if (boundary == null) {
+                    continue;
+                }
+
+                for (long edge : new long[] { boundary.getTime(), boundary.getTime() + 1 }) {
+                    if (edge <= time) {
+                        validFrom = Math.max(validFrom, edge);
+                    }
+                    else {
+                        validUntil = Math.min(validUntil, edge);
+                    }
+                }
+            }
+        }
+
+        CachedStatus cached = new CachedStatus(inputHash, jsProvider.get().getRulesVersion(),
+            validFrom, validUntil, statusJson);
+        synchronized (statuses) {
+            statuses.put(consumerUuid, cached);
+        }
+    }
+
+    /**
+     * Drops the status stored for the given consumer, if any.
+     *
+     * @param consumerUuid the consumer whose entitlements, installed products
+     *  or facts have changed
+     */
+    public void invalidate(String consumerUuid) {
+        if (!isEnabled() || consumerUuid == null) {
+            return;
+        }
+
+        synchronized (statuses) {
+            statuses.remove(consumerUuid);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (statuses) {
+            return statuses.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ComplianceStatusCache [size: %d/%d, hits: %d, misses: %d]",
+            size(), maxSize, getHits(), getMisses());
+    }
+}
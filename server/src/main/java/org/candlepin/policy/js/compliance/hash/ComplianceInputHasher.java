@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance.hash;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.Pool;
+import org.candlepin.model.Product;
+
+import java.util.Date;
+
+/**
+ * Creates an SHA256 hash of everything the compliance rules look at when
+ * calculating the status of a consumer: its facts, installed products and
+ * entitlements, along with the pools and products backing them.
+ *
+ * Unlike {@link ComplianceStatusHasher}, which hashes the output of the rules,
+ * this hash is calculated before the rules run, so two consumer states with the
+ * same hash are guaranteed to yield the same compliance status on the same date.
+ */
+public class ComplianceInputHasher extends Hasher {
+
+    private static final EntitlementInputGenerator ENTITLEMENT_INPUT = new EntitlementInputGenerator();
+    private static final ProductVersionGenerator PRODUCT_VERSION = new ProductVersionGenerator();
+
+    public ComplianceInputHasher(Consumer consumer, boolean calculateCompliantUntil) {
+        putObject(consumer, HashableStringGenerators.CONSUMER);
+        putObject(consumer.getType() == null ? null : consumer.getType().getLabel(),
+            HashableStringGenerators.STRING);
+        putCollection(consumer.getEntitlements(), ENTITLEMENT_INPUT);
+        putObject(String.valueOf(calculateCompliantUntil), HashableStringGenerators.STRING);
+    }
+
+    /**
+     * Generates a string from the parts of an {@link Entitlement} which are not already
+     * covered by {@link HashableStringGenerators#ENTITLEMENT}.
+     */
+    private static class EntitlementInputGenerator implements HashableStringGenerator<Entitlement> {
+
+        @Override
+        public String generate(Entitlement target) {
+            if (target == null) {
+                return null;
+            }
+
+            String generated = target.getId() + getTime(target.getStartDate()) +
+                getTime(target.getEndDate());
+
+            Pool pool = target.getPool();
+            if (pool != null) {
+                generated += HashableStringGenerators.generateFromObject(pool.getProduct(),
+                    PRODUCT_VERSION);
+                generated += HashableStringGenerators.generateFromCollection(
+                    pool.getProvidedProducts(), PRODUCT_VERSION);
+            }
+            return generated;
+        }
+
+        private Long getTime(Date date) {
+            return date == null ? null : date.getTime();
+        }
+    }
+
+    /**
+     * Generates a string from a {@link Product} which changes whenever any of the
+     * product's attributes or content change.
+     */
+    private static class ProductVersionGenerator implements HashableStringGenerator<Product> {
+
+        @Override
+        public String generate(Product target) {
+            return target == null ? null : target.getId() + target.getEntityVersion();
+        }
+    }
+}
@@ -40,6 +40,7 @@ import org.candlepin.common.paging.Paginate;
 import org.candlepin.config.ConfigProperties;
 import org.candlepin.controller.Entitler;
 import org.candlepin.controller.PoolManager;
+import org.candlepin.model.AbstractHibernateCurator.ResultHandler;
 import org.candlepin.model.CdnCurator;
 import org.candlepin.model.CertificateSerialDto;
 import org.candlepin.model.Consumer;
@@ -89,6 +90,7 @@ import org.candlepin.resource.util.ConsumerBindUtil;
 import org.candlepin.resource.util.ConsumerInstalledProductEnricher;
 import org.candlepin.resource.util.EntitlementFinderUtil;
 import org.candlepin.resource.util.ResourceDateParser;
+import org.candlepin.resteasy.JsonProvider;
 import org.candlepin.resteasy.parameter.CandlepinParam;
 import org.candlepin.resteasy.parameter.KeyValueParameter;
 import org.candlepin.service.EntitlementCertServiceAdapter;
@@ -99,6 +101,8 @@ import org.candlepin.sync.ExportCreationException;
 import org.candlepin.sync.Exporter;
 import org.candlepin.util.Util;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 
@@ -115,6 +119,7 @@ import org.xnap.commons.i18n.I18n;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -140,9 +145,11 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -161,6 +168,8 @@ public class ConsumerResource {
 
     private static Logger log = LoggerFactory.getLogger(ConsumerResource.class);
     private static final int FEED_LIMIT = 1000;
+    // Consumers whose compliance is calculated with one prefetch
+    private static final int COMPLIANCE_CHUNK_SIZE = 100;
 
     private ConsumerCurator consumerCurator;
     private ConsumerTypeCurator consumerTypeCurator;
@@ -189,6 +198,7 @@ public class ConsumerResource {
     private Configuration config;
     private CalculatedAttributesUtil calculatedAttributesUtil;
     private ConsumerBindUtil consumerBindUtil;
+    private JsonProvider jsonProvider;
 
     @Inject
     public ConsumerResource(ConsumerCurator consumerCurator,
@@ -208,7 +218,7 @@ public class ConsumerResource {
         DistributorVersionCurator distributorVersionCurator,
         Configuration config, ContentCurator contentCurator,
         CdnCurator cdnCurator, CalculatedAttributesUtil calculatedAttributesUtil,
-        ConsumerBindUtil consumerBindUtil) {
+        ConsumerBindUtil consumerBindUtil, JsonProvider jsonProvider) {
 
         this.consumerCurator = consumerCurator;
         this.consumerTypeCurator = consumerTypeCurator;
@@ -241,6 +251,7 @@ public class ConsumerResource {
         this.config = config;
         this.calculatedAttributesUtil = calculatedAttributesUtil;
         this.consumerBindUtil = consumerBindUtil;
+        this.jsonProvider = jsonProvider;
     }
 
     @ApiOperation(notes = "Retrieves a list of the Consumers", value = "list")
@@ -986,7 +997,7 @@ public class ConsumerResource {
         }
         else if (!existing.factsAreEqual(incoming)) {
             log.info("Updating facts.");
-            existing.setFacts(incoming.getFacts());
+            existing.updateFacts(incoming.getFacts());
             return true;
         }
         return false;
@@ -1223,6 +1234,7 @@ public class ConsumerResource {
 
         log.debug("Getting client certificates for consumer: {}", consumerUuid);
         Consumer consumer = consumerCurator.verifyAndLookupConsumer(consumerUuid);
+        consumerCurator.prefetchEntitlements(Collections.singletonList(consumer));
         poolManager.regenerateDirtyEntitlements(consumer);
 
         Set<Long> serialSet = this.extractSerials(serials);
@@ -1941,28 +1953,69 @@ public class ConsumerResource {
         @ApiParam("Date to get compliance information for, default is now.")
         @QueryParam("on_date") String onDate) {
         Consumer consumer = consumerCurator.verifyAndLookupConsumer(uuid);
+        consumerCurator.prefetchEntitlements(Collections.singletonList(consumer));
         Date date = ResourceDateParser.parseDateString(onDate);
         return this.complianceRules.getStatus(consumer, date);
     }
 
     @ApiOperation(notes = "Retrieves a Compliance Status list for a list of Consumers",
-        value = "getComplianceStatusList")
+        value = "getComplianceStatusList", response = ComplianceStatus.class,
+        responseContainer = "map")
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/compliance")
     @Transactional
-    public Map<String, ComplianceStatus> getComplianceStatusList(
-        @QueryParam("uuid") @Verify(value = Consumer.class, nullable = true) List<String> uuids) {
-        List<Consumer> consumers = uuids == null ? new LinkedList<Consumer>() :
-            consumerCurator.findByUuids(uuids);
-        Map<String, ComplianceStatus> results = new HashMap<String, ComplianceStatus>();
+    public Response getComplianceStatusList(
+        @QueryParam("uuid") @Verify(value = Consumer.class, nullable = true)
+        final List<String> uuids) {
+        final ObjectMapper mapper = jsonProvider
+            .locateMapper(Object.class, MediaType.APPLICATION_JSON_TYPE);
+
+        // Statuses are written out as they are calculated, rather than collected first
+        StreamingOutput output = new StreamingOutput() {
+            @Override
+            public void write(OutputStream stream) throws IOException, WebApplicationException {
+                JsonGenerator generator = mapper.getFactory().createGenerator(stream);
+                generator.writeStartObject();
+                if (uuids != null && !uuids.isEmpty()) {
+                    writeComplianceStatuses(uuids, mapper, generator);
+                }
+                generator.writeEndObject();
+                generator.flush();
+            }
+        };
 
-        for (Consumer consumer : consumers) {
-            ComplianceStatus status = complianceRules.getStatus(consumer, null);
-            results.put(consumer.getUuid(), status);
-        }
+        return Response.ok(output).build();
+    }
+
+    /*
+     * Not private so that the transaction also covers statuses calculated while the
+     * response is being written. The consumers are read a chunk at a time, and each
+     * chunk is prefetched, calculated, written and evicted before the next is read.
+     */
+    @Transactional
+    protected void writeComplianceStatuses(List<String> uuids, final ObjectMapper mapper,
+        final JsonGenerator generator) throws IOException {
+        final ComplianceRules.StatusCallback callback = new ComplianceRules.StatusCallback() {
+            @Override
+            public void onStatus(Consumer consumer, ComplianceStatus status) {
+                try {
+                    generator.writeFieldName(consumer.getUuid());
+                    mapper.writeValue(generator, status);
+                }
+                catch (IOException e) {
+                    throw new WebApplicationException(e);
+                }
+            }
+        };
 
-        return results;
+        consumerCurator.scrollByUuids(uuids, COMPLIANCE_CHUNK_SIZE,
+            new ResultHandler<List<Consumer>>() {
+                @Override
+                public void handle(List<Consumer> consumers) {
+                    complianceRules.getStatuses(consumers, callback);
+                }
+            });
     }
 
     private void addDataToInstalledProducts(Consumer consumer) {
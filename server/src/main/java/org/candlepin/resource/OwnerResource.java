@@ -40,6 +40,7 @@ import org.candlepin.controller.ContentManager;
 import org.candlepin.controller.OwnerManager;
 import org.candlepin.controller.PoolManager;
 import org.candlepin.controller.ProductManager;
+import org.candlepin.model.AbstractHibernateCurator.ResultHandler;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.ConsumerType;
@@ -77,6 +78,7 @@ import org.candlepin.resource.util.CalculatedAttributesUtil;
 import org.candlepin.resource.util.EntitlementFinderUtil;
 import org.candlepin.resource.util.ResolverUtil;
 import org.candlepin.resource.util.ResourceDateParser;
+import org.candlepin.resteasy.JsonProvider;
 import org.candlepin.resteasy.parameter.CandlepinParam;
 import org.candlepin.resteasy.parameter.KeyValueParameter;
 import org.candlepin.service.OwnerServiceAdapter;
@@ -89,6 +91,8 @@ import org.candlepin.util.ContentOverrideValidator;
 import org.candlepin.util.ServiceLevelValidator;
 import org.candlepin.util.Util;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 
@@ -109,6 +113,7 @@ import ch.qos.logback.classic.Level;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -130,9 +135,12 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -178,6 +186,7 @@ public class OwnerResource {
     private ResolverUtil resolverUtil;
     private ProductManager productManager;
     private ContentManager contentManager;
+    private JsonProvider jsonProvider;
 
     @Inject
     public OwnerResource(OwnerCurator ownerCurator,
@@ -206,7 +215,8 @@ public class OwnerResource {
         Configuration config,
         ResolverUtil resolverUtil,
         ProductManager productManager,
-        ContentManager contentManager) {
+        ContentManager contentManager,
+        JsonProvider jsonProvider) {
 
         this.ownerCurator = ownerCurator;
         this.ownerInfoCurator = ownerInfoCurator;
@@ -235,6 +245,7 @@ public class OwnerResource {
         this.resolverUtil = resolverUtil;
         this.productManager = productManager;
         this.contentManager = contentManager;
+        this.jsonProvider = jsonProvider;
     }
 
     /**
@@ -666,36 +677,67 @@ public class OwnerResource {
     @Path("{owner_key}/consumers")
     @Paginate
     @SuppressWarnings("checkstyle:indentation")
-    @ApiOperation(notes = "Retrieve a list of Consumers for the Owner", value = "List Consumers")
+    @ApiOperation(notes = "Retrieve a list of Consumers for the Owner", value = "List Consumers",
+        response = Consumer.class, responseContainer = "list")
     @ApiResponses({ @ApiResponse(code = 404, message = "Owner not found"),
             @ApiResponse(code = 400, message = "Invalid request")})
-    public List<Consumer> listConsumers(
+    public Response listConsumers(
         @PathParam("owner_key")
         @Verify(value = Owner.class, subResource = SubResource.CONSUMERS) String ownerKey,
-        @QueryParam("username") String userName,
+        @QueryParam("username") final String userName,
         @QueryParam("type") Set<String> typeLabels,
-        @QueryParam("uuid") @Verify(value = Consumer.class, nullable = true) List<String> uuids,
-        @QueryParam("hypervisor_id") List<String> hypervisorIds,
+        @QueryParam("uuid") @Verify(value = Consumer.class, nullable = true) final List<String> uuids,
+        @QueryParam("hypervisor_id") final List<String> hypervisorIds,
         @QueryParam("fact") @CandlepinParam(type = KeyValueParameter.class)
-            List<KeyValueParameter> attrFilters,
-        @QueryParam("sku") List<String> skus,
-        @QueryParam("subscription_id") List<String> subscriptionIds,
-        @QueryParam("contract") List<String> contracts,
+            final List<KeyValueParameter> attrFilters,
+        @QueryParam("sku") final List<String> skus,
+        @QueryParam("subscription_id") final List<String> subscriptionIds,
+        @QueryParam("contract") final List<String> contracts,
         @Context PageRequest pageRequest) {
 
-        Owner owner = findOwner(ownerKey);
+        final Owner owner = findOwner(ownerKey);
         List<ConsumerType> types = null;
         if (typeLabels != null && !typeLabels.isEmpty()) {
             types = consumerTypeCurator.lookupConsumerTypes(typeLabels);
         }
 
-        Page<List<Consumer>> page = consumerCurator.searchOwnerConsumers(
-            owner, userName, types, uuids, hypervisorIds, attrFilters, skus,
-            subscriptionIds, contracts, pageRequest);
+        if (pageRequest != null) {
+            Page<List<Consumer>> page = consumerCurator.searchOwnerConsumers(
+                owner, userName, types, uuids, hypervisorIds, attrFilters, skus,
+                subscriptionIds, contracts, pageRequest);
 
-        // Store the page for the LinkHeaderResponseFilter
-        ResteasyProviderFactory.pushContext(Page.class, page);
-        return page.getPageData();
+            // Store the page for the LinkHeaderResponseFilter
+            ResteasyProviderFactory.pushContext(Page.class, page);
+            return Response.ok(page.getPageData()).build();
+        }
+
+        // Unpaged listings can be huge, write the consumers out as they are read:
+        ResteasyProviderFactory.pushContext(Page.class, new Page<List<Consumer>>());
+        final List<ConsumerType> consumerTypes = types;
+        final ObjectMapper mapper = jsonProvider
+            .locateMapper(Object.class, MediaType.APPLICATION_JSON_TYPE);
+
+        StreamingOutput output = new StreamingOutput() {
+            @Override
+            public void write(OutputStream stream) throws IOException, WebApplicationException {
+                final JsonGenerator generator = mapper.getFactory().createGenerator(stream);
+                generator.writeStartArray();
+
+                consumerCurator.scrollOwnerConsumers(owner, userName, consumerTypes, uuids,
+                    hypervisorIds, attrFilters, skus, subscriptionIds, contracts,
+                    new ResultHandler<Consumer>() {
+                        @Override
+                        public void handle(Consumer consumer) throws IOException {
+                            mapper.writeValue(generator, consumer);
+                        }
+                    });
+
+                generator.writeEndArray();
+                generator.flush();
+            }
+        };
+
+        return Response.ok(output).build();
     }
 
 
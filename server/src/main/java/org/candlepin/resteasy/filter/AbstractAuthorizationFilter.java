@@ -32,6 +32,8 @@ import java.lang.reflect.Method;
 
 import javax.annotation.Priority;
 import javax.inject.Provider;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletRequestWrapper;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Priorities;
 import javax.ws.rs.container.ContainerRequestContext;
@@ -74,7 +76,7 @@ public abstract class AbstractAuthorizationFilter
                     (LoggerFactory.getLogger(LoggingFilter.class).isDebugEnabled()) ?
                     duplicate : null;
                 try {
-                    TeeHttpServletRequest teeRequest = new TeeHttpServletRequest(
+                    TeeHttpServletRequest teeRequest = getTeeRequest(
                         ResteasyProviderFactory.getContextData(HttpServletRequest.class));
                     log.debug(m, "{}", ServletLogger.logBasicRequestInfo(teeRequest));
                     log.debug(m, "{}", ServletLogger.logRequest(teeRequest));
@@ -86,6 +88,22 @@ public abstract class AbstractAuthorizationFilter
         }
     }
 
+    /*
+     * Reuses the wrapper of the LoggingFilter if the request went through it. That
+     * wrapper only reads the body when it is logged, so reading it here leaves it
+     * readable for the resource method.
+     */
+    private static TeeHttpServletRequest getTeeRequest(HttpServletRequest request) throws IOException {
+        ServletRequest wrapped = request;
+        while (wrapped instanceof ServletRequestWrapper) {
+            if (wrapped instanceof TeeHttpServletRequest) {
+                return (TeeHttpServletRequest) wrapped;
+            }
+            wrapped = ((ServletRequestWrapper) wrapped).getRequest();
+        }
+        return new TeeHttpServletRequest(request);
+    }
+
     abstract void runFilter(ContainerRequestContext requestContext);
 
     protected void denyAccess(Principal principal, Method method) {
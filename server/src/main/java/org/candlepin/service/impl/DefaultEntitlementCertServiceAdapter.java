@@ -29,6 +29,7 @@ import org.candlepin.model.KeyPairCurator;
 import org.candlepin.model.Pool;
 import org.candlepin.model.Product;
 import org.candlepin.model.ProductContent;
+import org.candlepin.model.dto.EntitlementBody;
 import org.candlepin.pki.PKIUtility;
 import org.candlepin.pki.X509ByteExtensionWrapper;
 import org.candlepin.pki.X509ExtensionWrapper;
@@ -57,11 +58,15 @@ import java.security.cert.X509Certificate;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * DefaultEntitlementCertServiceAdapter
@@ -76,11 +81,11 @@ public class DefaultEntitlementCertServiceAdapter extends BaseEntitlementCertSer
     private EntitlementCurator entCurator;
     private I18n i18n;
     private Configuration config;
+    private EntitlementCertExecutor certExecutor;
 
     private static Logger log =
         LoggerFactory.getLogger(DefaultEntitlementCertServiceAdapter.class);
 
-    @Inject
     public DefaultEntitlementCertServiceAdapter(PKIUtility pki,
         X509ExtensionUtil extensionUtil,
         X509V3ExtensionUtil v3extensionUtil,
@@ -89,6 +94,19 @@ public class DefaultEntitlementCertServiceAdapter extends BaseEntitlementCertSer
         CertificateSerialCurator serialCurator,
         EntitlementCurator entCurator, I18n i18n,
         Configuration config) {
+        this(pki, extensionUtil, v3extensionUtil, entCertCurator, keyPairCurator, serialCurator,
+            entCurator, i18n, config, new EntitlementCertExecutor(0));
+    }
+
+    @Inject
+    public DefaultEntitlementCertServiceAdapter(PKIUtility pki,
+        X509ExtensionUtil extensionUtil,
+        X509V3ExtensionUtil v3extensionUtil,
+        EntitlementCertificateCurator entCertCurator,
+        KeyPairCurator keyPairCurator,
+        CertificateSerialCurator serialCurator,
+        EntitlementCurator entCurator, I18n i18n,
+        Configuration config, EntitlementCertExecutor certExecutor) {
 
         this.pki = pki;
         this.extensionUtil = extensionUtil;
@@ -99,6 +117,7 @@ public class DefaultEntitlementCertServiceAdapter extends BaseEntitlementCertSer
         this.entCurator = entCurator;
         this.i18n = i18n;
         this.config = config;
+        this.certExecutor = certExecutor;
     }
 
 
@@ -161,19 +180,30 @@ public class DefaultEntitlementCertServiceAdapter extends BaseEntitlementCertSer
         boolean useContentPrefix)
         throws GeneralSecurityException, IOException {
 
+        return prepareCertificate(ent, product, products, productModels, serialNumber, keyPair,
+            useContentPrefix, false).createX509Certificate();
+    }
+
+    /*
+     * Reads everything the certificate of the given entitlement is built from. This
+     * has to run in the transaction which loaded the entitlement, the build returned
+     * does not touch the database and may run on any thread.
+     */
+    private CertificateBuild prepareCertificate(Entitlement ent, Product product,
+        Set<Product> products, List<org.candlepin.model.dto.Product> productModels,
+        BigInteger serialNumber, KeyPair keyPair, boolean useContentPrefix, boolean withPayload)
+        throws IOException {
+
         // oidutil is busted at the moment, so do this manually
         Set<X509ExtensionWrapper> extensions;
-        Set<X509ByteExtensionWrapper> byteExtensions = new LinkedHashSet<X509ByteExtensionWrapper>();
         products.add(product);
 
         Map<String, EnvironmentContent> promotedContent = getPromotedContent(ent);
         String contentPrefix = getContentPrefix(ent, useContentPrefix);
 
-
-        if (shouldGenerateV3(ent)) {
+        boolean v3 = shouldGenerateV3(ent);
+        if (v3) {
             extensions = prepareV3Extensions(ent, contentPrefix, promotedContent);
-            byteExtensions = prepareV3ByteExtensions(product, productModels,
-                    ent, contentPrefix, promotedContent);
         }
         else {
             extensions = prepareV1Extensions(products, ent, contentPrefix,
@@ -181,10 +211,93 @@ public class DefaultEntitlementCertServiceAdapter extends BaseEntitlementCertSer
         }
 
         setupEntitlementEndDate(ent);
-        X509Certificate x509Cert =  this.pki.createX509Certificate(
-            createDN(ent), extensions, byteExtensions, ent.getStartDate(),
-            ent.getEndDate(), keyPair, serialNumber, null);
-        return x509Cert;
+
+        EntitlementBody body = null;
+        if (v3 && withPayload) {
+            body = v3extensionUtil.createEntitlementBody(product, productModels, ent,
+                contentPrefix, promotedContent);
+        }
+
+        return new CertificateBuild(ent, product, productModels, serialNumber, keyPair,
+            contentPrefix, promotedContent, v3, extensions, body);
+    }
+
+    /**
+     * The CPU bound part of generating an entitlement certificate: compressing the
+     * content, signing the certificate and PEM encoding it along with the v3
+     * entitlement data. It only uses what was read by prepareCertificate.
+     */
+    private class CertificateBuild implements Callable<String> {
+        private final Entitlement ent;
+        private final Product product;
+        private final List<org.candlepin.model.dto.Product> productModels;
+        private final BigInteger serialNumber;
+        private final KeyPair keyPair;
+        private final String contentPrefix;
+        private final Map<String, EnvironmentContent> promotedContent;
+        private final boolean v3;
+        private final Set<X509ExtensionWrapper> extensions;
+        private final EntitlementBody body;
+        private final String dn;
+        private final Date startDate;
+        private final Date endDate;
+
+        CertificateBuild(Entitlement ent, Product product,
+            List<org.candlepin.model.dto.Product> productModels, BigInteger serialNumber,
+            KeyPair keyPair, String contentPrefix, Map<String, EnvironmentContent> promotedContent,
+            boolean v3, Set<X509ExtensionWrapper> extensions, EntitlementBody body) {
+            this.ent = ent;
+            this.product = product;
+            this.productModels = productModels;
+            this.serialNumber = serialNumber;
+            this.keyPair = keyPair;
+            this.contentPrefix = contentPrefix;
+            this.promotedContent = promotedContent;
+            this.v3 = v3;
+            this.extensions = extensions;
+            this.body = body;
+            this.dn = createDN(ent);
+            this.startDate = ent.getStartDate();
+            this.endDate = ent.getEndDate();
+        }
+
+        X509Certificate createX509Certificate() throws GeneralSecurityException, IOException {
+            Set<X509ByteExtensionWrapper> byteExtensions =
+                new LinkedHashSet<X509ByteExtensionWrapper>();
+            if (v3) {
+                byteExtensions = prepareV3ByteExtensions(product, productModels,
+                    ent, contentPrefix, promotedContent);
+            }
+
+            return pki.createX509Certificate(dn, extensions, byteExtensions, startDate,
+                endDate, keyPair, serialNumber, null);
+        }
+
+        @Override
+        public String call() throws GeneralSecurityException, IOException {
+            X509Certificate x509Cert = createX509Certificate();
+
+            log.info("Getting PEM encoded cert.");
+            String pem = new String(pki.getPemEncoded(x509Cert));
+
+            if (body != null) {
+                log.debug("Generating v3 entitlement data");
+
+                byte[] payloadBytes = v3extensionUtil.createEntitlementDataPayload(body);
+
+                String payload = "-----BEGIN ENTITLEMENT DATA-----\n";
+                payload += Util.toBase64(payloadBytes);
+                payload += "-----END ENTITLEMENT DATA-----\n";
+
+                byte[] bytes = pki.getSHA256WithRSAHash(new ByteArrayInputStream(payloadBytes));
+                String signature = "-----BEGIN RSA SIGNATURE-----\n";
+                signature += Util.toBase64(bytes);
+                signature += "-----END RSA SIGNATURE-----\n";
+
+                pem += payload + signature;
+            }
+            return pem;
+        }
     }
 
     /**
@@ -372,70 +485,72 @@ public class DefaultEntitlementCertServiceAdapter extends BaseEntitlementCertSer
         // EntitlementCertificate, otherwise we could have used cascading create
         serialCurator.saveOrUpdateAll(serialMap);
 
-        Map<String, EntitlementCertificate> entitlementCerts = new HashMap<String, EntitlementCertificate>();
-
-        for (Entry<String, Entitlement> entry : entitlements.entrySet()) {
-            Entitlement entitlement = entry.getValue();
-            CertificateSerial serial = serialMap.get(entry.getKey());
-            Product product = productMap.get(entry.getKey());
+        Map<String, CertificateBuild> builds = new LinkedHashMap<String, CertificateBuild>();
+        Map<String, Future<String>> pending = new HashMap<String, Future<String>>();
+        boolean parallel = certExecutor.isEnabled() && entitlements.size() > 1;
 
-            log.info("Generating entitlement cert for entitlement: {}", entitlement);
-
-            Set<Product> products = new HashSet<Product>(entitlement.getPool().getProvidedProducts());
-
-            // If creating a certificate for a distributor, we need
-            // to add any derived products as well so that their content
-            // is available in the upstream certificate.
-            products.addAll(getDerivedProductsForDistributor(entitlement));
-            products.add(product);
-
-            Map<String, EnvironmentContent> promotedContent = getPromotedContent(entitlement);
-            String contentPrefix = getContentPrefix(entitlement, !thisIsUeberCert);
+        Map<String, EntitlementCertificate> entitlementCerts = new HashMap<String, EntitlementCertificate>();
 
-            log.info("Creating X509 cert for product: {}", product);
-            log.debug("Provided products: {}", products);
-            List<org.candlepin.model.dto.Product> productModels = v3extensionUtil.createProducts(product,
-                products, contentPrefix, promotedContent, entitlement.getConsumer(), entitlement);
+        try {
+            for (Entry<String, Entitlement> entry : entitlements.entrySet()) {
+                Entitlement entitlement = entry.getValue();
+                CertificateSerial serial = serialMap.get(entry.getKey());
+                Product product = productMap.get(entry.getKey());
 
-            X509Certificate x509Cert = createX509Certificate(entitlement, product, products, productModels,
-                BigInteger.valueOf(serial.getId()), keyPair, !thisIsUeberCert);
+                log.info("Generating entitlement cert for entitlement: {}", entitlement);
 
-            EntitlementCertificate cert = new EntitlementCertificate();
-            cert.setSerial(serial);
-            cert.setKeyAsBytes(pemEncodedKeyPair);
+                Set<Product> products = new HashSet<Product>(entitlement.getPool().getProvidedProducts());
 
-            log.info("Getting PEM encoded cert.");
-            String pem = new String(this.pki.getPemEncoded(x509Cert));
+                // If creating a certificate for a distributor, we need
+                // to add any derived products as well so that their content
+                // is available in the upstream certificate.
+                products.addAll(getDerivedProductsForDistributor(entitlement));
+                products.add(product);
 
-            if (shouldGenerateV3(entitlement)) {
-                log.debug("Generating v3 entitlement data");
+                Map<String, EnvironmentContent> promotedContent = getPromotedContent(entitlement);
+                String contentPrefix = getContentPrefix(entitlement, !thisIsUeberCert);
 
-                byte[] payloadBytes = v3extensionUtil.createEntitlementDataPayload(product, productModels,
-                        entitlement, contentPrefix, promotedContent);
+                log.info("Creating X509 cert for product: {}", product);
+                log.debug("Provided products: {}", products);
+                List<org.candlepin.model.dto.Product> productModels = v3extensionUtil.createProducts(
+                    product, products, contentPrefix, promotedContent, entitlement.getConsumer(),
+                    entitlement);
 
-                String payload = "-----BEGIN ENTITLEMENT DATA-----\n";
-                payload += Util.toBase64(payloadBytes);
-                payload += "-----END ENTITLEMENT DATA-----\n";
+                CertificateBuild build = prepareCertificate(entitlement, product, products,
+                    productModels, BigInteger.valueOf(serial.getId()), keyPair, !thisIsUeberCert, true);
+                builds.put(entry.getKey(), build);
 
-                byte[] bytes = pki.getSHA256WithRSAHash(new ByteArrayInputStream(payloadBytes));
-                String signature = "-----BEGIN RSA SIGNATURE-----\n";
-                signature += Util.toBase64(bytes);
-                signature += "-----END RSA SIGNATURE-----\n";
-
-                pem += payload + signature;
+                // the database work for the next entitlement overlaps the build of this one
+                if (parallel) {
+                    pending.put(entry.getKey(), certExecutor.submit(build));
+                }
             }
 
-            cert.setCert(pem);
-            cert.setEntitlement(entitlement);
+            for (Entry<String, CertificateBuild> entry : builds.entrySet()) {
+                Entitlement entitlement = entitlements.get(entry.getKey());
+                CertificateSerial serial = serialMap.get(entry.getKey());
+
+                EntitlementCertificate cert = new EntitlementCertificate();
+                cert.setSerial(serial);
+                cert.setKeyAsBytes(pemEncodedKeyPair);
+                cert.setCert(parallel ? getBuiltPem(pending.get(entry.getKey())) :
+                    entry.getValue().call());
+                cert.setEntitlement(entitlement);
+
+                if (log.isDebugEnabled()) {
+                    log.debug("Generated cert serial number: {}", serial.getId());
+                    log.debug("Key: {}", cert.getKey());
+                    log.debug("Cert: {}", cert.getCert());
+                }
 
-            if (log.isDebugEnabled()) {
-                log.debug("Generated cert serial number: {}", serial.getId());
-                log.debug("Key: {}", cert.getKey());
-                log.debug("Cert: {}", cert.getCert());
+                entitlement.getCertificates().add(cert);
+                entitlementCerts.put(entry.getKey(), cert);
+            }
+        }
+        finally {
+            for (Future<String> future : pending.values()) {
+                future.cancel(true);
             }
-
-            entitlement.getCertificates().add(cert);
-            entitlementCerts.put(entry.getKey(), cert);
         }
 
         log.info("Persisting certs.");
@@ -444,6 +559,33 @@ public class DefaultEntitlementCertServiceAdapter extends BaseEntitlementCertSer
         return entitlementCerts;
     }
 
+    private String getBuiltPem(Future<String> build)
+        throws GeneralSecurityException, IOException {
+        try {
+            return build.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while building entitlement certificates", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
     private String createDN(Entitlement ent) {
         StringBuilder sb = new StringBuilder("CN=");
         sb.append(ent.getId());
@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.service.impl;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.util.BatchExecutor;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * EntitlementCertExecutor
+ *
+ * A bounded pool of threads building and signing entitlement certificates. The
+ * tasks only get inputs which were read from the database beforehand, so they never
+ * touch the session of the transaction which submitted them.
+ */
+@Singleton
+public class EntitlementCertExecutor extends BatchExecutor {
+
+    @Inject
+    public EntitlementCertExecutor(Configuration config) {
+        this(config.getInt(ConfigProperties.CERT_GENERATION_THREADS));
+    }
+
+    public EntitlementCertExecutor(int threads) {
+        super("entcert", threads);
+    }
+}
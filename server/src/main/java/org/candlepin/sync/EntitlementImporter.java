@@ -65,6 +65,24 @@ public class EntitlementImporter {
         throws IOException, SyncDataFormatException {
 
         Entitlement entitlement = mapper.readValue(reader, Entitlement.class);
+        return importObject(entitlement, owner, productsById, consumer, meta);
+    }
+
+    /**
+     * Builds the subscription for an entitlement already read from the manifest.
+     *
+     * @param entitlement the entitlement read from the manifest
+     * @param owner the owner importing the manifest
+     * @param productsById the products imported from the manifest
+     * @param consumer the upstream consumer of the manifest
+     * @param meta the manifest metadata
+     * @return the subscription for the entitlement
+     * @throws SyncDataFormatException if the entitlement is invalid
+     */
+    public Subscription importObject(Entitlement entitlement, Owner owner,
+        Map<String, Product> productsById, ConsumerDto consumer, Meta meta)
+        throws SyncDataFormatException {
+
         Subscription subscription = new Subscription();
 
         log.debug("Building subscription for owner: {}", owner);
@@ -41,17 +41,23 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.Signature;
+import java.security.SignatureException;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -92,6 +98,10 @@ public class Exporter {
 
     private static final String LEGACY_RULES_FILE = "/rules/default-rules.js";
 
+    // The exported files are zipped into this entry of the signed archive
+    private static final String CONTENT_ARCHIVE = "consumer_export.zip";
+    private static final String EXPORT_DIR = "export/";
+
     @Inject
     public Exporter(ConsumerTypeCurator consumerTypeCurator, MetaExporter meta,
         ConsumerExporter consumerExporter, ConsumerTypeExporter consumerType,
@@ -139,183 +149,78 @@ public class Exporter {
         throws ExportCreationException {
         // TODO: need to delete tmpDir (which contains the archive,
         // which we need to return...)
+        ExportArchive archive = null;
         try {
-            File tmpDir = new SyncUtils(config).makeTempDir("export");
-            File baseDir = new File(tmpDir.getAbsolutePath(), "export");
-            baseDir.mkdir();
-
-            exportMeta(baseDir, cdnKey);
-            exportConsumer(baseDir, consumer, webAppPrefix, apiUrl);
-            exportIdentityCertificate(baseDir, consumer);
-            exportEntitlements(baseDir, consumer);
-            exportEntitlementsCerts(baseDir, consumer, null, true);
-            exportProducts(baseDir, consumer);
-            exportConsumerTypes(baseDir);
-            exportRules(baseDir);
-            exportDistributorVersions(baseDir);
-            exportContentDeliveryNetworks(baseDir);
-            return makeArchive(consumer, tmpDir, baseDir);
+            archive = new ExportArchive(consumer);
+            ZipOutputStream out = archive.getContentStream();
+
+            exportMeta(out, cdnKey);
+            exportConsumer(out, consumer, webAppPrefix, apiUrl);
+            exportIdentityCertificate(out, consumer);
+            exportEntitlements(out, consumer);
+            exportEntitlementsCerts(out, consumer, null, true);
+            exportProducts(out, consumer);
+            exportConsumerTypes(out);
+            exportRules(out);
+            exportDistributorVersions(out);
+            exportContentDeliveryNetworks(out);
+            return archive.finish();
         }
         catch (IOException e) {
             log.error("Error generating entitlement export", e);
             throw new ExportCreationException("Unable to create export archive", e);
         }
+        finally {
+            if (archive != null) {
+                archive.abortUnlessFinished();
+            }
+        }
     }
 
     public File getEntitlementExport(Consumer consumer, Set<Long> serials) throws ExportCreationException {
         // TODO: need to delete tmpDir (which contains the archive,
         // which we need to return...)
+        ExportArchive archive = null;
         try {
-            File tmpDir = new SyncUtils(config).makeTempDir("export");
-            File baseDir = new File(tmpDir.getAbsolutePath(), "export");
-            baseDir.mkdir();
+            archive = new ExportArchive(consumer);
+            ZipOutputStream out = archive.getContentStream();
 
-            exportMeta(baseDir, null);
-            exportEntitlementsCerts(baseDir, consumer, serials, false);
-            return makeArchive(consumer, tmpDir, baseDir);
+            exportMeta(out, null);
+            exportEntitlementsCerts(out, consumer, serials, false);
+            return archive.finish();
         }
         catch (IOException e) {
             log.error("Error generating entitlement export", e);
             throw new ExportCreationException("Unable to create export archive", e);
         }
-    }
-
-    /**
-     * Create a tar.gz archive of the exported directory.
-     *
-     * @param exportDir Directory where Candlepin data was exported.
-     * @return File reference to the new archive zip.
-     */
-    private File makeArchive(Consumer consumer, File tempDir, File exportDir)
-        throws IOException {
-        String exportFileName = exportDir.getName() + ".zip";
-        log.info("Creating archive of " + exportDir.getAbsolutePath() + " in: " +
-            exportFileName);
-
-        File archive = createZipArchiveWithDir(
-            tempDir, exportDir, "consumer_export.zip",
-            "Candlepin export for " + consumer.getUuid());
-
-        InputStream archiveInputStream = null;
-        try {
-            archiveInputStream = new FileInputStream(archive);
-            File signedArchive = createSignedZipArchive(
-                tempDir, archive, exportFileName,
-                pki.getSHA256WithRSAHash(archiveInputStream),
-                "signed Candlepin export for " + consumer.getUuid());
-
-            log.debug("Returning file: " + archive.getAbsolutePath());
-            return signedArchive;
-        }
-        finally {
-            if (archiveInputStream != null) {
-                try {
-                    archiveInputStream.close();
-                }
-                catch (Exception e) {
-                    // nothing to do
-                }
-            }
-        }
-    }
-
-    private File createZipArchiveWithDir(File tempDir, File exportDir,
-        String exportFileName, String comment)
-        throws FileNotFoundException, IOException {
-
-        File archive = new File(tempDir, exportFileName);
-        ZipOutputStream out = null;
-        try {
-            out = new ZipOutputStream(new FileOutputStream(archive));
-            out.setComment(comment);
-            addFilesToArchive(out, exportDir.getParent().length() + 1, exportDir);
-        }
         finally {
-            if (out != null) {
-                out.close();
+            if (archive != null) {
+                archive.abortUnlessFinished();
             }
         }
-        return archive;
     }
 
-    private File createSignedZipArchive(File tempDir, File toAdd,
-        String exportFileName, byte[] signature, String comment)
-        throws FileNotFoundException, IOException {
-
-        File archive = new File(tempDir, exportFileName);
-        ZipOutputStream out = null;
-        try {
-            out = new ZipOutputStream(new FileOutputStream(archive));
-            out.setComment(comment);
-            addFileToArchive(out, toAdd.getParent().length() + 1, toAdd);
-            addSignatureToArchive(out, signature);
-        }
-        finally {
-            if (out != null) {
-                out.close();
-            }
-        }
-        return archive;
-    }
-
-
-
     /**
-     * @param out
-     * @param exportDir
-     * @throws IOException
+     * Starts a file in the export archive. The file ends when the returned writer is
+     * closed, which leaves the archive open.
+     *
+     * @param out the archive of the exported files
+     * @param path the path of the file in the export directory
+     * @return a writer for the file
+     * @throws IOException if the archive could not be written
      */
-    private void addFilesToArchive(ZipOutputStream out, int charsToDropFromName,
-        File directory) throws IOException {
-        for (File file : directory.listFiles()) {
-            if (file.isDirectory()) {
-                addFilesToArchive(out, charsToDropFromName, file);
-            }
-            else {
-                addFileToArchive(out, charsToDropFromName, file);
-            }
-        }
+    private Writer newEntry(ZipOutputStream out, String path) throws IOException {
+        String name = EXPORT_DIR + path;
+        log.debug("Adding file to archive: {}", name);
+        out.putNextEntry(new ZipEntry(name));
+        return new OutputStreamWriter(new EntryOutputStream(out));
     }
 
-    private void addFileToArchive(ZipOutputStream out, int charsToDropFromName,
-        File file) throws IOException, FileNotFoundException {
-        log.debug("Adding file to archive: " +
-            file.getAbsolutePath().substring(charsToDropFromName));
-        out.putNextEntry(new ZipEntry(
-            file.getAbsolutePath().substring(charsToDropFromName)));
-        FileInputStream in = null;
-        try {
-            in = new FileInputStream(file);
-
-            byte [] buf = new byte[1024];
-            int len;
-            while ((len = in.read(buf)) > 0) {
-                out.write(buf, 0, len);
-            }
-            out.closeEntry();
-        }
-        finally {
-            if (in != null) {
-                in.close();
-            }
-        }
-    }
-
-    private void addSignatureToArchive(ZipOutputStream out, byte[] signature)
-        throws IOException, FileNotFoundException {
-
-        log.debug("Adding signature to archive.");
-        out.putNextEntry(new ZipEntry("signature"));
-        out.write(signature, 0, signature.length);
-        out.closeEntry();
-    }
-
-    private void exportMeta(File baseDir, String cdnKey)
+    private void exportMeta(ZipOutputStream out, String cdnKey)
         throws IOException {
-        File file = new File(baseDir.getCanonicalPath(), "meta.json");
-        FileWriter writer = null;
+        Writer writer = null;
         try {
-            writer = new FileWriter(file);
+            writer = newEntry(out, "meta.json");
             Meta m = new Meta(getVersion(), new Date(),
                 principalProvider.get().getPrincipalName(),
                 null, cdnKey);
@@ -355,13 +260,12 @@ public class Exporter {
         return map.get("version") + "-" + map.get("release");
     }
 
-    private void exportConsumer(File baseDir, Consumer consumer, String webAppPrefix,
+    private void exportConsumer(ZipOutputStream out, Consumer consumer, String webAppPrefix,
         String apiUrl)
         throws IOException {
-        File file = new File(baseDir.getCanonicalPath(), "consumer.json");
-        FileWriter writer = null;
+        Writer writer = null;
         try {
-            writer = new FileWriter(file);
+            writer = newEntry(out, "consumer.json");
             this.consumerExporter.export(mapper, writer, consumer,
                 getPrefixWebUrl(webAppPrefix), getPrefixApiUrl(apiUrl));
         }
@@ -372,13 +276,10 @@ public class Exporter {
         }
     }
 
-    private void exportEntitlementsCerts(File baseDir, Consumer consumer,
+    private void exportEntitlementsCerts(ZipOutputStream out, Consumer consumer,
         Set<Long> serials, boolean manifest)
         throws IOException {
 
-        File entCertDir = new File(baseDir.getCanonicalPath(), "entitlement_certificates");
-        entCertDir.mkdir();
-
         for (EntitlementCertificate cert : entCertAdapter.listForConsumer(consumer)) {
             if (manifest && !this.exportRules.canExport(cert.getEntitlement())) {
                 if (log.isDebugEnabled()) {
@@ -390,11 +291,10 @@ public class Exporter {
 
             if ((serials == null) || (serials.contains(cert.getSerial().getId()))) {
                 log.debug("Exporting entitlement certificate: " + cert.getSerial());
-                File file = new File(entCertDir.getCanonicalPath(),
-                    cert.getSerial().getId() + ".pem");
-                FileWriter writer = null;
+                Writer writer = null;
                 try {
-                    writer = new FileWriter(file);
+                    writer = newEntry(out, "entitlement_certificates/" +
+                        cert.getSerial().getId() + ".pem");
                     entCert.export(writer, cert);
                 }
                 finally {
@@ -406,21 +306,16 @@ public class Exporter {
         }
     }
 
-    private void exportIdentityCertificate(File baseDir, Consumer consumer)
+    private void exportIdentityCertificate(ZipOutputStream out, Consumer consumer)
         throws IOException {
 
-        File idcertdir = new File(baseDir.getCanonicalPath(), "upstream_consumer");
-        idcertdir.mkdir();
-
         IdentityCertificate cert = consumer.getIdCert();
-        File file = new File(idcertdir.getCanonicalPath(),
-            cert.getSerial().getId() + ".json");
 
         // paradigm dictates this should go in an exporter.export method
-        FileWriter writer = null;
+        Writer writer = null;
 
         try {
-            writer = new FileWriter(file);
+            writer = newEntry(out, "upstream_consumer/" + cert.getSerial().getId() + ".json");
             mapper.writeValue(writer, cert);
         }
         finally {
@@ -430,10 +325,8 @@ public class Exporter {
         }
     }
 
-    private void exportEntitlements(File baseDir, Consumer consumer)
+    private void exportEntitlements(ZipOutputStream out, Consumer consumer)
         throws IOException, ExportCreationException {
-        File entCertDir = new File(baseDir.getCanonicalPath(), "entitlements");
-        entCertDir.mkdir();
 
         for (Entitlement ent : entitlementCurator.listByConsumer(consumer)) {
             if (ent.isDirty()) {
@@ -453,10 +346,9 @@ public class Exporter {
             if (log.isDebugEnabled()) {
                 log.debug("Exporting entitlement for product" + ent.getPool().getProductId());
             }
-            FileWriter writer = null;
+            Writer writer = null;
             try {
-                File file = new File(entCertDir.getCanonicalPath(), ent.getId() + ".json");
-                writer = new FileWriter(file);
+                writer = newEntry(out, "entitlements/" + ent.getId() + ".json");
                 entExporter.export(mapper, writer, ent);
             }
             finally {
@@ -467,10 +359,7 @@ public class Exporter {
         }
     }
 
-    private void exportProducts(File baseDir, Consumer consumer) throws IOException {
-        File productDir = new File(baseDir.getCanonicalPath(), "products");
-        productDir.mkdir();
-
+    private void exportProducts(ZipOutputStream out, Consumer consumer) throws IOException {
         Map<String, Product> products = new HashMap<String, Product>();
         for (Entitlement entitlement : consumer.getEntitlements()) {
             Pool pool = entitlement.getPool();
@@ -499,12 +388,10 @@ public class Exporter {
             // product.setUuid(null);
             // product.setOwner(null);
 
-            String path = productDir.getCanonicalPath();
             String productId = product.getId();
-            File file = new File(path, productId + ".json");
-            FileWriter writer = null;
+            Writer writer = null;
             try {
-                writer = new FileWriter(file);
+                writer = newEntry(out, "products/" + productId + ".json");
                 productExporter.export(mapper, writer, product);
             }
             finally {
@@ -523,8 +410,7 @@ public class Exporter {
                 // so just skip over this if we get null back
                 // XXX: need to decide if the cert should always be in the export, or never.
                 if (cert != null) {
-                    file = new File(productDir.getCanonicalPath(), product.getId() + ".pem");
-                    writer = new FileWriter(file);
+                    writer = newEntry(out, "products/" + product.getId() + ".pem");
                     productCertExporter.export(writer, cert);
                     writer.close();
                 }
@@ -532,15 +418,11 @@ public class Exporter {
         }
     }
 
-    private void exportConsumerTypes(File baseDir) throws IOException {
-        File typeDir = new File(baseDir.getCanonicalPath(), "consumer_types");
-        typeDir.mkdir();
-
+    private void exportConsumerTypes(ZipOutputStream out) throws IOException {
         for (ConsumerType type : consumerTypeCurator.listAll()) {
-            File file = new File(typeDir.getCanonicalPath(), type.getLabel() + ".json");
-            FileWriter writer = null;
+            Writer writer = null;
             try {
-                writer = new FileWriter(file);
+                writer = newEntry(out, "consumer_types/" + type.getLabel() + ".json");
                 consumerType.export(mapper, writer, type);
             }
             finally {
@@ -551,15 +433,12 @@ public class Exporter {
         }
     }
 
-    private void exportRules(File baseDir) throws IOException {
+    private void exportRules(ZipOutputStream out) throws IOException {
         // Because old candlepin servers assume to import a file in rules dir, we had to
         // move to a new directory for versioned rules file:
-        File newRulesDir = new File(baseDir.getCanonicalPath(), "rules2");
-        newRulesDir.mkdir();
-        File newRulesFile = new File(newRulesDir.getCanonicalPath(), "rules.js");
-        FileWriter writer = null;
+        Writer writer = null;
         try {
-            writer = new FileWriter(newRulesFile);
+            writer = newEntry(out, "rules2/rules.js");
             rules.export(writer);
         }
         finally {
@@ -568,39 +447,42 @@ public class Exporter {
             }
         }
 
-        exportLegacyRules(baseDir);
+        exportLegacyRules(out);
     }
 
     /*
      * We still need to export a copy of the deprecated default-rules.js so new manifests
      * can still be imported by old candlepin servers.
      */
-    private void exportLegacyRules(File baseDir) throws IOException {
-        File oldRulesDir = new File(baseDir.getCanonicalPath(), "rules");
-        oldRulesDir.mkdir();
-        File oldRulesFile = new File(oldRulesDir.getCanonicalPath(), "default-rules.js");
-
+    private void exportLegacyRules(ZipOutputStream out) throws IOException {
         // TODO: does this need a "exporter" object as well?
-        FileUtils.copyFile(new File(
-            this.getClass().getResource(LEGACY_RULES_FILE).getPath()),
-            oldRulesFile);
+        InputStream in = this.getClass().getResourceAsStream(LEGACY_RULES_FILE);
+        if (in == null) {
+            throw new FileNotFoundException("Missing legacy rules " + LEGACY_RULES_FILE);
+        }
+
+        try {
+            log.debug("Adding file to archive: {}rules/default-rules.js", EXPORT_DIR);
+            out.putNextEntry(new ZipEntry(EXPORT_DIR + "rules/default-rules.js"));
+            IOUtils.copy(in, out);
+            out.closeEntry();
+        }
+        finally {
+            in.close();
+        }
     }
 
-    private void exportDistributorVersions(File baseDir) throws IOException {
+    private void exportDistributorVersions(ZipOutputStream out) throws IOException {
         List<DistributorVersion> versions = distVerCurator.findAll();
         if (versions == null || versions.isEmpty()) { return; }
 
-        File distVerDir = new File(baseDir.getCanonicalPath(), "distributor_version");
-        distVerDir.mkdir();
-
-        FileWriter writer = null;
+        Writer writer = null;
         for (DistributorVersion dv : versions) {
             if (log.isDebugEnabled()) {
                 log.debug("Exporting Distributor Version" + dv.getName());
             }
             try {
-                File file = new File(distVerDir.getCanonicalPath(), dv.getName() + ".json");
-                writer = new FileWriter(file);
+                writer = newEntry(out, "distributor_version/" + dv.getName() + ".json");
                 distVerExporter.export(mapper, writer, dv);
             }
             finally {
@@ -611,21 +493,17 @@ public class Exporter {
         }
     }
 
-    private void exportContentDeliveryNetworks(File baseDir) throws IOException {
+    private void exportContentDeliveryNetworks(ZipOutputStream out) throws IOException {
         List<Cdn> cdns = cdnCurator.list();
         if (cdns == null || cdns.isEmpty()) { return; }
 
-        File cdnDir = new File(baseDir.getCanonicalPath(), "content_delivery_network");
-        cdnDir.mkdir();
-
-        FileWriter writer = null;
+        Writer writer = null;
         for (Cdn cdn : cdns) {
             if (log.isDebugEnabled()) {
                 log.debug("Exporting Content Delivery Network" + cdn.getName());
             }
             try {
-                File file = new File(cdnDir.getCanonicalPath(), cdn.getLabel() + ".json");
-                writer = new FileWriter(file);
+                writer = newEntry(out, "content_delivery_network/" + cdn.getLabel() + ".json");
                 cdnExporter.export(mapper, writer, cdn);
             }
             finally {
@@ -635,4 +513,142 @@ public class Exporter {
             }
         }
     }
+
+    /**
+     * The signed archive an export is written to. The exported files are zipped
+     * straight into the consumer_export.zip entry of the signed archive, and the
+     * signature of that entry is computed as it is written. Nothing but the signed
+     * archive is written to disk.
+     */
+    private class ExportArchive {
+        private final File tmpDir;
+        private final File file;
+        private final Signature signer;
+        private final ZipOutputStream signedOut;
+        private final ZipOutputStream contentOut;
+        private boolean finished;
+
+        public ExportArchive(Consumer consumer) throws IOException {
+            this.tmpDir = new SyncUtils(config).makeTempDir("export");
+            this.file = new File(tmpDir, "export.zip");
+            log.info("Creating export archive in: " + file.getAbsolutePath());
+
+            this.signer = pki.getSHA256WithRSASigner();
+            this.signedOut = new ZipOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+            signedOut.setComment("signed Candlepin export for " + consumer.getUuid());
+            signedOut.putNextEntry(new ZipEntry(CONTENT_ARCHIVE));
+
+            this.contentOut = new ZipOutputStream(new SigningOutputStream(signedOut, signer));
+            contentOut.setComment("Candlepin export for " + consumer.getUuid());
+        }
+
+        public ZipOutputStream getContentStream() {
+            return contentOut;
+        }
+
+        /**
+         * Completes the archive and adds the signature of the exported files.
+         *
+         * @return the signed archive
+         * @throws IOException if the archive could not be written
+         */
+        public File finish() throws IOException {
+            contentOut.finish();
+            signedOut.closeEntry();
+
+            byte[] signature;
+            try {
+                signature = signer.sign();
+            }
+            catch (SignatureException e) {
+                throw new IOException("Unable to sign export archive", e);
+            }
+
+            log.debug("Adding signature to archive.");
+            signedOut.putNextEntry(new ZipEntry("signature"));
+            signedOut.write(signature, 0, signature.length);
+            signedOut.closeEntry();
+            signedOut.close();
+            finished = true;
+
+            log.debug("Returning file: " + file.getAbsolutePath());
+            return file;
+        }
+
+        public void abortUnlessFinished() {
+            if (!finished) {
+                IOUtils.closeQuietly(signedOut);
+                FileUtils.deleteQuietly(tmpDir);
+            }
+        }
+    }
+
+    /**
+     * Passes the bytes of the exported files to the signed archive, adding them to
+     * its signature on the way.
+     */
+    private static class SigningOutputStream extends FilterOutputStream {
+        private final Signature signer;
+
+        public SigningOutputStream(OutputStream out, Signature signer) {
+            super(out);
+            this.signer = signer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                signer.update((byte) b);
+            }
+            catch (SignatureException e) {
+                throw new IOException("Unable to sign export archive", e);
+            }
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                signer.update(b, off, len);
+            }
+            catch (SignatureException e) {
+                throw new IOException("Unable to sign export archive", e);
+            }
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            // The signed archive outlives the exported files
+            flush();
+        }
+    }
+
+    /**
+     * Writes one file of an archive, ending the file rather than the archive when it
+     * is closed. Exporters can then close their writers as usual.
+     */
+    private static class EntryOutputStream extends FilterOutputStream {
+        private final ZipOutputStream zip;
+        private boolean closed;
+
+        public EntryOutputStream(ZipOutputStream zip) {
+            super(zip);
+            this.zip = zip;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            zip.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                zip.closeEntry();
+            }
+        }
+    }
 }
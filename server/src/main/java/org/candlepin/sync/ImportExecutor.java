@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.sync;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.util.BatchExecutor;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * ImportExecutor
+ *
+ * A bounded pool of threads parsing the products and entitlements of manifests being
+ * imported, shared by all imports. Parsing never touches the database, so the tasks
+ * stay clear of the import transaction.
+ */
+@Singleton
+public class ImportExecutor extends BatchExecutor {
+
+    @Inject
+    public ImportExecutor(Configuration config) {
+        this(config.getInt(ConfigProperties.IMPORT_PARSE_THREADS));
+    }
+
+    public ImportExecutor(int threads) {
+        super("import", threads);
+    }
+}
@@ -26,6 +26,7 @@ import org.candlepin.model.ConsumerTypeCurator;
 import org.candlepin.model.ContentCurator;
 import org.candlepin.model.DistributorVersion;
 import org.candlepin.model.DistributorVersionCurator;
+import org.candlepin.model.Entitlement;
 import org.candlepin.model.ExporterMetadata;
 import org.candlepin.model.ExporterMetadataCurator;
 import org.candlepin.model.IdentityCertificate;
@@ -43,7 +44,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.exception.ConstraintViolationException;
 import org.slf4j.Logger;
@@ -51,12 +52,16 @@ import org.slf4j.LoggerFactory;
 import org.xnap.commons.i18n.I18n;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.security.Signature;
+import java.security.SignatureException;
 import java.security.cert.CertificateException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -66,7 +71,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 
 import javax.persistence.PersistenceException;
 
@@ -77,6 +83,9 @@ import javax.persistence.PersistenceException;
 public class Importer {
     private static Logger log = LoggerFactory.getLogger(Importer.class);
 
+    private static final String SIGNATURE_FILE = "signature";
+    private static final String CONTENT_ARCHIVE = "consumer_export.zip";
+
     /**
      *
      * files we use to perform import
@@ -130,6 +139,7 @@ public class Importer {
     private EventSink sink;
     private I18n i18n;
     private DistributorVersionCurator distVerCurator;
+    private ImportExecutor importExecutor;
 
     @Inject
     public Importer(ConsumerTypeCurator consumerTypeCurator, ProductCurator productCurator,
@@ -139,7 +149,7 @@ public class Importer {
         PKIUtility pki, Configuration config, ExporterMetadataCurator emc,
         CertificateSerialCurator csc, EventSink sink, I18n i18n,
         DistributorVersionCurator distVerCurator,
-        CdnCurator cdnCurator) {
+        CdnCurator cdnCurator, ImportExecutor importExecutor) {
 
         this.config = config;
         this.consumerTypeCurator = consumerTypeCurator;
@@ -157,6 +167,7 @@ public class Importer {
         this.i18n = i18n;
         this.distVerCurator = distVerCurator;
         this.cdnCurator = cdnCurator;
+        this.importExecutor = importExecutor;
     }
 
     /**
@@ -172,7 +183,21 @@ public class Importer {
         ConflictOverrides forcedConflicts)
         throws IOException, ImporterException {
 
-        Meta m = mapper.readValue(meta, Meta.class);
+        validateMetadata(type, owner, mapper.readValue(meta, Meta.class), forcedConflicts);
+    }
+
+    /**
+     * Check to make sure the meta data is newer than the imported data.
+     * @param type ExporterMetadata.TYPE_PER_USER or TYPE_SYSTEM
+     * @param owner Owner in the case of PER_USER
+     * @param m the manifest metadata
+     * @param forcedConflicts Conflicts we will override if encountered
+     * @throws ImporterException thrown if the metadata is invalid.
+     */
+    public void validateMetadata(String type, Owner owner, Meta m,
+        ConflictOverrides forcedConflicts)
+        throws ImporterException {
+
         if (type == null) {
             throw new ImporterException(i18n.tr("Wrong metadata type"));
         }
@@ -234,61 +259,16 @@ public class Importer {
     public Map<String, Object> loadExport(Owner owner, File exportFile,
         ConflictOverrides overrides)
         throws ImporterException {
-        File tmpDir = null;
         Map<String, Object> result = new HashMap<String, Object>();
+        ManifestArchive archive = null;
         try {
-            tmpDir = new SyncUtils(config).makeTempDir("import");
-            extractArchive(tmpDir, exportFile);
+            archive = readArchive(exportFile, overrides);
 
-            File signature = new File(tmpDir, "signature");
-            if (signature.length() == 0) {
-                throw new ImportExtractionException(i18n.tr("The archive does not " +
-                                          "contain the required signature file"));
-            }
+            // Parse the bulk of the manifest before the import transaction starts
+            archive.parse(mapper, owner, importExecutor);
 
-            boolean verifiedSignature = pki.verifySHA256WithRSAHashAgainstCACerts(
-                new File(tmpDir, "consumer_export.zip"),
-                loadSignature(new File(tmpDir, "signature")));
-            if (!verifiedSignature) {
-                log.warn("Archive signature check failed.");
-                if (!overrides
-                    .isForced(Conflict.SIGNATURE_CONFLICT)) {
-
-                    /*
-                     * Normally for import conflicts that can be overridden, we try to
-                     * report them all the first time so if the user intends to override,
-                     * they can do so with just one more request. However in the case of
-                     * a bad signature, we're going to report immediately due to the nature
-                     * of what this might mean.
-                     */
-                    throw new ImportConflictException(
-                        i18n.tr("Archive failed signature check"),
-                        Conflict.SIGNATURE_CONFLICT);
-                }
-                else {
-                    log.warn("Ignoring signature check failure.");
-                }
-            }
-
-            File consumerExport = new File(tmpDir, "consumer_export.zip");
-            File exportDir = extractArchive(tmpDir, consumerExport);
-
-            Map<String, File> importFiles = new HashMap<String, File>();
-            File[] listFiles = exportDir.listFiles();
-            if (listFiles == null || listFiles.length == 0) {
-                throw new ImportExtractionException(i18n.tr("The consumer_export " +
-                    "archive has no contents"));
-            }
-            for (File file : listFiles) {
-                importFiles.put(file.getName(), file);
-            }
-
-            // Need the rules file as well which is in a nested dir:
-            File rulesFile = new File(exportDir, ImportFile.RULES_FILE.fileName());
-            importFiles.put(ImportFile.RULES_FILE.fileName(), rulesFile);
-
-            List<Subscription> importSubs = importObjects(owner, importFiles, overrides);
-            Meta m = mapper.readValue(importFiles.get(ImportFile.META.fileName()),
+            List<Subscription> importSubs = importObjects(owner, archive, overrides);
+            Meta m = mapper.readValue(archive.getReader(ImportFile.META.fileName()),
                 Meta.class);
             result.put("subscriptions", importSubs);
             result.put("meta", m);
@@ -320,21 +300,138 @@ public class Importer {
                 i18n.tr("Certificate exception checking archive signature"), e);
         }
         finally {
-            if (tmpDir != null) {
+            if (archive != null) {
                 try {
-                    FileUtils.deleteDirectory(tmpDir);
+                    archive.close();
                 }
                 catch (IOException e) {
-                    log.error("Failed to delete extracted export", e);
+                    log.error("Failed to close the export archive", e);
                 }
             }
         }
     }
 
+    /**
+     * Opens the exported files of a manifest without extracting them. The
+     * consumer_export.zip is copied out of the manifest, checking its signature on the
+     * way, and its entries are then read in place.
+     *
+     * @param exportFile the manifest
+     * @param overrides conflicts to override
+     * @return the exported files, to be closed by the caller
+     */
+    private ManifestArchive readArchive(File exportFile, ConflictOverrides overrides)
+        throws IOException, CertificateException, ImporterException {
+        ZipFile zip;
+        try {
+            zip = new ZipFile(exportFile);
+        }
+        catch (ZipException e) {
+            log.debug("Unable to open archive " + exportFile, e);
+            zip = null;
+        }
+
+        if (zip == null || zip.size() == 0) {
+            if (zip != null) {
+                zip.close();
+            }
+            throw new ImportExtractionException(i18n.tr("The archive {0} is not " +
+                "a properly compressed file or is empty", exportFile.getName()));
+        }
+
+        try {
+            ZipEntry signatureEntry = zip.getEntry(SIGNATURE_FILE);
+            byte[] signature = signatureEntry == null ? new byte[0] :
+                IOUtils.toByteArray(zip.getInputStream(signatureEntry));
+            if (signature.length == 0) {
+                throw new ImportExtractionException(i18n.tr("The archive does not " +
+                                          "contain the required signature file"));
+            }
+
+            ZipEntry contentEntry = zip.getEntry(CONTENT_ARCHIVE);
+            if (contentEntry == null) {
+                throw new FileNotFoundException(CONTENT_ARCHIVE);
+            }
+
+            // Copied out as is, so its entries can be read in place later on
+            File contentFile = new SyncUtils(config).makeTempFile("consumer_export", ".zip");
+            ManifestArchive archive = null;
+            try {
+                List<Signature> verifiers = pki.getSHA256WithRSAVerifiers();
+                InputStream content = new VerifyingInputStream(
+                    zip.getInputStream(contentEntry), verifiers);
+                OutputStream out = new FileOutputStream(contentFile);
+                try {
+                    IOUtils.copy(content, out);
+                }
+                finally {
+                    content.close();
+                    out.close();
+                }
+
+                checkSignature(pki.verifySHA256WithRSAHash(verifiers, signature), overrides);
+
+                try {
+                    archive = new ManifestArchive(contentFile, true);
+                }
+                catch (ZipException e) {
+                    log.debug("Unable to open archive " + CONTENT_ARCHIVE, e);
+                }
+            }
+            finally {
+                if (archive == null && !contentFile.delete()) {
+                    log.warn("Unable to delete temporary file {}", contentFile);
+                }
+            }
+
+            if (archive != null && archive.size() == 0) {
+                archive.close();
+                archive = null;
+            }
+            if (archive == null) {
+                throw new ImportExtractionException(i18n.tr("The archive {0} is not " +
+                    "a properly compressed file or is empty", CONTENT_ARCHIVE));
+            }
+            if (archive.isEmpty()) {
+                archive.close();
+                throw new ImportExtractionException(i18n.tr("The consumer_export " +
+                    "archive has no contents"));
+            }
+            return archive;
+        }
+        finally {
+            zip.close();
+        }
+    }
+
+    private void checkSignature(boolean verifiedSignature, ConflictOverrides overrides)
+        throws ImportConflictException {
+        if (!verifiedSignature) {
+            log.warn("Archive signature check failed.");
+            if (!overrides
+                .isForced(Conflict.SIGNATURE_CONFLICT)) {
+
+                /*
+                 * Normally for import conflicts that can be overridden, we try to
+                 * report them all the first time so if the user intends to override,
+                 * they can do so with just one more request. However in the case of
+                 * a bad signature, we're going to report immediately due to the nature
+                 * of what this might mean.
+                 */
+                throw new ImportConflictException(
+                    i18n.tr("Archive failed signature check"),
+                    Conflict.SIGNATURE_CONFLICT);
+            }
+            else {
+                log.warn("Ignoring signature check failure.");
+            }
+        }
+    }
+
     @Transactional(rollbackOn = {IOException.class, ImporterException.class,
         RuntimeException.class, ImportConflictException.class})
     // WARNING: Keep this method public, otherwise @Transactional is ignored:
-    List<Subscription> importObjects(Owner owner, Map<String, File> importFiles,
+    public List<Subscription> importObjects(Owner owner, Map<String, File> importFiles,
         ConflictOverrides overrides)
         throws IOException, ImporterException {
 
@@ -445,14 +542,147 @@ public class Importer {
             importEntitlements(owner, new HashSet<Product>(), new File[]{}, consumer, meta);
         }
 
+        refreshPools(owner, importSubs);
+        return importSubs;
+    }
+
+    /**
+     * Imports the files read from a manifest by
+     * {@link #loadExport(Owner, File, ConflictOverrides)}, whose products and
+     * entitlements have already been parsed.
+     *
+     * @param owner the owner importing the manifest
+     * @param archive the files of the manifest
+     * @param overrides conflicts to override
+     * @return the subscriptions imported
+     * @throws IOException if a file could not be read
+     * @throws ImporterException if the manifest could not be imported
+     */
+    @Transactional(rollbackOn = {IOException.class, ImporterException.class,
+        RuntimeException.class, ImportConflictException.class})
+    // WARNING: Keep this method public, otherwise @Transactional is ignored:
+    public List<Subscription> importObjects(Owner owner, ManifestArchive archive,
+        ConflictOverrides overrides)
+        throws IOException, ImporterException {
+
+        log.debug("Importing objects for owner: {}", owner);
+
+        if (!archive.contains(ImportFile.META.fileName())) {
+            throw new ImporterException(i18n.tr("The archive does not contain the " +
+                                   "required meta.json file"));
+        }
+        if (!archive.contains(ImportFile.CONSUMER_TYPE.fileName())) {
+            throw new ImporterException(i18n.tr("The archive does not contain the " +
+                                    "required consumer_types directory"));
+        }
+        if (!archive.contains(ImportFile.CONSUMER.fileName())) {
+            throw new ImporterException(i18n.tr("The archive does not contain the " +
+                "required consumer.json file"));
+        }
+        boolean hasProducts = archive.contains(ImportFile.PRODUCTS.fileName());
+        if (hasProducts && !archive.contains(ImportFile.ENTITLEMENTS.fileName())) {
+            throw new ImporterException(i18n.tr("The archive does not contain the " +
+                                        "required entitlements directory"));
+        }
+
+        List<ImportConflictException> conflictExceptions =
+            new LinkedList<ImportConflictException>();
+
+        Reader rules = archive.getReader(ImportFile.RULES_FILE.fileName());
+        if (rules != null) {
+            rulesImporter.importObject(rules);
+        }
+        else {
+            log.warn("Skipping rules import, manifest does not contain rules file: " +
+                ImportFile.RULES_FILE.fileName());
+        }
+
+        ConsumerTypeImporter consumerTypeImporter =
+            new ConsumerTypeImporter(consumerTypeCurator);
+        Set<ConsumerType> consumerTypes = new HashSet<ConsumerType>();
+        for (String path : archive.list(ImportFile.CONSUMER_TYPE.fileName())) {
+            consumerTypes.add(consumerTypeImporter.createObject(mapper, archive.getReader(path)));
+        }
+        consumerTypeImporter.store(consumerTypes);
+
+        DistributorVersionImporter distVerImporter =
+            new DistributorVersionImporter(distVerCurator);
+        Set<DistributorVersion> distVers = new HashSet<DistributorVersion>();
+        for (String path : archive.list(ImportFile.DISTRIBUTOR_VERSIONS.fileName())) {
+            distVers.add(distVerImporter.createObject(mapper, archive.getReader(path)));
+        }
+        if (!distVers.isEmpty()) {
+            distVerImporter.store(distVers);
+        }
+
+        CdnImporter cdnImporter = new CdnImporter(cdnCurator);
+        Set<Cdn> cdns = new HashSet<Cdn>();
+        for (String path : archive.list(ImportFile.CONTENT_DELIVERY_NETWORKS.fileName())) {
+            cdns.add(cdnImporter.createObject(mapper, archive.getReader(path)));
+        }
+        if (!cdns.isEmpty()) {
+            cdnImporter.store(cdns);
+        }
+
+        // per user elements
+        Meta meta = mapper.readValue(archive.getReader(ImportFile.META.fileName()), Meta.class);
+        try {
+            validateMetadata(ExporterMetadata.TYPE_PER_USER, owner, meta, overrides);
+        }
+        catch (ImportConflictException e) {
+            conflictExceptions.add(e);
+        }
+
+        ConsumerDto consumer = null;
+        try {
+            IdentityCertificate idcert = null;
+            for (String path : archive.list(ImportFile.UPSTREAM_CONSUMER.fileName())) {
+                if (path.endsWith(".json")) {
+                    log.debug("Import upstream consumeridentity certificate: " + path);
+                    idcert = mapper.readValue(archive.getReader(path), IdentityCertificate.class);
+                }
+                else {
+                    log.warn("Extra file found in upstream_consumer directory: " +
+                        ManifestArchive.getName(path));
+                }
+            }
+            consumer = importConsumer(owner, archive.getReader(ImportFile.CONSUMER.fileName()),
+                idcert, overrides, meta);
+        }
+        catch (ImportConflictException e) {
+            conflictExceptions.add(e);
+        }
+
+        // At this point we're done checking for any potential conflicts:
+        if (!conflictExceptions.isEmpty()) {
+            log.error("Conflicts occurred during import that were not overridden:");
+            for (ImportConflictException e : conflictExceptions) {
+                log.error("{}", e.message().getConflicts());
+            }
+            throw new ImportConflictException(conflictExceptions);
+        }
+
+        List<Subscription> importSubs = new ArrayList<Subscription>();
+        if (hasProducts) {
+            importSubs = importEntitlements(owner, archive.getProducts(),
+                archive.getEntitlements(), consumer, meta);
+        }
+        else {
+            log.warn("No products found to import, skipping product import.");
+            log.warn("No entitlements in manifest, removing all subscriptions for owner.");
+        }
+
+        refreshPools(owner, importSubs);
+        return importSubs;
+    }
+
+    private void refreshPools(Owner owner, List<Subscription> importSubs) {
         // Setup our import subscription adapter with the subscriptions imported:
         SubscriptionServiceAdapter adapter =
             new ImportSubscriptionServiceAdapter(importSubs);
         Refresher refresher = poolManager.getRefresher(adapter);
         refresher.add(owner);
         refresher.run();
-
-        return importSubs;
     }
 
     public void importRules(File rulesFile, File metadata) throws IOException {
@@ -518,34 +748,40 @@ public class Importer {
             }
         }
 
-        ConsumerImporter importer = new ConsumerImporter(ownerCurator, idCertCurator,
-            i18n, csCurator);
         Reader reader = null;
-        ConsumerDto consumer = null;
         try {
             reader = new FileReader(consumerFile);
-            consumer = importer.createObject(mapper, reader);
-            // we can not rely on the actual ConsumerType in the ConsumerDto
-            // because it could have an id not in our database. We need to
-            // stick with the label. Hence we need to lookup the ACTUAL type
-            // by label here before attempting to store the UpstreamConsumer
-            ConsumerType type = consumerTypeCurator.lookupByLabel(
-                consumer.getType().getLabel());
-            consumer.setType(type);
-
-            // in older manifests the web app prefix will not
-            // be on the consumer, we can use the one stored in
-            // the metadata
-            if (StringUtils.isEmpty(consumer.getUrlWeb())) {
-                consumer.setUrlWeb(meta.getWebAppPrefix());
-            }
-            importer.store(owner, consumer, forcedConflicts, idcert);
+            return importConsumer(owner, reader, idcert, forcedConflicts, meta);
         }
         finally {
             if (reader != null) {
                 reader.close();
             }
         }
+    }
+
+    private ConsumerDto importConsumer(Owner owner, Reader reader, IdentityCertificate idcert,
+        ConflictOverrides forcedConflicts, Meta meta)
+        throws IOException, SyncDataFormatException {
+
+        ConsumerImporter importer = new ConsumerImporter(ownerCurator, idCertCurator,
+            i18n, csCurator);
+        ConsumerDto consumer = importer.createObject(mapper, reader);
+        // we can not rely on the actual ConsumerType in the ConsumerDto
+        // because it could have an id not in our database. We need to
+        // stick with the label. Hence we need to lookup the ACTUAL type
+        // by label here before attempting to store the UpstreamConsumer
+        ConsumerType type = consumerTypeCurator.lookupByLabel(
+            consumer.getType().getLabel());
+        consumer.setType(type);
+
+        // in older manifests the web app prefix will not
+        // be on the consumer, we can use the one stored in
+        // the metadata
+        if (StringUtils.isEmpty(consumer.getUrlWeb())) {
+            consumer.setUrlWeb(meta.getWebAppPrefix());
+        }
+        importer.store(owner, consumer, forcedConflicts, idcert);
         return consumer;
     }
 
@@ -585,15 +821,7 @@ public class Importer {
 
         EntitlementImporter importer = new EntitlementImporter(csCurator, cdnCurator,
             i18n);
-
-        Map<String, Product> productsById = new HashMap<String, Product>();
-        for (Product product : products) {
-            log.debug("Adding product owned by {} to ID map", owner.getKey());
-
-            // Note: This may actually be causing problems with subscriptions receiving the wrong
-            // version of a product
-            productsById.put(product.getId(), product);
-        }
+        Map<String, Product> productsById = mapProductsById(owner, products);
 
         List<Subscription> subscriptionsToImport = new ArrayList<Subscription>();
         for (File entitlement : entitlements) {
@@ -614,94 +842,35 @@ public class Importer {
         return subscriptionsToImport;
     }
 
-    /**
-     * Create a tar.gz archive of the exported directory.
-     *
-     * @param exportDir Directory where Candlepin data was exported.
-     * @return File reference to the new archive tar.gz.
-     */
-    private File extractArchive(File tempDir, File exportFile)
-        throws IOException, ImportExtractionException {
-        log.debug("Extracting archive to: " + tempDir.getAbsolutePath());
-        byte[] buf = new byte[1024];
-
-        ZipInputStream zipinputstream = null;
-
-        try {
-            zipinputstream = new ZipInputStream(new FileInputStream(exportFile));
-            ZipEntry zipentry = zipinputstream.getNextEntry();
-
-            if (zipentry == null) {
-                throw new ImportExtractionException(i18n.tr("The archive {0} is not " +
-                    "a properly compressed file or is empty", exportFile.getName()));
-            }
+    public List<Subscription> importEntitlements(Owner owner, Set<Product> products,
+        List<Entitlement> entitlements, ConsumerDto consumer, Meta meta)
+        throws SyncDataFormatException {
 
-            while (zipentry != null) {
-                //for each entry to be extracted
-                String entryName = zipentry.getName();
-                if (log.isDebugEnabled()) {
-                    log.debug("entryname " + entryName);
-                }
-                File newFile = new File(entryName);
-                String directory = newFile.getParent();
-                if (directory != null) {
-                    new File(tempDir, directory).mkdirs();
-                }
+        log.debug("Importing entitlements for owner: {}", owner);
 
-                FileOutputStream fileoutputstream = null;
-                try {
-                    fileoutputstream = new FileOutputStream(new File(tempDir, entryName));
-                    int n;
-                    while ((n = zipinputstream.read(buf, 0, 1024)) > -1) {
-                        fileoutputstream.write(buf, 0, n);
-                    }
-                }
-                finally {
-                    if (fileoutputstream != null) {
-                        fileoutputstream.close();
-                    }
-                }
+        EntitlementImporter importer = new EntitlementImporter(csCurator, cdnCurator,
+            i18n);
+        Map<String, Product> productsById = mapProductsById(owner, products);
 
-                zipinputstream.closeEntry();
-                zipentry = zipinputstream.getNextEntry();
-            }
-        }
-        finally {
-            if (zipinputstream != null) {
-                zipinputstream.close();
-            }
+        List<Subscription> subscriptionsToImport = new ArrayList<Subscription>();
+        for (Entitlement entitlement : entitlements) {
+            subscriptionsToImport.add(importer.importObject(entitlement, owner,
+                productsById, consumer, meta));
         }
 
-        return new File(tempDir.getAbsolutePath(), "export");
+        return subscriptionsToImport;
     }
 
-    private byte[] loadSignature(File signatureFile) throws IOException {
-        FileInputStream signature = null;
-        // signature is never going to be a huge file, therefore cast is a-okay
-        byte[] signatureBytes = new byte[(int) signatureFile.length()];
-
-        try {
-            signature = new FileInputStream(signatureFile);
+    private Map<String, Product> mapProductsById(Owner owner, Set<Product> products) {
+        Map<String, Product> productsById = new HashMap<String, Product>();
+        for (Product product : products) {
+            log.debug("Adding product owned by {} to ID map", owner.getKey());
 
-            int offset = 0;
-            int numRead = 0;
-            while (offset < signatureBytes.length && numRead >= 0) {
-                numRead = signature.read(signatureBytes, offset,
-                    signatureBytes.length - offset);
-                offset += numRead;
-            }
-            return signatureBytes;
-        }
-        finally {
-            if (signature != null) {
-                try {
-                    signature.close();
-                }
-                catch (IOException e) {
-                    // nothing we can do about this
-                }
-            }
+            // Note: This may actually be causing problems with subscriptions receiving the wrong
+            // version of a product
+            productsById.put(product.getId(), product);
         }
+        return productsById;
     }
 
     public void importDistributorVersions(File[] versionFiles) throws IOException {
@@ -741,4 +910,51 @@ public class Importer {
         }
         importer.store(cdns);
     }
+
+    /**
+     * Feeds the bytes read through it to signature verifiers, so the manifest's
+     * signature is checked as its content is read.
+     */
+    private static class VerifyingInputStream extends FilterInputStream {
+        private final List<Signature> verifiers;
+
+        VerifyingInputStream(InputStream in, List<Signature> verifiers) {
+            super(in);
+            this.verifiers = verifiers;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                update(new byte[] {(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                update(b, off, count);
+            }
+            return count;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void update(byte[] b, int off, int len) throws IOException {
+            try {
+                for (Signature verifier : verifiers) {
+                    verifier.update(b, off, len);
+                }
+            }
+            catch (SignatureException e) {
+                throw new IOException(e);
+            }
+        }
+    }
 }
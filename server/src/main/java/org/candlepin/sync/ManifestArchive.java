@@ -0,0 +1,289 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.sync;
+
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.Owner;
+import org.candlepin.model.Product;
+import org.candlepin.util.BatchExecutor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * ManifestArchive
+ *
+ * The files of a manifest's consumer_export.zip, read in place from the zip file
+ * rather than extracted to disk or held in memory. Files are looked up by their path
+ * in the export directory, e.g. "products/69.json", and are only inflated when read.
+ *
+ * The products and entitlements of large manifests take most of the time to parse, so
+ * {@link #parse(ObjectMapper, Owner, BatchExecutor)} reads them on a bounded pool of
+ * threads shared by all imports.
+ * Parsing only builds objects and never touches the database, leaving the
+ * transactional import to the caller's thread.
+ */
+public class ManifestArchive implements Closeable {
+    private static Logger log = LoggerFactory.getLogger(ManifestArchive.class);
+
+    private static final String EXPORT_DIR = "export/";
+
+    private final File file;
+    private final boolean deleteOnClose;
+    private final ZipFile zip;
+    private final TreeMap<String, ZipEntry> files = new TreeMap<String, ZipEntry>();
+
+    private Set<Product> products;
+    private List<Entitlement> entitlements;
+
+    /**
+     * Opens the exported files of a consumer_export.zip. Only the zip's directory is
+     * read here.
+     *
+     * @param file the consumer_export.zip
+     * @param deleteOnClose true to delete the file once the archive is closed
+     * @throws ZipException if the file is not a zip archive
+     * @throws IOException if the file could not be read
+     */
+    public ManifestArchive(File file, boolean deleteOnClose) throws IOException {
+        this.file = file;
+        this.deleteOnClose = deleteOnClose;
+        this.zip = new ZipFile(file);
+
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            String name = entry.getName();
+            if (log.isDebugEnabled()) {
+                log.debug("entryname " + name);
+            }
+
+            if (!entry.isDirectory() && name.startsWith(EXPORT_DIR)) {
+                files.put(name.substring(EXPORT_DIR.length()), entry);
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries in the zip, including the ones outside the export
+     *  directory
+     */
+    public int size() {
+        return zip.size();
+    }
+
+    public boolean isEmpty() {
+        return files.isEmpty();
+    }
+
+    /**
+     * @param path the path of a file or directory in the export directory
+     * @return true if the file exists, or the directory has any files
+     */
+    public boolean contains(String path) {
+        if (files.containsKey(path)) {
+            return true;
+        }
+
+        String child = files.ceilingKey(path + "/");
+        return child != null && child.startsWith(path + "/");
+    }
+
+    /**
+     * @param dir the path of a directory in the export directory
+     * @return the paths of the files directly in the directory
+     */
+    public List<String> list(String dir) {
+        List<String> paths = new ArrayList<String>();
+        // '0' follows '/', so this is every path starting with the directory
+        for (String path : files.subMap(dir + "/", dir + "0").keySet()) {
+            if (path.indexOf('/', dir.length() + 1) < 0) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * @param path the path of a file in the export directory
+     * @return a reader of the file, or null if there is no such file
+     * @throws IOException if the file could not be opened
+     */
+    public Reader getReader(String path) throws IOException {
+        ZipEntry entry = files.get(path);
+        // Files are read with the default charset, like a FileReader would
+        return entry == null ? null : new InputStreamReader(zip.getInputStream(entry));
+    }
+
+    public static String getName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Parses the products and entitlements of the manifest.
+     *
+     * @param mapper the mapper to read objects with
+     * @param owner the owner importing the manifest
+     * @param executor the threads to parse with. When it is null or disabled, files
+     *  are parsed on the calling thread.
+     * @throws IOException if a file could not be parsed
+     */
+    public void parse(final ObjectMapper mapper, final Owner owner, BatchExecutor executor)
+        throws IOException {
+        final ProductImporter productImporter = new ProductImporter();
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+
+        // Skip product.pem's, we just need the json to import:
+        for (final String path : list(Importer.ImportFile.PRODUCTS.fileName())) {
+            if (path.endsWith(".json")) {
+                tasks.add(new Callable<Object>() {
+                    @Override
+                    public Object call() throws IOException {
+                        log.debug("Importing product {} for owner {}", path, owner.getKey());
+                        return productImporter.createObject(mapper, getReader(path), owner);
+                    }
+                });
+            }
+        }
+        int productCount = tasks.size();
+
+        for (final String path : list(Importer.ImportFile.ENTITLEMENTS.fileName())) {
+            tasks.add(new Callable<Object>() {
+                @Override
+                public Object call() throws IOException {
+                    log.debug("Import entitlement: " + path);
+                    return mapper.readValue(getReader(path), Entitlement.class);
+                }
+            });
+        }
+
+        List<Object> results = run(tasks, executor);
+        products = new HashSet<Product>();
+        entitlements = new ArrayList<Entitlement>();
+        for (int i = 0; i < results.size(); i++) {
+            if (i < productCount) {
+                products.add((Product) results.get(i));
+            }
+            else {
+                entitlements.add((Entitlement) results.get(i));
+            }
+        }
+    }
+
+    private List<Object> run(List<Callable<Object>> tasks, BatchExecutor executor)
+        throws IOException {
+        List<Object> results = new ArrayList<Object>(tasks.size());
+        if (executor == null || !executor.isEnabled() || tasks.size() <= 1) {
+            for (Callable<Object> task : tasks) {
+                results.add(call(task));
+            }
+            return results;
+        }
+
+        List<Future<Object>> futures = new ArrayList<Future<Object>>(tasks.size());
+        try {
+            for (Callable<Object> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<Object> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing the manifest", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Unable to parse the manifest", e.getCause());
+        }
+        finally {
+            // Leave the shared threads to other imports once this one has failed
+            for (Future<Object> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static Object call(Callable<Object> task) throws IOException {
+        try {
+            return task.call();
+        }
+        catch (IOException e) {
+            throw e;
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new IOException("Unable to parse the manifest", e);
+        }
+    }
+
+    /**
+     * Closes the zip file, along with any of its files still being read.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            zip.close();
+        }
+        finally {
+            if (deleteOnClose && !file.delete()) {
+                log.warn("Unable to delete temporary file {}", file);
+            }
+        }
+    }
+
+    /**
+     * @return the products parsed by {@link #parse(ObjectMapper, Owner, BatchExecutor)}
+     */
+    public Set<Product> getProducts() {
+        return products;
+    }
+
+    /**
+     * @return the entitlements parsed by {@link #parse(ObjectMapper, Owner, BatchExecutor)}
+     */
+    public List<Entitlement> getEntitlements() {
+        return entitlements;
+    }
+}
@@ -85,4 +85,8 @@ class SyncUtils {
 
         return (tmp);
     }
+
+    File makeTempFile(String baseName, String suffix) throws IOException {
+        return File.createTempFile(baseName, suffix, baseDir);
+    }
 }
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BatchExecutor
+ *
+ * A bounded pool of daemon worker threads shared by the whole server. The threads are
+ * started the first time work is submitted, and stopped by {@link #close()} when the
+ * server shuts down. A pool of zero threads is disabled, and callers are expected to
+ * do the work themselves instead.
+ */
+public class BatchExecutor {
+    private static Logger log = LoggerFactory.getLogger(BatchExecutor.class);
+
+    private final String name;
+    private final int threads;
+    private ExecutorService executor;
+
+    /**
+     * @param name the prefix of the thread names
+     * @param threads the number of threads in the pool
+     */
+    public BatchExecutor(String name, int threads) {
+        this.name = name;
+        this.threads = threads;
+    }
+
+    public boolean isEnabled() {
+        return threads > 0;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Runs a task on one of the pool threads.
+     *
+     * @param task the task to run
+     * @return the future result of the task
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return getExecutor().submit(task);
+    }
+
+    /**
+     * Starts a new batch of tasks. Results of the tasks submitted to it can be taken
+     * in the order the tasks complete.
+     *
+     * @return the batch to submit tasks to
+     */
+    public <T> CompletionService<T> newBatch() {
+        return new ExecutorCompletionService<T>(getExecutor());
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            log.info("Starting {} {} threads", threads, name);
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ContentPayloadCache
+ *
+ * Remembers the compressed content tree of v3 entitlement certificates. The tree
+ * only depends on the content paths which end up in the certificate, so every
+ * certificate for the same SKU, provided products, content prefix and environment
+ * shares one entry, and a change to any of them results in different paths.
+ * The cache evicts the least recently used trees once it is full. A maximum size
+ * of zero disables it.
+ */
+@Singleton
+public class ContentPayloadCache {
+    private final int maxSize;
+    private final Map<List<String>, byte[]> payloads;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Inject
+    public ContentPayloadCache(Configuration config) {
+        this(config.getInt(ConfigProperties.CONTENT_PAYLOAD_CACHE_MAX));
+    }
+
+    public ContentPayloadCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.payloads = new LinkedHashMap<List<String>, byte[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<String>, byte[]> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Looks up the tree previously encoded for the given paths.
+     *
+     * @param paths the content paths, in the order they are encoded
+     * @return a copy of the encoded tree, or null on a miss
+     */
+    public byte[] get(List<String> paths) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        byte[] payload;
+        synchronized (payloads) {
+            payload = payloads.get(paths);
+        }
+
+        if (payload == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return payload.clone();
+    }
+
+    /**
+     * Stores the tree encoded for the given paths.
+     *
+     * @param paths the content paths, in the order they were encoded
+     * @param payload the encoded tree
+     */
+    public void put(List<String> paths, byte[] payload) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        List<String> key = new ArrayList<String>(paths);
+        synchronized (payloads) {
+            payloads.put(key, payload.clone());
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (payloads) {
+            return payloads.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ContentPayloadCache [size: %d/%d, hits: %d, misses: %d]",
+            size(), maxSize, getHits(), getMisses());
+    }
+}
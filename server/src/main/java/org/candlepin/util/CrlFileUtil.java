@@ -28,10 +28,10 @@ import org.apache.commons.codec.binary.Base64OutputStream;
 import org.apache.commons.io.IOUtils;
 import org.bouncycastle.asn1.x509.CRLReason;
 import org.bouncycastle.crypto.CryptoException;
-import org.bouncycastle.jce.provider.X509CRLEntryObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -53,8 +53,12 @@ import java.security.interfaces.RSAPrivateKey;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Pattern;
@@ -160,6 +164,47 @@ public class CrlFileUtil {
         }
     }
 
+    /**
+     * Decodes the specified PEM CRL file into a temporary file in DER format.
+     *
+     * Note: The file returned by this method must be deleted when the calling function is
+     * done with it.
+     *
+     * @param file
+     *  The CRL file to decode
+     *
+     * @throws IOException
+     *  If an IO error occurs while decoding the CRL file
+     *
+     * @return
+     *  a temporary DER file holding the CRL
+     */
+    public File decodeCRLFile(File file) throws IOException {
+        File strippedFile = stripCRLFile(file);
+        File derFile = File.createTempFile("candlepin_crl_", ".der");
+
+        InputStream input = null;
+        OutputStream output = null;
+        try {
+            input = new Base64InputStream(new BufferedInputStream(new FileInputStream(strippedFile)));
+            output = new BufferedOutputStream(new FileOutputStream(derFile));
+            IOUtils.copy(input, output);
+            output.close();
+            return derFile;
+        }
+        catch (IOException e) {
+            derFile.delete();
+            throw e;
+        }
+        finally {
+            IOUtils.closeQuietly(input);
+            IOUtils.closeQuietly(output);
+            if (!strippedFile.delete()) {
+                log.error("Unable to delete temporary CRL file: {}", strippedFile);
+            }
+        }
+    }
+
     /**
      * Updates the specified CRL file by adding or removing entries. If both lists are either null
      * or empty, the CRL file will not be modified by this method. If the file does not exist or
@@ -185,51 +230,72 @@ public class CrlFileUtil {
             return;
         }
 
-        File strippedFile = stripCRLFile(file);
+        this.updateCRLFile(file, revoke, unrevoke, null, null);
+    }
 
-        InputStream input = null;
-        InputStream reaper = null;
+    /**
+     * Updates the CRL file. When an index of the CRL is given, the serials to unrevoke
+     * are the ones it lists. If the index turns out not to match the CRL, its file is
+     * deleted so it is rebuilt.
+     *
+     * The new CRL is written next to the file and only replaces it once it has been
+     * written completely, so a failure never leaves a truncated CRL behind.
+     *
+     * @return the index records of the entries added, or null if the CRL was not changed
+     */
+    private CrlSerialIndex.Builder updateCRLFile(File file, final Collection<BigInteger> revoke,
+        final Collection<BigInteger> unrevoke, CrlSerialIndex index, Map<BigInteger, Long> expirations)
+        throws IOException {
+
+        File derFile = decodeCRLFile(file);
+        File newFile = null;
 
         BufferedOutputStream output = null;
         OutputStream filter = null;
         OutputStream encoder = null;
 
         try {
-            // Impl note:
-            // Due to the way the X509CRLStreamWriter works (and the DER format in general), we have
-            // to make two passes through the file.
-            input = new Base64InputStream(new FileInputStream(strippedFile));
-            reaper = new Base64InputStream(new FileInputStream(strippedFile));
+            // Entries are looked up in, and copied from, a mapping of the DER file, so the
+            // CRL is only read through once and the entries are never decoded.
+            X509CRLMappedReader crl = new X509CRLMappedReader(derFile);
 
             // Note: This will break if we ever stop using RSA keys
             PrivateKey key = this.pkiReader.getCaKey();
             X509CRLStreamWriter writer = new X509CRLStreamWriter(
-                input, (RSAPrivateKey) key, this.pkiReader.getCACert());
+                crl, (RSAPrivateKey) key, this.pkiReader.getCACert());
 
             // Add new entries
+            CrlSerialIndex.Builder added = new CrlSerialIndex.Builder();
             if (revoke != null) {
                 Date now = new Date();
                 for (BigInteger serial : revoke) {
-                    writer.add(serial, now, CRLReason.privilegeWithdrawn);
+                    int length = writer.add(serial, now, CRLReason.privilegeWithdrawn);
+                    if (index != null) {
+                        Long expiration = expirations != null ? expirations.get(serial) : null;
+                        added.add(serial,
+                            expiration != null ? expiration : CrlSerialIndex.UNKNOWN_EXPIRATION, length);
+                    }
                 }
             }
 
             // Unfortunately, we need to do the prescan before checking if we have changes queued,
             // or we could miss cases where we have entries to remove, but nothing to add.
-            if (unrevoke != null && !unrevoke.isEmpty()) {
-                writer.preScan(reaper, new CRLEntryValidator() {
-                    public boolean shouldDelete(X509CRLEntryObject entry) {
-                        return unrevoke.contains(entry.getSerialNumber());
-                    }
-                });
+            if (index != null && !this.deleteIndexedEntries(writer, unrevoke, index)) {
+                log.warn("The index of CRL file {} does not match the CRL, it will be rebuilt", file);
+                CrlSerialIndex.indexFileFor(file).delete();
             }
-            else {
-                writer.preScan(reaper);
+            else if (unrevoke != null) {
+                for (BigInteger serial : unrevoke) {
+                    writer.delete(serial);
+                }
             }
+            writer.preScan(crl.newInputStream());
 
             // Verify we actually have work to do now
             if (writer.hasChangesQueued()) {
-                output = new BufferedOutputStream(new FileOutputStream(file));
+                newFile = File.createTempFile("candlepin_crl_", ".pem",
+                    file.getAbsoluteFile().getParentFile());
+                output = new BufferedOutputStream(new FileOutputStream(newFile));
                 filter = new FilterOutputStream(output) {
                     private boolean needsLineBreak = true;
 
@@ -269,6 +335,12 @@ public class CrlFileUtil {
 
                 output.write("-----END X509 CRL-----\n".getBytes());
                 output.close();
+
+                if (!newFile.renameTo(file)) {
+                    throw new IOException("Unable to replace CRL file " + file);
+                }
+                newFile = null;
+                return added;
             }
         }
         catch (GeneralSecurityException e) {
@@ -280,7 +352,7 @@ public class CrlFileUtil {
             log.error("Unexpected error occurred while writing new CRL file", e);
         }
         finally {
-            for (Closeable stream : Arrays.asList(encoder, output, reaper, input)) {
+            for (Closeable stream : Arrays.asList(encoder, output)) {
                 if (stream != null) {
                     try {
                         stream.close();
@@ -291,32 +363,159 @@ public class CrlFileUtil {
                 }
             }
 
-            if (!strippedFile.delete()) {
-                log.error("Unable to delete temporary CRL file: {}", strippedFile);
+            if (!derFile.delete()) {
+                log.error("Unable to delete temporary CRL file: {}", derFile);
+            }
+            if (newFile != null && !newFile.delete()) {
+                log.error("Unable to delete temporary CRL file: {}", newFile);
             }
         }
+
+        return null;
     }
 
+    /*
+     * Removes the indexed entries among the serials to unrevoke. Entries are looked up
+     * in the CRL being rewritten rather than trusted from the index, so an index which
+     * is out of date can never corrupt the CRL.
+     *
+     * Returns false if the index and the CRL disagree about an entry.
+     */
+    private boolean deleteIndexedEntries(X509CRLStreamWriter writer, Collection<BigInteger> unrevoke,
+        CrlSerialIndex index) {
+        boolean matches = true;
+        if (unrevoke != null) {
+            for (BigInteger serial : unrevoke) {
+                if (index.contains(serial) != writer.delete(serial)) {
+                    matches = false;
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Brings the CRL file up to date with the database, revoking serials which have not
+     * been collected yet and dropping expired ones.
+     *
+     * The entries of the CRL are tracked by a {@link CrlSerialIndex} next to the file, so
+     * that the changes can be worked out, and applied in a single pass over the CRL,
+     * without reading the CRL first. The index is rebuilt from the CRL if it is missing
+     * or out of date.
+     *
+     * @param file the CRL file
+     * @return true
+     * @throws IOException if the CRL file could not be updated
+     */
     public boolean syncCRLWithDB(File file) throws IOException {
-        List<BigInteger> revoke = new LinkedList<BigInteger>();
         List<CertificateSerial> serials = this.certificateSerialCurator.retrieveTobeCollectedSerials();
+        CrlSerialIndex index = this.openIndex(file);
+
+        List<BigInteger> revoke = new LinkedList<BigInteger>();
+        Map<BigInteger, Long> expirations = new HashMap<BigInteger, Long>();
         for (CertificateSerial serial : serials) {
-            revoke.add(serial.getSerial());
+            if (index == null || !index.contains(serial.getSerial())) {
+                revoke.add(serial.getSerial());
+                if (serial.getExpiration() != null) {
+                    expirations.put(serial.getSerial(), serial.getExpiration().getTime());
+                }
+                if (serial.getSerial().bitLength() > 63) {
+                    // Can't be indexed; fall back to updating the CRL on its own
+                    index = null;
+                }
+            }
             serial.setCollected(true);
         }
 
-        List<BigInteger> unrevoke = new LinkedList<BigInteger>();
-        for (CertificateSerial serial : this.certificateSerialCurator.getExpiredSerials()) {
-            unrevoke.add(serial.getSerial());
+        // Entries indexed along with their expiration are expired without the database
+        Set<BigInteger> unrevoke = new HashSet<BigInteger>();
+        if (index != null) {
+            unrevoke.addAll(index.getExpiredSerials(Util.yesterday()));
+        }
+        if (index == null || index.hasUnknownExpirations()) {
+            for (CertificateSerial serial : this.certificateSerialCurator.getExpiredSerials()) {
+                if (index == null || index.contains(serial.getSerial())) {
+                    unrevoke.add(serial.getSerial());
+                }
+            }
         }
 
         if (revoke.size() > 0 || unrevoke.size() > 0) {
-            this.updateCRLFile(file, revoke, unrevoke);
+            if (index == null) {
+                this.updateCRLFile(file, revoke, unrevoke);
+                this.indexCRLFile(file, expirations);
+            }
+            else {
+                CrlSerialIndex.Builder added = this.updateCRLFile(file, revoke, unrevoke, index, expirations);
+                if (added != null) {
+                    // An empty CRL is rewritten from scratch, and an index which did not
+                    // match the CRL was dropped, so index what was written
+                    if (index.size() == 0 || !CrlSerialIndex.indexFileFor(file).exists()) {
+                        this.indexCRLFile(file, expirations);
+                    }
+                    else {
+                        index.update(added, unrevoke).write(file);
+                    }
+                }
+            }
+        }
 
+        if (serials.size() > 0) {
             // Store the state of the newly-revoked serials as "collected"
             this.certificateSerialCurator.saveOrUpdateAll(serials, true);
         }
 
         return true;
     }
+
+    /**
+     * Opens the index of the CRL file, indexing the CRL if needed.
+     *
+     * @return the index, or null if the CRL file does not exist or could not be indexed
+     */
+    private CrlSerialIndex openIndex(File file) {
+        if (!file.exists() || file.length() == 0) {
+            return null;
+        }
+
+        try {
+            CrlSerialIndex index = CrlSerialIndex.open(file);
+            return index != null ? index : this.indexCRLFile(file, null);
+        }
+        catch (IOException e) {
+            log.warn("Unable to read the index of CRL file {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Indexes the entries of the CRL file and writes the index next to it.
+     *
+     * @param expirations the expirations of serials, where known
+     * @return the index, or null if the CRL could not be indexed
+     */
+    private CrlSerialIndex indexCRLFile(File file, Map<BigInteger, Long> expirations) {
+        if (!file.exists() || file.length() == 0) {
+            return null;
+        }
+
+        File derFile = null;
+        try {
+            log.info("Indexing CRL file {}", file);
+            derFile = decodeCRLFile(file);
+            CrlSerialIndex index = CrlSerialIndex.build(new X509CRLMappedReader(derFile), expirations);
+            index.write(file);
+            return index;
+        }
+        catch (IOException e) {
+            log.warn("Unable to index CRL file {}, it will be updated without an index", file, e);
+            CrlSerialIndex.indexFileFor(file).delete();
+            return null;
+        }
+        finally {
+            if (derFile != null && !derFile.delete()) {
+                log.error("Unable to delete temporary CRL file: {}", derFile);
+            }
+        }
+    }
 }
@@ -0,0 +1,390 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CrlSerialIndex
+ *
+ * A sorted index of the entries of a CRL file, kept in a file next to it. Each record
+ * holds the serial of a revoked certificate, the expiration of that certificate and
+ * the length of its encoded CRL entry. With it, the entries to add and expire can be
+ * worked out without reading the CRL, and {@link X509CRLStreamWriter} can drop entries
+ * without scanning the CRL for them first.
+ *
+ * The index file is memory mapped when opened. It is never modified in place: changes
+ * are merged into a new index which replaces the file once the CRL has been written.
+ * The index records the length and modification time of the CRL file it describes and
+ * is ignored if the CRL no longer matches.
+ */
+public class CrlSerialIndex {
+    /** The expiration of entries indexed from an existing CRL */
+    public static final long UNKNOWN_EXPIRATION = Long.MAX_VALUE;
+
+    private static final int MAGIC = 0x43524c58;
+    private static final int VERSION = 1;
+
+    // magic, version, CRL length, CRL modification time, record count
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+
+    // serial, expiration, entry length
+    private static final int RECORD_SIZE = 8 + 8 + 4;
+
+    private final ByteBuffer records;
+    private final int size;
+
+    private CrlSerialIndex(ByteBuffer records, int size) {
+        this.records = records;
+        this.size = size;
+    }
+
+    public static File indexFileFor(File crlFile) {
+        return new File(crlFile.getPath() + ".idx");
+    }
+
+    /**
+     * Opens the index of the given CRL file.
+     *
+     * @param crlFile the CRL file
+     * @return the index, or null if there is no index or it does not match the CRL file
+     * @throws IOException if the index file could not be read
+     */
+    public static CrlSerialIndex open(File crlFile) throws IOException {
+        File indexFile = indexFileFor(crlFile);
+        if (!indexFile.exists() || !crlFile.exists()) {
+            return null;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            if (length < HEADER_SIZE) {
+                return null;
+            }
+
+            // The mapping remains valid once the file is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            int size = buffer.getInt(24);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION ||
+                buffer.getLong(8) != crlFile.length() || buffer.getLong(16) != crlFile.lastModified() ||
+                length != HEADER_SIZE + (long) size * RECORD_SIZE) {
+                return null;
+            }
+
+            buffer.position(HEADER_SIZE);
+            return new CrlSerialIndex(buffer.slice(), size);
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Indexes the entries of a CRL.
+     *
+     * @param crl the CRL
+     * @param expirations the expirations of serials, where known. Entries missing from it
+     *  are indexed with an unknown expiration.
+     * @return an index of the CRL's entries
+     * @throws IOException if the CRL has serials which do not fit in the index
+     */
+    public static CrlSerialIndex build(X509CRLMappedReader crl, Map<BigInteger, Long> expirations)
+        throws IOException {
+        Builder builder = new Builder();
+        for (int i = 0; i < crl.size(); i++) {
+            BigInteger serial = crl.getSerial(i);
+            Long expiration = expirations != null ? expirations.get(serial) : null;
+            builder.add(serial, expiration != null ? expiration : UNKNOWN_EXPIRATION, crl.getEntryLength(i));
+        }
+
+        return builder.build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getSerial(int i) {
+        return records.getLong(i * RECORD_SIZE);
+    }
+
+    public long getExpiration(int i) {
+        return records.getLong(i * RECORD_SIZE + 8);
+    }
+
+    public int getEntryLength(int i) {
+        return records.getInt(i * RECORD_SIZE + 16);
+    }
+
+    /**
+     * @return the position of the serial in the index, or -1 if it is not indexed
+     */
+    public int indexOf(BigInteger serial) {
+        if (serial.bitLength() > 63) {
+            return -1;
+        }
+
+        long key = serial.longValue();
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = getSerial(mid);
+            if (value < key) {
+                low = mid + 1;
+            }
+            else if (value > key) {
+                high = mid - 1;
+            }
+            else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(BigInteger serial) {
+        return indexOf(serial) >= 0;
+    }
+
+    /**
+     * @return true if some entries were indexed without their expiration
+     */
+    public boolean hasUnknownExpirations() {
+        for (int i = 0; i < size; i++) {
+            if (getExpiration(i) == UNKNOWN_EXPIRATION) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param date the cutoff date
+     * @return the serials of entries which expired on or before the given date
+     */
+    public List<BigInteger> getExpiredSerials(Date date) {
+        List<BigInteger> expired = new ArrayList<BigInteger>();
+        long cutoff = date.getTime();
+        for (int i = 0; i < size; i++) {
+            if (getExpiration(i) <= cutoff) {
+                expired.add(BigInteger.valueOf(getSerial(i)));
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Merges changes into a copy of this index. This index is left unchanged.
+     *
+     * @param added the entries added to the CRL
+     * @param removed the serials removed from the CRL
+     * @return the updated index
+     */
+    public CrlSerialIndex update(Builder added, Collection<BigInteger> removed) {
+        long[] skipped = new long[removed.size()];
+        int skippedCount = 0;
+        for (BigInteger serial : removed) {
+            if (serial.bitLength() <= 63) {
+                skipped[skippedCount++] = serial.longValue();
+            }
+        }
+        Arrays.sort(skipped, 0, skippedCount);
+
+        added.sort();
+        Builder merged = new Builder();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < added.size) {
+            if (j == added.size || (i < size && getSerial(i) < added.serials[j])) {
+                if (Arrays.binarySearch(skipped, 0, skippedCount, getSerial(i)) < 0) {
+                    merged.add(getSerial(i), getExpiration(i), getEntryLength(i));
+                }
+                i++;
+            }
+            else if (i < size && getSerial(i) == added.serials[j]) {
+                // Keep the old entry, unless it was removed while the new one was added
+                if (Arrays.binarySearch(skipped, 0, skippedCount, getSerial(i)) < 0) {
+                    merged.add(getSerial(i), getExpiration(i), getEntryLength(i));
+                }
+                else {
+                    merged.add(added.serials[j], added.expirations[j], added.lengths[j]);
+                }
+                i++;
+                j++;
+            }
+            else {
+                merged.add(added.serials[j], added.expirations[j], added.lengths[j]);
+                j++;
+            }
+        }
+
+        return merged.build();
+    }
+
+    /**
+     * Writes this index next to the given CRL file, replacing any previous index. It
+     * must be called after the CRL file has been written.
+     *
+     * @param crlFile the CRL file this index describes
+     * @throws IOException if the index file could not be written
+     */
+    public void write(File crlFile) throws IOException {
+        File indexFile = indexFileFor(crlFile);
+        File tempFile = File.createTempFile("candlepin_crl_", ".idx", indexFile.getParentFile());
+
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(crlFile.length());
+            out.writeLong(crlFile.lastModified());
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeLong(getSerial(i));
+                out.writeLong(getExpiration(i));
+                out.writeInt(getEntryLength(i));
+            }
+            out.close();
+
+            if (!tempFile.renameTo(indexFile) && !(indexFile.delete() && tempFile.renameTo(indexFile))) {
+                throw new IOException("Unable to replace CRL index " + indexFile);
+            }
+        }
+        finally {
+            IOUtils.closeQuietly(out);
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Collects index records in any order.
+     */
+    public static class Builder {
+        private long[] serials = new long[64];
+        private long[] expirations = new long[64];
+        private int[] lengths = new int[64];
+        private int size;
+
+        /**
+         * @param serial the serial of the revoked certificate
+         * @param expiration the expiration of the certificate
+         * @param entryLength the length of the encoded CRL entry
+         * @return this builder
+         * @throws IOException if the serial does not fit in the index
+         */
+        public Builder add(BigInteger serial, long expiration, int entryLength) throws IOException {
+            if (serial.bitLength() > 63) {
+                throw new IOException("Serial " + serial + " cannot be indexed");
+            }
+            return add(serial.longValue(), expiration, entryLength);
+        }
+
+        private Builder add(long serial, long expiration, int entryLength) {
+            if (size == serials.length) {
+                serials = Arrays.copyOf(serials, size * 2);
+                expirations = Arrays.copyOf(expirations, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+            }
+
+            serials[size] = serial;
+            expirations[size] = expiration;
+            lengths[size] = entryLength;
+            size++;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public CrlSerialIndex build() {
+            sort();
+            ByteBuffer buffer = ByteBuffer.allocate(size * RECORD_SIZE);
+            for (int i = 0; i < size; i++) {
+                buffer.putLong(serials[i]);
+                buffer.putLong(expirations[i]);
+                buffer.putInt(lengths[i]);
+            }
+            return new CrlSerialIndex(buffer, size);
+        }
+
+        private void sort() {
+            sort(0, size - 1);
+        }
+
+        private void sort(int low, int high) {
+            while (low < high) {
+                long pivot = serials[(low + high) >>> 1];
+                int i = low;
+                int j = high;
+                while (i <= j) {
+                    while (serials[i] < pivot) {
+                        i++;
+                    }
+                    while (serials[j] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        swap(i++, j--);
+                    }
+                }
+
+                // Recurse into the smaller half to bound the stack depth
+                if (j - low < high - i) {
+                    sort(low, j);
+                    low = i;
+                }
+                else {
+                    sort(i, high);
+                    high = j;
+                }
+            }
+        }
+
+        private void swap(int a, int b) {
+            long serial = serials[a];
+            serials[a] = serials[b];
+            serials[b] = serial;
+
+            long expiration = expirations[a];
+            expirations[a] = expirations[b];
+            expirations[b] = expiration;
+
+            int length = lengths[a];
+            lengths[a] = lengths[b];
+            lengths[b] = length;
+        }
+    }
+}
@@ -20,10 +20,12 @@ import static org.candlepin.util.DERUtil.*;
 import org.bouncycastle.asn1.DERSequence;
 import org.bouncycastle.asn1.x509.TBSCertList.CRLEntry;
 import org.bouncycastle.jce.provider.X509CRLEntryObject;
+import org.bouncycastle.util.io.Streams;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -231,6 +233,36 @@ public class X509CRLEntryStream implements Closeable, Iterator<X509CRLEntryObjec
         return revokedSeqBytes > count.get();
     }
 
+    /**
+     * Skips the remaining entries without decoding them, leaving the stream at the
+     * crlExtensions.
+     *
+     * @throws IOException if the stream could not be read
+     */
+    public void skipRemaining() throws IOException {
+        byte[] buffer = new byte[4096];
+        while (hasNext()) {
+            int tag = readTag(crlStream, count);
+            int tagNo = readTagNumber(crlStream, tag, count);
+            if (tagNo == OBJECT_IDENTIFIER) {
+                // See next()
+                throw new IllegalStateException("v1 CRLs with zero entries are unsupported." +
+                    "  Please use a v2 CRL.");
+            }
+
+            // Read rather than skip: skip() on a Base64InputStream skips encoded bytes
+            int remaining = readLength(crlStream, count);
+            while (remaining > 0) {
+                int length = Math.min(buffer.length, remaining);
+                if (Streams.readFully(crlStream, buffer, 0, length) != length) {
+                    throw new EOFException("EOF encountered in middle of object");
+                }
+                count.addAndGet(length);
+                remaining -= length;
+            }
+        }
+    }
+
     @Override
     public void close() throws IOException {
         crlStream.close();
@@ -0,0 +1,431 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import static org.bouncycastle.asn1.DERTags.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A random access view of a CRL in DER format, backed by a memory mapped file.
+ *
+ * Opening the CRL walks the tag and length headers of the revokedCertificates
+ * sequence once (see {@link X509CRLStreamWriter} for the schema) and records where
+ * each entry starts. Nothing is decoded. Serial lookups sort those offsets by serial
+ * the first time they are needed and then binary search them, comparing the encoded
+ * serials in place.
+ *
+ * Entries are handed out as read-only slices of the mapped file, so they can be copied
+ * to an output without being decoded or copied onto the heap first.
+ * {@link X509CRLStreamWriter} uses this to splice the entries it keeps into a new CRL.
+ *
+ * Like {@link X509CRLEntryStream}, <b>this class does not check the signature</b>.
+ */
+public class X509CRLMappedReader implements Iterable<ByteBuffer> {
+    private static final int SEQUENCE_TAG = CONSTRUCTED | SEQUENCE;
+    private static final int EXTENSIONS_TAG = TAGGED | CONSTRUCTED;
+
+    private final ByteBuffer der;
+
+    private int[] offsets;
+    private int size;
+    private int entriesEnd;
+
+    // Entry positions sorted by serial, built on the first lookup
+    private int[] sorted;
+
+    /**
+     * Maps the given CRL file. The mapping stays valid after the file is deleted.
+     *
+     * @param crlFile the CRL, in DER format
+     * @throws IOException if the file could not be read or is not a CRL
+     */
+    public X509CRLMappedReader(File crlFile) throws IOException {
+        this(map(crlFile));
+    }
+
+    /**
+     * @param der the CRL, in DER format, from position 0
+     * @throws IOException if the buffer does not hold a CRL
+     */
+    public X509CRLMappedReader(ByteBuffer der) throws IOException {
+        this.der = der.duplicate();
+        this.offsets = new int[64];
+
+        try {
+            this.indexEntries();
+        }
+        catch (IndexOutOfBoundsException e) {
+            throw new IOException("CRL ends in the middle of an object", e);
+        }
+    }
+
+    private static ByteBuffer map(File crlFile) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(crlFile, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    private void indexEntries() throws IOException {
+        // Step into the CertificateList and TBSCertList sequences
+        int tbs = valueOffset(0);
+        int tbsEnd = end(tbs);
+        int pos = valueOffset(tbs);
+
+        // Skip the version, signature, issuer and update times. The revokedCertificates
+        // are the first sequence after the times; if there isn't one, the CRL is empty.
+        boolean seenTime = false;
+        int entries = -1;
+        while (pos < tbsEnd) {
+            int tag = tag(pos);
+            if (tag == UTC_TIME || tag == GENERALIZED_TIME) {
+                seenTime = true;
+            }
+            else if (seenTime && tag == SEQUENCE_TAG) {
+                entries = pos;
+                break;
+            }
+            else if (tag == EXTENSIONS_TAG) {
+                break;
+            }
+            pos = end(pos);
+        }
+
+        if (entries < 0) {
+            entriesEnd = pos;
+            return;
+        }
+
+        pos = valueOffset(entries);
+        entriesEnd = end(entries);
+        while (pos < entriesEnd) {
+            // RFC 5280 limits serials to 20 octets, so their lengths are a single byte
+            int serial = valueOffset(pos);
+            if (tag(pos) != SEQUENCE_TAG || tag(serial) != INTEGER || (der.get(serial + 1) & 0x80) != 0) {
+                throw new IOException("Unexpected CRL entry at " + pos);
+            }
+
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            offsets[size++] = pos;
+            pos = end(pos);
+        }
+
+        if (pos != entriesEnd) {
+            throw new IOException("CRL entries overrun their sequence");
+        }
+    }
+
+    private int tag(int pos) {
+        return der.get(pos) & 0xff;
+    }
+
+    private int valueOffset(int pos) {
+        int first = der.get(pos + 1) & 0xff;
+        return first < 0x80 ? pos + 2 : pos + 2 + (first & 0x7f);
+    }
+
+    private int valueLength(int pos) throws IOException {
+        int first = der.get(pos + 1) & 0xff;
+        if (first < 0x80) {
+            return first;
+        }
+
+        // See DERUtil.readLength
+        int size = first & 0x7f;
+        if (size == 0 || size > 4) {
+            throw new IOException("Unsupported DER length at " + pos);
+        }
+
+        int length = 0;
+        for (int i = 0; i < size; i++) {
+            length = (length << 8) + (der.get(pos + 2 + i) & 0xff);
+        }
+
+        if (length < 0) {
+            throw new IOException("Negative DER length at " + pos);
+        }
+        return length;
+    }
+
+    private int end(int pos) throws IOException {
+        int end = valueOffset(pos) + valueLength(pos);
+        if (end > der.limit()) {
+            throw new IOException("CRL ends in the middle of an object");
+        }
+        return end;
+    }
+
+    /**
+     * @return the number of entries in the CRL
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param serial a certificate serial
+     * @return true if the CRL has an entry for the serial
+     */
+    public boolean isRevoked(BigInteger serial) {
+        return indexOf(serial) >= 0;
+    }
+
+    /**
+     * @param serial a certificate serial
+     * @return the position of the serial's entry in the CRL, or -1 if it has none
+     */
+    public int indexOf(BigInteger serial) {
+        int[] order = this.getSortedEntries();
+        byte[] key = serial.toByteArray();
+
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareSerial(offsets[order[mid]], key);
+            if (cmp < 0) {
+                low = mid + 1;
+            }
+            else if (cmp > 0) {
+                high = mid - 1;
+            }
+            else {
+                return order[mid];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param i the position of an entry
+     * @return the serial of the entry
+     */
+    public BigInteger getSerial(int i) {
+        int serial = valueOffset(offsets[i]);
+        int length = der.get(serial + 1) & 0xff;
+        byte[] value = new byte[length];
+        ByteBuffer slice = der.duplicate();
+        slice.position(valueOffset(serial));
+        slice.get(value);
+        return new BigInteger(value);
+    }
+
+    /**
+     * @param i the position of an entry
+     * @return the length of the encoded entry, including its tag and length
+     */
+    public int getEntryLength(int i) {
+        return (i + 1 < size ? offsets[i + 1] : entriesEnd) - offsets[i];
+    }
+
+    /**
+     * @param i the position of an entry
+     * @return a read-only view of the encoded entry
+     */
+    public ByteBuffer getEntry(int i) {
+        return getEntries(i, i + 1);
+    }
+
+    /**
+     * @param from the position of the first entry
+     * @param to the position after the last entry
+     * @return a read-only view of the encoded entries, which are contiguous in the CRL
+     */
+    public ByteBuffer getEntries(int from, int to) {
+        ByteBuffer slice = der.asReadOnlyBuffer();
+        slice.limit(to < size ? offsets[to] : entriesEnd);
+        slice.position(from < size ? offsets[from] : entriesEnd);
+        return slice.slice();
+    }
+
+    /**
+     * Iterates over the encoded entries in the order they appear in the CRL.
+     */
+    @Override
+    public Iterator<ByteBuffer> iterator() {
+        return new Iterator<ByteBuffer>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public ByteBuffer next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getEntry(next++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Remove is not implemented.");
+            }
+        };
+    }
+
+    /**
+     * @return a new stream over the whole CRL
+     */
+    public InputStream newInputStream() {
+        return new ByteBufferInputStream(der.duplicate());
+    }
+
+    private synchronized int[] getSortedEntries() {
+        if (sorted == null) {
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            sort(order, 0, size - 1);
+            sorted = order;
+        }
+        return sorted;
+    }
+
+    /*
+     * Serials are positive, so their minimal DER encodings order by length and then
+     * byte by byte. Negative serials are out of spec but still compare consistently.
+     */
+    private int compareSerial(int entry, byte[] key) {
+        int serial = valueOffset(entry);
+        int length = der.get(serial + 1) & 0xff;
+        if (length != key.length) {
+            return length < key.length ? -1 : 1;
+        }
+
+        int value = valueOffset(serial);
+        for (int i = 0; i < length; i++) {
+            int a = der.get(value + i) & 0xff;
+            int b = key[i] & 0xff;
+            if (a != b) {
+                return a < b ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    private int compareSerials(int a, int b) {
+        int serialA = valueOffset(offsets[a]);
+        int serialB = valueOffset(offsets[b]);
+        int lengthA = der.get(serialA + 1) & 0xff;
+        int lengthB = der.get(serialB + 1) & 0xff;
+        if (lengthA != lengthB) {
+            return lengthA < lengthB ? -1 : 1;
+        }
+
+        int valueA = valueOffset(serialA);
+        int valueB = valueOffset(serialB);
+        for (int i = 0; i < lengthA; i++) {
+            int x = der.get(valueA + i) & 0xff;
+            int y = der.get(valueB + i) & 0xff;
+            if (x != y) {
+                return x < y ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    private void sort(int[] order, int low, int high) {
+        while (low < high) {
+            int pivot = order[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compareSerials(order[i], pivot) < 0) {
+                    i++;
+                }
+                while (compareSerials(order[j], pivot) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i++] = order[j];
+                    order[j--] = swap;
+                }
+            }
+
+            // Recurse into the smaller half to bound the stack depth
+            if (j - low < high - i) {
+                sort(order, low, j);
+                low = i;
+            }
+            else {
+                sort(order, i, high);
+                high = j;
+            }
+        }
+    }
+
+    /**
+     * An InputStream reading from a ByteBuffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(bytes, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -72,6 +72,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateParsingException;
@@ -137,6 +138,7 @@ public class X509CRLStreamWriter {
     private Set<BigInteger> deletedEntries;
 
     private InputStream crlIn;
+    private X509CRLMappedReader crl;
 
     private Integer originalLength;
     private AtomicInteger count;
@@ -168,6 +170,21 @@ public class X509CRLStreamWriter {
     }
 
 
+    /* Writers created from a mapped CRL copy the entries they keep straight from the
+     * mapping, without decoding them, and can look up entries to delete in it.
+     */
+    public X509CRLStreamWriter(X509CRLMappedReader crlToChange, RSAPrivateKey key, X509Certificate ca)
+        throws CryptoException, IOException, CertificateParsingException {
+        this(crlToChange.newInputStream(), key, ca);
+        this.crl = crlToChange;
+    }
+
+    public X509CRLStreamWriter(X509CRLMappedReader crlToChange, RSAPrivateKey key, RSAPublicKey pubKey)
+        throws CryptoException, IOException, InvalidKeyException {
+        this(crlToChange.newInputStream(), key, pubKey);
+        this.crl = crlToChange;
+    }
+
     public X509CRLStreamWriter(File crlToChange, RSAPrivateKey key, RSAPublicKey pubKey)
         throws CryptoException, IOException, InvalidKeyException {
         this(new BufferedInputStream(new FileInputStream(crlToChange)), key, pubKey);
@@ -243,9 +260,14 @@ public class X509CRLStreamWriter {
                     return this;
                 }
 
+                if (validator == null) {
+                    // Nothing to look for in the entries, so don't bother decoding them
+                    reaperStream.skipRemaining();
+                }
+
                 while (reaperStream.hasNext()) {
                     X509CRLEntryObject entry = reaperStream.next();
-                    if (validator != null && validator.shouldDelete(entry)) {
+                    if (validator.shouldDelete(entry)) {
                         deletedEntries.add(entry.getSerialNumber());
                         deletedEntriesLength += entry.getEncoded().length;
                     }
@@ -328,9 +350,10 @@ public class X509CRLStreamWriter {
      * @param serial
      * @param date
      * @param reason
+     * @return the length of the encoded entry
      */
     @SuppressWarnings({ "unchecked", "rawtypes" })
-    public void add(BigInteger serial, Date date, int reason) {
+    public int add(BigInteger serial, Date date, int reason) {
         if (locked) {
             throw new IllegalStateException("Cannot add to a locked stream.");
         }
@@ -347,7 +370,46 @@ public class X509CRLStreamWriter {
         extValues.addElement(new X509Extension(false, new DEROctetString(crlReason.getDEREncoded())));
         v.add(new X509Extensions(extOids, extValues));
 
-        newEntries.add(new DERSequence(v));
+        DERSequence entry = new DERSequence(v);
+        newEntries.add(entry);
+        return entry.getDEREncoded().length;
+    }
+
+    /**
+     * Removes an entry from the CRL without preScan having to look for it, for callers
+     * which know what the CRL contains, such as through a {@link CrlSerialIndex}. The
+     * entry must be in the CRL.
+     *
+     * @param serial the serial of the entry
+     * @param entryLength the length of the encoded entry
+     */
+    public synchronized void delete(BigInteger serial, int entryLength) {
+        if (locked) {
+            throw new IllegalStateException("Cannot delete from a locked stream.");
+        }
+
+        if (deletedEntries.add(serial)) {
+            deletedEntriesLength += entryLength;
+        }
+    }
+
+    /**
+     * Removes an entry from the CRL, looking it up in the mapped CRL the writer was
+     * created with.
+     *
+     * @param serial the serial of the entry
+     * @return true if the CRL has an entry for the serial
+     */
+    public synchronized boolean delete(BigInteger serial) {
+        if (crl == null) {
+            throw new IllegalStateException("Entries can only be looked up in a mapped CRL.");
+        }
+
+        int i = crl.indexOf(serial);
+        if (i >= 0) {
+            delete(serial, crl.getEntryLength(i));
+        }
+        return i >= 0;
     }
 
     /**
@@ -467,11 +529,15 @@ public class X509CRLStreamWriter {
 
         originalLength = handleHeader(out);
 
+        if (crl != null) {
+            spliceEntries(out);
+        }
+
         int tag;
         int tagNo;
         int length;
 
-        while (originalLength > count.get()) {
+        while (crl == null && originalLength > count.get()) {
             tag = readTag(crlIn, count);
             tagNo = readTagNumber(crlIn, tag, count);
             length = readLength(crlIn, count);
@@ -512,6 +578,37 @@ public class X509CRLStreamWriter {
         }
     }
 
+    /**
+     * Copies the entries of the mapped CRL which are not deleted, a run of entries at a
+     * time, in place of reading and copying them one by one.
+     */
+    protected void spliceEntries(OutputStream out) throws IOException {
+        int[] deleted = new int[deletedEntries.size()];
+        int deletedCount = 0;
+        for (BigInteger serial : deletedEntries) {
+            int i = crl.indexOf(serial);
+            if (i < 0) {
+                throw new IllegalStateException("Cannot delete serial " + serial + " missing from the CRL.");
+            }
+            deleted[deletedCount++] = i;
+        }
+        Arrays.sort(deleted, 0, deletedCount);
+
+        byte[] chunk = new byte[64 * 1024];
+        int from = 0;
+        for (int d = 0; d <= deletedCount; d++) {
+            int to = d < deletedCount ? deleted[d] : crl.size();
+            ByteBuffer run = crl.getEntries(from, to);
+            while (run.hasRemaining()) {
+                int length = Math.min(chunk.length, run.remaining());
+                run.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+                signer.update(chunk, 0, length);
+            }
+            from = to + 1;
+        }
+    }
+
     /**
      * This method updates the crlNumber and authorityKeyIdentifier extensions.  Any
      * other extensions are copied over unchanged.
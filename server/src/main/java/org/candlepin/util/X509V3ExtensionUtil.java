@@ -57,6 +57,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
@@ -70,18 +71,26 @@ public class X509V3ExtensionUtil extends X509Util {
     private static Logger log = LoggerFactory.getLogger(X509V3ExtensionUtil.class);
     private Configuration config;
     private EntitlementCurator entCurator;
+    private ContentPayloadCache payloadCache;
     private String thisVersion = "3.2";
 
-    private long pathNodeId = 0;
-    private long huffNodeId = 0;
+    // certificates may be built on several threads at once
+    private AtomicLong pathNodeId = new AtomicLong();
+    private AtomicLong huffNodeId = new AtomicLong();
     private static final Object END_NODE = new Object();
     private static boolean treeDebug = false;
 
-    @Inject
     public X509V3ExtensionUtil(Configuration config, EntitlementCurator entCurator) {
+        this(config, entCurator, new ContentPayloadCache(config));
+    }
+
+    @Inject
+    public X509V3ExtensionUtil(Configuration config, EntitlementCurator entCurator,
+        ContentPayloadCache payloadCache) {
         // Output everything in UTC
         this.config = config;
         this.entCurator = entCurator;
+        this.payloadCache = payloadCache;
     }
 
     public Set<X509ExtensionWrapper> getExtensions(Entitlement ent,
@@ -122,12 +131,41 @@ public class X509V3ExtensionUtil extends X509Util {
         EntitlementBody map = createEntitlementBody(skuProduct, productModels, ent,
             contentPrefix, promotedContent);
 
-        String json = toJson(map);
+        return createEntitlementDataPayload(map);
+    }
+
+    /**
+     * Serializes and compresses an entitlement body which has already been built.
+     * Only the body is read, so this is safe to call off the thread which loaded the
+     * entitlement.
+     *
+     * @param body the entitlement body, see createEntitlementBody
+     * @return the compressed entitlement data
+     * @throws IOException if the body could not be compressed
+     */
+    public byte[] createEntitlementDataPayload(EntitlementBody body) throws IOException {
+        String json = toJson(body);
         return processPayload(json);
     }
 
     private byte[] retreiveContentValue(EntitlementBody eb) throws IOException {
         List<Content> contentList = getContentList(eb);
+        List<String> paths = new ArrayList<String>(contentList.size());
+        for (Content c : contentList) {
+            paths.add(c.getPath());
+        }
+
+        byte[] cached = payloadCache.get(paths);
+        if (cached != null) {
+            return cached;
+        }
+
+        byte[] payload = encodeContent(contentList);
+        payloadCache.put(paths, payload);
+        return payload;
+    }
+
+    private byte[] encodeContent(List<Content> contentList) throws IOException {
         PathNode treeRoot = makePathTree(contentList, new PathNode());
         List<String> nodeStrings = orderStrings(treeRoot);
         if (nodeStrings.size() == 0) {
@@ -700,7 +738,7 @@ public class X509V3ExtensionUtil extends X509Util {
         }
     }
 
-    private List<PathNode> orderNodes(PathNode treeRoot) {
+    List<PathNode> orderNodes(PathNode treeRoot) {
         List<PathNode> result = new ArrayList<PathNode>();
 
         // walk tree to make string map
@@ -736,7 +774,7 @@ public class X509V3ExtensionUtil extends X509Util {
         return nodes;
     }
 
-    private byte[] makeNodeDictionary(HuffNode stringParent,
+    byte[] makeNodeDictionary(HuffNode stringParent,
         HuffNode pathNodeParent, List<PathNode> pathNodes)
         throws UnsupportedEncodingException, IOException {
 
@@ -761,37 +799,19 @@ public class X509V3ExtensionUtil extends X509Util {
         else {
             baos.write(nodeSize);
         }
-        StringBuffer bits = new StringBuffer();
-        String endNodeLocation = findHuffPath(stringParent, END_NODE);
+        Map<Object, HuffCode> stringCodes = makeCodeTable(stringParent);
+        Map<Object, HuffCode> pathNodeCodes = makeCodeTable(pathNodeParent);
+        HuffCode endNodeLocation = getCode(stringCodes, END_NODE);
+        BitWriter bits = new BitWriter(baos);
         for (PathNode pn : pathNodes) {
             for (NodePair np : pn.getChildren()) {
-                bits.append(findHuffPath(stringParent, np.getName()));
-                bits.append(findHuffPath(pathNodeParent, np.getConnection()));
-            }
-            bits.append(endNodeLocation);
-            while (bits.length() >= 8) {
-                int next = 0;
-                for (int i = 0; i < 8; i++) {
-                    next = (byte) next << 1;
-                    if (bits.charAt(i) == '1') {
-                        next++;
-                    }
-                }
-                baos.write(next);
-                bits.delete(0, 8);
+                bits.write(getCode(stringCodes, np.getName()));
+                bits.write(getCode(pathNodeCodes, np.getConnection()));
             }
+            bits.write(endNodeLocation);
         }
+        bits.flush();
 
-        if (bits.length() > 0) {
-            int next = 0;
-            for (int i = 0;  i < 8; i++) {
-                next = (byte) next << 1;
-                if (i < bits.length() && bits.charAt(i) == '1') {
-                    next++;
-                }
-            }
-            baos.write(next);
-        }
         byte[] result = baos.toByteArray();
         if (treeDebug) {
             ByteArrayInputStream bais = new ByteArrayInputStream(result);
@@ -813,6 +833,45 @@ public class X509V3ExtensionUtil extends X509Util {
             (byte) value};
     }
 
+    /**
+     * Builds the bit path of every value in the trie in a single walk. Values are
+     * visited in the same order findHuffPath searches them, so a value appearing
+     * more than once keeps the path findHuffPath would have returned.
+     */
+    private Map<Object, HuffCode> makeCodeTable(HuffNode trie) {
+        Map<Object, HuffCode> codes = new HashMap<Object, HuffCode>();
+        addCodes(trie, 0L, 0, codes);
+        return codes;
+    }
+
+    private void addCodes(HuffNode trie, long path, int length, Map<Object, HuffCode> codes) {
+        if (length >= Long.SIZE) {
+            throw new IllegalStateException("Huffman trie is too deep to encode");
+        }
+        HuffNode left = trie.getLeft();
+        HuffNode right = trie.getRight();
+        long leftPath = path << 1;
+        long rightPath = leftPath | 1L;
+        if (left != null && left.getValue() != null && !codes.containsKey(left.getValue())) {
+            codes.put(left.getValue(), new HuffCode(leftPath, length + 1));
+        }
+        if (right != null && right.getValue() != null && !codes.containsKey(right.getValue())) {
+            codes.put(right.getValue(), new HuffCode(rightPath, length + 1));
+        }
+        if (left != null) {
+            addCodes(left, leftPath, length + 1, codes);
+        }
+        if (right != null) {
+            addCodes(right, rightPath, length + 1, codes);
+        }
+    }
+
+    private HuffCode getCode(Map<Object, HuffCode> codes, Object need) {
+        // findHuffPath returns an empty path for values not in the trie
+        HuffCode code = codes.get(need);
+        return code == null ? HuffCode.EMPTY : code;
+    }
+
     public String findHuffPath(HuffNode trie, Object need) {
         HuffNode left = trie.getLeft();
         HuffNode right = trie.getRight();
@@ -869,7 +928,7 @@ public class X509V3ExtensionUtil extends X509Util {
         return baos.toByteArray();
     }
 
-    private List<HuffNode> getStringNodeList(List<String> pathStrings) {
+    List<HuffNode> getStringNodeList(List<String> pathStrings) {
         List<HuffNode> nodes = new ArrayList<HuffNode>();
         int idx = 1;
         for (String part : pathStrings) {
@@ -879,7 +938,7 @@ public class X509V3ExtensionUtil extends X509Util {
         return nodes;
     }
 
-    private List<HuffNode> getPathNodeNodeList(List<PathNode> pathNodes) {
+    List<HuffNode> getPathNodeNodeList(List<PathNode> pathNodes) {
         List<HuffNode> nodes = new ArrayList<HuffNode>();
         int idx = 0;
         for (PathNode pn : pathNodes) {
@@ -1104,6 +1163,55 @@ public class X509V3ExtensionUtil extends X509Util {
         return baos.toByteArray();
     }
 
+    /**
+     * The bit path to a value in a Huffman trie, held in the low length bits of
+     * path with the first step in the most significant of them.
+     */
+    private static class HuffCode {
+        static final HuffCode EMPTY = new HuffCode(0L, 0);
+
+        private final long path;
+        private final int length;
+
+        HuffCode(long path, int length) {
+            this.path = path;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Packs Huffman codes most significant bit first, writing each byte as soon as
+     * it fills up. The last byte is padded with zeros.
+     */
+    private static class BitWriter {
+        private final ByteArrayOutputStream out;
+        private int current = 0;
+        private int count = 0;
+
+        BitWriter(ByteArrayOutputStream out) {
+            this.out = out;
+        }
+
+        void write(HuffCode code) {
+            for (int i = code.length - 1; i >= 0; i--) {
+                current = (current << 1) | (int) ((code.path >>> i) & 1L);
+                if (++count == 8) {
+                    out.write(current);
+                    current = 0;
+                    count = 0;
+                }
+            }
+        }
+
+        void flush() {
+            if (count > 0) {
+                out.write(current << (8 - count));
+                current = 0;
+                count = 0;
+            }
+        }
+    }
+
     /**
      *
      * HuffNode
@@ -1120,12 +1228,12 @@ public class X509V3ExtensionUtil extends X509Util {
             this.weight = weight;
             this.left = left;
             this.right = right;
-            this.id = huffNodeId++;
+            this.id = huffNodeId.getAndIncrement();
         }
         public HuffNode(Object value, int weight) {
             this.value = value;
             this.weight = weight;
-            this.id = huffNodeId++;
+            this.id = huffNodeId.getAndIncrement();
         }
 
         public Object getValue() {
@@ -1168,7 +1276,7 @@ public class X509V3ExtensionUtil extends X509Util {
         private List<PathNode> parents = new ArrayList<PathNode>();
 
         public PathNode() {
-            this.id = pathNodeId++;
+            this.id = pathNodeId.getAndIncrement();
         }
 
         public long getId() {
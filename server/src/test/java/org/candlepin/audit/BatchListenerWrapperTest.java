@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.auth.PrincipalData;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientSession;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
+import org.mockito.Captor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.List;
+
+
+/**
+ * BatchListenerWrapperTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class BatchListenerWrapperTest {
+    @Mock private ClientSession session;
+    @Mock private ClientConsumer consumer;
+    @Mock private BatchEventListener listener;
+    @Captor private ArgumentCaptor<List<Event>> captor;
+    private ObjectMapper mapper = new ObjectMapper();
+    private BatchListenerWrapper wrapper;
+
+    @Before
+    public void init() {
+        wrapper = new BatchListenerWrapper(session, consumer, listener, mapper, 3, 50);
+    }
+
+    @Test
+    public void batchIsClosedAtTheBatchSize() throws Exception {
+        ClientMessage first = message("1");
+        ClientMessage second = message("2");
+        ClientMessage third = message("3");
+        ClientMessage fourth = message("4");
+        when(consumer.receive(anyLong())).thenReturn(first, second, third, fourth);
+
+        assertTrue(wrapper.processBatch());
+
+        verify(fourth, never()).acknowledge();
+        List<Event> events = captureBatch();
+        assertEquals(3, events.size());
+        assertEquals("1", events.get(0).getId());
+        assertEquals("3", events.get(2).getId());
+
+        InOrder inOrder = inOrder(listener, first, third, session);
+        inOrder.verify(listener).onEvents(anyListOf(Event.class));
+        inOrder.verify(first).acknowledge();
+        inOrder.verify(third).acknowledge();
+        inOrder.verify(session).commit();
+    }
+
+    @Test
+    public void batchIsClosedAfterTheMaxDelay() throws Exception {
+        ClientMessage first = message("1");
+        when(consumer.receive(anyLong())).thenReturn(first, (ClientMessage) null);
+
+        assertTrue(wrapper.processBatch());
+
+        assertEquals(1, captureBatch().size());
+        verify(first).acknowledge();
+        verify(session).commit();
+    }
+
+    @Test
+    public void batchMessagesCountEveryEvent() throws Exception {
+        ClientMessage batch = message("[" + eventJson("1") + "," + eventJson("2") + "]", 2);
+        ClientMessage single = message("3");
+        ClientMessage next = message("4");
+        when(consumer.receive(anyLong())).thenReturn(batch, single, next);
+
+        wrapper.processBatch();
+
+        assertEquals(3, captureBatch().size());
+        verify(consumer, times(2)).receive(anyLong());
+    }
+
+    @Test
+    public void failedBatchIsNotAcknowledged() throws Exception {
+        ClientMessage first = message("1");
+        when(consumer.receive(anyLong())).thenReturn(first, (ClientMessage) null);
+        doThrow(new RuntimeException("database down")).when(listener)
+            .onEvents(anyListOf(Event.class));
+        doThrow(new RuntimeException("database down")).when(listener).onEvent(any(Event.class));
+
+        assertFalse(wrapper.processBatch());
+
+        verify(first, never()).acknowledge();
+        verify(session, never()).commit();
+        verify(session).rollback();
+    }
+
+    @Test
+    public void badEventIsDroppedFromAFailedBatch() throws Exception {
+        ClientMessage first = message("1");
+        ClientMessage bad = message("2");
+        ClientMessage third = message("3");
+        when(consumer.receive(anyLong())).thenReturn(first, bad, third);
+        doThrow(new RuntimeException("value too long")).when(listener)
+            .onEvents(anyListOf(Event.class));
+        doThrow(new RuntimeException("value too long")).when(listener)
+            .onEvent(argThat(new ArgumentMatcher<Event>() {
+                @Override
+                public boolean matches(Object event) {
+                    return "2".equals(((Event) event).getId());
+                }
+            }));
+
+        assertTrue(wrapper.processBatch());
+
+        verify(listener, times(3)).onEvent(any(Event.class));
+        verify(first).acknowledge();
+        verify(bad).acknowledge();
+        verify(third).acknowledge();
+        verify(session).commit();
+        verify(session, never()).rollback();
+    }
+
+    @Test
+    public void unreadableMessagesAreAcknowledgedWithTheBatch() throws Exception {
+        ClientMessage bad = message("not json", 0);
+        ClientMessage good = message("1");
+        when(consumer.receive(anyLong())).thenReturn(bad, good, (ClientMessage) null);
+
+        assertTrue(wrapper.processBatch());
+
+        assertEquals(1, captureBatch().size());
+        verify(bad).acknowledge();
+        verify(good).acknowledge();
+    }
+
+    @Test
+    public void nothingHappensWhenTheQueueIsEmpty() throws Exception {
+        when(consumer.receive(anyLong())).thenReturn(null);
+
+        assertTrue(wrapper.processBatch());
+
+        verify(listener, never()).onEvents(anyListOf(Event.class));
+        verify(session, never()).commit();
+    }
+
+    private List<Event> captureBatch() {
+        verify(listener).onEvents(captor.capture());
+        return captor.getValue();
+    }
+
+    private ClientMessage message(String id) throws Exception {
+        return message(eventJson(id), 0);
+    }
+
+    private ClientMessage message(String body, int count) {
+        HornetQBuffer buffer = HornetQBuffers.dynamicBuffer(body.length() * 2);
+        buffer.writeString(body);
+
+        ClientMessage msg = mock(ClientMessage.class);
+        when(msg.getBodyBuffer()).thenReturn(buffer);
+        if (count > 0) {
+            when(msg.containsProperty(EventSinkImpl.EVENT_COUNT_PROPERTY)).thenReturn(true);
+            when(msg.getIntProperty(EventSinkImpl.EVENT_COUNT_PROPERTY)).thenReturn(count);
+        }
+        return msg;
+    }
+
+    private String eventJson(String id) throws Exception {
+        Event e = new Event();
+        e.setId(id);
+        e.setPrincipal(new PrincipalData("5678", "910112"));
+        return mapper.writeValueAsString(e);
+    }
+}
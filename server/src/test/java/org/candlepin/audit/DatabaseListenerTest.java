@@ -25,6 +25,9 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.Arrays;
+import java.util.Collections;
+
 
 /**
  * DatabaseListenerTest
@@ -54,6 +57,20 @@ public class DatabaseListenerTest {
         verify(ec, never()).create(any(Event.class));
     }
 
+    @Test
+    public void onEventsInsertsTheBatch() {
+        Event other = mock(Event.class);
+        dl.onEvents(Arrays.asList(event, null, other));
+        verify(ec).insertAll(eq(Arrays.asList(event, other)));
+        verify(ec, never()).create(any(Event.class));
+    }
+
+    @Test
+    public void onEventsWithOnlyNulls() {
+        dl.onEvents(Collections.<Event>singletonList(null));
+        verify(ec).insertAll(eq(Collections.<Event>emptyList()));
+    }
+
     @Test(expected = NullPointerException.class)
     public void curatorNull() {
         DatabaseListener localdl = new DatabaseListener(null);
@@ -14,15 +14,28 @@
  */
 package org.candlepin.audit;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import org.candlepin.audit.Event.Target;
+import org.candlepin.audit.Event.Type;
+
 import org.candlepin.auth.Principal;
 import org.candlepin.guice.PrincipalProvider;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.GuestId;
 import org.candlepin.model.Owner;
+import org.candlepin.model.Pool;
+import org.candlepin.test.TestUtil;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -63,4 +76,37 @@ public class EventFactoryTest {
         assertNotNull(event.getEntityId());
     }
 
+    @Test
+    public void oldPoolIsTheStateWhenItWasSet() throws Exception {
+        Owner owner = TestUtil.createOwner();
+        Pool pool = TestUtil.createPool(owner, TestUtil.createProduct(), 10);
+        pool.setId("pool-id");
+        pool.setAttribute("pool_attr", "before");
+
+        EventBuilder builder = eventFactory.getEventBuilder(Target.POOL, Type.MODIFIED)
+            .setOldEntity(pool);
+        pool.setQuantity(20L);
+        pool.setAttribute("pool_attr", "after");
+        Event event = builder.setNewEntity(pool).buildEvent();
+
+        assertTrue(event.getOldEntity().contains("\"quantity\":10"));
+        assertTrue(event.getOldEntity().contains("\"before\""));
+        assertFalse(event.getOldEntity().contains("\"after\""));
+        assertTrue(event.getNewEntity().contains("\"quantity\":20"));
+        assertTrue(event.getNewEntity().contains("\"after\""));
+        assertEquals("pool-id", event.getEntityId());
+    }
+
+    @Test
+    public void oldPoolIsOnlySerializedWhenTheEventIsBuilt() throws Exception {
+        EventFactory factory = spy(eventFactory);
+        Pool pool = TestUtil.createPool(TestUtil.createOwner(), TestUtil.createProduct(), 10);
+
+        EventBuilder builder = factory.getEventBuilder(Target.POOL, Type.MODIFIED)
+            .setOldEntity(pool);
+        verify(factory, never()).entityToJson(any());
+        assertNotNull(builder.setNewEntity(pool).buildEvent().getOldEntity());
+
+        verify(factory, times(2)).entityToJson(any());
+    }
 }
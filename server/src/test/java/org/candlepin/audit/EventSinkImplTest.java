@@ -19,7 +19,9 @@ import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import org.candlepin.auth.Principal;
+import org.candlepin.common.config.Configuration;
 import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.guice.PrincipalProvider;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.Owner;
@@ -30,6 +32,7 @@ import org.candlepin.test.TestUtil;
 
 import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.hornetq.api.core.HornetQBuffers;
 import org.hornetq.api.core.HornetQException;
@@ -43,9 +46,14 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * EventSinkImplTest
@@ -89,18 +97,35 @@ public class EventSinkImplTest {
      * @throws Exception
      */
     private EventSinkImpl createEventSink(final ClientSessionFactory sessionFactory) throws Exception {
+        return createEventSink(sessionFactory, new CandlepinCommonTestConfig());
+    }
+
+    private EventSinkImpl createEventSink(final ClientSessionFactory sessionFactory,
+        Configuration config) throws Exception {
         EventSinkImpl sink =
-            new EventSinkImpl(eventFilter, factory, mapper, new CandlepinCommonTestConfig()) {
+            new EventSinkImpl(eventFilter, factory, mapper, config) {
 
             @Override
             protected ClientSessionFactory createClientSessionFactory() {
                 return sessionFactory;
             }
+
+            @Override
+            protected ExecutorService createPublisher() {
+                // Publish batches on the calling thread, so they can be verified right away
+                return MoreExecutors.sameThreadExecutor();
+            }
         };
         sink.initialize();
         return sink;
     }
 
+    private Configuration batchSize(String size) {
+        CandlepinCommonTestConfig config = new CandlepinCommonTestConfig();
+        config.setProperty(ConfigProperties.HORNETQ_EVENT_BATCH_SIZE, size);
+        return config;
+    }
+
     /**Set up the {@link ClientSessionFactory} to throw an exception when
      * {@link ClientSessionFactory#createSession()} is called.
      * Make sure, we throw up our hands saying "I am not dealing with this".
@@ -143,6 +168,102 @@ public class EventSinkImplTest {
             .readString());
     }
 
+    @Test
+    public void eventsOfARequestAreSentInOneMessage() throws Exception {
+        eventSinkImpl = createEventSink(mockSessionFactory, batchSize("100"));
+        when(mockClientMessage.getBodyBuffer()).thenReturn(HornetQBuffers.dynamicBuffer(2000));
+        eventSinkImpl.emitOwnerCreated(o);
+        eventSinkImpl.emitOwnerCreated(new Owner("another owner"));
+        eventSinkImpl.emitConsumerCreated(TestUtil.createConsumer());
+        verify(mockClientProducer, never()).send(any(ClientMessage.class));
+
+        eventSinkImpl.sendEvents();
+
+        ArgumentCaptor<ClientMessage> argumentCaptor = ArgumentCaptor.forClass(ClientMessage.class);
+        verify(mockClientProducer).send(argumentCaptor.capture());
+        verify(mockClientMessage).putIntProperty(EventSinkImpl.EVENT_COUNT_PROPERTY, 3);
+        verify(mockClientSession).commit();
+
+        Event[] events = mapper.readValue(argumentCaptor.getValue().getBodyBuffer().readString(),
+            Event[].class);
+        assertEquals(3, events.length);
+        assertEquals(Event.Target.OWNER, events[0].getTarget());
+        assertEquals(Event.Target.CONSUMER, events[2].getTarget());
+    }
+
+    @Test
+    public void eventsAreSplitIntoBatchesOfTheBatchSize() throws Exception {
+        eventSinkImpl = createEventSink(mockSessionFactory, batchSize("2"));
+        when(mockClientMessage.getBodyBuffer()).thenReturn(HornetQBuffers.dynamicBuffer(2000));
+
+        for (int i = 0; i < 5; i++) {
+            eventSinkImpl.emitOwnerCreated(new Owner("owner " + i));
+        }
+        eventSinkImpl.sendEvents();
+
+        verify(mockClientProducer, times(3)).send(any(ClientMessage.class));
+        verify(mockClientMessage, times(2)).putIntProperty(EventSinkImpl.EVENT_COUNT_PROPERTY, 2);
+        verify(mockClientSession).commit();
+    }
+
+    @Test
+    public void rollbackDropsQueuedEvents() throws Exception {
+        eventSinkImpl = createEventSink(mockSessionFactory, batchSize("100"));
+        eventSinkImpl.emitOwnerCreated(o);
+        eventSinkImpl.rollback();
+        eventSinkImpl.sendEvents();
+
+        verify(mockClientProducer, never()).send(any(ClientMessage.class));
+        verify(mockClientSession, never()).commit();
+    }
+
+    @Test
+    public void unbatchedEventsAreSentAsTheyAreQueued() throws Exception {
+
+        eventSinkImpl.emitOwnerCreated(o);
+        eventSinkImpl.emitOwnerCreated(new Owner("another owner"));
+        verify(mockClientProducer, times(2)).send(any(ClientMessage.class));
+        verify(mockClientMessage, never()).putIntProperty(anyString(), anyInt());
+
+        eventSinkImpl.sendEvents();
+        verify(mockClientSession).commit();
+    }
+
+    @Test
+    public void shutDownDropsBatchesItCannotSend() throws Exception {
+        final CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                sending.countDown();
+                blocked.await();
+                return null;
+            }
+        }).when(mockClientProducer).send(any(ClientMessage.class));
+
+        eventSinkImpl = new EventSinkImpl(eventFilter, factory, mapper, batchSize("100")) {
+            @Override
+            protected ClientSessionFactory createClientSessionFactory() {
+                return mockSessionFactory;
+            }
+        };
+        eventSinkImpl.initialize();
+        eventSinkImpl.emitOwnerCreated(o);
+        eventSinkImpl.sendEvents();
+        eventSinkImpl.emitOwnerCreated(new Owner("another owner"));
+        eventSinkImpl.sendEvents();
+        assertTrue(sending.await(10, TimeUnit.SECONDS));
+
+        // Give up waiting right away, rather than after the timeout
+        Thread.currentThread().interrupt();
+        eventSinkImpl.shutDown();
+        assertTrue(Thread.interrupted());
+
+        verify(mockClientProducer, times(1)).send(any(ClientMessage.class));
+        verify(mockClientSession, never()).commit();
+    }
+
     @Test
     public void sendEventShouldNotFailWhenObjectMapperThrowsException()
         throws Exception {
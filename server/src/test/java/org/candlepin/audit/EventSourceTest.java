@@ -114,6 +114,27 @@ public class EventSourceTest {
         verify(mockCC).setMessageHandler(any(ListenerWrapper.class));
     }
 
+    @Test
+    public void batchListenersGetATransactedSessionOfTheirOwn() throws Exception {
+        EventSource eventSource = createEventSourceStubbedWithFactoryCreation();
+        ClientSession batchSession = mock(ClientSession.class);
+        ClientConsumer mockCC = mock(ClientConsumer.class);
+        when(clientSessionFactory.createTransactedSession()).thenReturn(batchSession);
+        when(batchSession.createConsumer(anyString())).thenReturn(mockCC);
+        BatchEventListener eventListener = mock(BatchEventListener.class);
+
+        eventSource.registerBatchListener(eventListener, 10, 5);
+
+        verify(clientSession).createQueue(anyString(), anyString(), eq(true));
+        verify(clientSession, never()).createConsumer(anyString());
+        verify(batchSession).start();
+        verify(mockCC, never()).setMessageHandler(any(ListenerWrapper.class));
+
+        eventSource.shutDown();
+        verify(batchSession).close();
+        verify(clientSession).close();
+    }
+
     @Test
     public void shouldStopAndCloseSessionOnShutdown() throws Exception {
         EventSource eventSource = createEventSourceStubbedWithFactoryCreation();
@@ -82,6 +82,15 @@ public class ListenerWrapperTest {
         verify(this.mockClientMessage).acknowledge();
     }
 
+    @Test
+    public void batchesAreSplitIntoEvents() throws Exception {
+        doReturn("[" + eventJson() + "," + eventJson() + "]").when(hornetQBuffer).readString();
+        when(mockClientMessage.containsProperty(EventSinkImpl.EVENT_COUNT_PROPERTY)).thenReturn(true);
+        this.listenerWrapper.onMessage(mockClientMessage);
+        verify(this.mockEventListener, times(2)).onEvent(any(Event.class));
+        verify(this.mockClientMessage).acknowledge();
+    }
+
     @Test(expected = NullPointerException.class)
     public void onMessageNull() {
         this.listenerWrapper.onMessage(null);
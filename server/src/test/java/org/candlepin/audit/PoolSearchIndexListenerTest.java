@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.model.PoolSearchIndex;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+
+/**
+ * PoolSearchIndexListenerTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class PoolSearchIndexListenerTest {
+
+    @Mock private PoolSearchIndex index;
+    private PoolSearchIndexListener listener;
+
+    @Before
+    public void init() {
+        listener = new PoolSearchIndexListener(index);
+    }
+
+    private Event event(Event.Type type, Event.Target target, String entityId) {
+        Event event = new Event();
+        event.setType(type);
+        event.setTarget(target);
+        event.setOwnerId("owner");
+        event.setEntityId(entityId);
+        return event;
+    }
+
+    @Test
+    public void changedPoolsAreInvalidated() {
+        listener.onEvent(event(Event.Type.MODIFIED, Event.Target.POOL, "pool"));
+        listener.onEvent(event(Event.Type.DELETED, Event.Target.POOL, "deleted"));
+        verify(index).invalidatePool("owner", "pool");
+        verify(index).invalidatePool("owner", "deleted");
+        verify(index, never()).invalidateOwner(anyString());
+    }
+
+    @Test
+    public void importsInvalidateTheOwner() {
+        listener.onEvent(event(Event.Type.CREATED, Event.Target.IMPORT, "import"));
+        verify(index).invalidateOwner("owner");
+    }
+
+    @Test
+    public void otherEventsAreIgnored() {
+        listener.onEvent(event(Event.Type.CREATED, Event.Target.CONSUMER, "consumer"));
+        listener.onEvent(event(Event.Type.CREATED, Event.Target.ENTITLEMENT, "ent"));
+        verifyZeroInteractions(index);
+    }
+}
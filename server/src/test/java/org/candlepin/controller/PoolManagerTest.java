@@ -31,6 +31,7 @@ import org.candlepin.common.config.Configuration;
 import org.candlepin.common.paging.Page;
 import org.candlepin.common.paging.PageRequest;
 import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.AbstractHibernateCurator.ChunkFilter;
 import org.candlepin.model.Branding;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
@@ -134,6 +135,7 @@ public class PoolManagerTest {
 
     @Captor private ArgumentCaptor<Map<String, Entitlement>> entMapCaptor;
     @Captor private ArgumentCaptor<Map<String, Product>> productMapCaptor;
+    @Captor private ArgumentCaptor<ChunkFilter<Pool>> filterArg;
 
     private CandlepinPoolManager manager;
     private UserPrincipal principal;
@@ -2127,6 +2129,30 @@ public class PoolManagerTest {
         assertEquals(argument, ids);
     }
 
+    @Test
+    public void pagedConsumerListingsAreFilteredByTheCurator() {
+        Consumer consumer = TestUtil.createConsumer(owner);
+        PageRequest req = new PageRequest();
+        req.setPage(1);
+        req.setPerPage(10);
+        Page<List<Pool>> page = new Page<List<Pool>>();
+        when(mockConfig.getBoolean(eq(ConfigProperties.POOL_LIST_EXACT_COUNT))).thenReturn(true);
+
+        when(mockPoolCurator.listAvailableEntitlementPools(eq(consumer), eq(owner), any(String.class),
+            any(String.class), any(Date.class), anyBoolean(), any(PoolFilterBuilder.class), eq(req),
+            filterArg.capture(), eq(true))).thenReturn(page);
+
+        assertSame(page, manager.listAvailableEntitlementPools(consumer, null, owner, null, null,
+            new Date(), true, false, new PoolFilterBuilder(), req));
+
+        // The chunks are filtered by the rules
+        List<Pool> chunk = Arrays.asList(TestUtil.createPool(owner, product));
+        List<Pool> allowed = new ArrayList<Pool>();
+        when(enforcerMock.filterPools(eq(consumer), eq(chunk), eq(false))).thenReturn(allowed);
+        assertSame(allowed, filterArg.getValue().filter(chunk));
+        verify(mockPoolCurator, never()).takeSubList(any(PageRequest.class), anyListOf(Pool.class));
+    }
+
     @Test
     public void testNullArgumentsDontBreakStuff() {
         manager.lookupBySubscriptionIds(null);
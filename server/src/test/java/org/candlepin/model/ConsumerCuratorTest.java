@@ -19,14 +19,22 @@ import static org.junit.Assert.*;
 import org.candlepin.common.config.Configuration;
 import org.candlepin.common.exceptions.NotFoundException;
 import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.AbstractHibernateCurator.ResultHandler;
 import org.candlepin.model.ConsumerType.ConsumerTypeEnum;
 import org.candlepin.resource.util.ResourceDateParser;
 import org.candlepin.test.DatabaseTestFixture;
+import org.candlepin.test.TestUtil;
 import org.candlepin.util.Util;
 
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.stat.CollectionStatistics;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.Date;
@@ -52,6 +60,7 @@ public class ConsumerCuratorTest extends DatabaseTestFixture {
     private Owner owner;
     private ConsumerType ct;
     private Consumer factConsumer;
+    private Boolean statisticsWereEnabled;
 
     @Before
     public void setUp() {
@@ -463,6 +472,61 @@ public class ConsumerCuratorTest extends DatabaseTestFixture {
         assertEquals(consumerCurator.findByUuid(factConsumer.getUuid()), factConsumer);
     }
 
+    @Test
+    public void onlyIndexedFactsAreLowercased() {
+        factConsumer.setFact("virt.uuid", "DAF0FE10-956B-7B4E-B7DC-B383CE681BA8");
+        factConsumer.setFact("Some.Fact", "Mixed Case");
+        factConsumer = consumerCurator.create(factConsumer);
+
+        List<Object[]> rows = em.createNativeQuery("select mapkey, element " +
+            "from cp_consumer_facts_lower where cp_consumer_id = :id")
+            .setParameter("id", factConsumer.getId())
+            .getResultList();
+        assertEquals(1, rows.size());
+        assertEquals("virt.uuid", rows.get(0)[0]);
+        assertEquals("daf0fe10-956b-7b4e-b7dc-b383ce681ba8", rows.get(0)[1]);
+        assertEquals("Mixed Case", factConsumer.getFact("Some.Fact"));
+    }
+
+    @Test
+    public void updatingFactsOnlyWritesChangedFacts() {
+        Map<String, String> facts = new HashMap<String, String>();
+        for (int i = 0; i < 50; i++) {
+            facts.put("fact." + i, "value " + i);
+        }
+        facts.put("virt.uuid", "test-guest-1");
+        factConsumer.setFacts(facts);
+        factConsumer = consumerCurator.create(factConsumer);
+        em.clear();
+
+        Consumer updated = consumerCurator.find(factConsumer.getId());
+        Map<String, String> incoming = new HashMap<String, String>(facts);
+        incoming.put("fact.1", "changed");
+        incoming.remove("fact.2");
+        incoming.put("fact.new", "added");
+        incoming.put("virt.uuid", "TEST-GUEST-2");
+
+        Statistics statistics = ((Session) em.getDelegate()).getSessionFactory().getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        updated.updateFacts(incoming);
+        consumerCurator.update(updated);
+
+        for (String role : Arrays.asList("facts", "factsLower")) {
+            CollectionStatistics collection =
+                statistics.getCollectionStatistics(Consumer.class.getName() + "." + role);
+            assertEquals(0, collection.getRecreateCount());
+            assertEquals(0, collection.getRemoveCount());
+            assertEquals(1, collection.getUpdateCount());
+        }
+
+        em.clear();
+        Consumer found = consumerCurator.find(factConsumer.getId());
+        assertEquals(incoming, found.getFacts());
+        assertEquals(found, consumerCurator.findByVirtUuid("test-guest-2",
+            factConsumer.getOwner().getId()));
+    }
+
     @Test
     public void testFindByUuids() {
         Consumer consumer = new Consumer("testConsumer", "testUser", owner, ct);
@@ -484,6 +548,34 @@ public class ConsumerCuratorTest extends DatabaseTestFixture {
         assertFalse(results.contains(consumer3));
     }
 
+    @Test
+    public void testPrefetchEntitlements() {
+        Consumer consumer = createConsumer(owner);
+        Consumer consumer2 = createConsumer(owner);
+        Product product = createProduct(owner);
+        Pool pool = createPool(owner, product);
+        createEntitlement(owner, consumer, pool, null);
+        createEntitlement(owner, consumer2, pool, null);
+        createEntitlement(owner, consumer2, createPool(owner, product), null);
+        em.clear();
+
+        List<Consumer> consumers = consumerCurator.findByUuids(
+            Arrays.asList(consumer.getUuid(), consumer2.getUuid()));
+        consumerCurator.prefetchEntitlements(consumers);
+
+        int count = 0;
+        for (Consumer c : consumers) {
+            assertTrue(Hibernate.isInitialized(c.getEntitlements()));
+            for (Entitlement ent : c.getEntitlements()) {
+                assertTrue(Hibernate.isInitialized(ent.getPool()));
+                assertTrue(Hibernate.isInitialized(ent.getPool().getProduct()));
+                assertTrue(Hibernate.isInitialized(ent.getPool().getProvidedProducts()));
+                count++;
+            }
+        }
+        assertEquals(3, count);
+    }
+
     @Test
     public void testFindByUuidsAndOwner() {
         Consumer consumer = new Consumer("testConsumer", "testUser", owner, ct);
@@ -803,4 +895,129 @@ public class ConsumerCuratorTest extends DatabaseTestFixture {
             rollbackTransaction();
         }
     }
+
+    @Test
+    public void scrollByUuidsHandsOverChunksAndKeepsTheirChanges() throws IOException {
+        List<String> uuids = new LinkedList<String>();
+        for (int i = 0; i < 5; i++) {
+            uuids.add(consumerCurator.create(new Consumer("chunked", "testUser", owner, ct)).getUuid());
+        }
+
+        final List<Integer> sizes = new LinkedList<Integer>();
+        final List<Consumer> handled = new LinkedList<Consumer>();
+        int count = consumerCurator.scrollByUuids(uuids, 2, new ResultHandler<List<Consumer>>() {
+            @Override
+            public void handle(List<Consumer> consumers) {
+                sizes.add(consumers.size());
+                for (Consumer consumer : consumers) {
+                    assertTrue(em.contains(consumer));
+                    consumer.setEntitlementStatus("valid");
+                    handled.add(consumer);
+                }
+            }
+        });
+
+        assertEquals(5, count);
+        assertEquals(Arrays.asList(2, 2, 1), sizes);
+        for (Consumer consumer : handled) {
+            assertFalse(em.contains(consumer));
+            assertEquals("valid", consumerCurator.findByUuid(consumer.getUuid()).getEntitlementStatus());
+        }
+    }
+
+    private Consumer createConsumerWithEntitlements(int count) {
+        Consumer consumer = new Consumer("evaluated", "testUser", owner, ct);
+        consumer.setFact("cpu.cpu_socket(s)", "4");
+        consumer.addInstalledProduct(new ConsumerInstalledProduct("installed", "Installed"));
+        consumer.addGuestId(new GuestId("guest-" + count));
+        consumerCurator.create(consumer);
+
+        for (int i = 0; i < count; i++) {
+            Product product = TestUtil.createProduct();
+            product.setAttribute("sockets", "2");
+            product = createProduct(product, owner);
+            Product provided = createProduct(owner);
+
+            Pool pool = createPool(owner, product);
+            pool.setAttribute("multi-entitlement", "yes");
+            pool.getProvidedProducts().add(provided);
+            poolCurator.merge(pool);
+
+            createEntitlement(owner, consumer, pool, createEntitlementCertificate("key", "cert"));
+        }
+
+        em.clear();
+        return consumerCurator.findByUuid(consumer.getUuid());
+    }
+
+    private int walkEvaluationGraph(Consumer consumer) {
+        int size = consumer.getFacts().size() + consumer.getInstalledProducts().size();
+        for (GuestId guest : consumer.getGuestIds()) {
+            size += guest.getAttributes().size();
+        }
+
+        for (Entitlement entitlement : consumer.getEntitlements()) {
+            for (EntitlementCertificate cert : entitlement.getCertificates()) {
+                size += cert.getSerial().getId() != null ? 1 : 0;
+            }
+
+            Pool pool = entitlement.getPool();
+            size += pool.getAttributes().size() + pool.getProductAttributes().size() +
+                pool.getBranding().size() + pool.getDerivedProvidedProducts().size();
+            for (Product provided : pool.getProvidedProducts()) {
+                size += provided.getAttributes().size();
+            }
+        }
+
+        return size;
+    }
+
+    private Statistics statistics() {
+        return ((Session) em.getDelegate()).getSessionFactory().getStatistics();
+    }
+
+    private long prefetchStatements(List<Consumer> consumers) {
+        Statistics statistics = statistics();
+        if (statisticsWereEnabled == null) {
+            statisticsWereEnabled = statistics.isStatisticsEnabled();
+            statistics.setStatisticsEnabled(true);
+        }
+        statistics.clear();
+
+        consumerCurator.prefetchEntitlements(consumers);
+        return statistics.getPrepareStatementCount();
+    }
+
+    /*
+     * The session factory is shared with every other test, so the statistics are
+     * only collected for as long as a prefetch test runs.
+     */
+    @After
+    public void restoreStatistics() {
+        if (statisticsWereEnabled != null) {
+            statistics().setStatisticsEnabled(statisticsWereEnabled);
+        }
+    }
+
+    @Test
+    public void prefetchLoadsEvaluationGraph() {
+        Consumer consumer = createConsumerWithEntitlements(3);
+        long prefetched = prefetchStatements(Arrays.asList(consumer));
+
+        assertEquals(3, consumer.getEntitlements().size());
+        assertTrue(walkEvaluationGraph(consumer) > 0);
+        assertEquals(prefetched, statistics().getPrepareStatementCount());
+    }
+
+    @Test
+    public void prefetchStatementsDoNotGrowWithEntitlements() {
+        long few = prefetchStatements(Arrays.asList(createConsumerWithEntitlements(2)));
+        long many = prefetchStatements(Arrays.asList(createConsumerWithEntitlements(12)));
+        assertEquals(few, many);
+    }
+
+    @Test
+    public void prefetchOfNoConsumersRunsNoStatements() {
+        assertEquals(0, prefetchStatements(new LinkedList<Consumer>()));
+    }
 }
@@ -17,7 +17,9 @@ package org.candlepin.model;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 
+import org.candlepin.audit.DatabaseListener;
 import org.candlepin.audit.Event;
 import org.candlepin.audit.Event.Type;
 import org.candlepin.audit.EventBuilder;
@@ -25,13 +27,17 @@ import org.candlepin.audit.EventFactory;
 import org.candlepin.auth.Access;
 import org.candlepin.test.DatabaseTestFixture;
 
+import org.apache.commons.lang.StringUtils;
+import org.hibernate.HibernateException;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
 import javax.inject.Inject;
+import javax.validation.ConstraintViolationException;
 
 
 public class EventCuratorTest extends DatabaseTestFixture {
@@ -66,6 +72,67 @@ public class EventCuratorTest extends DatabaseTestFixture {
         assertNotNull(lookedUp.getId());
     }
 
+    @Test
+    public void testInsertAll() {
+        Consumer newConsumer = new Consumer("consumername", "user", owner,
+            new ConsumerType("system"));
+        consumerTypeCurator.create(newConsumer.getType());
+        consumerCurator.create(newConsumer);
+
+        setupPrincipal(owner, Access.ALL);
+        Event created = eventFactory.consumerCreated(newConsumer);
+        Event modified = eventFactory.consumerModified(newConsumer, newConsumer);
+        modified.setId("0123456789abcdef0123456789abcdef");
+        eventCurator.insertAll(Arrays.asList(created, modified));
+
+        assertNotNull(created.getId());
+        Event lookedUp = eventCurator.find(created.getId());
+        assertEquals(Type.CREATED, lookedUp.getType());
+        assertEquals(newConsumer.getId(), lookedUp.getConsumerId());
+        assertEquals(owner.getId(), lookedUp.getOwnerId());
+        assertEquals(created.getTimestamp().getTime(), lookedUp.getTimestamp().getTime());
+
+        lookedUp = eventCurator.find("0123456789abcdef0123456789abcdef");
+        assertEquals(Type.MODIFIED, lookedUp.getType());
+        assertEquals(2, eventCurator.listMostRecent(10, owner).size());
+    }
+
+    @Test
+    public void testCreateAfterFailedInsertAll() {
+        Consumer newConsumer = new Consumer("consumername", "user", owner,
+            new ConsumerType("system"));
+        consumerTypeCurator.create(newConsumer.getType());
+        consumerCurator.create(newConsumer);
+
+        setupPrincipal(owner, Access.ALL);
+        Event created = eventFactory.consumerCreated(newConsumer);
+        Event invalid = eventFactory.consumerModified(newConsumer, newConsumer);
+        invalid.setTargetName(StringUtils.repeat("x", 300));
+        try {
+            eventCurator.insertAll(Arrays.asList(created, invalid));
+            fail("The over-long target name should fail the batch");
+        }
+        catch (HibernateException e) {
+            // expected
+        }
+        assertNull(created.getId());
+
+        // The fallback for a failed batch creates the events one at a time
+        DatabaseListener listener = new DatabaseListener(eventCurator);
+        listener.onEvent(created);
+        try {
+            listener.onEvent(invalid);
+            fail("The over-long target name should be rejected");
+        }
+        catch (ConstraintViolationException e) {
+            // expected
+        }
+
+        Event lookedUp = eventCurator.find(created.getId());
+        assertEquals(Type.CREATED, lookedUp.getType());
+        assertEquals(1, eventCurator.listMostRecent(10, owner).size());
+    }
+
     @Test
     public void testSecondarySorting() {
 
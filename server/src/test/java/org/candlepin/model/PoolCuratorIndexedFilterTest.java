@@ -0,0 +1,31 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import com.google.inject.util.Providers;
+
+import org.junit.Before;
+
+/**
+ * Runs the pool filter tests with the "matches" filter resolved by the
+ * {@link PoolSearchIndex} rather than the database.
+ */
+public class PoolCuratorIndexedFilterTest extends PoolCuratorFilterTest {
+
+    @Before
+    public void enableIndex() {
+        poolCurator.poolSearchIndex = new PoolSearchIndex(Providers.of(poolCurator), 10, 60000);
+    }
+}
@@ -32,6 +32,7 @@ import org.hamcrest.Matchers;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.InExpression;
 import org.hibernate.criterion.LogicalExpression;
+import org.hibernate.criterion.Restrictions;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -1425,6 +1426,92 @@ public class PoolCuratorTest extends DatabaseTestFixture {
         return products;
     }
 
+    private Page<List<Pool>> pagePostFilteredPools(int page, boolean exactCount,
+        final List<Integer> chunkSizes) {
+        for (int quantity = 1; quantity <= 10; quantity++) {
+            poolCurator.create(TestUtil.createPool(owner, product, quantity));
+        }
+
+        PageRequest req = new PageRequest();
+        req.setPage(page);
+        req.setPerPage(2);
+        req.setOrder(PageRequest.Order.ASCENDING);
+        req.setSortBy("quantity");
+
+        // Keeps the pools with an even quantity
+        AbstractHibernateCurator.ChunkFilter<Pool> evenQuantities =
+            new AbstractHibernateCurator.ChunkFilter<Pool>() {
+                @Override
+                public List<Pool> filter(List<Pool> chunk) {
+                    chunkSizes.add(chunk.size());
+                    List<Pool> even = new ArrayList<Pool>();
+                    for (Pool pool : chunk) {
+                        if (pool.getQuantity() % 2 == 0) {
+                            even.add(pool);
+                        }
+                    }
+                    return even;
+                }
+            };
+
+        return poolCurator.listByCriteria(
+            poolCurator.createSecureCriteria().add(Restrictions.eq("owner", owner)),
+            req, evenQuantities, 3, exactCount);
+    }
+
+    private List<Integer> quantities(Page<List<Pool>> page) {
+        List<Integer> quantities = new ArrayList<Integer>();
+        for (Pool pool : page.getPageData()) {
+            quantities.add(pool.getQuantity().intValue());
+        }
+        return quantities;
+    }
+
+    @Test
+    public void postFilteredPageStopsOnceItIsFilled() {
+        List<Integer> chunkSizes = new ArrayList<Integer>();
+
+        Page<List<Pool>> page = pagePostFilteredPools(1, false, chunkSizes);
+        assertEquals(Arrays.asList(2, 4), quantities(page));
+
+        // Two chunks of three were needed, and the total is estimated from them
+        assertEquals(Arrays.asList(3, 3), chunkSizes);
+        assertEquals(Integer.valueOf(5), page.getMaxRecords());
+    }
+
+    @Test
+    public void postFilteredPageWithExactCountChecksEveryPool() {
+        List<Integer> chunkSizes = new ArrayList<Integer>();
+
+        Page<List<Pool>> page = pagePostFilteredPools(2, true, chunkSizes);
+        assertEquals(Arrays.asList(6, 8), quantities(page));
+
+        assertEquals(Arrays.asList(3, 3, 3, 1), chunkSizes);
+        assertEquals(Integer.valueOf(5), page.getMaxRecords());
+    }
+
+    @Test
+    public void lastPostFilteredPageHasAnExactCount() {
+        List<Integer> chunkSizes = new ArrayList<Integer>();
+
+        Page<List<Pool>> page = pagePostFilteredPools(3, false, chunkSizes);
+        assertEquals(Arrays.asList(10), quantities(page));
+        assertEquals(Integer.valueOf(5), page.getMaxRecords());
+    }
+
+    @Test
+    public void postFilteredPageEstimateLeavesRoomForANextPage() {
+        List<Integer> chunkSizes = new ArrayList<Integer>();
+
+        // Only the first chunk has been checked, holding one of the four even pools
+        poolCurator.create(TestUtil.createPool(owner, product, 0));
+        Page<List<Pool>> page = pagePostFilteredPools(1, false, chunkSizes);
+
+        assertEquals(Arrays.asList(0, 2), quantities(page));
+        assertEquals(Arrays.asList(3), chunkSizes);
+        assertEquals(Integer.valueOf(7), page.getMaxRecords());
+    }
+
     private Pool createPool(Owner o, String subId) {
         Pool pool = TestUtil.createPool(o, product);
         pool.setSourceSubscription(new SourceSubscription(subId, "master"));
@@ -0,0 +1,168 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+import com.google.inject.util.Providers;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatcher;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+
+
+/**
+ * PoolSearchIndexTest
+ */
+public class PoolSearchIndexTest {
+    private PoolCurator poolCurator;
+    private PoolSearchIndex index;
+    private Map<String, Set<String>> terms;
+
+    @Before
+    public void setUp() {
+        poolCurator = mock(PoolCurator.class);
+        index = new PoolSearchIndex(Providers.of(poolCurator), 2, 60000);
+
+        terms = new HashMap<String, Set<String>>();
+        terms.put("pool1", set("awesomeos-server", "Awesome OS Server Premium", "101111", "Server Bits"));
+        terms.put("pool2", set("hidden-product", "Not-So-Awesome OS Home Edition", "got_con%tract_"));
+        when(poolCurator.getPoolSearchTerms(eq("owner"), allPools()))
+            .thenReturn(terms);
+    }
+
+    // Loading every pool of an owner passes no pool ids
+    private static Collection<String> allPools() {
+        return argThat(new ArgumentMatcher<Collection<String>>() {
+            @Override
+            public boolean matches(Object ids) {
+                return ids == null;
+            }
+        });
+    }
+
+    private static Set<String> set(String ... values) {
+        return new HashSet<String>(Arrays.asList(values));
+    }
+
+    @Test
+    public void findsWholeTermsIgnoringCase() {
+        assertEquals(set("pool1"), index.findPoolIds("owner", "awesome os SERVER premium"));
+        assertEquals(set(), index.findPoolIds("owner", "Server"));
+        assertEquals(set("pool1"), index.findPoolIds("owner", "101111"));
+    }
+
+    @Test
+    public void caseIsIgnoredWhateverTheDefaultLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            // Lower case I is dotless in Turkish
+            assertEquals(set("pool1"), index.findPoolIds("owner", "SERVER BITS"));
+            assertEquals(set("pool1"), index.findPoolIds("owner", "*PREMIUM"));
+        }
+        finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    public void findsWildcards() {
+        assertEquals(set("pool1", "pool2"), index.findPoolIds("owner", "*"));
+        assertEquals(set("pool1", "pool2"), index.findPoolIds("owner", "*Awesome*"));
+        assertEquals(set("pool1"), index.findPoolIds("owner", "*Ser*emiu?"));
+        assertEquals(set(), index.findPoolIds("owner", "*Ser*emium?"));
+        assertEquals(set("pool1"), index.findPoolIds("owner", "1?1111"));
+        assertEquals(set("pool1"), index.findPoolIds("owner", "??????"));
+    }
+
+    @Test
+    public void databaseWildcardsAreLiterals() {
+        assertEquals(set("pool2"), index.findPoolIds("owner", "got_con%tract_"));
+        assertEquals(set(), index.findPoolIds("owner", "got_c%ct_"));
+        assertEquals(set(), index.findPoolIds("owner", "got_con%tra_t_"));
+        assertEquals(set(), index.findPoolIds("owner", "(.*)"));
+    }
+
+    @Test
+    public void loadsTheOwnerOnce() {
+        index.findPoolIds("owner", "*");
+        index.findPoolIds("owner", "Server Bits");
+        verify(poolCurator, times(1)).getPoolSearchTerms(eq("owner"), allPools());
+    }
+
+    @Test
+    public void reloadsChangedPools() {
+        assertEquals(set("pool1"), index.findPoolIds("owner", "Server Bits"));
+
+        Map<String, Set<String>> changed = new HashMap<String, Set<String>>();
+        changed.put("pool2", set("Server Bits"));
+        when(poolCurator.getPoolSearchTerms(eq("owner"), anyCollectionOf(String.class)))
+            .thenReturn(changed);
+
+        // pool1 was deleted
+        index.invalidatePool("owner", "pool1");
+        index.invalidatePool("owner", "pool2");
+        assertEquals(set("pool2"), index.findPoolIds("owner", "Server Bits"));
+        assertEquals(set(), index.findPoolIds("owner", "*Awesome*"));
+        verify(poolCurator, times(1)).getPoolSearchTerms(eq("owner"),
+            eq(set("pool1", "pool2")));
+    }
+
+    @Test
+    public void invalidatedOwnersAreReloaded() {
+        index.findPoolIds("owner", "*");
+        index.invalidateOwner("owner");
+        index.findPoolIds("owner", "*");
+        verify(poolCurator, times(2)).getPoolSearchTerms(eq("owner"), allPools());
+    }
+
+    @Test
+    public void expiredOwnersAreReloaded() {
+        index = new PoolSearchIndex(Providers.of(poolCurator), 2, -1);
+        index.findPoolIds("owner", "*");
+        index.findPoolIds("owner", "*");
+        verify(poolCurator, times(2)).getPoolSearchTerms(eq("owner"), allPools());
+    }
+
+    @Test
+    public void evictsLeastRecentlySearchedOwners() {
+        when(poolCurator.getPoolSearchTerms(any(String.class), allPools()))
+            .thenReturn(terms);
+        index.findPoolIds("owner1", "*");
+        index.findPoolIds("owner2", "*");
+        index.findPoolIds("owner1", "*");
+        index.findPoolIds("owner3", "*");
+        assertEquals(2, index.size());
+
+        index.findPoolIds("owner1", "*");
+        verify(poolCurator, times(1)).getPoolSearchTerms(eq("owner1"), allPools());
+        index.findPoolIds("owner2", "*");
+        verify(poolCurator, times(2)).getPoolSearchTerms(eq("owner2"), allPools());
+    }
+}
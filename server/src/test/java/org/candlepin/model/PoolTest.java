@@ -101,6 +101,26 @@ public class PoolTest extends DatabaseTestFixture {
         assertTrue(lookedUp.provides(prod1.getId()));
     }
 
+    @Test
+    public void testCloneIsUnaffectedByChangesToThePool() {
+        pool.setAttribute("pool_attr", "before");
+        Pool copy = pool.clone();
+
+        pool.setQuantity(5L);
+        pool.setAttribute("pool_attr", "after");
+        pool.setProvidedProducts(new HashSet<Product>());
+        pool.getBranding().add(new Branding(prod1.getId(), "OS", "Branded"));
+        pool.setSubscriptionSubKey("derived");
+
+        assertEquals(pool.getId(), copy.getId());
+        assertEquals(Long.valueOf(1000), copy.getQuantity());
+        assertEquals("before", copy.getAttributeValue("pool_attr"));
+        assertTrue(copy.provides(prod2.getId()));
+        assertTrue(copy.getBranding().isEmpty());
+        assertEquals("master", copy.getSubscriptionSubKey());
+        assertEquals(pool.getProduct(), copy.getProduct());
+    }
+
     @Test
     public void testCreateWithDerivedProvidedProducts() {
         Product derivedProd = this.createProduct(owner);
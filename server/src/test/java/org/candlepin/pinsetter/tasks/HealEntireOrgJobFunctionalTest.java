@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.tasks;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerInstalledProduct;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.model.ConsumerType.ConsumerTypeEnum;
+import org.candlepin.model.Owner;
+import org.candlepin.model.Pool;
+import org.candlepin.model.Product;
+import org.candlepin.pinsetter.tasks.HealEntireOrgJob.HealProgress;
+import org.candlepin.test.DatabaseTestFixture;
+import org.candlepin.util.Util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+
+import java.util.Date;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+/**
+ * Heals an org in batches against the database, with the rules and pool manager the
+ * heal threads build for themselves.
+ */
+public class HealEntireOrgJobFunctionalTest extends DatabaseTestFixture {
+    // Created once the test has configured the batches
+    @Inject private Provider<HealEntireOrgJob> jobProvider;
+    @Inject private Provider<HealOrgExecutor> executorProvider;
+
+    private Owner owner;
+    private Pool pool;
+
+    @Before
+    public void setUp() {
+        config.setProperty(ConfigProperties.HEAL_ORG_BATCH_SIZE, "2");
+        config.setProperty(ConfigProperties.HEAL_ORG_THREADS, "4");
+
+        owner = createOwner();
+        Product product = createProduct(owner);
+        pool = createPool(owner, product, 100L, Util.yesterday(), Util.tomorrow());
+
+        ConsumerType type = consumerTypeCurator.create(new ConsumerType(ConsumerTypeEnum.SYSTEM));
+        for (int i = 0; i < 10; i++) {
+            Consumer consumer = new Consumer("system-" + i, "user", owner, type);
+            consumer.addInstalledProduct(new ConsumerInstalledProduct(product.getId(),
+                product.getName()));
+            consumerCurator.create(consumer);
+        }
+    }
+
+    @After
+    public void close() {
+        executorProvider.get().close();
+    }
+
+    @Test
+    public void healsOrgInBatches() throws Exception {
+        JobDetail detail = HealEntireOrgJob.healEntireOrg(owner.getKey(), new Date());
+        JobExecutionContext ctx = mock(JobExecutionContext.class);
+        when(ctx.getMergedJobDataMap()).thenReturn(detail.getJobDataMap());
+        when(ctx.getJobDetail()).thenReturn(detail);
+
+        jobProvider.get().toExecute(ctx);
+
+        ArgumentCaptor<Object> result = ArgumentCaptor.forClass(Object.class);
+        verify(ctx).setResult(result.capture());
+        HealProgress progress = (HealProgress) result.getValue();
+        assertEquals(10, progress.getTotal());
+        assertEquals(10, progress.getHealed());
+        assertEquals(0, progress.getFailed());
+
+        poolCurator.refresh(pool);
+        assertEquals(Long.valueOf(10), pool.getConsumed());
+        assertEquals(10, entitlementCurator.listByOwner(owner).size());
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.tasks;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.auth.Principal;
+import org.candlepin.auth.UserPrincipal;
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.controller.Entitler;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerCurator;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.model.JobCurator;
+import org.candlepin.model.Owner;
+import org.candlepin.model.OwnerCurator;
+import org.candlepin.model.PoolCurator;
+import org.candlepin.pinsetter.core.model.JobStatus;
+import org.candlepin.pinsetter.tasks.HealEntireOrgJob.HealProgress;
+import org.candlepin.resource.dto.AutobindData;
+
+import com.google.inject.Provider;
+
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HealEntireOrgJobTest
+ */
+public class HealEntireOrgJobTest {
+
+    private Entitler entitler;
+    @Mock private Provider<Entitler> entitlerProvider;
+    private PoolCurator poolCurator;
+    private ConsumerCurator consumerCurator;
+    private OwnerCurator ownerCurator;
+    private JobCurator jobCurator;
+    private Configuration config;
+    private HealOrgExecutor executor;
+    private JobDetail detail;
+    private JobExecutionContext ctx;
+    private List<String> uuids;
+    private Set<String> healed;
+    private Set<Principal> principals;
+    private AtomicInteger binding;
+
+    @Before
+    public void init() {
+        entitler = mock(Entitler.class);
+        MockitoAnnotations.initMocks(this);
+        when(entitlerProvider.get()).thenReturn(entitler);
+        poolCurator = mock(PoolCurator.class);
+        consumerCurator = mock(ConsumerCurator.class);
+        ownerCurator = mock(OwnerCurator.class);
+        jobCurator = mock(JobCurator.class);
+        config = mock(Configuration.class);
+        executor = new HealOrgExecutor(3);
+
+        detail = HealEntireOrgJob.healEntireOrg("owner", new Date());
+        ctx = mock(JobExecutionContext.class);
+        when(ctx.getMergedJobDataMap()).thenReturn(detail.getJobDataMap());
+        when(ctx.getJobDetail()).thenReturn(detail);
+
+        uuids = new ArrayList<String>();
+        for (int i = 0; i < 25; i++) {
+            uuids.add(String.format("uuid-%02d", i));
+        }
+        Collections.shuffle(uuids);
+        when(ownerCurator.getConsumerUuids(eq("owner"))).thenReturn(uuids);
+
+        healed = Collections.synchronizedSet(new HashSet<String>());
+        principals = Collections.synchronizedSet(new HashSet<Principal>());
+        binding = new AtomicInteger();
+        Owner owner = new Owner("owner");
+        for (String uuid : uuids) {
+            Consumer consumer = new Consumer(uuid, "user", owner, new ConsumerType("system"));
+            consumer.setUuid(uuid);
+            when(consumerCurator.getConsumer(eq(uuid))).thenReturn(consumer);
+        }
+        when(entitler.bindByProducts(any(AutobindData.class), eq(true))).thenAnswer(
+            new Answer<Object>() {
+                @Override
+                public Object answer(InvocationOnMock invocation) throws Exception {
+                    binding.incrementAndGet();
+                    try {
+                        AutobindData data = (AutobindData) invocation.getArguments()[0];
+                        principals.add(ResteasyProviderFactory.getContextData(Principal.class));
+                        Thread.sleep(5);
+                        healed.add(data.getConsumer().getUuid());
+                        return null;
+                    }
+                    finally {
+                        binding.decrementAndGet();
+                    }
+                }
+            });
+    }
+
+    @After
+    public void close() {
+        executor.close();
+    }
+
+    private HealEntireOrgJob createJob(int batchSize) {
+        when(config.getInt(eq(ConfigProperties.HEAL_ORG_BATCH_SIZE))).thenReturn(batchSize);
+        HealEntireOrgJob job = new HealEntireOrgJob(entitler, consumerCurator, ownerCurator,
+            jobCurator, executor, entitlerProvider, poolCurator, null);
+        job.config = config;
+        return job;
+    }
+
+    @Test
+    public void healsConsumersOneAtATime() throws Exception {
+        createJob(0).execute(ctx);
+
+        assertEquals(new HashSet<String>(uuids), healed);
+        verify(jobCurator, never()).updateResult(any(String.class), any());
+        ArgumentCaptor<Object> result = ArgumentCaptor.forClass(Object.class);
+        verify(ctx).setResult(result.capture());
+        assertEquals(25, ((HealProgress) result.getValue()).getHealed());
+    }
+
+    @Test
+    public void healsConsumersInBatches() throws Exception {
+        createJob(4).execute(ctx);
+
+        assertEquals(new HashSet<String>(uuids), healed);
+
+        // Progress is recorded once per batch
+        verify(jobCurator, times(7)).updateResult(eq(detail.getKey().getName()),
+            any(HealProgress.class));
+
+        ArgumentCaptor<Object> result = ArgumentCaptor.forClass(Object.class);
+        verify(ctx).setResult(result.capture());
+        HealProgress progress = (HealProgress) result.getValue();
+        assertEquals(25, progress.getTotal());
+        assertEquals(25, progress.getHealed());
+        assertEquals(0, progress.getFailed());
+        assertEquals("uuid-24", progress.getHealedThrough());
+        assertTrue(progress.toString().contains("consumers/s"));
+    }
+
+    @Test
+    public void batchesRunAsTheJobPrincipal() throws Exception {
+        Principal principal = new UserPrincipal("admin", null, true);
+        ResteasyProviderFactory.pushContext(Principal.class, principal);
+        try {
+            createJob(4).execute(ctx);
+        }
+        finally {
+            ResteasyProviderFactory.popContextData(Principal.class);
+        }
+
+        assertEquals(Collections.singleton(principal), principals);
+    }
+
+    @Test
+    public void eachBatchHasItsOwnEntitler() throws Exception {
+        createJob(4).execute(ctx);
+
+        verify(entitlerProvider, times(7)).get();
+        verify(poolCurator, times(25)).lockAndLoadBatch(anyListOf(String.class));
+    }
+
+    @Test
+    public void failedBatchStopsTheJobOnceBatchesHaveFinished() throws Exception {
+        when(entitlerProvider.get()).thenThrow(new RuntimeException("no rules")).thenReturn(entitler);
+        try {
+            createJob(4).execute(ctx);
+            fail("The failed batch should fail the job");
+        }
+        catch (JobExecutionException e) {
+            // expected
+        }
+
+        // No batch is left binding once the job has ended
+        assertEquals(0, binding.get());
+        int healedAtEnd = healed.size();
+        assertTrue(healedAtEnd <= 21);
+        executor.close();
+        assertEquals(healedAtEnd, healed.size());
+    }
+
+    @Test
+    public void failedConsumersAreCountedAndSkipped() throws Exception {
+        when(consumerCurator.getConsumer(eq("uuid-03"))).thenThrow(new RuntimeException("gone"));
+        createJob(4).execute(ctx);
+
+        ArgumentCaptor<Object> result = ArgumentCaptor.forClass(Object.class);
+        verify(ctx).setResult(result.capture());
+        HealProgress progress = (HealProgress) result.getValue();
+        assertEquals(24, progress.getHealed());
+        assertEquals(1, progress.getFailed());
+        assertEquals(24, healed.size());
+    }
+
+    @Test
+    public void resumesAfterRecordedProgress() throws Exception {
+        // An earlier run which got through the first ten consumers
+        List<String> first = new ArrayList<String>(uuids);
+        Collections.sort(first);
+        when(ownerCurator.getConsumerUuids(eq("owner"))).thenReturn(first.subList(0, 10));
+        createJob(10).execute(ctx);
+        ArgumentCaptor<Object> result = ArgumentCaptor.forClass(Object.class);
+        verify(ctx).setResult(result.capture());
+        HealProgress previous = (HealProgress) result.getValue();
+        assertEquals("uuid-09", previous.getHealedThrough());
+
+        JobStatus status = new JobStatus(detail);
+        status.setResultData(previous);
+        when(jobCurator.find(eq(detail.getKey().getName()))).thenReturn(status);
+        when(ownerCurator.getConsumerUuids(eq("owner"))).thenReturn(uuids);
+        healed.clear();
+        createJob(10).execute(ctx);
+
+        assertEquals(15, healed.size());
+        assertFalse(healed.contains("uuid-09"));
+        assertTrue(healed.contains("uuid-10"));
+
+        verify(ctx, times(2)).setResult(result.capture());
+        HealProgress resumed = (HealProgress) result.getValue();
+        assertEquals(25, resumed.getHealed());
+        assertEquals(25, resumed.getTotal());
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pki;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.security.KeyPair;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * KeyPairPoolTest
+ */
+public class KeyPairPoolTest {
+
+    private PKIUtility pki;
+    private KeyPairPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        pki = mock(PKIUtility.class);
+        when(pki.generateNewKeyPair()).thenAnswer(new Answer<KeyPair>() {
+            @Override
+            public KeyPair answer(InvocationOnMock invocation) {
+                return new KeyPair(null, null);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void fillsToSize() throws Exception {
+        pool = new KeyPairPool(3, pki);
+        pool.fill();
+        awaitDepth(3);
+
+        verify(pki, times(3)).generateNewKeyPair();
+        assertEquals(0, pool.getFallbacks());
+    }
+
+    @Test
+    public void takesFromBufferAndRefills() throws Exception {
+        pool = new KeyPairPool(2, pki);
+        pool.fill();
+        awaitDepth(2);
+
+        Set<KeyPair> taken = new HashSet<KeyPair>();
+        taken.add(pool.take());
+        taken.add(pool.take());
+        assertEquals(2, taken.size());
+        assertEquals(2, pool.getPooled());
+        assertEquals(0, pool.getFallbacks());
+
+        awaitDepth(2);
+        KeyPair refilled = pool.take();
+        for (KeyPair pair : taken) {
+            assertNotSame(pair, refilled);
+        }
+    }
+
+    @Test
+    public void generatesInlineWhenEmpty() throws Exception {
+        KeyPair inline = new KeyPair(null, null);
+        when(pki.generateNewKeyPair()).thenReturn(inline);
+        pool = new KeyPairPool(1, pki);
+
+        assertSame(inline, pool.take());
+        assertEquals(1, pool.getFallbacks());
+        assertEquals(0, pool.getPooled());
+    }
+
+    @Test
+    public void disabledPoolGeneratesEveryPairInline() throws Exception {
+        pool = new KeyPairPool(0, pki);
+        pool.fill();
+        pool.take();
+
+        verify(pki, times(1)).generateNewKeyPair();
+        assertEquals(0, pool.getDepth());
+        assertEquals(0, pool.getFallbacks());
+    }
+
+    @Test
+    public void closedPoolStopsRefilling() throws Exception {
+        pool = new KeyPairPool(5, pki);
+        pool.close();
+        pool.fill();
+        pool.take();
+
+        verify(pki, times(1)).generateNewKeyPair();
+        assertEquals(0, pool.getDepth());
+    }
+
+    private void awaitDepth(int depth) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (pool.getDepth() < depth && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(depth, pool.getDepth());
+    }
+}
@@ -0,0 +1,326 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.model.ConsumerType.ConsumerTypeEnum;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.GuestId;
+import org.candlepin.model.Owner;
+import org.candlepin.model.Pool;
+import org.candlepin.model.PoolQuantity;
+import org.candlepin.model.Product;
+import org.candlepin.model.Rules;
+import org.candlepin.model.RulesCurator;
+import org.candlepin.policy.js.JsRunnerProvider;
+import org.candlepin.policy.js.JsRunnerRequestCache;
+import org.candlepin.policy.js.autobind.AutobindRules;
+import org.candlepin.policy.js.autobind.AutobindSolver;
+import org.candlepin.policy.js.compliance.ComplianceStatus;
+import org.candlepin.test.TestDateUtil;
+import org.candlepin.test.TestUtil;
+import org.candlepin.util.Util;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.inject.Provider;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * AutobindSolverTest
+ *
+ * Runs the solver and the rules on the same randomly generated consumers and pools,
+ * expecting both to select the same pools in the same quantities.
+ */
+public class AutobindSolverTest {
+    @Mock private Provider<JsRunnerRequestCache> cacheProvider;
+    @Mock private JsRunnerRequestCache cache;
+    @Mock private RulesCurator rulesCurator;
+
+    private JsRunnerProvider jsProvider;
+    private AutobindRules rules;
+    private Random random;
+    private Owner owner;
+    private int ids = 0;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        InputStream is = this.getClass().getResourceAsStream(RulesCurator.DEFAULT_RULES_FILE);
+        Rules shipped = new Rules(Util.readFile(is));
+        when(rulesCurator.getRules()).thenReturn(shipped);
+        when(rulesCurator.getUpdated()).thenReturn(TestDateUtil.date(2010, 1, 1));
+        when(cacheProvider.get()).thenReturn(cache);
+
+        jsProvider = new JsRunnerProvider(rulesCurator, cacheProvider);
+        rules = new AutobindRules(jsProvider.get());
+        random = new Random(8675309L);
+        owner = new Owner("solver-owner");
+        owner.setDefaultServiceLevel(random.nextBoolean() ? "Premium" : null);
+    }
+
+    @Test
+    public void solverFollowsShippedRules() {
+        assertEquals(AutobindSolver.RULES_VERSION, jsProvider.getRulesVersion());
+    }
+
+    @Test
+    public void solverSelectsSamePoolsAsRules() {
+        for (int scenario = 0; scenario < 400; scenario++) {
+            compare(scenario, false);
+        }
+    }
+
+    @Test
+    public void solverSelectsSamePoolsAsRulesConsideringDerived() {
+        for (int scenario = 0; scenario < 100; scenario++) {
+            compare(scenario, true);
+        }
+    }
+
+    @Test
+    public void exhaustedBudgetFallsBackToRules() {
+        Consumer consumer = createConsumer();
+        List<String> installed = Arrays.asList("prod-0", "prod-1");
+        List<Pool> pools = createPools(6);
+        ComplianceStatus compliance = new ComplianceStatus();
+        String[] productIds = installed.toArray(new String[installed.size()]);
+
+        AutobindSolver solver = new AutobindSolver(1, 1000);
+        assertNull(solver.selectPools(consumer, productIds, pools, compliance, null,
+            new HashSet<String>(), false));
+
+        AutobindRules withSolver = new AutobindRules(jsProvider.get(), solver);
+        assertEquals(describe(rules.selectBestPools(consumer, productIds, pools, compliance,
+            null, new HashSet<String>(), false)),
+            describe(withSolver.selectBestPools(consumer, productIds, pools, compliance,
+            null, new HashSet<String>(), false)));
+    }
+
+    @Test
+    public void nonNumericAttributeFallsBackToRules() {
+        Consumer consumer = new Consumer("consumer", "user", owner,
+            new ConsumerType(ConsumerTypeEnum.SYSTEM));
+        consumer.setFact("cpu.cpu_socket(s)", "4");
+        Product product = TestUtil.createProduct("prod-0", "Product 0");
+        product.setAttribute("sockets", "two");
+        Pool pool = TestUtil.createPool(owner, product, 10);
+        pool.setId("pool-non-numeric");
+
+        AutobindSolver solver = new AutobindSolver(100000, 1000);
+        assertNull(solver.selectPools(consumer, new String[] { "prod-0" },
+            Arrays.asList(pool), new ComplianceStatus(), null, new HashSet<String>(), false));
+    }
+
+    private void compare(int scenario, boolean considerDerived) {
+        Consumer consumer = createConsumer();
+        List<Pool> pools = createPools(1 + random.nextInt(8));
+        ComplianceStatus compliance = new ComplianceStatus();
+        attach(consumer, pools, compliance);
+
+        List<String> installed = new ArrayList<String>();
+        for (int i = 0; i < 6; i++) {
+            if (random.nextInt(3) > 0) {
+                installed.add("prod-" + i);
+            }
+        }
+        String[] productIds = installed.toArray(new String[installed.size()]);
+        String override = random.nextInt(4) == 0 ? "standard" : null;
+        Set<String> exempt = new HashSet<String>();
+        if (random.nextBoolean()) {
+            exempt.add("Self-Support");
+        }
+
+        AutobindSolver solver = new AutobindSolver(100000, 60000);
+        assertNotNull("solver gave up on scenario " + scenario, solver.selectPools(consumer,
+            productIds, pools, compliance, override, exempt, considerDerived));
+
+        AutobindRules withSolver = new AutobindRules(jsProvider.get(), solver);
+        String expected = describe(rules.selectBestPools(consumer, productIds, pools,
+            compliance, override, exempt, considerDerived));
+        String actual = describe(withSolver.selectBestPools(consumer, productIds, pools,
+            compliance, override, exempt, considerDerived));
+        assertEquals("scenario " + scenario, expected, actual);
+    }
+
+    private Consumer createConsumer() {
+        Consumer consumer = new Consumer("consumer-" + nextId(), "user", owner,
+            new ConsumerType(ConsumerTypeEnum.SYSTEM));
+        boolean guest = random.nextInt(3) == 0;
+        if (guest) {
+            consumer.setFact("virt.is_guest", "true");
+        }
+        if (random.nextInt(5) > 0) {
+            consumer.setFact("cpu.cpu_socket(s)", pick("1", "2", "4", "8", "16"));
+        }
+        if (random.nextBoolean()) {
+            consumer.setFact("cpu.core(s)_per_socket", pick("1", "2", "4", "6"));
+        }
+        if (random.nextBoolean()) {
+            consumer.setFact("memory.memtotal", pick("2097152", "8388608", "33554432"));
+        }
+        if (random.nextInt(4) > 0) {
+            consumer.setFact("uname.machine", pick("x86_64", "i686", "ppc64"));
+        }
+        if (random.nextInt(4) == 0) {
+            consumer.setServiceLevel(pick("Premium", "Standard"));
+        }
+        if (!guest && random.nextInt(3) == 0) {
+            for (int i = 0; i < 1 + random.nextInt(6); i++) {
+                GuestId guestId = new GuestId("guest-" + nextId(), consumer);
+                Map<String, String> attributes = new HashMap<String, String>();
+                attributes.put("virtWhoType", pick("libvirt", "esx"));
+                attributes.put("active", pick("1", "0"));
+                guestId.setAttributes(attributes);
+                consumer.addGuestId(guestId);
+            }
+        }
+        return consumer;
+    }
+
+    private List<Pool> createPools(int count) {
+        List<Pool> pools = new ArrayList<Pool>();
+        for (int i = 0; i < count; i++) {
+            Product product = createProduct();
+            Set<Product> provided = new HashSet<Product>();
+            for (int p = 0; p < random.nextInt(3); p++) {
+                provided.add(TestUtil.createProduct("prod-" + random.nextInt(6), "Provided"));
+            }
+
+            Pool pool;
+            if (random.nextInt(6) == 0) {
+                Set<Product> derivedProvided = new HashSet<Product>();
+                derivedProvided.add(TestUtil.createProduct("prod-" + random.nextInt(6),
+                    "Derived provided"));
+                pool = TestUtil.createPool(owner, product, provided,
+                    TestUtil.createProduct("derived-" + nextId(), "Derived"), derivedProvided,
+                    quantity());
+            }
+            else {
+                pool = TestUtil.createPool(owner, product, provided, quantity());
+            }
+            pool.setId("pool-" + nextId());
+            pool.setConsumed((long) random.nextInt(3));
+            pool.setEndDate(TestUtil.createDate(2030 + random.nextInt(3), 1, 1));
+            if (random.nextInt(5) == 0) {
+                pool.setAttribute("virt_only", "true");
+            }
+            if (random.nextInt(6) == 0) {
+                pool.setAttribute("requires_host", "host-" + random.nextInt(2));
+            }
+            pools.add(pool);
+        }
+        return pools;
+    }
+
+    private int quantity() {
+        return random.nextInt(5) == 0 ? -1 : 1 + random.nextInt(20);
+    }
+
+    private Product createProduct() {
+        Product product = TestUtil.createProduct("prod-" + random.nextInt(6), "Product");
+        if (random.nextInt(3) > 0) {
+            product.setAttribute("stacking_id", "stack-" + random.nextInt(3));
+        }
+        if (random.nextInt(3) > 0) {
+            product.setAttribute("multi-entitlement", pick("yes", "no"));
+        }
+        if (random.nextBoolean()) {
+            product.setAttribute("sockets", pick("1", "2", "4", "8"));
+        }
+        if (random.nextInt(3) == 0) {
+            product.setAttribute("cores", pick("2", "4", "16"));
+        }
+        if (random.nextInt(3) == 0) {
+            product.setAttribute("ram", pick("2", "8", "16"));
+        }
+        if (random.nextInt(3) == 0) {
+            product.setAttribute("vcpu", pick("2", "4", "8"));
+        }
+        if (random.nextInt(4) == 0) {
+            product.setAttribute("arch", pick("x86_64", "ALL", "ppc64", "x86,ppc64"));
+        }
+        if (random.nextInt(5) == 0) {
+            product.setAttribute("guest_limit", pick("-1", "2", "4"));
+        }
+        if (random.nextInt(4) == 0) {
+            product.setAttribute("instance_multiplier", "2");
+        }
+        if (random.nextInt(3) == 0) {
+            product.setAttribute("support_level", pick("Premium", "Standard", "Self-Support"));
+        }
+        return product;
+    }
+
+    private void attach(Consumer consumer, List<Pool> pools, ComplianceStatus compliance) {
+        for (Pool pool : createPools(random.nextInt(3))) {
+            Entitlement ent = TestUtil.createEntitlement(owner, consumer, pool, null);
+            ent.setId("ent-" + nextId());
+            ent.setQuantity(1 + random.nextInt(4));
+            String productId = pool.getProductId();
+            switch (random.nextInt(3)) {
+                case 0:
+                    compliance.addCompliantProduct(productId, ent);
+                    break;
+                case 1:
+                    compliance.addPartiallyCompliantProduct(productId, ent);
+                    break;
+                default:
+                    compliance.addPartiallyCompliantProduct(productId, ent);
+                    String stackId = pool.getProductAttributeValue("stacking_id");
+                    if (stackId != null) {
+                        compliance.addPartialStack(stackId, ent);
+                    }
+            }
+        }
+    }
+
+    private String describe(List<PoolQuantity> selected) {
+        if (selected == null) {
+            return "none";
+        }
+        StringBuilder description = new StringBuilder();
+        for (PoolQuantity pq : selected) {
+            description.append(pq.getPool().getId()).append('=').append(pq.getQuantity())
+                .append(' ');
+        }
+        return description.toString();
+    }
+
+    private String pick(String... values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private int nextId() {
+        return ids++;
+    }
+}
@@ -14,12 +14,18 @@
  */
 package org.candlepin.policy.js;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 import org.candlepin.model.Rules;
 import org.candlepin.model.Rules.RulesSourceEnum;
@@ -30,7 +36,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 import com.google.inject.Provider;
 /**
@@ -99,4 +107,122 @@ public class JsRunnerProviderTest {
         verify(rulesCurator, times(3)).getUpdated();
     }
 
+    @Test
+    public void pooledScopeIsClearedBetweenUses() {
+        JsRunnerProvider pooledProvider = createPooledProvider();
+
+        JsRunner first = pooledProvider.get();
+        first.init("test_name_space");
+        ArgumentJsContext args = new ArgumentJsContext();
+        args.put("leftover", "value");
+        assertEquals("value", first.invokeRule("get_leftover", args));
+
+        JsRunner second = pooledProvider.get();
+        second.init("test_name_space");
+        assertNull(second.invokeRule("get_leftover"));
+    }
+
+    @Test
+    public void pooledRunnersInterleavedOnOneThread() {
+        JsRunnerProvider pooledProvider = createPooledProvider();
+
+        // Two rules objects holding their own runners, as Enforcer and ComplianceRules do
+        JsRunner first = pooledProvider.get();
+        first.init("test_name_space");
+        JsRunner second = pooledProvider.get();
+        second.init("test_name_space");
+
+        ArgumentJsContext firstArgs = new ArgumentJsContext();
+        firstArgs.put("leftover", "first");
+        assertEquals("first", first.invokeRule("get_leftover", firstArgs));
+
+        ArgumentJsContext secondArgs = new ArgumentJsContext();
+        secondArgs.put("other", "second");
+        assertNull(second.invokeRule("get_leftover", secondArgs));
+
+        // Each runner still sees only the arguments it was last given
+        assertEquals("first", first.invokeRule("get_leftover"));
+        assertNull(second.invokeRule("get_leftover"));
+        assertEquals("first", first.invokeRule("get_leftover"));
+
+        // New arguments replace the runner's previous ones
+        assertNull(first.invokeRule("get_leftover", new ArgumentJsContext()));
+    }
+
+    @Test
+    public void pooledRunnerUsedFromAnotherThread() throws Exception {
+        JsRunnerProvider pooledProvider = createPooledProvider();
+
+        final JsRunner runner = pooledProvider.get();
+        runner.init("test_name_space");
+        ArgumentJsContext args = new ArgumentJsContext();
+        args.put("leftover", "value");
+        assertEquals("value", runner.invokeRule("get_leftover", args));
+
+        final List<Object> results = new ArrayList<Object>();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                results.add(runner.invokeRule("get_leftover"));
+                ArgumentJsContext threadArgs = new ArgumentJsContext();
+                threadArgs.put("leftover", "thread");
+                results.add(runner.invokeRule("get_leftover", threadArgs));
+            }
+        };
+        thread.start();
+        thread.join();
+
+        assertEquals(Arrays.asList("value", "thread"), results);
+        assertEquals("thread", runner.invokeRule("get_leftover"));
+    }
+
+    @Test
+    public void pooledNamespaceResolvedOncePerRulesVersion() {
+        JsRunnerProvider pooledProvider = createPooledProvider();
+
+        Object firstId = getNamespaceId(pooledProvider);
+        assertEquals(firstId, getNamespaceId(pooledProvider));
+
+        when(rulesCurator.getUpdated()).thenReturn(new Date(time1.getTime() + 1000));
+        assertNotEquals(firstId, getNamespaceId(pooledProvider));
+    }
+
+    @Test
+    public void namespaceResolvedPerRunnerWhenNotPooled() {
+        setTestRules();
+        when(cacheProvider.get()).thenReturn(new JsRunnerRequestCache());
+        JsRunnerProvider plainProvider = new JsRunnerProvider(rulesCurator, cacheProvider, false);
+
+        assertNotEquals(getNamespaceId(plainProvider), getNamespaceId(plainProvider));
+    }
+
+    private JsRunnerProvider createPooledProvider() {
+        setTestRules();
+        when(cacheProvider.get()).thenAnswer(new Answer<JsRunnerRequestCache>() {
+            @Override
+            public JsRunnerRequestCache answer(InvocationOnMock invocation) {
+                return new JsRunnerRequestCache();
+            }
+        });
+        return new JsRunnerProvider(rulesCurator, cacheProvider, true);
+    }
+
+    private void setTestRules() {
+        when(rules.getRules()).thenReturn(
+            "function test_name_space() {" +
+            "    return {" +
+            "        id: Math.random()," +
+            "        get_id: function() { return this.id; }," +
+            "        get_leftover: function() {" +
+            "            return typeof leftover === 'undefined' ? null : leftover;" +
+            "        }" +
+            "    };" +
+            "}");
+    }
+
+    private Object getNamespaceId(JsRunnerProvider jsProvider) {
+        JsRunner runner = jsProvider.get();
+        runner.init("test_name_space");
+        return runner.invokeRule("get_id");
+    }
 }
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerInstalledProduct;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.Owner;
+import org.candlepin.model.Pool;
+import org.candlepin.model.Product;
+import org.candlepin.model.Rules;
+import org.candlepin.model.RulesCurator;
+import org.candlepin.test.TestUtil;
+
+import com.google.inject.Provider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Date;
+
+/**
+ * NativeJsContextTest
+ */
+public class NativeJsContextTest {
+    @Mock private Provider<JsRunnerRequestCache> cacheProvider;
+    @Mock private RulesCurator rulesCurator;
+    @Mock private Rules rules;
+
+    private RulesObjectMapper mapper = RulesObjectMapper.instance();
+    private JsRunner jsonRunner;
+    private JsRunner nativeRunner;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(rulesCurator.getUpdated()).thenReturn(new Date());
+        when(rulesCurator.getRules()).thenReturn(rules);
+        when(rules.getRules()).thenReturn(
+            "function test_name_space() { return Test; }" +
+            "var Test = {" +
+            "    echo: function() { return JSON.stringify(JSON.parse(json_context)); }," +
+            "    parse_string: function() { return JSON.parse('{\"a\": 1}').a; }," +
+            "    is_string: function() { return typeof json_context === 'string'; }" +
+            "};");
+        when(cacheProvider.get()).thenReturn(new JsRunnerRequestCache());
+
+        jsonRunner = new JsRunnerProvider(rulesCurator, cacheProvider, false, false).get();
+        jsonRunner.init("test_name_space");
+        nativeRunner = new JsRunnerProvider(rulesCurator, cacheProvider, false, true).get();
+        nativeRunner.init("test_name_space");
+    }
+
+    @Test
+    public void nativeGraphMatchesParsedJson() {
+        Owner owner = new Owner("test-owner");
+        Consumer consumer = new Consumer("test-consumer", "user", owner,
+            new ConsumerType(ConsumerType.ConsumerTypeEnum.SYSTEM));
+        consumer.setFact("cpu.cpu_socket(s)", "4");
+        consumer.addInstalledProduct(new ConsumerInstalledProduct("p1", "Product 1"));
+
+        Product product = TestUtil.createProduct("p1", "Product 1");
+        product.setAttribute("sockets", "2");
+        Pool pool = TestUtil.createPool(owner, product);
+        pool.setId("pool-1");
+        Entitlement ent = TestUtil.createEntitlement(owner, consumer, pool, null);
+        ent.setQuantity(3);
+
+        assertEquals(echo(jsonRunner, consumer, ent), echo(nativeRunner, consumer, ent));
+    }
+
+    @Test
+    public void nativeContextIsNotAString() {
+        JsonJsContext args = new JsonJsContext(mapper);
+        args.put("value", 1);
+
+        assertEquals(Boolean.TRUE, jsonRunner.invokeRule("is_string", args));
+        assertEquals(Boolean.FALSE, nativeRunner.invokeRule("is_string", args));
+    }
+
+    @Test
+    public void stringsAreStillParsed() {
+        JsonJsContext args = new JsonJsContext(mapper);
+        args.put("value", 1);
+
+        Object result = nativeRunner.invokeRule("parse_string", args);
+        assertTrue(result instanceof Number);
+        assertEquals(1, ((Number) result).intValue());
+    }
+
+    private String echo(JsRunner runner, Consumer consumer, Entitlement ent) {
+        JsonJsContext args = new JsonJsContext(mapper);
+        args.put("consumer", consumer);
+        args.put("entitlements", consumer.getEntitlements());
+        args.put("entitlement", ent);
+        args.put("ondate", new Date(0));
+        args.put("flag", true);
+        args.put("nothing", null);
+        return runner.invokeRule("echo", args);
+    }
+}
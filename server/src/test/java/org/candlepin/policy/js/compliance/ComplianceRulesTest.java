@@ -23,6 +23,8 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -276,6 +278,78 @@ public class ComplianceRulesTest {
         assertEquals(0, status.getPartiallyCompliantProducts().size());
     }
 
+    @Test
+    public void cachedStatusSkipsRules() {
+        JsRunner jsRunner = spy(provider.get());
+        compliance = new ComplianceRules(jsRunner, entCurator, new StatusReasonMessageGenerator(i18n),
+            eventSink, consumerCurator, new ComplianceStatusCache(10, provider));
+        Consumer c = mockFullyEntitledConsumer();
+        c.setUuid("cached-consumer");
+
+        Date first = TestUtil.createDate(2011, 8, 30);
+        Date second = new Date(first.getTime() + 1000);
+        ComplianceStatus status = compliance.getStatus(c, first);
+        ComplianceStatus cached = compliance.getStatus(c, second);
+
+        verify(jsRunner, times(1)).runJsFunction(any(Class.class), eq("get_status"),
+            any(JsContext.class));
+        assertEquals(status.getStatus(), cached.getStatus());
+        assertEquals(status.getCompliantProducts().keySet(), cached.getCompliantProducts().keySet());
+        assertEquals(second, cached.getDate());
+    }
+
+    @Test
+    public void changedFactsBypassCache() {
+        JsRunner jsRunner = spy(provider.get());
+        compliance = new ComplianceRules(jsRunner, entCurator, new StatusReasonMessageGenerator(i18n),
+            eventSink, consumerCurator, new ComplianceStatusCache(10, provider));
+        Consumer c = mockFullyEntitledConsumer();
+        c.setUuid("cached-consumer");
+
+        compliance.getStatus(c, TestUtil.createDate(2011, 8, 30));
+        c.setFact("uname.machine", "x86_64");
+        compliance.getStatus(c, TestUtil.createDate(2011, 8, 30));
+
+        verify(jsRunner, times(2)).runJsFunction(any(Class.class), eq("get_status"),
+            any(JsContext.class));
+    }
+
+    @Test
+    public void batchStatusesMatchSingleStatuses() {
+        ComplianceBatchExecutor executor = new ComplianceBatchExecutor(2, provider);
+        compliance = new ComplianceRules(provider.get(), entCurator,
+            new StatusReasonMessageGenerator(i18n), eventSink, consumerCurator, null, executor);
+
+        List<Consumer> consumers = new LinkedList<Consumer>();
+        for (int i = 0; i < 5; i++) {
+            consumers.add(mockFullyEntitledConsumer());
+            consumers.add(mockConsumerWithTwoProductsAndNoEntitlements());
+        }
+
+        final Map<Consumer, ComplianceStatus> batch = new HashMap<Consumer, ComplianceStatus>();
+        try {
+            compliance.getStatuses(consumers, new ComplianceRules.StatusCallback() {
+                @Override
+                public void onStatus(Consumer consumer, ComplianceStatus status) {
+                    batch.put(consumer, status);
+                }
+            });
+        }
+        finally {
+            executor.close();
+        }
+
+        verify(consumerCurator).prefetchEntitlements(consumers);
+        assertEquals(consumers.size(), batch.size());
+        for (Consumer c : consumers) {
+            ComplianceStatus single = compliance.getStatus(c, null);
+            assertEquals(single.getStatus(), batch.get(c).getStatus());
+            assertEquals(single.getCompliantProducts().keySet(),
+                batch.get(c).getCompliantProducts().keySet());
+            assertEquals(single.getNonCompliantProducts(), batch.get(c).getNonCompliantProducts());
+        }
+    }
+
     @Test
     public void entitledProducts() {
         Consumer c = mockConsumer(PRODUCT_1, PRODUCT_2);
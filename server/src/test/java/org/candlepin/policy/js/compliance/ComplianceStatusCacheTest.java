@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.candlepin.model.Entitlement;
+import org.candlepin.policy.js.JsRunnerProvider;
+import org.candlepin.test.TestUtil;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * ComplianceStatusCacheTest
+ */
+public class ComplianceStatusCacheTest {
+
+    private JsRunnerProvider jsProvider;
+    private ComplianceStatusCache cache;
+    private Date now;
+
+    @Before
+    public void setUp() {
+        jsProvider = mock(JsRunnerProvider.class);
+        when(jsProvider.getRulesVersion()).thenReturn("5.20");
+        cache = new ComplianceStatusCache(2, jsProvider);
+        now = TestUtil.createDate(2016, 6, 15);
+        now.setTime(now.getTime() + 12 * 60 * 60 * 1000);
+    }
+
+    @Test
+    public void hitsAndMissesAreCounted() {
+        assertNull(cache.get("uuid", "hash", now));
+        cache.put("uuid", "hash", now, Collections.<Entitlement>emptyList(), "{}");
+        assertEquals("{}", cache.get("uuid", "hash", now));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void missOnChangedInputs() {
+        cache.put("uuid", "hash", now, Collections.<Entitlement>emptyList(), "{}");
+        assertNull(cache.get("uuid", "otherhash", now));
+    }
+
+    @Test
+    public void missOnRulesVersionChange() {
+        cache.put("uuid", "hash", now, Collections.<Entitlement>emptyList(), "{}");
+        when(jsProvider.getRulesVersion()).thenReturn("5.21");
+        assertNull(cache.get("uuid", "hash", now));
+    }
+
+    @Test
+    public void missOnAnotherDay() {
+        cache.put("uuid", "hash", now, Collections.<Entitlement>emptyList(), "{}");
+        assertEquals("{}", cache.get("uuid", "hash", new Date(now.getTime() + 60 * 60 * 1000)));
+        assertNull(cache.get("uuid", "hash", new Date(now.getTime() + 24 * 60 * 60 * 1000)));
+    }
+
+    @Test
+    public void missOnceEntitlementEnds() {
+        Entitlement ent = TestUtil.createEntitlement();
+        ent.getPool().setStartDate(new Date(now.getTime() - 1000));
+        ent.getPool().setEndDate(new Date(now.getTime() + 1000));
+        List<Entitlement> ents = Arrays.asList(ent);
+
+        cache.put("uuid", "hash", now, ents, "{}");
+        assertEquals("{}", cache.get("uuid", "hash", new Date(now.getTime() + 999)));
+        assertNull(cache.get("uuid", "hash", new Date(now.getTime() + 1000)));
+        assertNull(cache.get("uuid", "hash", new Date(now.getTime() - 1001)));
+    }
+
+    @Test
+    public void invalidateRemovesEntry() {
+        cache.put("uuid", "hash", now, Collections.<Entitlement>emptyList(), "{}");
+        cache.invalidate("uuid");
+        assertNull(cache.get("uuid", "hash", now));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() {
+        cache.put("uuid1", "hash", now, Collections.<Entitlement>emptyList(), "{1}");
+        cache.put("uuid2", "hash", now, Collections.<Entitlement>emptyList(), "{2}");
+        cache.get("uuid1", "hash", now);
+        cache.put("uuid3", "hash", now, Collections.<Entitlement>emptyList(), "{3}");
+
+        assertEquals(2, cache.size());
+        assertEquals("{1}", cache.get("uuid1", "hash", now));
+        assertNull(cache.get("uuid2", "hash", now));
+    }
+
+    @Test
+    public void disabledWithZeroSize() {
+        cache = new ComplianceStatusCache(0, jsProvider);
+        cache.put("uuid", "hash", now, Collections.<Entitlement>emptyList(), "{}");
+        assertNull(cache.get("uuid", "hash", now));
+        assertEquals(0, cache.size());
+    }
+}
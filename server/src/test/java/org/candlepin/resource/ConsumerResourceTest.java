@@ -38,6 +38,7 @@ import org.candlepin.config.CandlepinCommonTestConfig;
 import org.candlepin.controller.CandlepinPoolManager;
 import org.candlepin.controller.Entitler;
 import org.candlepin.controller.PoolManager;
+import org.candlepin.model.AbstractHibernateCurator.ResultHandler;
 import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.CertificateSerialDto;
 import org.candlepin.model.Consumer;
@@ -70,21 +71,29 @@ import org.candlepin.resource.util.ResourceDateParser;
 import org.candlepin.service.EntitlementCertServiceAdapter;
 import org.candlepin.service.IdentityCertServiceAdapter;
 import org.candlepin.service.SubscriptionServiceAdapter;
+import org.candlepin.resteasy.JsonProvider;
 import org.candlepin.service.UserServiceAdapter;
 import org.candlepin.test.TestUtil;
 import org.candlepin.util.ServiceLevelValidator;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import org.hibernate.mapping.Collection;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 import org.quartz.JobDetail;
 import org.xnap.commons.i18n.I18n;
 import org.xnap.commons.i18n.I18nFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.math.BigInteger;
@@ -95,10 +104,10 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Set;
 
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 /**
  * ConsumerResourceTest
@@ -142,7 +151,7 @@ public class ConsumerResourceTest {
             mockedConsumerCurator, null, null, null, mockedEntitlementCurator, null,
             mockedEntitlementCertServiceAdapter, null, null, null, null, null, null, null,
             mockedPoolManager, null, null, null, null, null, null, null, null,
-            new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil);
+            new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil, null);
 
         List<CertificateSerialDto> serials = consumerResource
             .getEntitlementCertificateSerials(consumer.getUuid());
@@ -175,7 +184,7 @@ public class ConsumerResourceTest {
         ConsumerResource consumerResource = new ConsumerResource(mockedConsumerCurator, null, null,
             null, mockedEntitlementCurator, null, mockedEntitlementCertServiceAdapter, null,
             null, null, null, null, null, null, poolManager, null, null, null, null, null, null,
-            null, null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil);
+            null, null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil, null);
 
         consumerResource.regenerateEntitlementCertificates(consumer.getUuid(), "9999", false);
     }
@@ -208,7 +217,7 @@ public class ConsumerResourceTest {
         ConsumerResource cr = new ConsumerResource(mockedConsumerCurator, null,
             null, mockedSubscriptionServiceAdapter, null, null, null, null, null, null, null,
             null, null, null, mgr, null, null, null, null, null, null, null, null,
-            new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil);
+            new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil, null);
 
         cr.regenerateEntitlementCertificates(consumer.getUuid(), null, true);
         Mockito.verify(mgr, Mockito.times(1)).regenerateCertificatesOf(eq(consumer), eq(true));
@@ -236,7 +245,7 @@ public class ConsumerResourceTest {
         ConsumerResource cr = new ConsumerResource(mockedConsumerCurator, null,
             null, null, null, mockedIdSvc, null, null, sink, eventFactory, null, null,
             null, null, null, null, mockedOwnerCurator, null, null, null, null,
-            null, null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil);
+            null, null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil, null);
 
         Consumer fooc = cr.regenerateIdentityCertificates(consumer.getUuid());
 
@@ -270,7 +279,7 @@ public class ConsumerResourceTest {
         ConsumerResource cr = new ConsumerResource(mockedConsumerCurator, null,
             null, ssa, null, mockedIdSvc, null, null, sink, eventFactory, null, null,
             null, null, null, null, mockedOwnerCurator, null, null, rules, null,
-            null, null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil);
+            null, null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil, null);
         Consumer c = cr.getConsumer(consumer.getUuid());
 
         assertFalse(origserial.equals(c.getIdCert().getSerial().getSerial()));
@@ -292,7 +301,7 @@ public class ConsumerResourceTest {
         ConsumerResource cr = new ConsumerResource(mockedConsumerCurator, null,
             null, ssa, null, null, null, null, null, null, null, null, null, null,
             null, null, mockedOwnerCurator, null, null, rules, null, null, null,
-            new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil);
+            new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil, null);
 
         Consumer c = cr.getConsumer(consumer.getUuid());
 
@@ -322,7 +331,7 @@ public class ConsumerResourceTest {
         ConsumerResource cr = new ConsumerResource(null, ctc,
             null, null, null, null, null, i18n, null, null, null, null,
             null, null, null, null, oc, akc, null, null, null, null,
-            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil);
+            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil, null);
         cr.create(c, nap, null, "testOwner", "testKey", true);
     }
 
@@ -343,7 +352,7 @@ public class ConsumerResourceTest {
         ConsumerResource cr = new ConsumerResource(cc, null,
             null, sa, null, null, null, i18n, null, null, null, null, null,
             null, null, null, null, null, e, null, null, null, null,
-            new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil);
+            new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil, null);
         Response r = cr.bind(
             "fakeConsumer", null, prodIds, null, null, null, false, null, null, null, null);
         assertEquals(null, r.getEntity());
@@ -366,7 +375,7 @@ public class ConsumerResourceTest {
 
         ConsumerResource cr = new ConsumerResource(cc, null, null, sa, null, null, null, i18n,
             null, null, null, null, null, null, pm, null, null, null, null, null, null, null, null,
-            new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil);
+            new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil, null);
 
         Response rsp = cr.bind("fakeConsumer", null, null, null, null, null, true, null,
             null, pools, new TrustedUserPrincipal("TaylorSwift"));
@@ -407,7 +416,7 @@ public class ConsumerResourceTest {
 
         ConsumerResource cr = new ConsumerResource(cc, null, null, sa, null, null, null, null,
             null, null, null, null, null, null, null, null, null, null, e, null, null, null, null,
-            new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil);
+            new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil, null);
         String dtStr = "2011-09-26T18:10:50.184081+00:00";
         Date dt = ResourceDateParser.parseDateString(dtStr);
         cr.bind("fakeConsumer", null, null, null, null, null, false, dtStr, null, null, null);
@@ -427,7 +436,7 @@ public class ConsumerResourceTest {
         ConsumerResource consumerResource = new ConsumerResource(consumerCurator, null,
             null, null, entitlementCurator, null, null, i18n, null, null, null,
             null, null, null, null, null, null, null, null, null, null, null,
-            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil);
+            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil, null);
 
         consumerResource.unbindBySerial("fake uuid",
             Long.valueOf(1234L));
@@ -450,7 +459,7 @@ public class ConsumerResourceTest {
         ConsumerResource consumerResource = new ConsumerResource(consumerCurator, null,
             null, null, entitlementCurator, null, null, i18n, null, null, null,
             null, null, null, null, null, null, null, null, null, null, null,
-            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil);
+            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil, null);
 
         consumerResource.unbindByPool("fake-uuid", "Run Forest!");
     }
@@ -461,7 +470,7 @@ public class ConsumerResourceTest {
         ConsumerResource consumerResource = new ConsumerResource(consumerCurator, null,
             null, null, null, null, null, i18n, null, null, null,
             null, null, null, null, null, null, null, null, null, null, null,
-            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil);
+            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil, null);
 
         consumerResource.bind("fake uuid", "fake pool uuid",
             new String[]{"12232"}, 1, null, null, false, null, null, null, null);
@@ -473,7 +482,7 @@ public class ConsumerResourceTest {
         ConsumerResource consumerResource = new ConsumerResource(consumerCurator, null,
             null, null, null, null, null, i18n, null, null, null,
             null, null, null, null, null, null, null, null, null, null, null,
-            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil);
+            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil, null);
 
         PoolIdAndQuantity[] pools = new PoolIdAndQuantity[2];
         pools[0] = new PoolIdAndQuantity("first", 1);
@@ -489,7 +498,7 @@ public class ConsumerResourceTest {
         ConsumerResource consumerResource = new ConsumerResource(consumerCurator, null,
             null, null, null, null, null, i18n, null, null, null,
             null, null, null, null, null, null, null, null, null, null, null,
-            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil);
+            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil, null);
 
         PoolIdAndQuantity[] pools = new PoolIdAndQuantity[2];
         pools[0] = new PoolIdAndQuantity("first", 1);
@@ -505,7 +514,7 @@ public class ConsumerResourceTest {
         ConsumerResource consumerResource = new ConsumerResource(consumerCurator, null,
             null, null, null, null, null, i18n, null, null, null,
             null, null, null, null, null, null, null, null, null, null, null,
-            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil);
+            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil, null);
 
         PoolIdAndQuantity[] pools = new PoolIdAndQuantity[2];
         pools[0] = new PoolIdAndQuantity("first", 1);
@@ -521,7 +530,7 @@ public class ConsumerResourceTest {
         ConsumerResource consumerResource = new ConsumerResource(consumerCurator, null,
             null, null, null, null, null, i18n, null, null, null,
             null, null, null, null, null, null, null, null, null, null, null,
-            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil);
+            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil, null);
 
         PoolIdAndQuantity[] pools = new PoolIdAndQuantity[2];
         pools[0] = new PoolIdAndQuantity("first", 1);
@@ -539,7 +548,7 @@ public class ConsumerResourceTest {
         ConsumerResource consumerResource = new ConsumerResource(consumerCurator, null,
             null, null, null, null, null, i18n, null, null, null,
             null, null, null, null, null, null, null, null, null, null, null,
-            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil);
+            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil, null);
 
         consumerResource.bind("notarealuuid", "fake pool uuid", null, null, null,
             null, false, null, null, null, null);
@@ -557,7 +566,7 @@ public class ConsumerResourceTest {
         ConsumerResource consumerResource = new ConsumerResource(consumerCurator, null,
             null, null, null, null, null, i18n, null, null, null,
             null, null, null, null, null, null, null, null, null, null, null,
-            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil);
+            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil, null);
 
         consumerResource.regenerateEntitlementCertificates("xyz", null, true);
     }
@@ -599,40 +608,65 @@ public class ConsumerResourceTest {
         ConsumerResource cr = new ConsumerResource(null, ctc,
             null, null, null, null, null, i18n, null, null, null, null,
             usa, null, null,  null, oc, null, null, null, null, null,
-            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil);
+            null, new CandlepinCommonTestConfig(), null, null, null, consumerBindUtil, null);
         cr.create(c, up, null, "testOwner", null, true);
     }
 
     @Test
-    public void testGetComplianceStatusList() {
+    public void testGetComplianceStatusList() throws Exception {
         Consumer c = mock(Consumer.class);
         Consumer c2 = mock(Consumer.class);
         when(c.getUuid()).thenReturn("1");
         when(c2.getUuid()).thenReturn("2");
 
-        List<Consumer> consumers = new ArrayList<Consumer>();
+        final List<Consumer> consumers = new ArrayList<Consumer>();
         consumers.add(c);
         consumers.add(c2);
 
         List<String> uuids = new ArrayList<String>();
         uuids.add("1");
         uuids.add("2");
-        when(mockedConsumerCurator.findByUuids(eq(uuids))).thenReturn(consumers);
-
-        ComplianceStatus status = new ComplianceStatus();
-        when(mockedComplianceRules.getStatus(any(Consumer.class), any(Date.class)))
-            .thenReturn(status);
+        when(mockedConsumerCurator.scrollByUuids(eq(uuids), anyInt(),
+            Matchers.<ResultHandler<List<Consumer>>>any())).thenAnswer(new Answer<Integer>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Integer answer(InvocationOnMock invocation) throws Exception {
+                    ResultHandler<List<Consumer>> handler =
+                        (ResultHandler<List<Consumer>>) invocation.getArguments()[2];
+                    handler.handle(consumers);
+                    return consumers.size();
+                }
+            });
+
+        final ComplianceStatus status = new ComplianceStatus();
+        doAnswer(new Answer<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object answer(InvocationOnMock invocation) {
+                List<Consumer> batch = (List<Consumer>) invocation.getArguments()[0];
+                ComplianceRules.StatusCallback callback =
+                    (ComplianceRules.StatusCallback) invocation.getArguments()[1];
+                for (Consumer consumer : batch) {
+                    callback.onStatus(consumer, status);
+                }
+                return null;
+            }
+        }).when(mockedComplianceRules).getStatuses(eq(consumers),
+            any(ComplianceRules.StatusCallback.class));
 
         ConsumerResource cr = new ConsumerResource(mockedConsumerCurator, null,
             null, null, null, null, null, i18n, null, null, null,
             null, null, null, null, null, null, null, null, mockedComplianceRules,
             null, null, null, new CandlepinCommonTestConfig(), null, null, null,
-            consumerBindUtil);
+            consumerBindUtil, new JsonProvider(new CandlepinCommonTestConfig()));
 
-        Map<String, ComplianceStatus> results = cr.getComplianceStatusList(uuids);
+        Response response = cr.getComplianceStatusList(uuids);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(out);
+        JsonNode results = new ObjectMapper().readTree(out.toByteArray());
         assertEquals(2, results.size());
-        assertTrue(results.containsKey("1"));
-        assertTrue(results.containsKey("2"));
+        assertTrue(results.has("1"));
+        assertTrue(results.has("2"));
     }
 
     @Test
@@ -642,7 +676,7 @@ public class ConsumerResourceTest {
             null, null, null, null, null, i18n, null, null, null,
             null, null, null, null, null, null, null, null, mockedComplianceRules,
             null, null, null, new CandlepinCommonTestConfig(),
-            null, null, null, consumerBindUtil);
+            null, null, null, consumerBindUtil, null);
         cr.consumerExists("uuid");
     }
 
@@ -653,7 +687,7 @@ public class ConsumerResourceTest {
             null, null, null, null, null, i18n, null, null, null,
             null, null, null, null, null, null, null, null, mockedComplianceRules,
             null, null, null, new CandlepinCommonTestConfig(),
-            null, null, null, consumerBindUtil);
+            null, null, null, consumerBindUtil, null);
         cr.consumerExists("uuid");
     }
 
@@ -662,7 +696,7 @@ public class ConsumerResourceTest {
         ConsumerResource cr = new ConsumerResource(
             null, null, null, null, null, null, null, i18n, null, null, null,  null, null, null,
             null, null, null, null, null, null, null, null, null, new CandlepinCommonTestConfig(),
-            null, null, null, null
+            null, null, null, null, null
         );
 
         cr.list(null, null, null, null, null, null, null);
@@ -673,7 +707,7 @@ public class ConsumerResourceTest {
         ConsumerResource cr = new ConsumerResource(
             mockedConsumerCurator, null, null, null, null, null, null, i18n, null, null, null, null,
             null, null, null, null, null, null, null, null, null, null, null,
-            new CandlepinCommonTestConfig(), null, null, null, null
+            new CandlepinCommonTestConfig(), null, null, null, null, null
         );
 
         Page<List<Consumer>> page = new Page<List<Consumer>>();
@@ -692,7 +726,7 @@ public class ConsumerResourceTest {
         ConsumerResource cr = new ConsumerResource(
             mockedConsumerCurator, null, null, null, null, null, null, i18n, null, null, null, null,
             null, null, null, null, mockedOwnerCurator, null, null, null, null, null, null,
-            new CandlepinCommonTestConfig(), null, null, null, null
+            new CandlepinCommonTestConfig(), null, null, null, null, null
         );
 
         Page<List<Consumer>> page = new Page<List<Consumer>>();
@@ -713,7 +747,7 @@ public class ConsumerResourceTest {
         ConsumerResource cr = new ConsumerResource(
             mockedConsumerCurator, null, null, null, null, null, null, i18n, null, null, null, null,
             null, null, null, null, null, null, null, null, null, null, null,
-            new CandlepinCommonTestConfig(), null, null, null, null
+            new CandlepinCommonTestConfig(), null, null, null, null, null
         );
 
         List<Consumer> result = cr.list(null, null, null, new ArrayList<String>(), null, null, null);
@@ -724,7 +758,7 @@ public class ConsumerResourceTest {
         ConsumerResource cr = new ConsumerResource(
             mockedConsumerCurator, null, null, null, null, null, null, i18n, null, null, null, null,
             null, null, null, null, null, null, null, null, null, null, null,
-            new CandlepinCommonTestConfig(), null, null, null, null
+            new CandlepinCommonTestConfig(), null, null, null, null, null
         );
 
         Page<List<Consumer>> page = new Page<List<Consumer>>();
@@ -747,7 +781,7 @@ public class ConsumerResourceTest {
             null, null, null, null, null, i18n, null, null, null,
             null, null, null, null, null, null, null, null, null,
             null, null, null, new CandlepinCommonTestConfig(),
-            null, null, null, null));
+            null, null, null, null, null));
         List<GuestId> startGuests  = new ArrayList<GuestId>();
         List<GuestId> updatedGuests  = new ArrayList<GuestId>();
         VirtConsumerMap guestConsumerMap = new VirtConsumerMap();
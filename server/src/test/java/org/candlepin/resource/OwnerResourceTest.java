@@ -75,6 +75,9 @@ import org.candlepin.util.ContentOverrideValidator;
 import org.candlepin.util.ServiceLevelValidator;
 import org.candlepin.util.Util;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import org.hamcrest.core.IsEqual;
 import org.hibernate.exception.ConstraintViolationException;
 import org.jboss.resteasy.plugins.providers.atom.Entry;
@@ -90,6 +93,7 @@ import org.junit.rules.ExpectedException;
 import org.mockito.Mockito;
 import org.xnap.commons.i18n.I18n;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
@@ -110,6 +114,8 @@ import javax.inject.Inject;
 import javax.persistence.PersistenceException;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 /**
  * OwnerResourceTest
  */
@@ -689,7 +695,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
     }
 
     @Test
-    public void consumerCanListConsumersByIdWhenOtherParametersPresent() {
+    public void consumerCanListConsumersByIdWhenOtherParametersPresent() throws Exception {
         Consumer c = TestUtil.createConsumer(owner);
         consumerTypeCurator.create(c.getType());
         consumerCurator.create(c);
@@ -704,16 +710,16 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         types.add("type");
         consumerTypeCurator.create(new ConsumerType("type"));
 
-        List<Consumer> results = ownerResource.listConsumers(
+        Response response = ownerResource.listConsumers(
             owner.getKey(), "username", types, uuids, null, null, null, null, null, new PageRequest()
         );
 
-        assertEquals(0, results.size());
+        assertEquals(0, listedConsumerUuids(response).size());
     }
 
 
     @Test
-    public void consumerCannotListConsumersFromAnotherOwner() {
+    public void consumerCannotListConsumersFromAnotherOwner() throws Exception {
         Consumer c = TestUtil.createConsumer(owner);
         consumerTypeCurator.create(c.getType());
         consumerCurator.create(c);
@@ -730,8 +736,8 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         setupPrincipal(owner, Access.ALL);
         securityInterceptor.enable();
 
-        assertEquals(1, ownerResource.listConsumers(
-            owner.getKey(), null, null, uuids, null, null, null, null, null, null).size());
+        assertEquals(1, listedConsumerUuids(ownerResource.listConsumers(
+            owner.getKey(), null, null, uuids, null, null, null, null, null, null)).size());
     }
 
     /**
@@ -751,7 +757,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
     }
 
     @Test
-    public void consumerCanListMultipleConsumers() {
+    public void consumerCanListMultipleConsumers() throws Exception {
         Consumer c = TestUtil.createConsumer(owner);
         consumerTypeCurator.create(c.getType());
         consumerCurator.create(c);
@@ -767,9 +773,46 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         setupPrincipal(owner, Access.ALL);
         securityInterceptor.enable();
 
-        List<Consumer> results = ownerResource.listConsumers(owner.getKey(), null,
-            null, uuids, null, null, null, null, null, null);
+        List<String> results = listedConsumerUuids(ownerResource.listConsumers(owner.getKey(), null,
+            null, uuids, null, null, null, null, null, null));
         assertEquals(2, results.size());
+        assertTrue(results.contains(c.getUuid()));
+        assertTrue(results.contains(c2.getUuid()));
+    }
+
+    @Test
+    public void streamedConsumersAreEvicted() throws Exception {
+        Consumer c = TestUtil.createConsumer(owner);
+        consumerTypeCurator.create(c.getType());
+        consumerCurator.create(c);
+
+        Response response = ownerResource.listConsumers(owner.getKey(), null,
+            null, null, null, null, null, null, null, null);
+        assertTrue(response.getEntity() instanceof StreamingOutput);
+        assertEquals(Arrays.asList(c.getUuid()), listedConsumerUuids(response));
+        assertFalse(entityManager().contains(c));
+    }
+
+    /*
+     * Reads the consumer uuids from a listConsumers response, whether the consumers
+     * were streamed or returned as a list.
+     */
+    @SuppressWarnings("unchecked")
+    private List<String> listedConsumerUuids(Response response) throws IOException {
+        List<String> uuids = new ArrayList<String>();
+        if (response.getEntity() instanceof StreamingOutput) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ((StreamingOutput) response.getEntity()).write(out);
+            for (JsonNode node : new ObjectMapper().readTree(out.toByteArray())) {
+                uuids.add(node.get("uuid").asText());
+            }
+        }
+        else {
+            for (Consumer consumer : (List<Consumer>) response.getEntity()) {
+                uuids.add(consumer.getUuid());
+            }
+        }
+        return uuids;
     }
 
     @Test
@@ -1005,7 +1048,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         OwnerResource or = new OwnerResource(
             oc, null, null, i18n, null, eventFactory, null, null, null, null, ownerManager, null, null, null,
             null, null, null, null, null, null, contentOverrideValidator, serviceLevelValidator, null, null,
-            null, productManager, contentManager
+            null, productManager, contentManager, null
         );
 
         when(oc.lookupByKey(eq("testOwner"))).thenReturn(o);
@@ -1029,7 +1072,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
 
         OwnerResource ownerres = new OwnerResource(
             oc, akc, null, i18n, null, null, null, null, null, null, null, null, null, null, null, null, null,
-            null, null, null, null, null, null, null, null, productManager, contentManager
+            null, null, null, null, null, null, null, null, productManager, contentManager, null
         );
 
         ownerres.createActivationKey("testOwner", ak);
@@ -1178,7 +1221,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         OwnerResource thisOwnerResource = new OwnerResource(
             ownerCurator, null, null, i18n, es, null, null, null, importer, null, null,
             null, null, importRecordCurator, null, null, null, null, null, null, contentOverrideValidator,
-            serviceLevelValidator, null, null, null, productManager, contentManager
+            serviceLevelValidator, null, null, null, productManager, contentManager, null
         );
 
         InputPart part = mock(InputPart.class);
@@ -1206,7 +1249,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         OwnerResource thisOwnerResource = new OwnerResource(
             ownerCurator, null, null, i18n, es, eventFactory, null, null, importer, null, null, null, null,
             importRecordCurator, null, null, null, null, null, null, contentOverrideValidator,
-            serviceLevelValidator, null, null, null, productManager, contentManager
+            serviceLevelValidator, null, null, null, productManager, contentManager, null
         );
 
         MultipartInput input = mock(MultipartInput.class);
@@ -1248,7 +1291,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         OwnerResource ownerres = new OwnerResource(
             oc, null, null, i18n, null, null, null, null, null, null, null, null, null, null, null, null,
             null, null, null, null, contentOverrideValidator, serviceLevelValidator, null, null, null,
-            productManager, contentManager
+            productManager, contentManager, null
         );
 
         when(oc.lookupByKey(eq("admin"))).thenReturn(owner);
@@ -1441,7 +1484,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         EntitlementCurator ec = mock(EntitlementCurator.class);
         OwnerResource ownerres = new OwnerResource(
             oc, null, null, i18n, null, null, null, null, null, null, null, null, null, null, null, null, ec,
-            null, null, null, null, null, null, null, null, productManager, contentManager
+            null, null, null, null, null, null, null, null, productManager, contentManager, null
         );
 
         when(oc.lookupByKey(owner.getKey())).thenReturn(owner);
@@ -1463,7 +1506,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         OwnerCurator oc = mock(OwnerCurator.class);
         OwnerResource ownerres = new OwnerResource(
             oc, null, null, i18n, null, null, null, null, null, null, null, null, null, null, null, null,
-            null, null, null, null, null, null, null, null, null, productManager, contentManager
+            null, null, null, null, null, null, null, null, null, productManager, contentManager, null
         );
         ownerres.ownerEntitlements("Taylor Swift", null, null, null, req);
     }
@@ -1485,7 +1528,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
 
         OwnerResource resource = new OwnerResource(
             oc, null, cc, i18n, null, null, null, null, null, cpm, null, null, null, null, null, ecc, ec,
-            ucg, null, null, null, null, null, null, null, productManager, contentManager
+            ucg, null, null, null, null, null, null, null, productManager, contentManager, null
         );
 
         try {
@@ -1521,7 +1564,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
 
         OwnerResource resource = new OwnerResource(
             oc, null, cc, i18n, null, null, null, null, null, cpm, null, null, null, null, null, ecc, ec,
-            ucg, null, null, null, null, null, null, null, productManager, contentManager
+            ucg, null, null, null, null, null, null, null, productManager, contentManager, null
         );
 
         when(oc.lookupByKey(eq("admin"))).thenReturn(owner);
@@ -1553,7 +1596,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
 
         OwnerResource resource = new OwnerResource(
             oc, null, cc, i18n, null, null, null, null, null, cpm, null, null, null, null, null, ecc, ec,
-            ucg, null, null, null, null, null, null, null, productManager, contentManager
+            ucg, null, null, null, null, null, null, null, productManager, contentManager, null
         );
 
         try {
@@ -1584,7 +1627,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
 
         OwnerResource resource = new OwnerResource(
             oc, null, cc, i18n, null, null, null, null, null, cpm, null, null, null, null, null, ecc, ec,
-            ucg, null, null, null, null, null, null, null, productManager, contentManager
+            ucg, null, null, null, null, null, null, null, productManager, contentManager, null
         );
 
         EntitlementCertificate result = resource.createUeberCertificate(principal, "admin");
@@ -1612,7 +1655,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
 
         OwnerResource resource = new OwnerResource(
             oc, null, cc, i18n, null, null, null, null, null, pm, null, null, null, null, null, null, null,
-            null, null, null, null, null, null, null, null, productManager, contentManager
+            null, null, null, null, null, null, null, null, productManager, contentManager, null
         );
 
         Set<String> returnLevels = resource.ownerServiceLevels("owner-A", p, "false");
@@ -102,7 +102,7 @@ public class OwnerResourceUeberCertOperationsTest extends DatabaseTestFixture {
             null, null, consumerTypeCurator, entCertCurator, entitlementCurator, ueberCertGenerator, null,
             null, contentOverrideValidator, serviceLevelValidator, null, null, null, productManager,
             contentManager
-        );
+        , null);
     }
 
     @Test
@@ -1657,6 +1657,102 @@ public class DefaultEntitlementCertServiceAdapterTest {
         assertTrue(!cert.getCert().contains("ENTITLEMENT DATA"));
     }
 
+    @Test
+    public void parallelCertsMatchSerialCerts() throws Exception {
+        Map<String, EntitlementCertificate> serialCerts = generateCertsForTwoPools(
+            new EntitlementCertExecutor(0));
+        Map<String, EntitlementCertificate> parallelCerts = generateCertsForTwoPools(
+            new EntitlementCertExecutor(2));
+
+        assertEquals(serialCerts.keySet(), parallelCerts.keySet());
+        for (String poolId : serialCerts.keySet()) {
+            EntitlementCertificate cert = parallelCerts.get(poolId);
+            assertTrue(cert.getCert().startsWith("CERT-" + cert.getSerial().getId()));
+            assertTrue(cert.getCert().contains("ENTITLEMENT DATA"));
+            assertEquals(serialCerts.get(poolId).getCert(), cert.getCert());
+            assertTrue(cert.getEntitlement().getCertificates().contains(cert));
+        }
+    }
+
+    @Test(expected = GeneralSecurityException.class)
+    public void parallelCertFailureIsRethrown() throws Exception {
+        when(mockedPKI.createX509Certificate(any(String.class), any(Set.class), any(Set.class),
+            any(Date.class), any(Date.class), any(KeyPair.class), any(BigInteger.class),
+            any(String.class))).thenThrow(new GeneralSecurityException("signing failed"));
+
+        generateCertsForTwoPools(new EntitlementCertExecutor(2));
+    }
+
+    private Map<String, EntitlementCertificate> generateCertsForTwoPools(
+        EntitlementCertExecutor executor) throws Exception {
+        entitlement.getCertificates().clear();
+        largeContentEntitlement.getCertificates().clear();
+        consumer.setFact("system.certificate_version", "3.2");
+        when(keyPairCurator.getConsumerKeyPair(any(Consumer.class))).thenReturn(keyPair);
+        when(mockedPKI.getPemEncoded(any(Key.class))).thenReturn("KEY".getBytes());
+        when(mockedPKI.getSHA256WithRSAHash(any(InputStream.class))).thenReturn("SIG".getBytes());
+
+        // the PEM of the signed certificate names the serial it was signed with
+        final Map<Object, BigInteger> signed = new HashMap<Object, BigInteger>();
+        when(mockedPKI.createX509Certificate(any(String.class), any(Set.class), any(Set.class),
+            any(Date.class), any(Date.class), any(KeyPair.class), any(BigInteger.class),
+            any(String.class))).thenAnswer(new Answer<X509Certificate>() {
+                @Override
+                public X509Certificate answer(InvocationOnMock invocation) {
+                    X509Certificate cert = mock(X509Certificate.class);
+                    synchronized (signed) {
+                        signed.put(cert, (BigInteger) invocation.getArguments()[6]);
+                    }
+                    return cert;
+                }
+            });
+        when(mockedPKI.getPemEncoded(any(X509Certificate.class))).thenAnswer(new Answer<byte[]>() {
+            @Override
+            public byte[] answer(InvocationOnMock invocation) {
+                synchronized (signed) {
+                    return ("CERT-" + signed.get(invocation.getArguments()[0])).getBytes();
+                }
+            }
+        });
+
+        pool.setId("poolId");
+        largeContentPool.setId("largePoolId");
+        largeContentPool.setStartDate(pool.getStartDate());
+        largeContentPool.setEndDate(pool.getEndDate());
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                Map<String, CertificateSerial> map =
+                    (Map<String, CertificateSerial>) invocation.getArguments()[0];
+                long id = 1;
+                for (CertificateSerial serial : map.values()) {
+                    serial.setId(id++);
+                }
+                return null;
+            }
+        }).when(serialCurator).saveOrUpdateAll(anyMap());
+
+        Map<String, Entitlement> entitlements = new HashMap<String, Entitlement>();
+        entitlements.put("poolId", entitlement);
+        entitlements.put("largePoolId", largeContentEntitlement);
+        Map<String, Product> products = new HashMap<String, Product>();
+        products.put("poolId", product);
+        products.put("largePoolId", largeContentProduct);
+
+        DefaultEntitlementCertServiceAdapter adapter = new DefaultEntitlementCertServiceAdapter(
+            mockedPKI, extensionUtil, v3extensionUtil,
+            mock(EntitlementCertificateCurator.class),
+            keyPairCurator, serialCurator, entCurator,
+            I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
+            config, executor);
+        try {
+            return adapter.generateEntitlementCerts(consumer, entitlements, products);
+        }
+        finally {
+            executor.close();
+        }
+    }
+
     @Test
     public void testContentExtension() throws IOException {
         Set<Product> products = new HashSet<Product>();
@@ -17,6 +17,7 @@ package org.candlepin.sync;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
@@ -55,21 +56,27 @@ import org.candlepin.test.TestUtil;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -77,6 +84,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 
@@ -106,6 +114,14 @@ public class ExporterTest {
     private CandlepinCommonTestConfig config;
     private ExportRules exportRules;
     private PrincipalProvider pprov;
+    private static java.security.KeyPair signingKeys;
+
+    @BeforeClass
+    public static void createSigningKeys() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        signingKeys = generator.generateKeyPair();
+    }
 
     @Before
     public void setUp() {
@@ -132,6 +148,14 @@ public class ExporterTest {
         cdne = new CdnExporter();
 
         when(exportRules.canExport(any(Entitlement.class))).thenReturn(Boolean.TRUE);
+        when(pki.getSHA256WithRSASigner()).thenAnswer(new Answer<Signature>() {
+            @Override
+            public Signature answer(InvocationOnMock invocation) throws Exception {
+                Signature signer = Signature.getInstance("SHA256withRSA");
+                signer.initSign(signingKeys.getPrivate());
+                return signer;
+            }
+        });
     }
 
     private KeyPair createKeyPair() {
@@ -210,8 +234,6 @@ public class ExporterTest {
 
         when(ent.getPool()).thenReturn(pool);
         when(mrules.getRules()).thenReturn("foobar");
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
         when(rc.getRules()).thenReturn(mrules);
         when(consumer.getEntitlements()).thenReturn(entitlements);
         when(psa.getProductCertificate(any(Owner.class), any(String.class))).thenReturn(pcert);
@@ -262,8 +284,6 @@ public class ExporterTest {
         List<Entitlement> entitlements = new ArrayList<Entitlement>();
         entitlements.add(ent);
 
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
         when(pprov.get()).thenReturn(principal);
         when(principal.getUsername()).thenReturn("testUser");
 
@@ -299,8 +319,6 @@ public class ExporterTest {
         IdentityCertificate idcert = new IdentityCertificate();
 
         when(mrules.getRules()).thenReturn("foobar");
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
         when(rc.getRules()).thenReturn(mrules);
         when(pprov.get()).thenReturn(principal);
         when(principal.getUsername()).thenReturn("testUser");
@@ -335,6 +353,50 @@ public class ExporterTest {
         assertTrue(new File("/tmp/meta.json").delete());
     }
 
+    @Test
+    public void exportIsSignedAsItIsWritten() throws Exception {
+        config.setProperty(ConfigProperties.SYNC_WORK_DIR, "/tmp/");
+        Consumer consumer = mock(Consumer.class);
+        Principal principal = mock(Principal.class);
+        when(pprov.get()).thenReturn(principal);
+        when(principal.getUsername()).thenReturn("testUser");
+
+        Exporter e = new Exporter(ctc, me, ce, cte, re, ece, ecsa, pe, psa,
+            pce, ec, ee, pki, config, exportRules, pprov, dvc, dve, cdnc, cdne);
+        File export = e.getEntitlementExport(consumer, null);
+
+        // Only the signed archive is written
+        assertEquals(Arrays.asList("export.zip"), Arrays.asList(export.getParentFile().list()));
+
+        ZipFile signed = new ZipFile(export);
+        try {
+            List<String> names = new ArrayList<String>();
+            for (ZipEntry entry : Collections.list(signed.entries())) {
+                names.add(entry.getName());
+            }
+            assertEquals(Arrays.asList("consumer_export.zip", "signature"), names);
+
+            byte[] content = IOUtils.toByteArray(
+                signed.getInputStream(signed.getEntry("consumer_export.zip")));
+            byte[] signature = IOUtils.toByteArray(
+                signed.getInputStream(signed.getEntry("signature")));
+
+            Signature verifier = Signature.getInstance("SHA256withRSA");
+            verifier.initVerify(signingKeys.getPublic());
+            verifier.update(content);
+            assertTrue(verifier.verify(signature));
+
+            ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(content));
+            assertEquals("export/meta.json", zis.getNextEntry().getName());
+            assertNull(zis.getNextEntry());
+            zis.close();
+        }
+        finally {
+            signed.close();
+            FileUtils.deleteDirectory(export.getParentFile());
+        }
+    }
+
     @Test
     public void exportIdentityCertificate() throws Exception {
         config.setProperty(ConfigProperties.SYNC_WORK_DIR, "/tmp/");
@@ -343,8 +405,6 @@ public class ExporterTest {
         Principal principal = mock(Principal.class);
 
         when(mrules.getRules()).thenReturn("foobar");
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
         when(rc.getRules()).thenReturn(mrules);
         when(pprov.get()).thenReturn(principal);
         when(principal.getUsername()).thenReturn("testUser");
@@ -387,8 +447,6 @@ public class ExporterTest {
         Principal principal = mock(Principal.class);
 
         when(mrules.getRules()).thenReturn("foobar");
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
         when(rc.getRules()).thenReturn(mrules);
         when(pprov.get()).thenReturn(principal);
         when(principal.getUsername()).thenReturn("testUser");
@@ -431,8 +489,6 @@ public class ExporterTest {
         Principal principal = mock(Principal.class);
 
         when(mrules.getRules()).thenReturn("foobar");
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
         when(rc.getRules()).thenReturn(mrules);
         when(pprov.get()).thenReturn(principal);
         when(principal.getUsername()).thenReturn("testUser");
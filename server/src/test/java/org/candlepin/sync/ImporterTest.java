@@ -19,6 +19,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
@@ -64,9 +65,12 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.xnap.commons.i18n.I18n;
 import org.xnap.commons.i18n.I18nFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -76,7 +80,11 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.io.Reader;
 import java.net.URISyntaxException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.security.Security;
+import java.security.Signature;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -142,7 +150,7 @@ public class ImporterTest {
         em.setType(ExporterMetadata.TYPE_SYSTEM);
         when(emc.lookupByType(ExporterMetadata.TYPE_SYSTEM)).thenReturn(em);
         Importer i = new Importer(null, null, null, null, null, null,
-            null, null, null, emc, null, null, i18n, null, null);
+            null, null, null, emc, null, null, i18n, null, null, null);
         i.validateMetadata(ExporterMetadata.TYPE_SYSTEM, null, actual,
             new ConflictOverrides());
 
@@ -166,7 +174,7 @@ public class ImporterTest {
         ExporterMetadataCurator emc = mock(ExporterMetadataCurator.class);
         when(emc.lookupByType(ExporterMetadata.TYPE_SYSTEM)).thenReturn(null);
         Importer i = new Importer(null, null, null, null, null, null,
-            null, null, null, emc, null, null, i18n, null, null);
+            null, null, null, emc, null, null, i18n, null, null, null);
         i.validateMetadata(ExporterMetadata.TYPE_SYSTEM, null, actualmeta,
             new ConflictOverrides());
         assertTrue(f.delete());
@@ -187,7 +195,7 @@ public class ImporterTest {
         em.setType(ExporterMetadata.TYPE_SYSTEM);
         when(emc.lookupByType(ExporterMetadata.TYPE_SYSTEM)).thenReturn(em);
         Importer i = new Importer(null, null, null, null, null, null,
-            null, null, null, emc, null, null, i18n, null, null);
+            null, null, null, emc, null, null, i18n, null, null, null);
         try {
             i.validateMetadata(ExporterMetadata.TYPE_SYSTEM, null, actualmeta,
                 new ConflictOverrides());
@@ -215,7 +223,7 @@ public class ImporterTest {
         em.setType(ExporterMetadata.TYPE_SYSTEM);
         when(emc.lookupByType(ExporterMetadata.TYPE_SYSTEM)).thenReturn(em);
         Importer i = new Importer(null, null, null, null, null, null,
-            null, null, null, emc, null, null, i18n, null, null);
+            null, null, null, emc, null, null, i18n, null, null, null);
         try {
             i.validateMetadata(ExporterMetadata.TYPE_SYSTEM, null, actualmeta,
                 new ConflictOverrides());
@@ -263,7 +271,7 @@ public class ImporterTest {
         em.setType(ExporterMetadata.TYPE_SYSTEM);
         when(emc.lookupByType(ExporterMetadata.TYPE_SYSTEM)).thenReturn(em);
         Importer i = new Importer(null, null, null, null, null, null,
-            null, null, null, emc, null, null, i18n, null, null);
+            null, null, null, emc, null, null, i18n, null, null, null);
         i.validateMetadata(ExporterMetadata.TYPE_SYSTEM, null, actualmeta,
             new ConflictOverrides());
         assertEquals(importDate, em.getExported());
@@ -275,7 +283,7 @@ public class ImporterTest {
             "test_user", "prefix");
         try {
             Importer i = new Importer(null, null, null, null, null, null,
-                null, null, null, null, null, null, i18n, null, null);
+                null, null, null, null, null, null, i18n, null, null, null);
 
             // null Type should cause exception
             i.validateMetadata(null, null, actualmeta, new ConflictOverrides());
@@ -293,7 +301,7 @@ public class ImporterTest {
         when(emc.lookupByTypeAndOwner(ExporterMetadata.TYPE_PER_USER, null))
             .thenReturn(null);
         Importer i = new Importer(null, null, null, null, null, null,
-            null, null, null, emc, null, null, i18n, null, null);
+            null, null, null, emc, null, null, i18n, null, null, null);
 
         // null Type should cause exception
         i.validateMetadata(ExporterMetadata.TYPE_PER_USER, null, actualmeta,
@@ -305,7 +313,7 @@ public class ImporterTest {
     public void testImportWithNonZipArchive()
         throws IOException, ImporterException {
         Importer i = new Importer(null, null, null, null, null, null,
-            null, null, config, null, null, null, i18n, null, null);
+            null, null, config, null, null, null, i18n, null, null, null);
         Owner owner = mock(Owner.class);
         ConflictOverrides co = mock(ConflictOverrides.class);
         File archive = new File(folder.getRoot(), "non_zip_file.zip");
@@ -328,7 +336,7 @@ public class ImporterTest {
     public void testImportZipArchiveNoContent()
         throws IOException, ImporterException {
         Importer i = new Importer(null, null, null, null, null, null,
-            null, null, config, null, null, null, i18n, null, null);
+            null, null, config, null, null, null, i18n, null, null, null);
         Owner owner = mock(Owner.class);
         ConflictOverrides co = mock(ConflictOverrides.class);
 
@@ -353,7 +361,7 @@ public class ImporterTest {
         throws IOException, ImporterException {
         PKIUtility pki = mock(PKIUtility.class);
         Importer i = new Importer(null, null, null, null, null, null, null,
-            pki, config, null, null, null, i18n, null, null);
+            pki, config, null, null, null, i18n, null, null, null);
         Owner owner = mock(Owner.class);
         ConflictOverrides co = mock(ConflictOverrides.class);
 
@@ -375,12 +383,12 @@ public class ImporterTest {
     public void testImportBadConsumerZip() throws Exception {
         PKIUtility pki = mock(PKIUtility.class);
         Importer i = new Importer(null, null, null, null, null, null, null,
-            pki, config, null, null, null, i18n, null, null);
+            pki, config, null, null, null, i18n, null, null, null);
         Owner owner = mock(Owner.class);
         ConflictOverrides co = mock(ConflictOverrides.class);
 
         // Mock a passed signature check:
-        when(pki.verifySHA256WithRSAHashAgainstCACerts(any(File.class),
+        when(pki.verifySHA256WithRSAHash(anyListOf(Signature.class),
             any(byte [].class))).thenReturn(true);
 
         File archive = new File(folder.getRoot(), "file.zip");
@@ -410,12 +418,12 @@ public class ImporterTest {
         throws Exception {
         PKIUtility pki = mock(PKIUtility.class);
         Importer i = new Importer(null, null, null, null, null, null, null,
-            pki, config, null, null, null, i18n, null, null);
+            pki, config, null, null, null, i18n, null, null, null);
         Owner owner = mock(Owner.class);
         ConflictOverrides co = mock(ConflictOverrides.class);
 
         // Mock a passed signature check:
-        when(pki.verifySHA256WithRSAHashAgainstCACerts(any(File.class),
+        when(pki.verifySHA256WithRSAHash(anyListOf(Signature.class),
             any(byte [].class))).thenReturn(true);
 
         File archive = new File(folder.getRoot(), "file.zip");
@@ -439,6 +447,77 @@ public class ImporterTest {
         fail();
     }
 
+    private File createSignedArchive(byte[] content, KeyPair signingKey, boolean tamper)
+        throws Exception {
+        Signature signer = Signature.getInstance("SHA256withRSA");
+        signer.initSign(signingKey.getPrivate());
+        signer.update(content);
+        byte[] signature = signer.sign();
+        if (tamper) {
+            content[content.length - 1]++;
+        }
+
+        File archive = new File(folder.getRoot(), "file.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+        out.putNextEntry(new ZipEntry("signature"));
+        out.write(signature);
+        out.putNextEntry(new ZipEntry("consumer_export.zip"));
+        out.write(content);
+        out.close();
+        return archive;
+    }
+
+    private Importer createVerifyingImporter(KeyPair signingKey) throws Exception {
+        PKIUtility pki = mock(PKIUtility.class);
+        final Signature verifier = Signature.getInstance("SHA256withRSA");
+        verifier.initVerify(signingKey.getPublic());
+        when(pki.getSHA256WithRSAVerifiers()).thenReturn(Arrays.asList(verifier));
+        when(pki.verifySHA256WithRSAHash(anyListOf(Signature.class), any(byte [].class)))
+            .thenAnswer(new Answer<Boolean>() {
+                @Override
+                public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                    return verifier.verify((byte[]) invocation.getArguments()[1]);
+                }
+            });
+        return new Importer(null, null, null, null, null, null, null,
+            pki, config, null, null, null, i18n, null, null, null);
+    }
+
+    @Test
+    public void testImportVerifiesSignatureWhileReading() throws Exception {
+        KeyPair signingKey = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        ZipOutputStream cezip = new ZipOutputStream(content);
+        cezip.putNextEntry(new ZipEntry("no_content"));
+        cezip.close();
+
+        File archive = createSignedArchive(content.toByteArray(), signingKey, false);
+        try {
+            createVerifyingImporter(signingKey).loadExport(mock(Owner.class), archive,
+                mock(ConflictOverrides.class));
+        }
+        catch (ImportExtractionException e) {
+            // The signature passed, and the empty content was read:
+            assertTrue(e.getMessage().contains("consumer_export archive has no contents"));
+            return;
+        }
+        fail();
+    }
+
+    @Test(expected = ImportConflictException.class)
+    public void testImportTamperedContentFailsSignature() throws Exception {
+        KeyPair signingKey = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        ZipOutputStream cezip = new ZipOutputStream(content);
+        cezip.putNextEntry(new ZipEntry("export/meta.json"));
+        cezip.write("{}".getBytes());
+        cezip.close();
+
+        File archive = createSignedArchive(content.toByteArray(), signingKey, true);
+        createVerifyingImporter(signingKey).loadExport(mock(Owner.class), archive,
+            mock(ConflictOverrides.class));
+    }
+
     private Map<String, File> getTestImportFiles() {
         Map<String, File> importFiles = new HashMap<String, File>();
         importFiles.put(ImportFile.META.fileName(), mock(File.class));
@@ -454,7 +533,7 @@ public class ImporterTest {
     @Test
     public void testImportNoMeta() throws IOException {
         Importer i = new Importer(null, null, null, null, null, null, null,
-            null, config, null, null, null, i18n, null, null);
+            null, config, null, null, null, i18n, null, null, null);
         Owner owner = mock(Owner.class);
         ConflictOverrides co = mock(ConflictOverrides.class);
 
@@ -475,7 +554,7 @@ public class ImporterTest {
     @Test
     public void testImportNoConsumerTypesDir() throws IOException {
         Importer i = new Importer(null, null, null, null, null, null, null,
-            null, config, null, null, null, i18n, null, null);
+            null, config, null, null, null, i18n, null, null, null);
         Owner owner = mock(Owner.class);
         ConflictOverrides co = mock(ConflictOverrides.class);
         Map<String, File> importFiles = getTestImportFiles();
@@ -496,7 +575,7 @@ public class ImporterTest {
     @Test
     public void testImportNoConsumer() throws IOException {
         Importer i = new Importer(null, null, null, null, null, null, null,
-            null, config, null, null, null, i18n, null, null);
+            null, config, null, null, null, i18n, null, null, null);
         Owner owner = mock(Owner.class);
         ConflictOverrides co = mock(ConflictOverrides.class);
         Map<String, File> importFiles = getTestImportFiles();
@@ -519,7 +598,7 @@ public class ImporterTest {
         throws IOException, ImporterException {
         RulesImporter ri = mock(RulesImporter.class);
         Importer i = new Importer(null, null, ri, null, null, null, null,
-            null, config, null, null, null, i18n, null, null);
+            null, config, null, null, null, i18n, null, null, null);
         Owner owner = mock(Owner.class);
         ConflictOverrides co = mock(ConflictOverrides.class);
         Map<String, File> importFiles = getTestImportFiles();
@@ -615,7 +694,7 @@ public class ImporterTest {
         ConflictOverrides co = mock(ConflictOverrides.class);
 
         Importer i = new Importer(ctc, null, ri, oc, null, null, pm,
-            null, config, emc, null, null, i18n, null, null);
+            null, config, emc, null, null, i18n, null, null, null);
         List<Subscription> subscriptions = i.importObjects(owner, importFiles, co);
 
         assertEquals(1, subscriptions.size());
@@ -627,7 +706,7 @@ public class ImporterTest {
     @Test
     public void testImportProductNoEntitlementDir() throws IOException {
         Importer i = new Importer(null, null, null, null, null, null, null,
-            null, config, null, null, null, i18n, null, null);
+            null, config, null, null, null, i18n, null, null, null);
         Owner owner = mock(Owner.class);
         ConflictOverrides co = mock(ConflictOverrides.class);
         Map<String, File> importFiles = getTestImportFiles();
@@ -712,7 +791,7 @@ public class ImporterTest {
         Importer i = new Importer(ctc, null, null, oc,
             mock(IdentityCertificateCurator.class), null, null,
             pki, null, null, mock(CertificateSerialCurator.class), null, i18n, null,
-            null);
+            null, null);
         File[] upstream = new File[2];
         File idcertfile = new File(classLoader.getResource("upstream/testidcert.json").toURI());
         File kpfile = new File(classLoader.getResource("upstream/keypair.pem").toURI());
@@ -748,7 +827,7 @@ public class ImporterTest {
     public void importDistributorVersionCreate() throws Exception {
         DistributorVersionCurator dvc = mock(DistributorVersionCurator.class);
         Importer i = new Importer(null, null, null, null, null, null,
-            null, null, null, null, null, null, i18n, dvc, null);
+            null, null, null, null, null, null, i18n, dvc, null, null);
         File[] distVer = new File[1];
         distVer[0] = new File(folder.getRoot(), "dist-ver.json");
         mapper.writeValue(distVer[0], createTestDistributerVersion());
@@ -763,7 +842,7 @@ public class ImporterTest {
     public void importDistributorVersionUpdate() throws Exception {
         DistributorVersionCurator dvc = mock(DistributorVersionCurator.class);
         Importer i = new Importer(null, null, null, null, null, null,
-            null, null, null, null, null, null, i18n, dvc, null);
+            null, null, null, null, null, null, i18n, dvc, null, null);
         when(dvc.findByName("test-dist-ver")).thenReturn(
             new DistributorVersion("test-dist-ver"));
         File[] distVer = new File[1];
@@ -782,7 +861,7 @@ public class ImporterTest {
         RulesImporter ri = mock(RulesImporter.class);
         ExporterMetadataCurator emc = mock(ExporterMetadataCurator.class);
         Importer i = new Importer(null, null, ri, null, null, null,
-            null, null, config, emc, null, null, i18n, null, null);
+            null, null, config, emc, null, null, i18n, null, null, null);
         Owner owner = mock(Owner.class);
         ConflictOverrides co = mock(ConflictOverrides.class);
         Map<String, File> importFiles = getTestImportFiles();
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.sync;
+
+import static org.junit.Assert.*;
+
+import org.candlepin.model.ExporterMetadata;
+import org.candlepin.model.ExporterMetadataCurator;
+import org.candlepin.model.Owner;
+import org.candlepin.test.DatabaseTestFixture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.inject.Inject;
+
+
+
+/**
+ * ImporterTransactionTest
+ */
+public class ImporterTransactionTest extends DatabaseTestFixture {
+    @Inject private Importer importer;
+    @Inject private ExporterMetadataCurator expMetaCurator;
+
+    private Owner owner;
+    private File file;
+    private ManifestArchive archive;
+
+    @Before
+    public void setUp() throws IOException {
+        owner = createOwner();
+        file = File.createTempFile("consumer_export", ".zip");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (archive != null) {
+            archive.close();
+        }
+        file.delete();
+    }
+
+    @Test
+    public void failedImportIsRolledBack() throws Exception {
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+        addEntry(zip, "export/meta.json", "{\"version\":\"0.0.0\",\"created\":\"2015-01-01\"}");
+        addEntry(zip, "export/consumer_types/rollback.json",
+            "{\"label\":\"rollback_type\",\"manifest\":true}");
+        addEntry(zip, "export/consumer.json", "{not json");
+        zip.close();
+        archive = new ManifestArchive(file, false);
+
+        try {
+            importer.importObjects(owner, archive, new ConflictOverrides());
+            fail("The consumer should not have been imported");
+        }
+        catch (IOException e) {
+            // expected
+        }
+
+        // The consumer type and metadata were written before the consumer failed
+        assertNull(consumerTypeCurator.lookupByLabel("rollback_type"));
+        assertNull(expMetaCurator.lookupByTypeAndOwner(ExporterMetadata.TYPE_PER_USER, owner));
+    }
+
+    private void addEntry(ZipOutputStream zip, String path, String content)
+        throws IOException {
+        zip.putNextEntry(new ZipEntry(path));
+        zip.write(content.getBytes());
+        zip.closeEntry();
+    }
+}
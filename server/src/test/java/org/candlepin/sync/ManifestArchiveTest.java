@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.sync;
+
+import static org.junit.Assert.*;
+
+import org.candlepin.common.config.MapConfiguration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.Owner;
+import org.candlepin.model.Product;
+import org.candlepin.test.TestUtil;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+
+
+/**
+ * ManifestArchiveTest
+ */
+public class ManifestArchiveTest {
+    private ObjectMapper mapper;
+    private Owner owner = new Owner("Test Corporation");
+    private Set<Product> products;
+    private ByteArrayOutputStream bytes;
+    private ZipOutputStream zip;
+    private File file;
+    private ManifestArchive archive;
+    private ImportExecutor executor = new ImportExecutor(4);
+
+    @Before
+    public void setUp() throws IOException {
+        mapper = SyncUtils.getObjectMapper(new MapConfiguration(
+            new HashMap<String, String>() {
+                {
+                    put(ConfigProperties.FAIL_ON_UNKNOWN_IMPORT_PROPERTIES, "false");
+                }
+            }
+        ));
+
+        bytes = new ByteArrayOutputStream();
+        zip = new ZipOutputStream(bytes);
+        addEntry("export/meta.json", "{}");
+        addEntry("export/consumer_types/system.json", "{\"label\":\"system\"}");
+        addEntry("export/upstream_consumer/1.json", "{}");
+        addEntry("export/upstream_consumer/1.pem", "cert");
+        addEntry("not_exported.json", "{}");
+
+        products = new HashSet<Product>();
+        for (int i = 0; i < 5; i++) {
+            Product product = TestUtil.createProduct();
+            products.add(product);
+            addEntry("export/products/" + product.getId() + ".json",
+                mapper.writeValueAsString(product));
+            addEntry("export/products/" + product.getId() + ".pem", "cert");
+        }
+        for (int i = 0; i < 5; i++) {
+            addEntry("export/entitlements/ent" + i + ".json", "{\"id\":\"ent" + i + "\"}");
+        }
+    }
+
+    private void addEntry(String path, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(path));
+        zip.write(content.getBytes());
+        zip.closeEntry();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.close();
+        if (archive != null) {
+            archive.close();
+            assertFalse(file.exists());
+        }
+        else if (file != null) {
+            file.delete();
+        }
+    }
+
+    private ManifestArchive read() throws IOException {
+        zip.close();
+        file = File.createTempFile("consumer_export", ".zip");
+        FileUtils.writeByteArrayToFile(file, bytes.toByteArray());
+        archive = new ManifestArchive(file, true);
+        return archive;
+    }
+
+    @Test
+    public void readsExportedFiles() throws IOException {
+        read();
+
+        assertFalse(archive.isEmpty());
+        assertTrue(archive.contains("meta.json"));
+        assertTrue(archive.contains("upstream_consumer"));
+        assertFalse(archive.contains("upstream"));
+        assertFalse(archive.contains("not_exported.json"));
+        assertFalse(archive.contains("rules2/rules.js"));
+        assertNull(archive.getReader("rules2/rules.js"));
+
+        assertEquals(Arrays.asList("upstream_consumer/1.json", "upstream_consumer/1.pem"),
+            archive.list("upstream_consumer"));
+        assertEquals("{\"label\":\"system\"}",
+            IOUtils.toString(archive.getReader("consumer_types/system.json")));
+        assertEquals("1.pem", ManifestArchive.getName("upstream_consumer/1.pem"));
+    }
+
+    @Test
+    public void listsDirectChildrenOnly() throws IOException {
+        addEntry("export/products/nested/1.json", "{}");
+        read();
+
+        assertEquals(products.size() * 2, archive.list("products").size());
+        assertEquals(Arrays.asList("products/nested/1.json"), archive.list("products/nested"));
+    }
+
+    @Test(expected = ZipException.class)
+    public void notAnArchive() throws IOException {
+        file = File.createTempFile("consumer_export", ".zip");
+        FileUtils.writeStringToFile(file, "flat file");
+        new ManifestArchive(file, true);
+    }
+
+    @Test
+    public void readsEntriesStillOpenWhenClosed() throws IOException {
+        Reader reader = read().getReader("meta.json");
+        archive.close();
+        archive = null;
+
+        assertFalse(file.exists());
+        try {
+            reader.read();
+            fail("The entry should have been closed with the archive");
+        }
+        catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void parsesInParallel() throws IOException {
+        read();
+        archive.parse(mapper, owner, executor);
+
+        assertEquals(products, archive.getProducts());
+        assertEquals(5, archive.getEntitlements().size());
+        Set<String> ids = new HashSet<String>();
+        for (Entitlement entitlement : archive.getEntitlements()) {
+            ids.add(entitlement.getId());
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("ent0", "ent1", "ent2", "ent3", "ent4")),
+            ids);
+    }
+
+    @Test
+    public void parsesOnTheCallingThread() throws IOException {
+        read();
+        archive.parse(mapper, owner, new ImportExecutor(0));
+
+        assertEquals(products, archive.getProducts());
+        assertEquals(5, archive.getEntitlements().size());
+    }
+
+    @Test(expected = IOException.class)
+    public void parseFailuresAreRethrown() throws IOException {
+        addEntry("export/entitlements/broken.json", "{not json");
+        read().parse(mapper, owner, executor);
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+
+
+
+/**
+ * BatchExecutorTest
+ */
+public class BatchExecutorTest {
+    private BatchExecutor executor = new BatchExecutor("test", 2);
+
+    @After
+    public void tearDown() {
+        executor.close();
+    }
+
+    private Callable<String> threadName() {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                Thread thread = Thread.currentThread();
+                return thread.getName() + (thread.isDaemon() ? ":daemon" : "");
+            }
+        };
+    }
+
+    @Test
+    public void zeroThreadsIsDisabled() {
+        assertFalse(new BatchExecutor("test", 0).isEnabled());
+        assertTrue(executor.isEnabled());
+        assertEquals(2, executor.getThreads());
+    }
+
+    @Test
+    public void runsOnNamedDaemonThreads() throws Exception {
+        String name = executor.submit(threadName()).get();
+        assertTrue(name, name.matches("test-[12]:daemon"));
+    }
+
+    @Test
+    public void batchesShareTheThreads() throws Exception {
+        CompletionService<String> batch = executor.newBatch();
+        for (int i = 0; i < 10; i++) {
+            batch.submit(threadName());
+        }
+
+        Set<String> names = new HashSet<String>();
+        for (int i = 0; i < 10; i++) {
+            names.add(batch.take().get());
+        }
+        assertTrue(names.size() <= 2);
+    }
+
+    @Test
+    public void restartsAfterClose() throws Exception {
+        executor.submit(threadName()).get();
+        executor.close();
+        assertNotNull(executor.submit(threadName()).get());
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.model.EntitlementCurator;
+import org.candlepin.model.EnvironmentContent;
+import org.candlepin.model.Product;
+import org.candlepin.model.dto.Content;
+import org.candlepin.pki.X509ByteExtensionWrapper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * ContentPayloadCacheTest
+ */
+public class ContentPayloadCacheTest {
+
+    private ContentPayloadCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ContentPayloadCache(2);
+    }
+
+    @Test
+    public void hitsAndMissesAreCounted() {
+        List<String> paths = Arrays.asList("/a/b", "/a/c");
+        assertNull(cache.get(paths));
+        cache.put(paths, new byte[] {1, 2});
+        assertArrayEquals(new byte[] {1, 2}, cache.get(Arrays.asList("/a/b", "/a/c")));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void missOnChangedPaths() {
+        cache.put(Arrays.asList("/a/b"), new byte[] {1});
+        assertNull(cache.get(Arrays.asList("/prefix/a/b")));
+        assertNull(cache.get(Arrays.asList("/a/b", "/a/c")));
+    }
+
+    @Test
+    public void storedPayloadIsCopied() {
+        List<String> paths = new ArrayList<String>(Arrays.asList("/a/b"));
+        byte[] payload = new byte[] {1};
+        cache.put(paths, payload);
+        payload[0] = 2;
+        paths.add("/a/c");
+
+        byte[] cached = cache.get(Arrays.asList("/a/b"));
+        assertArrayEquals(new byte[] {1}, cached);
+        cached[0] = 3;
+        assertArrayEquals(new byte[] {1}, cache.get(Arrays.asList("/a/b")));
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        cache.put(Arrays.asList("/1"), new byte[] {1});
+        cache.put(Arrays.asList("/2"), new byte[] {2});
+        cache.get(Arrays.asList("/1"));
+        cache.put(Arrays.asList("/3"), new byte[] {3});
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(Arrays.asList("/1")));
+        assertNull(cache.get(Arrays.asList("/2")));
+        assertNotNull(cache.get(Arrays.asList("/3")));
+    }
+
+    @Test
+    public void zeroSizeDisablesCache() {
+        cache = new ContentPayloadCache(0);
+        cache.put(Arrays.asList("/a"), new byte[] {1});
+        assertNull(cache.get(Arrays.asList("/a")));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void certificatesWithSameContentShareTree() throws Exception {
+        X509V3ExtensionUtil util = new X509V3ExtensionUtil(mock(Configuration.class),
+            mock(EntitlementCurator.class), cache);
+        List<org.candlepin.model.dto.Product> products = Collections.singletonList(
+            product("/content/dist/rhel/$basearch/os", "/content/dist/rhel/$basearch/debug"));
+
+        byte[] first = contentTree(util, products);
+        byte[] second = contentTree(util, products);
+
+        assertEquals(1, cache.getHits());
+        assertArrayEquals(first, second);
+        List<String> urls = util.hydrateContentPackage(second);
+        assertEquals(2, urls.size());
+        assertTrue(urls.contains("/content/dist/rhel/$basearch/os"));
+        assertTrue(urls.contains("/content/dist/rhel/$basearch/debug"));
+
+        contentTree(util, Collections.singletonList(product("/content/beta/rhel/$basearch/os")));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.size());
+    }
+
+    private org.candlepin.model.dto.Product product(String... paths) {
+        List<Content> contents = new ArrayList<Content>();
+        for (String path : paths) {
+            Content content = new Content();
+            content.setPath(path);
+            contents.add(content);
+        }
+        org.candlepin.model.dto.Product product = new org.candlepin.model.dto.Product();
+        product.setContent(contents);
+        return product;
+    }
+
+    private byte[] contentTree(X509V3ExtensionUtil util,
+        List<org.candlepin.model.dto.Product> products) throws Exception {
+        X509ByteExtensionWrapper ext = util.getByteExtensions(new Product("sku", "SKU"), products,
+            null, null, new HashMap<String, EnvironmentContent>()).iterator().next();
+        return ext.getValue();
+    }
+}
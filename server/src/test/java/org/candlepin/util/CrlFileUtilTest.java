@@ -16,8 +16,10 @@ package org.candlepin.util;
 
 import static org.candlepin.test.MatchesPattern.matchesPattern;
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
 
 import org.candlepin.TestingModules;
+import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.CertificateSerialCurator;
 import org.candlepin.pki.PKIReader;
 import org.candlepin.pki.PKIUtility;
@@ -47,7 +49,10 @@ import java.security.cert.CertificateFactory;
 import java.security.cert.X509CRL;
 import java.security.cert.X509CRLEntry;
 import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.Set;
 
 import javax.inject.Inject;
@@ -85,6 +90,7 @@ public class CrlFileUtilTest {
     @After
     public void tearDown() {
         temp.delete();
+        CrlSerialIndex.indexFileFor(temp).delete();
     }
 
     @Test
@@ -215,6 +221,123 @@ public class CrlFileUtilTest {
         assertFalse(new ContainsSerials(temp).matchesSafely(unrevoke));
     }
 
+    private CertificateSerial serial(long id, Date expiration) {
+        return new CertificateSerial(id, expiration);
+    }
+
+    private Date days(int days) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.DATE, days);
+        return calendar.getTime();
+    }
+
+    @Test
+    public void testSyncIndexesCRL() throws Exception {
+        this.cfu.initializeCRLFile(temp, initialEntry);
+        when(certSerialCurator.retrieveTobeCollectedSerials()).thenReturn(Arrays.asList(
+            serial(1341L, days(30)), serial(5235L, days(30))));
+
+        this.cfu.syncCRLWithDB(temp);
+
+        assertThat(new HashSet<BigInteger>(Arrays.asList(BigInteger.ONE, BigInteger.valueOf(1341L),
+            BigInteger.valueOf(5235L))), new ContainsSerials(temp));
+        CrlSerialIndex index = CrlSerialIndex.open(temp);
+        assertNotNull(index);
+        assertEquals(3, index.size());
+        assertTrue(index.contains(BigInteger.valueOf(5235L)));
+        assertEquals(CrlSerialIndex.UNKNOWN_EXPIRATION, index.getExpiration(0));
+        assertEquals(days(30).getTime(), index.getExpiration(1), 60000);
+    }
+
+    @Test
+    public void testSyncExpiresIndexedSerialsWithoutDatabase() throws Exception {
+        this.cfu.initializeCRLFile(temp, new HashSet<BigInteger>());
+        when(certSerialCurator.retrieveTobeCollectedSerials()).thenReturn(Arrays.asList(
+            serial(2011L, days(-2)), serial(2012L, days(30)), serial(2013L, days(30))));
+        this.cfu.syncCRLWithDB(temp);
+
+        when(certSerialCurator.retrieveTobeCollectedSerials()).thenReturn(Arrays.asList(
+            serial(2014L, days(30))));
+        this.cfu.syncCRLWithDB(temp);
+
+        Set<BigInteger> expected = new HashSet<BigInteger>(Arrays.asList(BigInteger.valueOf(2012L),
+            BigInteger.valueOf(2013L), BigInteger.valueOf(2014L)));
+        assertThat(expected, new ContainsSerials(temp));
+        assertFalse(new ContainsSerials(temp).matchesSafely(
+            new HashSet<BigInteger>(Arrays.asList(BigInteger.valueOf(2011L)))));
+        assertEquals(3, CrlSerialIndex.open(temp).size());
+
+        // Every entry was indexed with its expiration, so the database was not needed
+        verify(certSerialCurator, never()).getExpiredSerials();
+    }
+
+    @Test
+    public void testSyncUsesDatabaseForEntriesWithUnknownExpiration() throws Exception {
+        Set<BigInteger> prime = new HashSet<BigInteger>(Arrays.asList(
+            new BigInteger("3001"), new BigInteger("3002"), new BigInteger("3003")));
+        this.cfu.initializeCRLFile(temp, prime);
+        when(certSerialCurator.retrieveTobeCollectedSerials())
+            .thenReturn(new LinkedList<CertificateSerial>());
+        when(certSerialCurator.getExpiredSerials()).thenReturn(Arrays.asList(
+            serial(3002L, days(-2)), serial(4000L, days(-2))));
+
+        this.cfu.syncCRLWithDB(temp);
+
+        assertThat(new HashSet<BigInteger>(Arrays.asList(new BigInteger("3001"), new BigInteger("3003"))),
+            new ContainsSerials(temp));
+        assertFalse(new ContainsSerials(temp).matchesSafely(
+            new HashSet<BigInteger>(Arrays.asList(new BigInteger("3002")))));
+        assertFalse(CrlSerialIndex.open(temp).contains(new BigInteger("3002")));
+    }
+
+    @Test
+    public void testSyncRebuildsStaleIndex() throws Exception {
+        this.cfu.initializeCRLFile(temp, initialEntry);
+        when(certSerialCurator.retrieveTobeCollectedSerials()).thenReturn(Arrays.asList(
+            serial(5001L, days(30))));
+        this.cfu.syncCRLWithDB(temp);
+
+        // Changed behind the index's back
+        this.cfu.updateCRLFile(temp, Arrays.asList(BigInteger.valueOf(5002L)), null);
+        assertNull(CrlSerialIndex.open(temp));
+
+        when(certSerialCurator.retrieveTobeCollectedSerials()).thenReturn(Arrays.asList(
+            serial(5002L, days(30)), serial(5003L, days(30))));
+        this.cfu.syncCRLWithDB(temp);
+
+        CrlSerialIndex index = CrlSerialIndex.open(temp);
+        assertEquals(4, index.size());
+        assertThat(new HashSet<BigInteger>(Arrays.asList(BigInteger.ONE, BigInteger.valueOf(5001L),
+            BigInteger.valueOf(5002L), BigInteger.valueOf(5003L))), new ContainsSerials(temp));
+    }
+
+    @Test
+    public void testSyncSurvivesIndexOutOfStepWithCRL() throws Exception {
+        this.cfu.initializeCRLFile(temp, initialEntry);
+        when(certSerialCurator.retrieveTobeCollectedSerials()).thenReturn(Arrays.asList(
+            serial(6001L, days(30))));
+        this.cfu.syncCRLWithDB(temp);
+
+        // An index listing an expired entry the CRL does not have
+        CrlSerialIndex index = CrlSerialIndex.open(temp);
+        new CrlSerialIndex.Builder()
+            .add(BigInteger.ONE, CrlSerialIndex.UNKNOWN_EXPIRATION, index.getEntryLength(0))
+            .add(BigInteger.valueOf(6001L), days(30).getTime(), index.getEntryLength(1))
+            .add(BigInteger.valueOf(6002L), days(-2).getTime(), index.getEntryLength(1))
+            .build().write(temp);
+
+        when(certSerialCurator.retrieveTobeCollectedSerials()).thenReturn(Arrays.asList(
+            serial(6003L, days(30))));
+        this.cfu.syncCRLWithDB(temp);
+
+        assertThat(new HashSet<BigInteger>(Arrays.asList(BigInteger.ONE, BigInteger.valueOf(6001L),
+            BigInteger.valueOf(6003L))), new ContainsSerials(temp));
+        index = CrlSerialIndex.open(temp);
+        assertEquals(3, index.size());
+        assertFalse(index.contains(BigInteger.valueOf(6002L)));
+        assertTrue(index.contains(BigInteger.valueOf(6003L)));
+    }
+
     public class ContainsSerials extends TypeSafeMatcher<Set<BigInteger>> {
         private Set<BigInteger> serials;
 
@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.io.FileUtils;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.X509Extension;
+import org.bouncycastle.cert.X509CRLHolder;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.x509.extension.AuthorityKeyIdentifierStructure;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+
+public class X509CRLMappedReaderTest {
+    private static final BouncyCastleProvider BC = new BouncyCastleProvider();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File derFile;
+
+    private X500Name issuer;
+    private ContentSigner signer;
+    private KeyPair keyPair;
+
+    @Before
+    public void setUp() throws Exception {
+        URL url = X509CRLMappedReaderTest.class.getClassLoader().getResource("crl.der");
+        derFile = new File(url.getFile());
+
+        issuer = new X500Name("CN=Test Issuer");
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+
+        signer = new JcaContentSignerBuilder("SHA256WithRSAEncryption")
+            .setProvider(BC)
+            .build(keyPair.getPrivate());
+    }
+
+    private X509v2CRLBuilder createCRLBuilder() throws Exception {
+        X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(issuer, new Date());
+        crlBuilder.addExtension(X509Extension.authorityKeyIdentifier, false,
+            new AuthorityKeyIdentifierStructure(keyPair.getPublic()));
+        crlBuilder.addExtension(X509Extension.cRLNumber, false, new CRLNumber(new BigInteger("127")));
+        return crlBuilder;
+    }
+
+    private File writeCRL(X509CRLHolder crl) throws Exception {
+        File crlFile = new File(folder.getRoot(), "test.crl");
+        FileUtils.writeByteArrayToFile(crlFile, crl.getEncoded());
+        return crlFile;
+    }
+
+    @Test
+    public void testLookupSerials() throws Exception {
+        InputStream referenceStream = new FileInputStream(derFile);
+        CertificateFactory cf = CertificateFactory.getInstance("X.509");
+        X509CRL referenceCrl = (X509CRL) cf.generateCRL(referenceStream);
+        referenceStream.close();
+
+        Set<BigInteger> referenceSerials = new HashSet<BigInteger>();
+        for (X509CRLEntry entry : referenceCrl.getRevokedCertificates()) {
+            referenceSerials.add(entry.getSerialNumber());
+        }
+
+        X509CRLMappedReader crl = new X509CRLMappedReader(derFile);
+        assertEquals(referenceSerials.size(), crl.size());
+
+        Set<BigInteger> mappedSerials = new HashSet<BigInteger>();
+        for (int i = 0; i < crl.size(); i++) {
+            mappedSerials.add(crl.getSerial(i));
+        }
+        assertEquals(referenceSerials, mappedSerials);
+
+        for (BigInteger serial : referenceSerials) {
+            assertTrue(crl.isRevoked(serial));
+            assertEquals(serial, crl.getSerial(crl.indexOf(serial)));
+        }
+        assertFalse(crl.isRevoked(BigInteger.ZERO));
+        assertFalse(crl.isRevoked(new BigInteger("123456789012345678901234567890")));
+    }
+
+    @Test
+    public void testEntriesMatchStreamedEntries() throws Exception {
+        X509CRLMappedReader crl = new X509CRLMappedReader(derFile);
+        X509CRLEntryStream stream = new X509CRLEntryStream(derFile);
+        try {
+            int i = 0;
+            for (ByteBuffer entry : crl) {
+                assertTrue(stream.hasNext());
+                byte[] encoded = stream.next().getEncoded();
+
+                byte[] mapped = new byte[entry.remaining()];
+                entry.get(mapped);
+                assertTrue(Arrays.equals(encoded, mapped));
+                assertEquals(encoded.length, crl.getEntryLength(i++));
+            }
+            assertFalse(stream.hasNext());
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    public void testLookupInUnsortedCrl() throws Exception {
+        X509v2CRLBuilder crlBuilder = createCRLBuilder();
+        long[] serials = { 500, 3, 127, 128, 70000, 1, 255, 256, 4000000000L, 42 };
+        for (long serial : serials) {
+            crlBuilder.addCRLEntry(BigInteger.valueOf(serial), new Date(), CRLReason.unspecified);
+        }
+
+        X509CRLMappedReader crl = new X509CRLMappedReader(writeCRL(crlBuilder.build(signer)));
+
+        assertEquals(serials.length, crl.size());
+        for (int i = 0; i < serials.length; i++) {
+            assertEquals(i, crl.indexOf(BigInteger.valueOf(serials[i])));
+        }
+        assertFalse(crl.isRevoked(BigInteger.valueOf(129)));
+        assertFalse(crl.isRevoked(BigInteger.valueOf(4000000001L)));
+    }
+
+    @Test
+    public void testEmptyCrl() throws Exception {
+        X509CRLHolder holder = createCRLBuilder().build(signer);
+
+        X509CRLMappedReader crl = new X509CRLMappedReader(writeCRL(holder));
+
+        assertEquals(0, crl.size());
+        assertFalse(crl.iterator().hasNext());
+        assertFalse(crl.isRevoked(BigInteger.ONE));
+    }
+
+    @Test
+    public void testEmptyCrlWithNoExtensions() throws Exception {
+        X509CRLHolder holder = new X509v2CRLBuilder(issuer, new Date()).build(signer);
+
+        X509CRLMappedReader crl = new X509CRLMappedReader(writeCRL(holder));
+
+        assertEquals(0, crl.size());
+        assertFalse(crl.isRevoked(BigInteger.ONE));
+    }
+}
@@ -466,6 +466,44 @@ public class X509CRLStreamWriterTest {
         assertEquals(expected, discoveredSerials);
     }
 
+    @Test
+    public void testSpliceEntriesFromMappedCRL() throws Exception {
+        X509v2CRLBuilder crlBuilder = createCRLBuilder();
+        for (int i = 101; i < 110; i++) {
+            crlBuilder.addCRLEntry(new BigInteger(String.valueOf(i)), new Date(), CRLReason.unspecified);
+        }
+        X509CRLHolder holder = crlBuilder.build(signer);
+
+        X509CRLMappedReader crl = new X509CRLMappedReader(writeCRL(holder));
+
+        X509CRLStreamWriter stream = new X509CRLStreamWriter(crl,
+            (RSAPrivateKey) keyPair.getPrivate(), (RSAPublicKey) keyPair.getPublic());
+        stream.add(new BigInteger("9000"), new Date(), 0);
+        assertTrue(stream.delete(new BigInteger("100")));
+        assertTrue(stream.delete(new BigInteger("105")));
+        assertTrue(stream.delete(new BigInteger("109")));
+        assertFalse(stream.delete(new BigInteger("110")));
+        stream.preScan(crl.newInputStream()).lock();
+        OutputStream o = new BufferedOutputStream(new FileOutputStream(outfile));
+        stream.write(o);
+        o.close();
+
+        X509CRL changedCrl = readCRL();
+
+        Set<BigInteger> discoveredSerials = new HashSet<BigInteger>();
+
+        for (X509CRLEntry entry : changedCrl.getRevokedCertificates()) {
+            discoveredSerials.add(entry.getSerialNumber());
+        }
+
+        Set<BigInteger> expected = new HashSet<BigInteger>();
+        for (String serial : Arrays.asList("101", "102", "103", "104", "106", "107", "108", "9000")) {
+            expected.add(new BigInteger(serial));
+        }
+
+        assertEquals(expected, discoveredSerials);
+    }
+
     @Test
     public void testModifyUpdatedTime() throws Exception {
         X509CRLHolder holder = createCRL();
@@ -29,12 +29,16 @@ import org.candlepin.model.Product;
 import org.candlepin.model.ProductContent;
 import org.candlepin.model.Owner;
 import org.candlepin.test.TestUtil;
+import org.candlepin.util.X509V3ExtensionUtil.HuffNode;
 import org.candlepin.util.X509V3ExtensionUtil.NodePair;
 import org.candlepin.util.X509V3ExtensionUtil.PathNode;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -185,4 +189,105 @@ public class X509V3ExtensionUtilTest {
         assertEquals("OS", resultBrandType);
     }
 
+    @Test
+    public void nodeDictionaryMatchesPathSearch() throws IOException {
+        List<org.candlepin.model.dto.Content> contents = contentPaths(
+            "/content/dist/rhel/server/6/$releasever/$basearch/os",
+            "/content/dist/rhel/server/6/$releasever/$basearch/debug",
+            "/content/dist/rhel/server/6/$releasever/$basearch/source/SRPMS",
+            "/content/beta/rhel/server/6/$releasever/$basearch/os",
+            "/content/beta/rhel/server/6/$releasever/$basearch/debug",
+            "/content/dist/rhel/client/6/$releasever/$basearch/os",
+            "/some/other/path");
+        assertNodeDictionaryMatchesPathSearch(contents);
+    }
+
+    @Test
+    public void largeNodeDictionaryMatchesPathSearch() throws IOException {
+        List<org.candlepin.model.dto.Content> contents =
+            new ArrayList<org.candlepin.model.dto.Content>();
+        for (int i = 0; i < 300; i++) {
+            contents.addAll(contentPaths("/content/dist/product" + i + "/repo" + (i % 7) +
+                "/arch" + (i % 3) + "/os"));
+        }
+        assertNodeDictionaryMatchesPathSearch(contents);
+    }
+
+    @Test
+    public void singleNodeDictionaryMatchesPathSearch() throws IOException {
+        assertNodeDictionaryMatchesPathSearch(contentPaths("/single"));
+    }
+
+    private List<org.candlepin.model.dto.Content> contentPaths(String... paths) {
+        List<org.candlepin.model.dto.Content> contents =
+            new ArrayList<org.candlepin.model.dto.Content>();
+        for (String path : paths) {
+            org.candlepin.model.dto.Content content = new org.candlepin.model.dto.Content();
+            content.setPath(path);
+            contents.add(content);
+        }
+        return contents;
+    }
+
+    private void assertNodeDictionaryMatchesPathSearch(
+        List<org.candlepin.model.dto.Content> contents) throws IOException {
+        PathNode treeRoot = util.makePathTree(contents, util.new PathNode());
+        HuffNode stringTrie = util.makeTrie(util.getStringNodeList(util.orderStrings(treeRoot)));
+        List<PathNode> orderedNodes = util.orderNodes(treeRoot);
+        HuffNode pathNodeTrie = util.makeTrie(util.getPathNodeNodeList(orderedNodes));
+
+        byte[] expected = pathSearchDictionary(stringTrie, pathNodeTrie, orderedNodes);
+        assertArrayEquals(expected, util.makeNodeDictionary(stringTrie, pathNodeTrie, orderedNodes));
+    }
+
+    /*
+     * Encodes the node dictionary by searching the tries for every path, which is
+     * how the payload was built before the code tables. The header is always the
+     * node count here, as long as the tests stay under 2^24 nodes.
+     */
+    private byte[] pathSearchDictionary(HuffNode stringTrie, HuffNode pathNodeTrie,
+        List<PathNode> pathNodes) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        int nodeSize = pathNodes.size();
+        if (nodeSize > 127) {
+            int length = nodeSize > 0xFFFF ? 3 : nodeSize > 0xFF ? 2 : 1;
+            baos.write(128 + length);
+            for (int i = length - 1; i >= 0; i--) {
+                baos.write(nodeSize >> (8 * i));
+            }
+        }
+        else {
+            baos.write(nodeSize);
+        }
+
+        // the end node is the only string trie value which is not a String
+        Object endNode = findEndNode(stringTrie);
+        StringBuffer bits = new StringBuffer();
+        for (PathNode pn : pathNodes) {
+            for (NodePair np : pn.getChildren()) {
+                bits.append(util.findHuffPath(stringTrie, np.getName()));
+                bits.append(util.findHuffPath(pathNodeTrie, np.getConnection()));
+            }
+            bits.append(util.findHuffPath(stringTrie, endNode));
+        }
+        while (bits.length() % 8 != 0) {
+            bits.append('0');
+        }
+        for (int i = 0; i < bits.length(); i += 8) {
+            baos.write(Integer.parseInt(bits.substring(i, i + 8), 2));
+        }
+        return baos.toByteArray();
+    }
+
+    private Object findEndNode(HuffNode trie) {
+        if (trie == null) {
+            return null;
+        }
+        if (trie.getValue() != null && !(trie.getValue() instanceof String)) {
+            return trie.getValue();
+        }
+        Object found = findEndNode(trie.getLeft());
+        return found != null ? found : findEndNode(trie.getRight());
+    }
+
 }